@@ -0,0 +1,74 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import org.bson.Document;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call handle overhead: a CollectionCache hit against parsing the write concern, which is
+ * the part of building the handles a hit skips. The database and collection are stubs, so
+ * what the driver does in withWriteConcern / getCollection isn't counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollectionCacheBenchmark {
+    public static class StubDatabase {
+        public MongoCollection<?> getCollection(String name, Class<?> documentClass) {
+            return Stubs.of(MongoCollection.class, new StubCollection(documentClass));
+        }
+    }
+    public static class StubCollection {
+        private final Class<?> documentClass;
+
+        StubCollection(Class<?> documentClass) {
+            this.documentClass = documentClass;
+        }
+        public Class<?> getDocumentClass() {
+            return documentClass;
+        }
+    }
+
+    private CollectionCache cache;
+    private String key;
+    private JSONObject options;
+
+    @Setup
+    public void setup() throws Exception {
+        options = new JSONObject("{\"writeConcern\": {\"w\": 1, \"j\": true}}");
+        key = "hamstudy\u0000" + options.get("writeConcern").toString();
+
+        cache = new CollectionCache();
+        MongoDatabase db = cache.putDatabase(key, "hamstudy", Stubs.of(MongoDatabase.class, new StubDatabase()));
+        cache.putCollection(db, "questions", db.getCollection("questions", Document.class));
+    }
+
+    @Benchmark
+    public MongoCollection<Document> cachedLookup() {
+        MongoDatabase db = cache.getDatabase(key);
+        return cache.getCollection(db, "questions", Document.class);
+    }
+
+    @Benchmark
+    public WriteConcern parseWriteConcern() throws Exception {
+        return OptionParser.getWriteConcern(options, "writeConcern");
+    }
+}
@@ -0,0 +1,53 @@
+package org.hamstudy.MongoDb;
+
+import org.bson.Document;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insertMany style document arrays, decoded serially (parallelDecodeThreshold 0) and always in
+ * parallel (1); where the two cross is where DEFAULT_PARALLEL_DECODE_THRESHOLD should sit.
+ * Desktop cores are much faster than phone cores, so treat the crossover as a lower bound.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DocumentArrayBenchmark {
+    @Param({"16", "64", "256", "1024", "4096"})
+    public int count;
+
+    @Param({"0", "1"})
+    public int parallelDecodeThreshold;
+
+    @Param({"json", "base64"})
+    public String encoding;
+
+    private JSONArray docs;
+
+    @Setup
+    public void setup() {
+        OptionParser.setParallelDecodeThreshold(parallelDecodeThreshold);
+        docs = Fixtures.documents("small", count, encoding.equals("base64"));
+    }
+
+    @Benchmark
+    public ArrayList<Document> getDocumentArray() {
+        return OptionParser.getDocumentArray(docs);
+    }
+}
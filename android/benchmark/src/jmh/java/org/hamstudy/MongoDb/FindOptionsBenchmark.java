@@ -0,0 +1,61 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.client.FindIterable;
+
+import org.bson.Document;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying find options to a stubbed FindIterable. The parsed values are cached by the options
+ * JSON text, so "Cached" repeats one options object and "Uncached" cycles through more distinct
+ * ones than the cache holds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FindOptionsBenchmark {
+    private static final int DISTINCT_OPTIONS = 1024;
+
+    private FindIterable<Document> find;
+    private JSONObject options;
+    private JSONObject[] distinctOptions;
+    private int next = 0;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        find = Stubs.of(FindIterable.class, null);
+        options = Fixtures.object("findOptions");
+        distinctOptions = new JSONObject[DISTINCT_OPTIONS];
+        for (int i = 0; i < DISTINCT_OPTIONS; i++) {
+            distinctOptions[i] = Fixtures.object("findOptions").put("skip", i);
+        }
+    }
+
+    @Benchmark
+    public FindIterable<Document> applyFindOptionsCached() {
+        return OptionParser.applyFindOptions(find, options);
+    }
+
+    @Benchmark
+    public FindIterable<Document> applyFindOptionsUncached() {
+        JSONObject opts = distinctOptions[next];
+        next = (next + 1) % DISTINCT_OPTIONS;
+        return OptionParser.applyFindOptions(find, opts);
+    }
+}
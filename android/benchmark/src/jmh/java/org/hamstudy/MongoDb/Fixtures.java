@@ -0,0 +1,102 @@
+package org.hamstudy.MongoDb;
+
+import android.util.Base64;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Loads the sample documents in src/jmh/resources/fixtures:
+ *   small        - a question record, a dozen flat fields
+ *   medium       - an exam session with 40 embedded answers, about 9KB of JSON
+ *   types        - one field of every extended JSON type
+ *   findOptions  - typical find options
+ */
+final class Fixtures {
+    private static final DocumentCodec documentCodec = new DocumentCodec();
+
+    private Fixtures() {}
+
+    static String text(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".json")) {
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture named " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read fixture " + name, ex);
+        }
+    }
+
+    static JSObject object(String name) {
+        try {
+            return new JSObject(text(name));
+        } catch (JSONException ex) {
+            throw new IllegalStateException("Fixture " + name + " is not a JSON object", ex);
+        }
+    }
+
+    static Document document(String name) {
+        return Document.parse(text(name));
+    }
+
+    static RawBsonDocument raw(String name) {
+        return new RawBsonDocument(document(name), documentCodec);
+    }
+
+    /**
+     * @return the fixture as the page sends useBson documents: {$b64: "..."}
+     */
+    static JSObject base64(String name) {
+        return base64(raw(name));
+    }
+    static JSObject base64(RawBsonDocument doc) {
+        JSObject obj = new JSObject();
+        obj.put("$b64", BsonBatch.toBase64(doc, Base64.NO_WRAP));
+        return obj;
+    }
+
+    /**
+     * @param count
+     * @param asBase64 send each copy as {$b64} instead of extended JSON
+     * @return count copies of the fixture, each with its own _id, as the page sends them to insertMany
+     */
+    static JSArray documents(String name, int count, boolean asBase64) {
+        Document template = document(name);
+        long baseTime = new Date(1557790402000L).getTime() / 1000;
+        JSArray docs = new JSArray();
+        for (int i = 0; i < count; i++) {
+            Document copy = new Document(template);
+            copy.put("_id", new ObjectId((int) (baseTime + i), i));
+            if (asBase64) {
+                docs.put(base64(new RawBsonDocument(copy, documentCodec)));
+            } else {
+                try {
+                    docs.put(new JSONObject(copy.toJson()));
+                } catch (JSONException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+        return docs;
+    }
+}
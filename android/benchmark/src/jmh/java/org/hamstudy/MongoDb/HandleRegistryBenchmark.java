@@ -0,0 +1,72 @@
+package org.hamstudy.MongoDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cursor registry under contention from 4 threads:
+ *   findNextClose  - each call opens a cursor, reads it once and closes it
+ *   nextAny        - cursorGetNext on random open cursors
+ *   nextSame       - cursorGetNext on a single cursor, which the handle lock serializes
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class HandleRegistryBenchmark {
+    private static final int OPEN_CURSORS = 64;
+
+    private HandleRegistry<Object> registry;
+    private UUID[] ids;
+
+    @Setup
+    public void setup() {
+        registry = new HandleRegistry<>((id, value) -> {}, 0, 0);
+        ids = new UUID[OPEN_CURSORS];
+        for (int i = 0; i < OPEN_CURSORS; i++) {
+            ids[i] = registry.add(new Object());
+        }
+    }
+
+    @Benchmark
+    public Object findNextClose() {
+        UUID id = registry.add(new Object());
+        HandleRegistry.Handle<Object> handle = registry.acquire(id);
+        Object value = handle.value;
+        handle.release();
+        registry.remove(id);
+        return value;
+    }
+
+    @Benchmark
+    public Object nextAny() {
+        HandleRegistry.Handle<Object> handle = registry.acquire(ids[ThreadLocalRandom.current().nextInt(OPEN_CURSORS)]);
+        Object value = handle.value;
+        handle.release();
+        return value;
+    }
+
+    @Benchmark
+    public Object nextSame() {
+        HandleRegistry.Handle<Object> handle = registry.acquire(ids[0]);
+        Object value = handle.value;
+        handle.release();
+        return value;
+    }
+}
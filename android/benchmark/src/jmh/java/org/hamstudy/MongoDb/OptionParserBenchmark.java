@@ -0,0 +1,77 @@
+package org.hamstudy.MongoDb;
+
+import android.util.Base64;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding single documents the way write and query arguments come in from the page.
+ *
+ * getDocumentBase64RoundTrip is how {$b64} documents used to be decoded (to extended JSON and
+ * parsed back), kept as the baseline for the DocumentCodec path in getDocumentBase64.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OptionParserBenchmark {
+    private static final JsonWriterSettings jsonSettings = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    @Param({"small", "medium", "types"})
+    public String fixture;
+
+    private JSONObject json;
+    private JSONObject base64;
+
+    @Setup
+    public void setup() {
+        json = Fixtures.object(fixture);
+        base64 = Fixtures.base64(fixture);
+    }
+
+    @Benchmark
+    public Document getDocumentJson() {
+        return OptionParser.getDocument(json);
+    }
+
+    @Benchmark
+    public Document getDocumentBase64() {
+        return OptionParser.getDocument(base64);
+    }
+
+    @Benchmark
+    public Document getDocumentBase64RoundTrip() throws Exception {
+        byte[] bytes = Base64.decode(base64.getString("$b64"), Base64.DEFAULT);
+        return Document.parse(new RawBsonDocument(bytes).toJson(jsonSettings));
+    }
+
+    @Benchmark
+    public BsonDocument getRawBsonDocumentJson() {
+        return OptionParser.getRawBsonDocument(json);
+    }
+
+    @Benchmark
+    public BsonDocument getRawBsonDocumentBase64() {
+        return OptionParser.getRawBsonDocument(base64);
+    }
+}
@@ -0,0 +1,87 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning result documents into what goes back to the page, per response format:
+ *   toJsonThenJSObject - extended JSON text parsed into a JSObject, the original path
+ *   jsObjectWriter     - the JSObject tree written directly (default results)
+ *   toJson             - extended JSON text only (rawJson results)
+ *   getBsonBase64Doc   - {$b64} (useBson results)
+ *   packedBatch        - BATCH_SIZE documents as one base64 string (packed results)
+ *   bsonToJson         - a BsonValue to JSON, as used for inserted ids
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    private static final JsonWriterSettings jsonSettings = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"small", "medium", "types"})
+    public String fixture;
+
+    private Document doc;
+    private RawBsonDocument raw;
+
+    @Setup
+    public void setup() {
+        doc = Fixtures.document(fixture);
+        raw = Fixtures.raw(fixture);
+    }
+
+    @Benchmark
+    public JSObject toJsonThenJSObject() throws Exception {
+        return new JSObject(doc.toJson(jsonSettings));
+    }
+
+    @Benchmark
+    public JSObject jsObjectWriter() {
+        return JSObjectWriter.toJSObject(doc, jsonSettings);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return doc.toJson(jsonSettings);
+    }
+
+    @Benchmark
+    public JSObject getBsonBase64Doc() {
+        return MongoDBMobile.getBsonBase64Doc(raw);
+    }
+
+    @Benchmark
+    public String packedBatch() {
+        BsonBatch batch = new BsonBatch();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(raw);
+        }
+        return batch.toBase64();
+    }
+
+    @Benchmark
+    public JSObject bsonToJson() {
+        return OptionParser.bsonToJson(raw);
+    }
+}
@@ -0,0 +1,535 @@
+package org.hamstudy.MongoDb;
+
+import android.content.Context;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import com.mongodb.stitch.android.services.mongodb.local.LocalMongoDbService;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a scripted workload through the plugin methods, the way the page calls them, against
+ * FakeMongoClient, and reports throughput per phase and client side latency per method:
+ *   import    - questions added with newBulkWrite / bulkWriteAddMany / bulkWriteExecute
+ *   sessions  - exam sessions added with insertMany
+ *   pages     - find with a cursor, read to the end with cursorGetNext
+ *   lookups   - find by _id
+ *   counters  - findOneAndUpdate $inc with upsert
+ * Each phase is run by several client threads at once, and checked against the fake's contents
+ * afterwards. There is no storage underneath, so the numbers are the plugin's own overhead
+ * (parsing, queueing, serializing) plus an unindexed in-memory scan for the page queries.
+ * WorkloadTest (in the plugin's unit tests, with FakeMongoClient) checks the same phases at a
+ * small scale.
+ *
+ * Settings are system properties, see the build.gradle workload task. With workload.baseline
+ * pointing at the workload.out of an earlier run it exits with 1 if any phase lost more than
+ * workload.tolerance of its throughput or any method's p50 grew by more than that.
+ */
+public final class WorkloadRunner {
+    private static final long CALL_TIMEOUT_S = 60;
+    // Latency changes smaller than this are below what the histogram can tell apart at these durations
+    private static final double MIN_P50_DELTA_MS = 0.05;
+    private static final String[] POOLS = {"T2018", "G2019", "E2020"};
+    private static final int SUBELEMENTS = 10;
+
+    private final int docs = Integer.getInteger("workload.docs", 20000);
+    private final int importBatch = Integer.getInteger("workload.importBatch", 500);
+    private final int sessions = Integer.getInteger("workload.sessions", 2000);
+    private final int sessionBatch = Integer.getInteger("workload.sessionBatch", 50);
+    private final int pages = Integer.getInteger("workload.pages", 60);
+    private final int pageSize = Integer.getInteger("workload.pageSize", 50);
+    private final int lookups = Integer.getInteger("workload.lookups", 5000);
+    private final int counters = Integer.getInteger("workload.counters", 5000);
+    private final int counterKeys = Integer.getInteger("workload.counterKeys", 16);
+    private final int concurrency = Integer.getInteger("workload.concurrency", 4);
+    private final int warmupRounds = Integer.getInteger("workload.warmupRounds", 1);
+    private final boolean useBson = Boolean.getBoolean("workload.useBson");
+
+    private final MongoDBMobile plugin = new MongoDBMobile();
+    private final FakeMongoClient fake = new FakeMongoClient();
+    private final ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+    private final ConcurrentHashMap<String, Method> methods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    private static class Phase {
+        final String name;
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong docs = new AtomicLong();
+        long nanos;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        double getSeconds() {
+            return nanos / 1e9;
+        }
+        JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("calls", calls.get());
+            ret.put("docs", docs.get());
+            ret.put("seconds", getSeconds());
+            ret.put("callsPerSec", calls.get() / getSeconds());
+            ret.put("docsPerSec", docs.get() / getSeconds());
+            return ret;
+        }
+    }
+
+    private interface Step {
+        /**
+         * @param phase to count calls and documents in
+         * @param i which of the phase's steps this is
+         */
+        void run(Phase phase, int i) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        WorkloadRunner runner = new WorkloadRunner();
+        int status;
+        try {
+            status = runner.run();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            status = 2;
+        }
+        // The plugin's executors would keep the JVM alive
+        System.exit(status);
+    }
+
+    private int run() throws Exception {
+        File filesDir = Files.createTempDirectory("workload").toFile();
+        filesDir.deleteOnExit();
+        plugin.setBridge(new Bridge(new Context(filesDir, "org.hamstudy.benchmark")));
+        LocalMongoDbService.setClient(fake.getClient());
+        plugin.load();
+
+        JSObject init = new JSObject(System.getProperty("workload.init", "{}"));
+        init.put("collectStats", true);
+        invoke(null, "initDb", init);
+
+        for (int i = 0; i < warmupRounds; i++) {
+            runWorkload("warmup" + i);
+        }
+        latencies.clear();
+        invoke(null, "resetStats", new JSObject());
+
+        List<Phase> phases = runWorkload("workload");
+
+        JSObject report = getReport(phases);
+        printReport(phases);
+
+        String out = System.getProperty("workload.out");
+        if (out != null) {
+            Files.write(new File(out).toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Report written to " + out);
+        }
+
+        String baseline = System.getProperty("workload.baseline");
+        if (baseline != null) {
+            double tolerance = Double.parseDouble(System.getProperty("workload.tolerance", "0.25"));
+            List<String> regressions = compare(report, readJson(new File(baseline)), tolerance);
+            if (!regressions.isEmpty()) {
+                System.out.println();
+                System.out.println("Regressions against " + baseline + " (tolerance " + (int) (tolerance * 100) + "%):");
+                for (String regression : regressions) {
+                    System.out.println("  " + regression);
+                }
+                return 1;
+            }
+            System.out.println("No regressions against " + baseline);
+        }
+        return 0;
+    }
+
+    private List<Phase> runWorkload(String db) throws Exception {
+        ArrayList<Phase> phases = new ArrayList<>();
+        phases.add(runImport(db));
+        phases.add(runSessions(db));
+        phases.add(runPages(db));
+        phases.add(runLookups(db));
+        phases.add(runCounters(db));
+        return phases;
+    }
+
+    /**
+     * Imports docs questions in bulk writes of importBatch
+     */
+    private Phase runImport(final String db) throws Exception {
+        DocumentCodec codec = new DocumentCodec();
+        Document template = Fixtures.document("small");
+        final ArrayList<JSArray> batches = new ArrayList<>();
+        JSArray operations = new JSArray();
+        for (int i = 0; i < docs; i++) {
+            Document question = new Document(template);
+            question.put("_id", getQuestionId(i));
+            String subelement = getSubelement(i);
+            question.put("pool", getPool(i));
+            question.put("subelement", subelement);
+            question.put("group", subelement + (char) ('A' + (i / 30) % 6));
+            question.put("id", String.format("%s%02d", question.getString("group"), i / 180));
+            JSObject doc = useBson ? Fixtures.base64(new RawBsonDocument(question, codec)) : new JSObject(question.toJson());
+            operations.put(new JSObject().put("insertOne", new JSObject().put("doc", doc)));
+            if (operations.length() == importBatch || i == docs - 1) {
+                batches.add(operations);
+                operations = new JSArray();
+            }
+        }
+
+        Phase phase = runPhase("import", batches.size(), (p, i) -> {
+            JSObject target = getTarget(db, "questions");
+            JSObject created = invoke(p, "newBulkWrite", target);
+            String operationId = created.getString("operationId");
+            invoke(p, "bulkWriteAddMany", new JSObject().put("operationId", operationId).put("operations", batches.get(i)));
+            JSObject result = invoke(p, "bulkWriteExecute", new JSObject().put("operationId", operationId));
+            int inserted = result.getInteger("insertedCount", 0);
+            check(inserted == batches.get(i).length(), "bulkWriteExecute inserted " + inserted + " of " + batches.get(i).length());
+            p.docs.addAndGet(inserted);
+        });
+        check(fake.size(db, "questions") == docs, "questions has " + fake.size(db, "questions") + " documents, expected " + docs);
+        return phase;
+    }
+
+    /**
+     * Inserts sessions exam sessions with insertMany, sessionBatch at a time
+     */
+    private Phase runSessions(final String db) throws Exception {
+        JSArray all = Fixtures.documents("medium", sessions, useBson);
+        final ArrayList<JSArray> batches = new ArrayList<>();
+        for (int i = 0; i < sessions; i += sessionBatch) {
+            JSArray batch = new JSArray();
+            for (int j = i; j < Math.min(i + sessionBatch, sessions); j++) {
+                batch.put(all.get(j));
+            }
+            batches.add(batch);
+        }
+
+        Phase phase = runPhase("sessions", batches.size(), (p, i) -> {
+            JSObject data = getTarget(db, "sessions").put("docs", batches.get(i));
+            JSObject result = invoke(p, "insertMany", data);
+            int inserted = result.getInteger("insertedCount", 0);
+            check(inserted == batches.get(i).length(), "insertMany inserted " + inserted + " of " + batches.get(i).length());
+            p.docs.addAndGet(inserted);
+        });
+        check(fake.size(db, "sessions") == sessions, "sessions has " + fake.size(db, "sessions") + " documents, expected " + sessions);
+        return phase;
+    }
+
+    /**
+     * Reads every question of a pool / subelement through a cursor, pageSize at a time
+     */
+    private Phase runPages(final String db) throws Exception {
+        return runPhase("pages", pages, (p, i) -> {
+            int which = i % (POOLS.length * SUBELEMENTS);
+            JSObject filter = new JSObject().put("pool", getPool(which)).put("subelement", getSubelement(which));
+            JSObject data = getTarget(db, "questions")
+                    .put("filter", filter)
+                    .put("options", new JSObject().put("sort", new JSObject().put("id", 1)))
+                    .put("cursor", true);
+            String cursorId = invoke(p, "find", data).getString("cursorId");
+
+            int expected = fake.find(db, "questions", BsonDocument.parse(filter.toString())).size();
+            int read = 0;
+            boolean complete = false;
+            while (!complete) {
+                JSObject batch = invoke(p, "cursorGetNext", new JSObject().put("cursorId", cursorId).put("batchSize", pageSize));
+                read += batch.getJSONArray("results").length();
+                complete = batch.getBoolean("complete", false);
+            }
+            check(read == expected, "cursor returned " + read + " documents, expected " + expected);
+            p.docs.addAndGet(read);
+        });
+    }
+
+    /**
+     * Finds random questions by _id
+     */
+    private Phase runLookups(final String db) throws Exception {
+        return runPhase("lookups", lookups, (p, i) -> {
+            ObjectId id = getQuestionId(ThreadLocalRandom.current().nextInt(docs));
+            JSObject data = getTarget(db, "questions")
+                    .put("filter", new JSObject().put("_id", new JSObject().put("$oid", id.toHexString())))
+                    .put("options", new JSObject().put("limit", 1));
+            int found = invoke(p, "find", data).getJSONArray("results").length();
+            check(found == 1, "find by _id returned " + found + " documents");
+            p.docs.addAndGet(found);
+        });
+    }
+
+    /**
+     * Increments counterKeys counters, upserting each the first time
+     */
+    private Phase runCounters(final String db) throws Exception {
+        Phase phase = runPhase("counters", counters, (p, i) -> {
+            JSObject data = getTarget(db, "counters")
+                    .put("filter", new JSObject().put("_id", "counter-" + i % counterKeys))
+                    .put("update", new JSObject().put("$inc", new JSObject().put("n", 1)))
+                    .put("options", new JSObject().put("upsert", true).put("returnNewDocument", true));
+            Object doc = invoke(p, "findOneAndUpdate", data).opt("doc");
+            check(doc instanceof JSONObject, "findOneAndUpdate returned no document");
+            p.docs.incrementAndGet();
+        });
+
+        long total = 0;
+        for (BsonDocument counter : fake.find(db, "counters", new BsonDocument())) {
+            total += counter.getNumber("n").longValue();
+        }
+        check(total == counters, "counters add up to " + total + ", expected " + counters);
+        return phase;
+    }
+
+    /**
+     * Runs steps 0 - count-1 of a phase on the client threads
+     */
+    private Phase runPhase(String name, int count, final Step step) throws Exception {
+        final Phase phase = new Phase(name);
+        final AtomicInteger next = new AtomicInteger();
+        ArrayList<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < concurrency; t++) {
+            workers.add(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    step.run(phase, i);
+                }
+                return null;
+            });
+        }
+
+        long start = System.nanoTime();
+        List<Future<Void>> results = clients.invokeAll(workers);
+        phase.nanos = System.nanoTime() - start;
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Phase " + name + " failed: " + ex.getCause().getMessage(), ex.getCause());
+            }
+        }
+        return phase;
+    }
+
+    /**
+     * Calls a plugin method and waits for its result, timing it from the call to the result
+     * @param phase to count the call in; null for calls which aren't part of the workload
+     * @return what the call resolved with
+     * @throws IllegalStateException if it was rejected
+     */
+    private JSObject invoke(Phase phase, final String methodName, JSObject data) throws Exception {
+        Method method = methods.get(methodName);
+        if (method == null) {
+            method = MongoDBMobile.class.getMethod(methodName, PluginCall.class);
+            methods.put(methodName, method);
+        }
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final JSObject[] result = new JSObject[1];
+        final String[] error = new String[1];
+        final boolean timed = phase != null;
+        final long start = System.nanoTime();
+        PluginCall call = new PluginCall(methodName, data, (c, res, err, ex) -> {
+            if (timed) {
+                getHistogram(methodName).recordNanos(System.nanoTime() - start);
+            }
+            result[0] = res;
+            error[0] = err;
+            done.countDown();
+        });
+
+        try {
+            method.invoke(plugin, call);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException(methodName + " threw " + ex.getCause(), ex.getCause());
+        }
+        if (!done.await(CALL_TIMEOUT_S, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(methodName + " did not return within " + CALL_TIMEOUT_S + "s");
+        }
+        if (phase != null) {
+            phase.calls.incrementAndGet();
+        }
+        if (result[0] == null) {
+            throw new IllegalStateException(methodName + " failed: " + error[0]);
+        }
+        return result[0];
+    }
+
+    private LatencyHistogram getHistogram(String methodName) {
+        LatencyHistogram histogram = latencies.get(methodName);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = latencies.putIfAbsent(methodName, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    private JSObject getTarget(String db, String collection) {
+        return new JSObject().put("db", db).put("collection", collection).put("useBson", useBson);
+    }
+
+    private static ObjectId getQuestionId(int i) {
+        return new ObjectId(1557790402 + i / 1000, i);
+    }
+    private static String getPool(int i) {
+        return POOLS[i % POOLS.length];
+    }
+    private static String getSubelement(int i) {
+        return getPool(i).charAt(0) + Integer.toString(i / POOLS.length % SUBELEMENTS);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private JSObject getReport(List<Phase> phases) throws Exception {
+        JSObject config = new JSObject();
+        config.put("docs", docs);
+        config.put("importBatch", importBatch);
+        config.put("sessions", sessions);
+        config.put("sessionBatch", sessionBatch);
+        config.put("pages", pages);
+        config.put("pageSize", pageSize);
+        config.put("lookups", lookups);
+        config.put("counters", counters);
+        config.put("counterKeys", counterKeys);
+        config.put("concurrency", concurrency);
+        config.put("useBson", useBson);
+
+        JSObject phasesJson = new JSObject();
+        for (Phase phase : phases) {
+            phasesJson.put(phase.name, phase.toJSObject());
+        }
+        JSObject methodsJson = new JSObject();
+        for (Map.Entry<String, LatencyHistogram> entry : getSortedLatencies().entrySet()) {
+            methodsJson.put(entry.getKey(), entry.getValue().toJSObject());
+        }
+
+        JSObject report = new JSObject();
+        report.put("config", config);
+        report.put("phases", phasesJson);
+        report.put("methods", methodsJson);
+        // The plugin's own breakdown of the same calls into queued / executing / serializing
+        report.put("pluginStats", invoke(null, "getStats", new JSObject()));
+        return report;
+    }
+
+    private LinkedHashMap<String, LatencyHistogram> getSortedLatencies() {
+        ArrayList<String> names = new ArrayList<>(latencies.keySet());
+        Collections.sort(names);
+        LinkedHashMap<String, LatencyHistogram> sorted = new LinkedHashMap<>();
+        for (String name : names) {
+            sorted.put(name, latencies.get(name));
+        }
+        return sorted;
+    }
+
+    private void printReport(List<Phase> phases) {
+        System.out.println(String.format("%-12s %10s %10s %12s %12s", "phase", "calls", "seconds", "calls/s", "docs/s"));
+        for (Phase phase : phases) {
+            System.out.println(String.format("%-12s %10d %10.3f %12.1f %12.1f", phase.name, phase.calls.get(),
+                    phase.getSeconds(), phase.calls.get() / phase.getSeconds(), phase.docs.get() / phase.getSeconds()));
+        }
+        System.out.println();
+        System.out.println(String.format("%-20s %10s %10s %10s %10s", "method", "count", "p50 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, LatencyHistogram> entry : getSortedLatencies().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            System.out.println(String.format("%-20s %10d %10.3f %10.3f %10.3f", entry.getKey(), histogram.getCount(),
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(100) / 1000.0));
+        }
+    }
+
+    private static JSONObject readJson(File file) throws IOException, JSONException {
+        return new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a description of each phase / method that got worse than baseline by more than tolerance
+     */
+    static List<String> compare(JSONObject report, JSONObject baseline, double tolerance) {
+        ArrayList<String> regressions = new ArrayList<>();
+        // Numbers from a different workload can't be compared
+        JSONObject config = report.optJSONObject("config");
+        JSONObject baseConfig = baseline.optJSONObject("config");
+        if (config != null && baseConfig != null) {
+            for (Iterator<String> it = config.keys(); it.hasNext(); ) {
+                String name = it.next();
+                String current = String.valueOf(config.opt(name));
+                String before = String.valueOf(baseConfig.opt(name));
+                if (!current.equals(before)) {
+                    regressions.add(String.format("config %s: %s, baseline has %s", name, current, before));
+                }
+            }
+        }
+
+        JSONObject phases = report.optJSONObject("phases");
+        JSONObject basePhases = baseline.optJSONObject("phases");
+        if (phases != null && basePhases != null) {
+            for (Iterator<String> it = phases.keys(); it.hasNext(); ) {
+                String name = it.next();
+                JSONObject base = basePhases.optJSONObject(name);
+                if (base == null) {
+                    continue;
+                }
+                double current = phases.optJSONObject(name).optDouble("callsPerSec", 0);
+                double before = base.optDouble("callsPerSec", 0);
+                if (current < before * (1 - tolerance)) {
+                    regressions.add(String.format("%s: %.1f calls/s, was %.1f", name, current, before));
+                }
+            }
+        }
+
+        JSONObject methods = report.optJSONObject("methods");
+        JSONObject baseMethods = baseline.optJSONObject("methods");
+        if (methods != null && baseMethods != null) {
+            for (Iterator<String> it = methods.keys(); it.hasNext(); ) {
+                String name = it.next();
+                JSONObject base = baseMethods.optJSONObject(name);
+                if (base == null) {
+                    continue;
+                }
+                double current = methods.optJSONObject(name).optDouble("p50", 0);
+                double before = base.optDouble("p50", 0);
+                if (current > before * (1 + tolerance) && current - before > MIN_P50_DELTA_MS) {
+                    regressions.add(String.format("%s: p50 %.3f ms, was %.3f ms", name, current, before));
+                }
+            }
+        }
+        return regressions;
+    }
+}
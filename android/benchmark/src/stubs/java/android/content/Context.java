@@ -0,0 +1,26 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for android.content.Context; only what the plugin uses
+ */
+public class Context {
+    private final File filesDir;
+    private final String packageName;
+
+    public Context(File filesDir, String packageName) {
+        this.filesDir = filesDir;
+        this.packageName = packageName;
+    }
+
+    public File getFilesDir() {
+        return filesDir;
+    }
+    public File getCacheDir() {
+        return filesDir;
+    }
+    public String getPackageName() {
+        return packageName;
+    }
+}
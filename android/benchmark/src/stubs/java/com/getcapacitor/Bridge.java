@@ -0,0 +1,18 @@
+package com.getcapacitor;
+
+import android.content.Context;
+
+/**
+ * Stand-in for the Capacitor 1.x Bridge; plugins only use it to get their Context
+ */
+public class Bridge {
+    private final Context context;
+
+    public Bridge(Context context) {
+        this.context = context;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+}
@@ -0,0 +1,42 @@
+package com.getcapacitor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Copy of the Capacitor 1.x JSArray API the plugin uses, so it can run on a desktop JVM
+ */
+public class JSArray extends JSONArray {
+    public JSArray() {
+        super();
+    }
+    public JSArray(String json) throws JSONException {
+        super(json);
+    }
+    public JSArray(Collection copyFrom) {
+        super(copyFrom);
+    }
+    public JSArray(Object array) throws JSONException {
+        super(array);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E> List<E> toList() throws JSONException {
+        List<E> items = new ArrayList<>();
+        for (int i = 0; i < this.length(); i++) {
+            items.add((E) this.get(i));
+        }
+        return items;
+    }
+
+    public static JSArray from(Object array) {
+        try {
+            return new JSArray(array);
+        } catch (JSONException ex) {}
+        return null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.getcapacitor;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NativePlugin {
+    String name() default "";
+    String[] permissions() default {};
+    int permissionRequestCode() default 9000;
+    int[] requestCodes() default {};
+}
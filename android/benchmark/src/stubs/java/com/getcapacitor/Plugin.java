@@ -0,0 +1,75 @@
+package com.getcapacitor;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stand-in for the Capacitor 1.x Plugin base class; only what the plugin uses. Listeners are
+ * saved PluginCalls as in Capacitor, and notifyListeners resolves each of them.
+ */
+public class Plugin {
+    protected Bridge bridge;
+    private final ConcurrentHashMap<String, List<PluginCall>> eventListeners = new ConcurrentHashMap<>();
+
+    public void load() {}
+
+    public void setBridge(Bridge bridge) {
+        this.bridge = bridge;
+    }
+    public Bridge getBridge() {
+        return bridge;
+    }
+    public Context getContext() {
+        return bridge.getContext();
+    }
+    public String getAppId() {
+        return getContext().getPackageName();
+    }
+    protected String getLogTag() {
+        return "Capacitor/" + getClass().getSimpleName();
+    }
+
+    /**
+     * Registers call for the event named by its eventName; it gets a result per notification
+     */
+    public void addListener(PluginCall call) {
+        String eventName = call.getString("eventName");
+        call.save();
+        List<PluginCall> listeners = eventListeners.get(eventName);
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+            List<PluginCall> existing = eventListeners.putIfAbsent(eventName, listeners);
+            if (existing != null) {
+                listeners = existing;
+            }
+        }
+        listeners.add(call);
+    }
+    public void removeAllListeners(PluginCall call) {
+        eventListeners.clear();
+        call.success();
+    }
+
+    protected void notifyListeners(String eventName, JSObject data, boolean retainUntilConsumed) {
+        List<PluginCall> listeners = eventListeners.get(eventName);
+        if (listeners == null) {
+            return;
+        }
+        for (PluginCall call : new ArrayList<>(listeners)) {
+            call.success(data);
+        }
+    }
+    protected void notifyListeners(String eventName, JSObject data) {
+        notifyListeners(eventName, data, false);
+    }
+    protected boolean hasListeners(String eventName) {
+        List<PluginCall> listeners = eventListeners.get(eventName);
+        return listeners != null && !listeners.isEmpty();
+    }
+
+    protected void handleOnDestroy() {}
+}
@@ -0,0 +1,181 @@
+package com.getcapacitor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Capacitor 1.x PluginCall. The getters behave like Capacitor's (a value of
+ * the wrong type gives the default); instead of going back over the bridge the result is
+ * handed to a Callback.
+ */
+public class PluginCall {
+    public interface Callback {
+        /**
+         * @param call
+         * @param result the data the call resolved with; null if it was rejected
+         * @param error the rejection message; null if it resolved
+         * @param exception passed along with the rejection, if any
+         */
+        void onResult(PluginCall call, JSObject result, String error, Exception exception);
+    }
+
+    private static long nextCallbackId = 0;
+
+    private final String callbackId;
+    private final String methodName;
+    private final JSObject data;
+    private final Callback callback;
+    private boolean isSaved = false;
+    private boolean isReleased = false;
+
+    public PluginCall(String methodName, JSObject data, Callback callback) {
+        synchronized (PluginCall.class) {
+            this.callbackId = Long.toString(nextCallbackId++);
+        }
+        this.methodName = methodName;
+        this.data = data;
+        this.callback = callback;
+    }
+
+    public void success(JSObject data) {
+        callback.onResult(this, data, null, null);
+    }
+    public void success() {
+        success(new JSObject());
+    }
+    public void resolve(JSObject data) {
+        success(data);
+    }
+    public void resolve() {
+        success();
+    }
+    public void error(String msg, Exception ex) {
+        callback.onResult(this, null, msg, ex);
+    }
+    public void error(String msg) {
+        error(msg, null);
+    }
+    public void reject(String msg, Exception ex) {
+        error(msg, ex);
+    }
+    public void reject(String msg) {
+        error(msg, null);
+    }
+
+    public String getCallbackId() {
+        return callbackId;
+    }
+    public String getMethodName() {
+        return methodName;
+    }
+    public JSObject getData() {
+        return data;
+    }
+
+    public String getString(String name) {
+        return getString(name, null);
+    }
+    public String getString(String name, String defaultValue) {
+        Object value = data.opt(name);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    public Integer getInt(String name) {
+        return getInt(name, null);
+    }
+    public Integer getInt(String name, Integer defaultValue) {
+        Object value = data.opt(name);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public Float getFloat(String name) {
+        return getFloat(name, null);
+    }
+    public Float getFloat(String name, Float defaultValue) {
+        Object value = data.opt(name);
+        if (value instanceof Float) {
+            return (Float) value;
+        } else if (value instanceof Double) {
+            return ((Double) value).floatValue();
+        } else if (value instanceof Integer) {
+            return ((Integer) value).floatValue();
+        }
+        return defaultValue;
+    }
+
+    public Double getDouble(String name) {
+        return getDouble(name, null);
+    }
+    public Double getDouble(String name, Double defaultValue) {
+        Object value = data.opt(name);
+        if (value instanceof Double) {
+            return (Double) value;
+        } else if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        } else if (value instanceof Integer) {
+            return ((Integer) value).doubleValue();
+        }
+        return defaultValue;
+    }
+
+    public Boolean getBoolean(String name) {
+        return getBoolean(name, null);
+    }
+    public Boolean getBoolean(String name, Boolean defaultValue) {
+        Object value = data.opt(name);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public JSObject getObject(String name) {
+        return getObject(name, null);
+    }
+    public JSObject getObject(String name, JSObject defaultValue) {
+        Object value = data.opt(name);
+        if (value instanceof JSONObject) {
+            try {
+                return JSObject.fromJSONObject((JSONObject) value);
+            } catch (JSONException ex) {}
+        }
+        return defaultValue;
+    }
+
+    public JSArray getArray(String name) {
+        return getArray(name, null);
+    }
+    public JSArray getArray(String name, JSArray defaultValue) {
+        Object value = data.opt(name);
+        if (value instanceof JSONArray) {
+            try {
+                JSONArray valueArray = (JSONArray) value;
+                List<Object> items = new ArrayList<>();
+                for (int i = 0; i < valueArray.length(); i++) {
+                    items.add(valueArray.get(i));
+                }
+                return new JSArray(items.toArray());
+            } catch (JSONException ex) {}
+        }
+        return defaultValue;
+    }
+
+    public boolean hasOption(String name) {
+        return data.has(name);
+    }
+
+    public void save() {
+        isSaved = true;
+    }
+    public boolean isSaved() {
+        return isSaved;
+    }
+    public void release(Bridge bridge) {
+        isSaved = false;
+        isReleased = true;
+    }
+    public boolean isReleased() {
+        return isReleased;
+    }
+}
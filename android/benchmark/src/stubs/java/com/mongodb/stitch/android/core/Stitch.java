@@ -0,0 +1,19 @@
+package com.mongodb.stitch.android.core;
+
+import com.mongodb.stitch.android.core.services.internal.ServiceClientFactory;
+
+/**
+ * Stand-in for Stitch; the app client it returns just asks the factory for its client
+ */
+public final class Stitch {
+    private Stitch() {}
+
+    public static StitchAppClient initializeDefaultAppClient(String clientAppId) {
+        return new StitchAppClient() {
+            @Override
+            public <T> T getServiceClient(ServiceClientFactory<T> factory) {
+                return factory.getClient();
+            }
+        };
+    }
+}
@@ -0,0 +1,10 @@
+package com.mongodb.stitch.android.core;
+
+import com.mongodb.stitch.android.core.services.internal.ServiceClientFactory;
+
+/**
+ * Stand-in for the Stitch app client; only getServiceClient is used by the plugin
+ */
+public interface StitchAppClient {
+    <T> T getServiceClient(ServiceClientFactory<T> factory);
+}
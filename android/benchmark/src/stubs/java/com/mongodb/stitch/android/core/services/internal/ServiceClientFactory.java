@@ -0,0 +1,8 @@
+package com.mongodb.stitch.android.core.services.internal;
+
+/**
+ * Stand-in for the Stitch service client factory; the real one also gets the app's info
+ */
+public interface ServiceClientFactory<T> {
+    T getClient();
+}
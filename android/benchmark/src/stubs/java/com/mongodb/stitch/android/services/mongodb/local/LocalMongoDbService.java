@@ -0,0 +1,25 @@
+package com.mongodb.stitch.android.services.mongodb.local;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.stitch.android.core.services.internal.ServiceClientFactory;
+
+/**
+ * Stand-in for the embedded MongoDB service. There is no embedded server on a desktop JVM, so
+ * clientFactory hands out whichever MongoClient was last passed to setClient (null until then)
+ */
+public final class LocalMongoDbService {
+    private static volatile MongoClient client = null;
+
+    public static final ServiceClientFactory<MongoClient> clientFactory = new ServiceClientFactory<MongoClient>() {
+        @Override
+        public MongoClient getClient() {
+            return client;
+        }
+    };
+
+    private LocalMongoDbService() {}
+
+    public static void setClient(MongoClient client) {
+        LocalMongoDbService.client = client;
+    }
+}
@@ -0,0 +1,104 @@
+package org.hamstudy.MongoDb;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the size of each batch for an adaptive cursor.
+ *
+ * The first batch is small so the page can show something quickly; after each batch the
+ * average size and read time of a document are updated and the next batch is sized to fit
+ * the byte budget and / or time budget, growing by at most RAMP_FACTOR per batch until it
+ * reaches the steady state.
+ *
+ * The steady state size is also remembered per namespace so the next cursor on the same
+ * collection can ask the driver for batches of about the right size (see getLearnedSize).
+ */
+public class BatchSizer {
+    static final int DEFAULT_INITIAL_SIZE = 10;
+    static final int DEFAULT_MAX_SIZE = 5000;
+    static final long DEFAULT_TARGET_BYTES = 256 * 1024;
+    static final long DEFAULT_TARGET_MS = 50;
+    static final int RAMP_FACTOR = 4;
+    // Weight of the latest batch in the running averages
+    private static final double SMOOTHING = 0.5;
+    private static final int MAX_LEARNED_NAMESPACES = 256;
+
+    private static final ConcurrentHashMap<String, Integer> learnedSizes = new ConcurrentHashMap<>();
+
+    private final String namespace;
+    private final int maxSize;
+    private final long targetBytes;
+    private final long targetNanos;
+
+    private int size;
+    private double avgDocBytes = -1;
+    private double avgDocNanos = -1;
+
+    /**
+     * @param namespace used to remember the steady state size; may be null
+     * @param initialSize size of the first batch
+     * @param maxSize the largest batch we will ever ask for
+     * @param targetBytes byte budget for a batch; 0 for none
+     * @param targetMs time budget for reading and serializing a batch; 0 for none
+     */
+    BatchSizer(String namespace, int initialSize, int maxSize, long targetBytes, long targetMs) {
+        this.namespace = namespace;
+        this.maxSize = Math.max(maxSize, 1);
+        this.size = Math.max(Math.min(initialSize, this.maxSize), 1);
+        this.targetBytes = Math.max(targetBytes, 0);
+        this.targetNanos = Math.max(targetMs, 0) * 1000000L;
+    }
+
+    /**
+     * @return the number of documents to put in the next batch
+     */
+    int getBatchSize() {
+        return size;
+    }
+
+    /**
+     * Updates the averages from a batch which has been read and picks the next size
+     * @param count number of documents in the batch
+     * @param bytes serialized size of the batch
+     * @param nanos time spent reading and serializing the batch
+     */
+    void record(int count, long bytes, long nanos) {
+        if (count <= 0) {
+            return;
+        }
+        avgDocBytes = smooth(avgDocBytes, (double) bytes / count);
+        avgDocNanos = smooth(avgDocNanos, (double) nanos / count);
+
+        long target = maxSize;
+        if (targetBytes > 0 && avgDocBytes > 0) {
+            target = Math.min(target, (long) (targetBytes / avgDocBytes));
+        }
+        if (targetNanos > 0 && avgDocNanos > 0) {
+            target = Math.min(target, (long) (targetNanos / avgDocNanos));
+        }
+        // Only ramp up once a batch was actually filled; a short batch tells us nothing about the budget
+        boolean filled = count >= size;
+        long ceiling = filled ? (long) size * RAMP_FACTOR : size;
+        size = (int) Math.max(1, Math.min(target, ceiling));
+
+        // Only remember sizes limited by the budgets, not the ramp up steps on the way there
+        if (namespace != null && filled && target <= ceiling) {
+            if (learnedSizes.size() >= MAX_LEARNED_NAMESPACES && !learnedSizes.containsKey(namespace)) {
+                learnedSizes.clear();
+            }
+            learnedSizes.put(namespace, size);
+        }
+    }
+
+    private static double smooth(double avg, double value) {
+        return avg < 0 ? value : avg + (value - avg) * SMOOTHING;
+    }
+
+    /**
+     * @return the steady state batch size adaptive cursors have settled on for namespace, or 0 if we don't know one yet
+     */
+    static int getLearnedSize(String namespace) {
+        Integer size = learnedSizes.get(namespace);
+        return size != null ? size : 0;
+    }
+}
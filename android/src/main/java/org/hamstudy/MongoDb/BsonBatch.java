@@ -0,0 +1,61 @@
+package org.hamstudy.MongoDb;
+
+import android.util.Base64;
+
+import org.bson.RawBsonDocument;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs a batch of BSON documents back to back into a single buffer so the whole batch can be
+ * sent to the page as one base64 string. Every BSON document starts with its own int32 length,
+ * so the page can split the batch again without any extra framing.
+ */
+public class BsonBatch {
+    private byte[] buffer;
+    private int size = 0;
+    private int count = 0;
+
+    BsonBatch() {
+        this(16 * 1024);
+    }
+    BsonBatch(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 64)];
+    }
+
+    void add(RawBsonDocument doc) {
+        ByteBuffer data = getBytes(doc);
+        int length = data.remaining();
+        if (size + length > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2, size + length)];
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+        data.get(buffer, size, length);
+        size += length;
+        count++;
+    }
+    int getCount() {
+        return count;
+    }
+    int getSize() {
+        return size;
+    }
+    String toBase64() {
+        return Base64.encodeToString(buffer, 0, size, Base64.NO_WRAP);
+    }
+
+    /**
+     * Gets the bytes of a single document; the backing array of a RawBsonDocument may be larger
+     * than the document itself, so this respects the position and limit of the buffer
+     * @param doc
+     * @return
+     */
+    static ByteBuffer getBytes(RawBsonDocument doc) {
+        return doc.getByteBuffer().asNIO();
+    }
+    static String toBase64(RawBsonDocument doc, int flags) {
+        ByteBuffer data = getBytes(doc);
+        return Base64.encodeToString(data.array(), data.arrayOffset() + data.position(), data.remaining(), flags);
+    }
+}
@@ -1,25 +1,143 @@
 package org.hamstudy.MongoDb;
 
 import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.WriteModel;
 
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
 import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Collects the operations of a bulk write until it is executed.
+ *
+ * If auto-flush is enabled (flushEvery and/or flushBytes) the pending operations are executed
+ * as a sub-batch whenever either limit is reached, so memory use stays flat no matter how many
+ * operations are added. The results of all sub-batches are added up and returned from execute()
+ * as a single result; upsert indexes refer to the position in the whole bulk write.
+ *
+ * Sub-batches which have already been flushed are not rolled back if a later one fails.
+ */
 public class BulkWriteBatch<TDocument> {
     private MongoCollection<TDocument> collection;
     private BulkWriteOptions opts = null;
     private ArrayList<WriteModel<TDocument>> requests = new ArrayList<>();
 
+    private int flushEvery = 0;
+    private long flushBytes = 0;
+    private long pendingBytes = 0;
+
+    private int flushedCount = 0;
+    private boolean acknowledged = true;
+    private int insertedCount = 0;
+    private int matchedCount = 0;
+    private int deletedCount = 0;
+    private int modifiedCount = 0;
+    private List<BulkWriteUpsert> upserts = new ArrayList<>();
+    private RuntimeException flushError = null;
+
     BulkWriteBatch(MongoCollection<TDocument> c, BulkWriteOptions o) {
         this.collection = c;
-        this.opts = o;
+        this.opts = o != null ? o : new BulkWriteOptions();
+    }
+    Class<TDocument> getDocumentClass() {
+        return collection.getDocumentClass();
+    }
+    String getNamespace() {
+        return collection.getNamespace().getFullName();
+    }
+    /**
+     * Enables auto-flush
+     * @param flushEvery execute the pending operations once there are this many; 0 to disable
+     * @param flushBytes execute the pending operations once their inserted / replacement
+     *                   documents add up to this many bytes of BSON; 0 to disable
+     */
+    void setAutoFlush(int flushEvery, long flushBytes) {
+        this.flushEvery = Math.max(flushEvery, 0);
+        this.flushBytes = Math.max(flushBytes, 0);
+    }
+    int getFlushedCount() {
+        return flushedCount;
     }
     void addRequest(WriteModel<TDocument> r) {
+        checkFlushError();
         requests.add(r);
+        if (flushBytes > 0) {
+            pendingBytes += getDocumentSize(r);
+        }
+        if ((flushEvery > 0 && requests.size() >= flushEvery) || (flushBytes > 0 && pendingBytes >= flushBytes)) {
+            flush();
+        }
     }
     BulkWriteResult execute() {
-        return collection.bulkWrite(requests, opts);
+        checkFlushError();
+        if (flushedCount == 0) {
+            return collection.bulkWrite(requests, opts);
+        }
+        flush();
+
+        if (!acknowledged) {
+            return BulkWriteResult.unacknowledged();
+        }
+        return BulkWriteResult.acknowledged(insertedCount, matchedCount, deletedCount, modifiedCount, upserts);
+    }
+
+    private void checkFlushError() {
+        if (flushError != null) {
+            throw new IllegalStateException("bulk operation failed during an earlier flush: " + flushError.getMessage(), flushError);
+        }
+    }
+
+    private void flush() {
+        if (requests.isEmpty()) {
+            return;
+        }
+        ArrayList<WriteModel<TDocument>> toWrite = requests;
+        requests = new ArrayList<>();
+        pendingBytes = 0;
+
+        BulkWriteResult result;
+        try {
+            result = collection.bulkWrite(toWrite, opts);
+        } catch (RuntimeException ex) {
+            // We can't tell which of these were written, so the batch can't be used any more
+            flushError = ex;
+            throw ex;
+        }
+
+        if (!result.wasAcknowledged()) {
+            acknowledged = false;
+        } else {
+            insertedCount += result.getInsertedCount();
+            matchedCount += result.getMatchedCount();
+            deletedCount += result.getDeletedCount();
+            modifiedCount += result.getModifiedCount();
+            for (BulkWriteUpsert upsert : result.getUpserts()) {
+                upserts.add(new BulkWriteUpsert(upsert.getIndex() + flushedCount, upsert.getId()));
+            }
+        }
+        flushedCount += toWrite.size();
+    }
+
+    private long getDocumentSize(WriteModel<TDocument> r) {
+        Object doc = null;
+        if (r instanceof InsertOneModel) {
+            doc = ((InsertOneModel<TDocument>) r).getDocument();
+        } else if (r instanceof ReplaceOneModel) {
+            doc = ((ReplaceOneModel<TDocument>) r).getReplacement();
+        }
+        if (doc instanceof RawBsonDocument) {
+            return ((RawBsonDocument) doc).getByteBuffer().remaining();
+        } else if (doc instanceof Document) {
+            // Costs an extra encode; useBson batches don't have to pay for it
+            return OptionParser.toRawBsonDocument((Document) doc).getByteBuffer().remaining();
+        }
+        return 0;
     }
 }
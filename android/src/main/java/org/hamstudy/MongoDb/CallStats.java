@@ -0,0 +1,243 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per plugin method timings and traffic counters.
+ *
+ * Each call is split into phases by the markers the plugin methods call:
+ *   queue     - waiting for a worker thread
+ *   parse     - from starting until executing(): reading the arguments
+ *   execute   - from executing() until serializing(): running the operation in the database
+ *   serialize - from serializing() until the call is done: building the response; for
+ *               methods returning documents this includes reading them from the cursor
+ * A phase whose marker is never reached is counted as part of execute.
+ *
+ * Calls are also passed on to the slow operation log, if there is one, once they finish.
+ *
+ * The current call is kept in a ThreadLocal so the markers don't have to be passed around;
+ * while disabled (and without a slow log) begin() returns null and the markers return after a
+ * single volatile read. While enabled, bytesIn / bytesOut cost an extra toString() of each
+ * request and response.
+ */
+public class CallStats {
+    private static class MethodStats {
+        final LatencyHistogram queue = new LatencyHistogram();
+        final LatencyHistogram parse = new LatencyHistogram();
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram serialize = new LatencyHistogram();
+        final LatencyHistogram total = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong docs = new AtomicLong();
+
+        JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("calls", total.getCount());
+            ret.put("errors", errors.get());
+            ret.put("bytesIn", bytesIn.get());
+            ret.put("bytesOut", bytesOut.get());
+            ret.put("docs", docs.get());
+            ret.put("queue", queue.toJSObject());
+            ret.put("parse", parse.toJSObject());
+            ret.put("execute", execute.toJSObject());
+            ret.put("serialize", serialize.toJSObject());
+            ret.put("total", total.toJSObject());
+            return ret;
+        }
+    }
+
+    /**
+     * A call being measured; only used by the thread running it
+     */
+    static class Op {
+        final PluginCall call;
+        final long queuedAt = System.nanoTime();
+        long startedAt;
+        long executingAt;
+        long serializingAt;
+        boolean failed = false;
+        JSONObject response = null;
+
+        private Op(PluginCall call) {
+            this.call = call;
+        }
+    }
+
+    private volatile boolean enabled = false;
+    private volatile SlowOperationLog slowLog = null;
+    // enabled || slowLog != null
+    private volatile boolean active = false;
+    private volatile long since = System.currentTimeMillis();
+    private final ConcurrentHashMap<String, MethodStats> methods = new ConcurrentHashMap<>();
+    private final ThreadLocal<Op> current = new ThreadLocal<>();
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        active = enabled || slowLog != null;
+    }
+    boolean isEnabled() {
+        return enabled;
+    }
+    /**
+     * @param slowLog gets every call once it finishes; null to stop
+     */
+    void setSlowLog(SlowOperationLog slowLog) {
+        this.slowLog = slowLog;
+        active = enabled || slowLog != null;
+    }
+    SlowOperationLog getSlowLog() {
+        return slowLog;
+    }
+
+    /**
+     * Starts measuring a call as it is queued
+     * @return null while disabled
+     */
+    Op begin(PluginCall call) {
+        return active ? new Op(call) : null;
+    }
+    /**
+     * Called on the thread which runs the call, right before it starts
+     */
+    void started(Op op) {
+        op.startedAt = System.nanoTime();
+        current.set(op);
+    }
+    /**
+     * Called on the thread which ran the call once it is done
+     */
+    void finished(Op op) {
+        current.remove();
+        long end = System.nanoTime();
+
+        SlowOperationLog slowLog = this.slowLog;
+        if (slowLog != null) {
+            slowLog.check(op.call, end - op.startedAt, op.failed ? null : op.response);
+        }
+        if (!enabled) {
+            return;
+        }
+
+        long executingAt = op.executingAt != 0 ? op.executingAt : op.startedAt;
+        long serializingAt = op.serializingAt != 0 ? op.serializingAt : end;
+        MethodStats stats = getMethodStats(op.call.getMethodName());
+        stats.queue.recordNanos(op.startedAt - op.queuedAt);
+        stats.parse.recordNanos(executingAt - op.startedAt);
+        stats.execute.recordNanos(serializingAt - executingAt);
+        stats.serialize.recordNanos(end - serializingAt);
+        stats.total.recordNanos(end - op.queuedAt);
+        if (op.failed) {
+            stats.errors.incrementAndGet();
+        }
+        // Done after the timings so measuring the size doesn't show up in them
+        JSObject data = op.call.getData();
+        stats.bytesIn.addAndGet(data != null ? data.toString().length() : 0);
+        if (op.response != null) {
+            stats.bytesOut.addAndGet(op.response.toString().length());
+            stats.docs.addAndGet(countDocs(op.response));
+        }
+    }
+
+    private MethodStats getMethodStats(String method) {
+        MethodStats stats = methods.get(method);
+        if (stats == null) {
+            MethodStats newStats = new MethodStats();
+            stats = methods.putIfAbsent(method, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    private Op getCurrent() {
+        return active ? current.get() : null;
+    }
+
+    /**
+     * Marks the end of argument parsing; call right before running the operation
+     */
+    void executing() {
+        Op op = getCurrent();
+        if (op != null && op.executingAt == 0) {
+            op.executingAt = System.nanoTime();
+        }
+    }
+    /**
+     * Marks the end of the operation; call right before building the response
+     */
+    void serializing() {
+        Op op = getCurrent();
+        if (op != null && op.serializingAt == 0) {
+            long now = System.nanoTime();
+            if (op.executingAt == 0) {
+                op.executingAt = now;
+            }
+            op.serializingAt = now;
+        }
+    }
+    /**
+     * Keeps the response about to be resolved so finished() can count its size and documents
+     */
+    void responded(JSONObject response) {
+        Op op = getCurrent();
+        if (op != null) {
+            op.response = response;
+        }
+    }
+    void failed() {
+        Op op = getCurrent();
+        if (op != null) {
+            op.failed = true;
+        }
+    }
+
+    private static long countDocs(JSONObject response) {
+        JSONArray results = response.optJSONArray("results");
+        if (results != null) {
+            return results.length();
+        }
+        if (response.has("batch") || response.has("json")) {
+            return response.optLong("count", 0);
+        }
+        JSONArray batches = response.optJSONArray("batches");
+        if (batches != null) {
+            long count = 0;
+            for (int i = 0; i < batches.length(); i++) {
+                JSONObject batch = batches.optJSONObject(i);
+                if (batch != null) {
+                    count += countDocs(batch);
+                }
+            }
+            return count;
+        }
+        return 0;
+    }
+
+    void reset() {
+        methods.clear();
+        since = System.currentTimeMillis();
+    }
+
+    JSObject toJSObject() {
+        JSObject methodsJson = new JSObject();
+        for (Map.Entry<String, MethodStats> entry : methods.entrySet()) {
+            methodsJson.put(entry.getKey(), entry.getValue().toJSObject());
+        }
+        JSObject ret = new JSObject();
+        ret.put("enabled", enabled);
+        ret.put("since", since);
+        ret.put("methods", methodsJson);
+        return ret;
+    }
+}
@@ -0,0 +1,123 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the MongoDatabase / MongoCollection handles built for earlier calls so each call
+ * doesn't have to set them up (and re-apply the write concern) again. The handles are
+ * immutable and thread safe so they can be shared freely.
+ *
+ * Databases are keyed by name plus whatever describes the write concern (the caller decides);
+ * collections by the database handle they came from, their name and document class.
+ */
+public class CollectionCache {
+    static final int DEFAULT_MAX_DATABASES = 64;
+
+    private static class DatabaseEntry {
+        final String name;
+        final MongoDatabase db;
+        final ConcurrentHashMap<String, MongoCollection<?>> collections = new ConcurrentHashMap<>();
+
+        DatabaseEntry(String name, MongoDatabase db) {
+            this.name = name;
+            this.db = db;
+        }
+    }
+
+    private final ConcurrentHashMap<String, DatabaseEntry> databases = new ConcurrentHashMap<>();
+    // MongoDatabase doesn't override equals, so this finds the entry for a handle we gave out
+    private final ConcurrentHashMap<MongoDatabase, DatabaseEntry> byHandle = new ConcurrentHashMap<>();
+    private int maxDatabases = DEFAULT_MAX_DATABASES;
+
+    MongoDatabase getDatabase(String key) {
+        DatabaseEntry entry = databases.get(key);
+        return entry != null ? entry.db : null;
+    }
+
+    /**
+     * Adds a database handle; if another thread added one for key first that one is returned
+     * @param key
+     * @param name the database name, used for invalidation
+     * @param db
+     * @return the handle to use
+     */
+    MongoDatabase putDatabase(String key, String name, MongoDatabase db) {
+        if (databases.size() >= maxDatabases) {
+            // Only happens with lots of different write concerns; not worth an LRU
+            clear();
+        }
+        DatabaseEntry entry = new DatabaseEntry(name, db);
+        DatabaseEntry existing = databases.putIfAbsent(key, entry);
+        if (existing != null) {
+            return existing.db;
+        }
+        byHandle.put(db, entry);
+        return db;
+    }
+
+    @SuppressWarnings("unchecked")
+    <TDocument> MongoCollection<TDocument> getCollection(MongoDatabase db, String name, Class<TDocument> documentClass) {
+        DatabaseEntry entry = byHandle.get(db);
+        if (entry == null) {
+            return null;
+        }
+        return (MongoCollection<TDocument>) entry.collections.get(getCollectionKey(name, documentClass));
+    }
+
+    /**
+     * Adds a collection handle; it is only kept if db came from this cache
+     */
+    void putCollection(MongoDatabase db, String name, MongoCollection<?> collection) {
+        DatabaseEntry entry = byHandle.get(db);
+        if (entry != null) {
+            entry.collections.put(getCollectionKey(name, collection.getDocumentClass()), collection);
+        }
+    }
+
+    private static String getCollectionKey(String name, Class<?> documentClass) {
+        return name + "\u0000" + documentClass.getName();
+    }
+
+    void invalidateDatabase(String name) {
+        Iterator<Map.Entry<String, DatabaseEntry>> it = databases.entrySet().iterator();
+        while (it.hasNext()) {
+            DatabaseEntry entry = it.next().getValue();
+            if (entry.name.equals(name)) {
+                it.remove();
+                byHandle.remove(entry.db);
+            }
+        }
+    }
+
+    void invalidateCollection(String dbName, String name) {
+        String prefix = name + "\u0000";
+        for (DatabaseEntry entry : databases.values()) {
+            if (!entry.name.equals(dbName)) {
+                continue;
+            }
+            Iterator<String> it = entry.collections.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    void clear() {
+        databases.clear();
+        byHandle.clear();
+    }
+
+    void setMaxDatabases(int maxDatabases) {
+        this.maxDatabases = Math.max(maxDatabases, 1);
+    }
+    int size() {
+        return databases.size();
+    }
+}
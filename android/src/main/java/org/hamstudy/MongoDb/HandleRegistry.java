@@ -0,0 +1,229 @@
+package org.hamstudy.MongoDb;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe registry for the handles (cursors, bulk operations) we give to the page.
+ *
+ * Lookups go through a ConcurrentHashMap so calls on different handles never block each other;
+ * each handle has its own lock so calls on the same handle are serialized. Use it like:
+ *
+ *     HandleRegistry.Handle<T> handle = registry.acquire(id);
+ *     if (handle == null) { ...not found... }
+ *     try {
+ *         ...use handle.value, maybe registry.remove(handle)...
+ *     } finally {
+ *         handle.release();
+ *     }
+ *
+ * Handles the page forgets about are cleaned up in two ways: reap() closes any handle which
+ * hasn't been used for longer than the idle timeout, and adding a handle beyond the maximum
+ * size closes the least recently used one. Handles which are in use are never closed.
+ */
+public class HandleRegistry<T> {
+    public interface Closer<T> {
+        void close(UUID id, T value);
+    }
+
+    public static class Handle<T> {
+        final UUID id;
+        final T value;
+        // Extra state kept with the value; only touch it while the handle is acquired
+        Object state;
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean removed = false;
+        private volatile long lastAccess = System.nanoTime();
+
+        Handle(UUID id, T value) {
+            this.id = id;
+            this.value = value;
+        }
+        void release() {
+            lastAccess = System.nanoTime();
+            lock.unlock();
+        }
+    }
+
+    private final ConcurrentHashMap<UUID, Handle<T>> handles = new ConcurrentHashMap<>();
+    private final Closer<T> closer;
+    private volatile long idleTimeoutMs;
+    private volatile int maxSize;
+
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    HandleRegistry() {
+        this(null, 0, 0);
+    }
+    /**
+     * @param closer called for handles which expire or are evicted; may be null
+     * @param idleTimeoutMs handles unused for this long are closed by reap(); 0 for no timeout
+     * @param maxSize maximum number of handles before the least recently used is evicted; 0 for no limit
+     */
+    HandleRegistry(Closer<T> closer, long idleTimeoutMs, int maxSize) {
+        this.closer = closer;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxSize = maxSize;
+    }
+
+    void setIdleTimeout(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+    long getIdleTimeout() {
+        return idleTimeoutMs;
+    }
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+    int getMaxSize() {
+        return maxSize;
+    }
+    long getExpiredCount() {
+        return expiredCount.get();
+    }
+    long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    UUID add(T value) {
+        return add(value, null);
+    }
+    UUID add(T value, Object state) {
+        UUID id = UUID.randomUUID();
+        Handle<T> handle = new Handle<>(id, value);
+        handle.state = state;
+        handles.put(id, handle);
+        int max = maxSize;
+        while (max > 0 && handles.size() > max) {
+            if (!evictLeastRecentlyUsed(id)) {
+                // Everything else is in use
+                break;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Locks and returns the handle for id, waiting for any other call using it to finish;
+     * returns null if there is no such handle (or it was removed while we waited)
+     * @param id
+     * @return
+     */
+    Handle<T> acquire(UUID id) {
+        Handle<T> handle = handles.get(id);
+        if (handle == null) {
+            return null;
+        }
+        handle.lock.lock();
+        if (handle.removed) {
+            handle.lock.unlock();
+            return null;
+        }
+        return handle;
+    }
+
+    /**
+     * Removes a handle which the caller has acquired; it stays locked until released
+     * @param handle
+     */
+    void remove(Handle<T> handle) {
+        handle.removed = true;
+        handles.remove(handle.id, handle);
+    }
+
+    /**
+     * Removes the handle for id once no other call is using it
+     * @param id
+     * @return the removed value, or null if there was no such handle
+     */
+    T remove(UUID id) {
+        Handle<T> handle = acquire(id);
+        if (handle == null) {
+            return null;
+        }
+        try {
+            remove(handle);
+            return handle.value;
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * Closes every handle which has been idle for longer than the idle timeout
+     * @return the number of handles closed
+     */
+    int reap() {
+        long timeoutMs = idleTimeoutMs;
+        if (timeoutMs <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long timeoutNanos = timeoutMs * 1000000L;
+        int count = 0;
+        for (Handle<T> handle : handles.values()) {
+            if (now - handle.lastAccess > timeoutNanos && closeIfIdle(handle)) {
+                expiredCount.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean evictLeastRecentlyUsed(UUID exceptId) {
+        Handle<T> oldest = null;
+        for (Handle<T> handle : handles.values()) {
+            if (handle.id.equals(exceptId) || handle.lock.isLocked()) {
+                continue;
+            }
+            if (oldest == null || handle.lastAccess - oldest.lastAccess < 0) {
+                oldest = handle;
+            }
+        }
+        if (oldest != null && closeIfIdle(oldest)) {
+            evictedCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean closeIfIdle(Handle<T> handle) {
+        if (!handle.lock.tryLock()) {
+            return false;
+        }
+        try {
+            if (handle.removed) {
+                return false;
+            }
+            remove(handle);
+        } finally {
+            handle.lock.unlock();
+        }
+        if (closer != null) {
+            try {
+                closer.close(handle.id, handle.value);
+            } catch (Exception ex) {}
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value for id without locking it or counting as a use; null if there is no such handle
+     * @param id
+     * @return
+     */
+    T peek(UUID id) {
+        Handle<T> handle = handles.get(id);
+        return handle != null ? handle.value : null;
+    }
+
+    boolean contains(UUID id) {
+        return handles.containsKey(id);
+    }
+    int size() {
+        return handles.size();
+    }
+}
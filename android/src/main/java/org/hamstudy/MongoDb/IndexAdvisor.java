@@ -0,0 +1,345 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.bson.Document;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Collects explain output for a sample of find / aggregate calls and suggests indexes.
+ *
+ * Results are grouped by namespace and query shape (see QueryShape). A shape is flagged once
+ * its plans used a COLLSCAN or examined at least MIN_RATIO documents per document returned,
+ * and the suggested index follows the equality, sort, range rule: fields compared for equality
+ * first, then the sort fields in order, then fields with range conditions. Suggestions are
+ * grouped by collection in the [keys, options] format createIndexes takes.
+ */
+public class IndexAdvisor {
+    static final int DEFAULT_MAX_SHAPES = 200;
+    static final double MIN_RATIO = 10;
+    // Scanning fewer documents than this is fast enough that an index isn't worth suggesting
+    static final long MIN_DOCS_EXAMINED = 100;
+
+    private static class ShapeStats {
+        final String db;
+        final String collection;
+        final JSObject shape;
+        long samples = 0;
+        long collscans = 0;
+        long docsExamined = 0;
+        long keysExamined = 0;
+        long nReturned = 0;
+        JSONObject lastIndex = null;
+
+        ShapeStats(String db, String collection, JSObject shape) {
+            this.db = db;
+            this.collection = collection;
+            this.shape = shape;
+        }
+        double getRatio() {
+            return docsExamined / (double) Math.max(nReturned, 1);
+        }
+        boolean needsIndex() {
+            return samples > 0 && docsExamined / samples >= MIN_DOCS_EXAMINED
+                    && (collscans > 0 || getRatio() >= MIN_RATIO);
+        }
+    }
+
+    private volatile double sampleRate = 0;
+    private final LinkedHashMap<String, ShapeStats> shapes = new LinkedHashMap<>(16, 0.75f, true);
+
+    void setSampleRate(double sampleRate) {
+        this.sampleRate = Math.max(0, Math.min(sampleRate, 1));
+    }
+    double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return whether this call should be explained
+     */
+    boolean sample() {
+        double rate = sampleRate;
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Builds the explain command for a find / aggregate call
+     * @param collection
+     * @param data the arguments of the call; aggregations are recognized by their pipeline
+     * @return
+     */
+    static Document getExplainCommand(String collection, JSONObject data) {
+        Document command;
+        JSONObject options = data.optJSONObject("options");
+        JSONArray pipeline = data.optJSONArray("pipeline");
+        if (pipeline != null) {
+            command = new Document("aggregate", collection)
+                    .append("pipeline", OptionParser.getDocumentArray(pipeline))
+                    .append("cursor", new Document());
+        } else {
+            Document filter = OptionParser.getDocument(data.optJSONObject("filter"));
+            command = new Document("find", collection).append("filter", filter != null ? filter : new Document());
+            if (options != null) {
+                for (String key : new String[]{"sort", "projection", "hint", "collation"}) {
+                    JSONObject value = options.optJSONObject(key);
+                    if (value != null) {
+                        command.append(key, OptionParser.getDocument(value));
+                    }
+                }
+                for (String key : new String[]{"skip", "limit"}) {
+                    if (options.has(key)) {
+                        command.append(key, options.optInt(key, 0));
+                    }
+                }
+            }
+        }
+        return new Document("explain", command).append("verbosity", "executionStats");
+    }
+
+    /**
+     * Adds the result of an explain command to the stats for the call's shape
+     */
+    void record(String db, String collection, JSObject shape, Document explain) {
+        Document planner = getSection(explain, "queryPlanner");
+        Document stats = getSection(explain, "executionStats");
+        if (planner == null || stats == null) {
+            return;
+        }
+        ArrayList<Document> stages = new ArrayList<>();
+        collectStages(planner.get("winningPlan"), stages);
+
+        boolean collscan = false;
+        JSONObject index = null;
+        for (Document stage : stages) {
+            String name = stage.getString("stage");
+            if ("COLLSCAN".equals(name)) {
+                collscan = true;
+            } else if ("IXSCAN".equals(name) && stage.get("keyPattern") instanceof Document) {
+                index = new JSONObject(((Document) stage.get("keyPattern")));
+            }
+        }
+
+        String key = db + "." + collection + "\n" + shape.toString();
+        synchronized (this) {
+            ShapeStats entry = shapes.get(key);
+            if (entry == null) {
+                entry = new ShapeStats(db, collection, shape);
+                shapes.put(key, entry);
+                trim();
+            }
+            entry.samples++;
+            if (collscan) {
+                entry.collscans++;
+            }
+            entry.docsExamined += toLong(stats.get("totalDocsExamined"));
+            entry.keysExamined += toLong(stats.get("totalKeysExamined"));
+            entry.nReturned += toLong(stats.get("nReturned"));
+            entry.lastIndex = index;
+        }
+    }
+
+    private void trim() {
+        Iterator<ShapeStats> it = shapes.values().iterator();
+        while (shapes.size() > DEFAULT_MAX_SHAPES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        shapes.clear();
+    }
+
+    /**
+     * Find explains have queryPlanner / executionStats at the top; aggregations have them in
+     * the $cursor stage the pipeline starts with
+     */
+    private static Document getSection(Document explain, String name) {
+        Object section = explain.get(name);
+        if (section instanceof Document) {
+            return (Document) section;
+        }
+        Object stages = explain.get("stages");
+        if (stages instanceof List && !((List<?>) stages).isEmpty() && ((List<?>) stages).get(0) instanceof Document) {
+            Object cursor = ((Document) ((List<?>) stages).get(0)).get("$cursor");
+            if (cursor instanceof Document && ((Document) cursor).get(name) instanceof Document) {
+                return (Document) ((Document) cursor).get(name);
+            }
+        }
+        return null;
+    }
+
+    private static void collectStages(Object plan, List<Document> stages) {
+        if (!(plan instanceof Document)) {
+            return;
+        }
+        Document stage = (Document) plan;
+        stages.add(stage);
+        collectStages(stage.get("inputStage"), stages);
+        Object inputs = stage.get("inputStages");
+        if (inputs instanceof List) {
+            for (Object input : (List<?>) inputs) {
+                collectStages(input, stages);
+            }
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * @param shape from QueryShape.ofCall
+     * @return the index keys for the shape, or null if there is nothing useful to index
+     */
+    static JSObject getSuggestedKeys(JSONObject shape) {
+        JSONObject filter = shape.optJSONObject("filter");
+        JSONObject sort = shape.optJSONObject("sort");
+        JSONArray pipeline = shape.optJSONArray("pipeline");
+        if (pipeline != null) {
+            // Only a leading $match (and a $sort right after it) can use an index
+            JSONObject first = pipeline.optJSONObject(0);
+            filter = first != null ? first.optJSONObject("$match") : null;
+            JSONObject second = pipeline.optJSONObject(1);
+            sort = filter != null && second != null ? second.optJSONObject("$sort") : null;
+            if (filter == null) {
+                sort = first != null ? first.optJSONObject("$sort") : null;
+            }
+        }
+
+        LinkedHashSet<String> equality = new LinkedHashSet<>();
+        LinkedHashSet<String> range = new LinkedHashSet<>();
+        if (filter != null) {
+            collectFields(filter, equality, range);
+        }
+
+        JSObject keys = new JSObject();
+        for (String field : equality) {
+            keys.put(field, 1);
+        }
+        if (sort != null) {
+            Iterator<?> it = sort.keys();
+            while (it.hasNext()) {
+                String field = (String) it.next();
+                if (!keys.has(field)) {
+                    keys.put(field, sort.optInt(field, 1) < 0 ? -1 : 1);
+                }
+            }
+        }
+        for (String field : range) {
+            if (!keys.has(field)) {
+                keys.put(field, 1);
+            }
+        }
+
+        if (keys.length() == 0 || (keys.length() == 1 && keys.has("_id"))) {
+            return null;
+        }
+        return keys;
+    }
+
+    private static void collectFields(JSONObject filter, LinkedHashSet<String> equality, LinkedHashSet<String> range) {
+        Iterator<?> it = filter.keys();
+        while (it.hasNext()) {
+            String field = (String) it.next();
+            Object value = filter.opt(field);
+            if (field.equals("$and") && value instanceof JSONArray) {
+                JSONArray clauses = (JSONArray) value;
+                for (int i = 0; i < clauses.length(); i++) {
+                    JSONObject clause = clauses.optJSONObject(i);
+                    if (clause != null) {
+                        collectFields(clause, equality, range);
+                    }
+                }
+            } else if (field.startsWith("$")) {
+                // $or / $nor / $text / $expr etc. need more than a single compound index
+                continue;
+            } else if (value instanceof JSONObject && !isEquality((JSONObject) value)) {
+                range.add(field);
+            } else {
+                equality.add(field);
+            }
+        }
+        range.removeAll(equality);
+    }
+
+    private static boolean isEquality(JSONObject operators) {
+        Iterator<?> it = operators.keys();
+        while (it.hasNext()) {
+            String op = (String) it.next();
+            if (!op.equals("$eq") && !op.equals("$in")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {shapes: [...], suggestions: [{db, collection, indexes: [[keys, options]]}]}
+     */
+    synchronized JSObject getReport() {
+        JSArray shapesJson = new JSArray();
+        LinkedHashMap<String, JSObject> suggestions = new LinkedHashMap<>();
+        LinkedHashMap<String, LinkedHashSet<String>> suggested = new LinkedHashMap<>();
+
+        for (ShapeStats entry : shapes.values()) {
+            JSObject json = new JSObject();
+            json.put("namespace", entry.db + "." + entry.collection);
+            json.put("shape", entry.shape);
+            json.put("samples", entry.samples);
+            json.put("collscans", entry.collscans);
+            json.put("docsExamined", entry.docsExamined);
+            json.put("keysExamined", entry.keysExamined);
+            json.put("nReturned", entry.nReturned);
+            json.put("ratio", entry.getRatio());
+            if (entry.lastIndex != null) {
+                json.put("index", entry.lastIndex);
+            }
+
+            JSObject keys = entry.needsIndex() ? getSuggestedKeys(entry.shape) : null;
+            // Nothing to suggest if the plan already uses exactly this index
+            if (keys != null && (entry.lastIndex == null || !entry.lastIndex.toString().equals(keys.toString()))) {
+                json.put("suggestedIndex", keys);
+
+                String namespace = entry.db + "." + entry.collection;
+                JSObject suggestion = suggestions.get(namespace);
+                if (suggestion == null) {
+                    suggestion = new JSObject();
+                    suggestion.put("db", entry.db);
+                    suggestion.put("collection", entry.collection);
+                    suggestion.put("indexes", new JSArray());
+                    suggestions.put(namespace, suggestion);
+                    suggested.put(namespace, new LinkedHashSet<String>());
+                }
+                if (suggested.get(namespace).add(keys.toString())) {
+                    JSONArray index = new JSONArray();
+                    index.put(keys);
+                    index.put(new JSObject());
+                    suggestion.optJSONArray("indexes").put(index);
+                }
+            }
+            shapesJson.put(json);
+        }
+
+        JSArray suggestionsJson = new JSArray();
+        for (Map.Entry<String, JSObject> entry : suggestions.entrySet()) {
+            suggestionsJson.put(entry.getValue());
+        }
+        JSObject ret = new JSObject();
+        ret.put("sampleRate", sampleRate);
+        ret.put("shapes", shapesJson);
+        ret.put("suggestions", suggestionsJson);
+        return ret;
+    }
+}
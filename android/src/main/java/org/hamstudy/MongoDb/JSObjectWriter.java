@@ -0,0 +1,355 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.bson.AbstractBsonWriter;
+import org.bson.BsonBinary;
+import org.bson.BsonContextType;
+import org.bson.BsonDbPointer;
+import org.bson.BsonDocument;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonTimestamp;
+import org.bson.BsonUndefined;
+import org.bson.BsonWriterSettings;
+import org.bson.Document;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.json.StrictJsonWriter;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayDeque;
+
+/**
+ * Writes BSON straight into a JSObject tree, the same tree new JSObject(doc.toJson(settings))
+ * would give us but without building the JSON string and parsing it back.
+ *
+ * Values go through the converters from the JsonWriterSettings exactly as they do in the
+ * driver's JsonWriter; only the final step (appending text vs. adding to a JSObject) differs.
+ */
+public class JSObjectWriter extends AbstractBsonWriter {
+    private static final DocumentCodec documentCodec = new DocumentCodec();
+    private static final BsonDocumentCodec bsonDocumentCodec = new BsonDocumentCodec();
+
+    private final JsonWriterSettings settings;
+    private final TreeBuilder builder = new TreeBuilder();
+
+    /**
+     * Same as new JSObject(doc.toJson(settings))
+     */
+    static JSObject toJSObject(Document doc, JsonWriterSettings settings) {
+        return new JSObjectWriter(settings).writeDocument(doc);
+    }
+    /**
+     * Same as new JSObject(doc.toJson(settings))
+     */
+    static JSObject toJSObject(BsonDocument doc, JsonWriterSettings settings) {
+        JSObjectWriter writer = new JSObjectWriter(settings);
+        bsonDocumentCodec.encode(writer, doc, EncoderContext.builder().build());
+        return (JSObject) writer.getResult();
+    }
+
+    JSObjectWriter(JsonWriterSettings settings) {
+        super(new BsonWriterSettings());
+        this.settings = settings;
+        setContext(new Context(null, BsonContextType.TOP_LEVEL));
+    }
+
+    /**
+     * Writes doc, which must be the only thing written with this writer
+     * @return the same as new JSObject(doc.toJson(settings))
+     */
+    JSObject writeDocument(Document doc) {
+        documentCodec.encode(this, doc, EncoderContext.builder().isEncodingCollectibleDocument(true).build());
+        return (JSObject) getResult();
+    }
+
+    /**
+     * @return the top level value written; a JSObject once a whole document has been written
+     */
+    Object getResult() {
+        return builder.root;
+    }
+
+    /**
+     * @return roughly how many characters the JSON text of what has been written would take
+     */
+    long getSize() {
+        return builder.size;
+    }
+
+    /**
+     * Builds the tree from the calls the converters make
+     */
+    private static class TreeBuilder implements StrictJsonWriter {
+        private final ArrayDeque<Object> stack = new ArrayDeque<>();
+        private String name = null;
+        private Object root = null;
+        private long size = 0;
+
+        private void add(Object value) {
+            Object parent = stack.peek();
+            // Separator, plus the quoted name and colon inside objects
+            size += parent instanceof JSObject ? name.length() + 4 : 1;
+            if (parent == null) {
+                root = value;
+            } else if (parent instanceof JSObject) {
+                ((JSObject) parent).put(name, value);
+            } else {
+                ((JSArray) parent).put(value);
+            }
+        }
+        /**
+         * Numbers and raw values are parsed by org.json so they come out as the same types
+         * (Integer / Long / Double) as when parsing the JSON string
+         */
+        private Object parse(String json) {
+            try {
+                return new JSONTokener(json).nextValue();
+            } catch (JSONException ex) {
+                throw new BsonInvalidOperationException("Invalid JSON value: " + json);
+            }
+        }
+
+        @Override
+        public void writeName(String name) {
+            this.name = name;
+        }
+        @Override
+        public void writeBoolean(boolean value) {
+            size += value ? 4 : 5;
+            add(value);
+        }
+        @Override
+        public void writeBoolean(String name, boolean value) {
+            writeName(name);
+            writeBoolean(value);
+        }
+        @Override
+        public void writeNumber(String value) {
+            size += value.length();
+            add(parse(value));
+        }
+        @Override
+        public void writeNumber(String name, String value) {
+            writeName(name);
+            writeNumber(value);
+        }
+        @Override
+        public void writeString(String value) {
+            size += value.length() + 2;
+            add(value);
+        }
+        @Override
+        public void writeString(String name, String value) {
+            writeName(name);
+            writeString(value);
+        }
+        @Override
+        public void writeRaw(String value) {
+            size += value.length();
+            add(parse(value));
+        }
+        @Override
+        public void writeRaw(String name, String value) {
+            writeName(name);
+            writeRaw(value);
+        }
+        @Override
+        public void writeNull() {
+            size += 4;
+            add(JSONObject.NULL);
+        }
+        @Override
+        public void writeNull(String name) {
+            writeName(name);
+            writeNull();
+        }
+        @Override
+        public void writeStartArray() {
+            JSArray array = new JSArray();
+            size += 2;
+            add(array);
+            stack.push(array);
+        }
+        @Override
+        public void writeStartArray(String name) {
+            writeName(name);
+            writeStartArray();
+        }
+        @Override
+        public void writeStartObject() {
+            JSObject obj = new JSObject();
+            size += 2;
+            add(obj);
+            stack.push(obj);
+        }
+        @Override
+        public void writeStartObject(String name) {
+            writeName(name);
+            writeStartObject();
+        }
+        @Override
+        public void writeEndArray() {
+            stack.pop();
+        }
+        @Override
+        public void writeEndObject() {
+            stack.pop();
+        }
+        @Override
+        public boolean isTruncated() {
+            return false;
+        }
+    }
+
+    private class Context extends AbstractBsonWriter.Context {
+        Context(Context parentContext, BsonContextType contextType) {
+            super(parentContext, contextType);
+        }
+        @Override
+        public Context getParentContext() {
+            return (Context) super.getParentContext();
+        }
+    }
+
+    @Override
+    protected Context getContext() {
+        return (Context) super.getContext();
+    }
+
+    @Override
+    protected void doWriteName(String name) {
+        builder.writeName(name);
+    }
+    @Override
+    protected void doWriteStartDocument() {
+        builder.writeStartObject();
+        BsonContextType contextType = getState() == State.SCOPE_DOCUMENT ? BsonContextType.SCOPE_DOCUMENT : BsonContextType.DOCUMENT;
+        setContext(new Context(getContext(), contextType));
+    }
+    @Override
+    protected void doWriteEndDocument() {
+        builder.writeEndObject();
+        if (getContext().getContextType() == BsonContextType.SCOPE_DOCUMENT) {
+            setContext(getContext().getParentContext());
+            writeEndDocument();
+        } else {
+            setContext(getContext().getParentContext());
+        }
+    }
+    @Override
+    protected void doWriteStartArray() {
+        builder.writeStartArray();
+        setContext(new Context(getContext(), BsonContextType.ARRAY));
+    }
+    @Override
+    protected void doWriteEndArray() {
+        builder.writeEndArray();
+        setContext(getContext().getParentContext());
+    }
+    @Override
+    protected void doWriteBinaryData(BsonBinary value) {
+        settings.getBinaryConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteBoolean(boolean value) {
+        settings.getBooleanConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteDateTime(long value) {
+        settings.getDateTimeConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteDBPointer(BsonDbPointer value) {
+        // JsonWriter has no converter setting for these, this is what it writes itself
+        builder.writeStartObject();
+        if (settings.getOutputMode() == JsonMode.EXTENDED) {
+            builder.writeStartObject("$dbPointer");
+        }
+        builder.writeString("$ref", value.getNamespace());
+        builder.writeName("$id");
+        doWriteObjectId(value.getId());
+        if (settings.getOutputMode() == JsonMode.EXTENDED) {
+            builder.writeEndObject();
+        }
+        builder.writeEndObject();
+    }
+    @Override
+    protected void doWriteDouble(double value) {
+        settings.getDoubleConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteInt32(int value) {
+        settings.getInt32Converter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteInt64(long value) {
+        settings.getInt64Converter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteDecimal128(Decimal128 value) {
+        settings.getDecimal128Converter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteJavaScript(String value) {
+        settings.getJavaScriptConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteJavaScriptWithScope(String value) {
+        writeStartDocument();
+        writeString("$code", value);
+        writeName("$scope");
+    }
+    @Override
+    protected void doWriteMaxKey() {
+        settings.getMaxKeyConverter().convert(new BsonMaxKey(), builder);
+    }
+    @Override
+    protected void doWriteMinKey() {
+        settings.getMinKeyConverter().convert(new BsonMinKey(), builder);
+    }
+    @Override
+    protected void doWriteNull() {
+        settings.getNullConverter().convert(BsonNull.VALUE, builder);
+    }
+    @Override
+    protected void doWriteObjectId(ObjectId value) {
+        settings.getObjectIdConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteRegularExpression(BsonRegularExpression value) {
+        settings.getRegularExpressionConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteString(String value) {
+        settings.getStringConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteSymbol(String value) {
+        settings.getSymbolConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteTimestamp(BsonTimestamp value) {
+        settings.getTimestampConverter().convert(value, builder);
+    }
+    @Override
+    protected void doWriteUndefined() {
+        settings.getUndefinedConverter().convert(new BsonUndefined(), builder);
+    }
+
+    @Override
+    public void flush() {
+    }
+}
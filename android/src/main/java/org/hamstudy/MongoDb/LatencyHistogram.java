@@ -0,0 +1,118 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations, bucketed like HdrHistogram: each power of two is split
+ * into SUB_BUCKETS linear buckets, so any recorded value is off by at most 1/SUB_BUCKETS
+ * (12.5%) while the whole range from 1us to about 19 hours fits in a couple of KB.
+ *
+ * record() can be called from any number of threads; reads taken while recording is going
+ * on may be slightly inconsistent (e.g. count one higher than the buckets add up to).
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values are recorded in microseconds and clamped to 2^37 - 1
+    private static final int MAX_MAGNITUDE = 36;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub)) << (magnitude - SUB_BUCKET_BITS);
+    }
+    static long highestValueAt(int index) {
+        return index + 1 < BUCKET_COUNT ? lowestValueAt(index + 1) - 1 : MAX_VALUE;
+    }
+
+    void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+    /**
+     * @param micros
+     */
+    void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return the value (in microseconds) which percentile % of the recorded values are at or below
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return {count, mean, p50, p90, p99, max}, times in milliseconds
+     */
+    JSObject toJSObject() {
+        long n = count.get();
+        JSObject ret = new JSObject();
+        ret.put("count", n);
+        ret.put("mean", n > 0 ? sum.get() / (double) n / 1000.0 : 0.0);
+        ret.put("p50", getValueAtPercentile(50) / 1000.0);
+        ret.put("p90", getValueAtPercentile(90) / 1000.0);
+        ret.put("p99", getValueAtPercentile(99) / 1000.0);
+        ret.put("max", max.get() / 1000.0);
+        return ret;
+    }
+}
@@ -9,11 +9,19 @@ import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 
+import java.io.File;
+import java.io.StringWriter;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 // Base Stitch Packages
 import com.mongodb.WriteConcern;
@@ -43,6 +51,7 @@ import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.model.UpdateManyModel;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.model.DeleteManyModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -55,11 +64,15 @@ import com.mongodb.client.MongoClient;
 // Necessary component for working with MongoDB Mobile
 import com.mongodb.stitch.android.services.mongodb.local.LocalMongoDbService;
 
+import org.bson.BsonDocument;
 import org.bson.BsonValue;
-import org.bson.ByteBuf;
 import org.bson.Document;
 import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
 import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
 import org.bson.json.JsonWriterSettings;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -73,22 +86,167 @@ public class MongoDBMobile extends Plugin {
     // Create a Client for MongoDB Mobile (initializing MongoDB Mobile)
     MongoClient mongoClient;
 
-    HashMap<UUID, MongoCursor<Document>> cursorMap = new HashMap<>();
-    HashMap<UUID, MongoCursor<RawBsonDocument>> cursorMapBson = new HashMap<>();
+    // Cursors and bulk operations the page abandons are closed after sitting idle for
+    // a while, and the least recently used are evicted when there are too many open
+    static final long DEFAULT_HANDLE_IDLE_TIMEOUT_MS = 10 * 60 * 1000;
+    static final int DEFAULT_MAX_OPEN_CURSORS = 100;
+    static final int DEFAULT_MAX_OPEN_BULK_WRITES = 50;
+    static final long REAP_INTERVAL_MS = 30 * 1000;
 
-    HashMap<UUID, BulkWriteBatch<Document>> bulkMap = new HashMap<>();
+    HandleRegistry<MongoCursor<Document>> cursorMap = new HandleRegistry<>(this::closeIdleCursor, DEFAULT_HANDLE_IDLE_TIMEOUT_MS, DEFAULT_MAX_OPEN_CURSORS);
+    HandleRegistry<MongoCursor<RawBsonDocument>> cursorMapBson = new HandleRegistry<>(this::closeIdleCursor, DEFAULT_HANDLE_IDLE_TIMEOUT_MS, DEFAULT_MAX_OPEN_CURSORS);
+
+    // Cursors being pushed to the page with streamCursor
+    static final String CURSOR_STREAM_EVENT = "cursorStream";
+    ConcurrentHashMap<UUID, CursorStream> cursorStreams = new ConcurrentHashMap<>();
+
+    HandleRegistry<BulkWriteBatch<?>> bulkMap = new HandleRegistry<>(null, DEFAULT_HANDLE_IDLE_TIMEOUT_MS, DEFAULT_MAX_OPEN_BULK_WRITES);
+
+    ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor();
+
+    // Used by prefetching cursors to read ahead of the page
+    ExecutorService prefetchExecutor = Executors.newCachedThreadPool();
+    static final long DEFAULT_PREFETCH_MAX_BYTES = 4 * 1024 * 1024;
+
+    // Non-cursor rawJson / packed BSON responses larger than this (in characters) fail instead
+    // of risking running out of memory
+    static final long DEFAULT_MAX_RESPONSE_SIZE = 32 * 1024 * 1024;
+    static final int INITIAL_RESPONSE_CAPACITY = 64 * 1024;
+    volatile long maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+    private static final DocumentCodec documentCodec = new DocumentCodec();
+    private static final EncoderContext collectibleEncoderContext = EncoderContext.builder().isEncodingCollectibleDocument(true).build();
+
+    // Plugin calls run here instead of on the thread Capacitor calls us on
+    OperationExecutor execution = new OperationExecutor();
+
+    // Database and collection handles from earlier calls
+    CollectionCache collectionCache = new CollectionCache();
+
+    // Opt-in cache of find / aggregate results, cleared for a collection whenever it is written
+    QueryCache queryCache = new QueryCache();
+
+    // Per method timings, off unless initDb is called with collectStats: true
+    CallStats callStats = new CallStats();
+    static final String SLOW_LOG_FILE_NAME = "mongodb-slow-operations.log";
+
+    // Explains a sample of find / aggregate calls, off unless initDb sets explainSampleRate
+    IndexAdvisor indexAdvisor = new IndexAdvisor();
+
+    @Override
+    public void load() {
+        reaper.scheduleWithFixedDelay(() -> {
+            cursorMap.reap();
+            cursorMapBson.reap();
+            bulkMap.reap();
+        }, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        // Measuring is off (and costs nothing) until initDb asks for stats or a slow operation log
+        execution.setCallStats(callStats);
+
+        // Writes keyed by a whole database (dropDatabase) could have touched any of its collections
+        execution.setWriteListener(namespace -> {
+            if (namespace.indexOf('.') >= 0) {
+                queryCache.invalidate(namespace);
+            } else {
+                queryCache.invalidateDatabase(namespace);
+            }
+        });
+    }
 
     @PluginMethod()
     public void initDb(PluginCall call) {
-        String appId = call.getString("appId", getAppId());
-        final StitchAppClient client =
-                Stitch.initializeDefaultAppClient(appId);
+        execution.inline(call, () -> {
+            String appId = call.getString("appId", getAppId());
+            final StitchAppClient client =
+                    Stitch.initializeDefaultAppClient(appId);
 
-        mongoClient = client.getServiceClient(LocalMongoDbService.clientFactory);
+            mongoClient = client.getServiceClient(LocalMongoDbService.clientFactory);
+            collectionCache.clear();
 
-        JSObject ret = new JSObject();
-        ret.put("success", true);
-        call.success(ret);
+            Double cursorTimeout = call.getDouble("cursorTimeoutMS", (double)cursorMap.getIdleTimeout());
+            int maxOpenCursors = call.getInt("maxOpenCursors", cursorMap.getMaxSize());
+            cursorMap.setIdleTimeout(cursorTimeout.longValue());
+            cursorMapBson.setIdleTimeout(cursorTimeout.longValue());
+            cursorMap.setMaxSize(maxOpenCursors);
+            cursorMapBson.setMaxSize(maxOpenCursors);
+
+            Double bulkTimeout = call.getDouble("bulkWriteTimeoutMS", (double)bulkMap.getIdleTimeout());
+            bulkMap.setIdleTimeout(bulkTimeout.longValue());
+            bulkMap.setMaxSize(call.getInt("maxOpenBulkWrites", bulkMap.getMaxSize()));
+
+            OptionParser.setParallelDecodeThreshold(call.getInt("parallelDecodeThreshold", OptionParser.getParallelDecodeThreshold()));
+
+            execution.setReadThreads(call.getInt("readThreads", execution.getReadThreads()));
+            execution.setWriteThreads(call.getInt("writeThreads", execution.getWriteThreads()));
+
+            Double maxResponse = call.getDouble("maxResponseSize", (double)maxResponseSize);
+            maxResponseSize = maxResponse.longValue();
+
+            queryCache.setMaxEntries(call.getInt("queryCacheSize", queryCache.getMaxEntries()));
+            Double queryCacheMaxBytes = call.getDouble("queryCacheMaxBytes", (double)queryCache.getMaxBytes());
+            queryCache.setMaxBytes(queryCacheMaxBytes.longValue());
+
+            callStats.setEnabled(call.getBoolean("collectStats", callStats.isEnabled()));
+            configureSlowLog(call);
+            Double explainSampleRate = call.getDouble("explainSampleRate", indexAdvisor.getSampleRate());
+            indexAdvisor.setSampleRate(explainSampleRate);
+
+            JSObject ret = new JSObject();
+            ret.put("success", true);
+            resolve(call, ret);
+        });
+    }
+
+    /**
+     * Helper to apply the slow operation log settings of initDb; the log is only replaced
+     * (losing its entries) if they changed
+     * @param call
+     */
+    private void configureSlowLog(PluginCall call) {
+        SlowOperationLog current = callStats.getSlowLog();
+        Double thresholdMS = call.getDouble("slowOpThresholdMS", (double)(current != null ? current.getThresholdMS() : 0));
+        int capacity = call.getInt("slowOpLogSize", current != null ? current.getCapacity() : SlowOperationLog.DEFAULT_CAPACITY);
+        boolean toFile = call.getBoolean("slowOpLogFile", current != null && current.getFile() != null);
+
+        if (current != null && thresholdMS.longValue() == current.getThresholdMS()
+                && capacity == current.getCapacity() && toFile == (current.getFile() != null)) {
+            return;
+        }
+        if (thresholdMS.longValue() <= 0) {
+            callStats.setSlowLog(null);
+            return;
+        }
+        File file = toFile ? new File(getContext().getFilesDir(), SLOW_LOG_FILE_NAME) : null;
+        callStats.setSlowLog(new SlowOperationLog(thresholdMS.longValue(), capacity, file, SlowOperationLog.DEFAULT_MAX_FILE_BYTES));
+    }
+
+    /**
+     * Helper to explain a find / aggregate call for the index advisor if it is sampled. The
+     * explain runs as a separate read task so the call itself isn't slowed down; failures are
+     * ignored.
+     * @param call
+     */
+    private void sampleExplain(PluginCall call) {
+        if (!indexAdvisor.sample()) {
+            return;
+        }
+        final String dbName = call.getString("db", "");
+        final String collectionName = call.getString("collection", "");
+        final JSObject data = call.getData();
+        execution.read(() -> {
+            try {
+                // Base64 encoded BSON is advised on by its decoded shape; if that can't be had there is nothing to advise
+                JSObject shape = QueryShape.ofCall(data);
+                if (QueryShape.isOpaque(shape)) {
+                    return;
+                }
+                MongoDatabase db = mongoClient.getDatabase(dbName);
+                Document explain = db.runCommand(IndexAdvisor.getExplainCommand(collectionName, data));
+                indexAdvisor.record(dbName, collectionName, shape, explain);
+            } catch (Exception ex) {
+                // Advice is best effort; the call itself reports any problem with the query
+            }
+        });
     }
 
     private MongoDatabase getDatabase(PluginCall call) throws InvalidParameterException {
@@ -99,29 +257,64 @@ public class MongoDBMobile extends Plugin {
         if (dbName.isEmpty()) {
             throw new InvalidParameterException("db name must be provided and must be a string");
         }
-        MongoDatabase db = mongoClient.getDatabase(dbName);
-
+        JSObject options = null;
         if (!optionsKey.isEmpty() && call.hasOption(optionsKey)) {
-            JSObject options = call.getObject(optionsKey);
+            options = call.getObject(optionsKey);
+        }
+        Object wcSrc = options != null ? options.opt("writeConcern") : null;
+
+        // The write concern JSON stands in for the parsed WriteConcern so a cache hit skips parsing it
+        String cacheKey = wcSrc != null ? dbName + "\u0000" + wcSrc.toString() : dbName;
+        MongoDatabase db = collectionCache.getDatabase(cacheKey);
+        if (db != null) {
+            return db;
+        }
+
+        db = mongoClient.getDatabase(dbName);
+        if (wcSrc != null) {
             try {
                 WriteConcern wc = OptionParser.getWriteConcern(options, "writeConcern");
                 db = db.withWriteConcern(wc);
             } catch (Exception ex) {}
         }
-        return db;
+        return collectionCache.putDatabase(cacheKey, dbName, db);
     }
     <TDocument> MongoCollection<TDocument> getCollection(PluginCall call, MongoDatabase db, Class<TDocument> documentClass) {
         String collectionName = call.getString("collection", "");
         if (collectionName.isEmpty()) {
             throw new InvalidParameterException("collection name must be provided and must be a string");
         }
-        MongoCollection collection = db.getCollection(collectionName, documentClass);
+        MongoCollection<TDocument> collection = collectionCache.getCollection(db, collectionName, documentClass);
+        if (collection == null) {
+            collection = db.getCollection(collectionName, documentClass);
+            collectionCache.putCollection(db, collectionName, collection);
+        }
         return collection;
     }
     private MongoCollection<Document> getCollection(PluginCall call, MongoDatabase db) {
         return getCollection(call, db, Document.class);
     }
 
+    /**
+     * Helpers for picking the write queue a call goes to; writes to the same queue run in order.
+     * These don't validate anything, a bad call still fails with the usual error once it runs.
+     */
+    private String getNamespaceKey(PluginCall call) {
+        return call.getString("db", "") + "." + call.getString("collection", "");
+    }
+    private String getDatabaseKey(PluginCall call) {
+        return call.getString("db", "");
+    }
+    private String getBulkWriteKey(PluginCall call) {
+        try {
+            BulkWriteBatch<?> batch = bulkMap.peek(UUID.fromString(call.getString("operationId", "")));
+            if (batch != null) {
+                return batch.getNamespace();
+            }
+        } catch (IllegalArgumentException ex) {}
+        return "";
+    }
+
     /**
      * Helper for handling errors
      */
@@ -129,8 +322,33 @@ public class MongoDBMobile extends Plugin {
         handleError(call, message, null);
     }
     private void handleError(PluginCall call, String message, Exception error) {
+        callStats.failed();
         call.reject(message, error);
     }
+    private void resolve(PluginCall call, JSObject ret) {
+        callStats.responded(ret);
+        call.resolve(ret);
+    }
+
+    /**
+     * Kept with each open cursor in its handle's state
+     */
+    private static class CursorState {
+        // Set for tailable and tailableAwait finds
+        final boolean tailable;
+        BatchSizer sizer;
+
+        CursorState(boolean tailable, BatchSizer sizer) {
+            this.tailable = tailable;
+            this.sizer = sizer;
+        }
+    }
+
+    private static CursorState getCursorState(PluginCall call, BatchSizer sizer) {
+        JSObject options = call.getObject("options");
+        String cursorType = options != null ? options.optString("cursorType", "") : "";
+        return new CursorState(cursorType.equals("tailable") || cursorType.equals("tailableAwait"), sizer);
+    }
 
     /**
      * Helper to return a cursor to the page
@@ -138,19 +356,51 @@ public class MongoDBMobile extends Plugin {
      * @param cursor
      */
     private void returnCursor(PluginCall call, MongoCursor<Document> cursor) {
+        callStats.serializing();
 
-        UUID cursorId = UUID.randomUUID();
-
-        cursorMap.put(cursorId, cursor);
+        UUID cursorId = cursorMap.add(cursor, getCursorState(call, getBatchSizer(call.getData(), getNamespaceKey(call))));
 
         JSObject ret = new JSObject();
         ret.put("cursorId", cursorId.toString());
-        call.resolve(ret);
+        resolve(call, ret);
+    }
+
+    /**
+     * Helper to read the adaptive batch settings of a call (or of one cursor in cursorsGetNext)
+     * @param data
+     * @param namespace where the cursor reads from, so the steady state size can be reused; may be null
+     * @return null unless data has adaptive: true
+     */
+    private BatchSizer getBatchSizer(JSONObject data, String namespace) {
+        if (!data.optBoolean("adaptive", false)) {
+            return null;
+        }
+        int initialSize = data.optInt("initialBatchSize", BatchSizer.DEFAULT_INITIAL_SIZE);
+        int maxSize = data.optInt("maxBatchSize", BatchSizer.DEFAULT_MAX_SIZE);
+        long targetBytes = data.optLong("targetBytes", BatchSizer.DEFAULT_TARGET_BYTES);
+        long targetMS = data.optLong("targetMS", BatchSizer.DEFAULT_TARGET_MS);
+        return new BatchSizer(namespace, initialSize, maxSize, targetBytes, targetMS);
+    }
+
+    /**
+     * Helper to set the driver batch size of an adaptive cursor from what earlier cursors on
+     * the same collection settled on, unless the options already set one
+     * @param call
+     * @return the batch size to use, or 0 to leave the driver default
+     */
+    private int getLearnedBatchSize(PluginCall call) {
+        if (!call.getBoolean("cursor", false) || !call.getBoolean("adaptive", false)) {
+            return 0;
+        }
+        JSObject options = call.getObject("options");
+        if (options != null && options.has("batchSize")) {
+            return 0;
+        }
+        return BatchSizer.getLearnedSize(getNamespaceKey(call));
     }
 
-    private JSObject getBsonBase64Doc(RawBsonDocument doc) {
-        ByteBuf data = doc.getByteBuffer();
-        String b64String = Base64.encodeToString(data.array(), Base64.DEFAULT);
+    static JSObject getBsonBase64Doc(RawBsonDocument doc) {
+        String b64String = BsonBatch.toBase64(doc, Base64.DEFAULT);
         JSObject obj = new JSObject();
         obj.put("$b64", b64String);
         return obj;
@@ -162,28 +412,68 @@ public class MongoDBMobile extends Plugin {
      * @param cursor
      */
     private void returnCursorBson(PluginCall call, MongoCursor<RawBsonDocument> cursor) {
+        callStats.serializing();
 
-        UUID cursorId = UUID.randomUUID();
-
-        cursorMapBson.put(cursorId, cursor);
+        UUID cursorId = cursorMapBson.add(cursor, getCursorState(call, getBatchSizer(call.getData(), getNamespaceKey(call))));
 
         JSObject ret = new JSObject();
         ret.put("cursorId", cursorId.toString());
-        call.resolve(ret);
+        resolve(call, ret);
+    }
+
+    // Stages which read other collections or write, so the result can't be tied to one collection
+    private static final String[] UNCACHEABLE_STAGES = {"$lookup", "$graphLookup", "$out", "$merge", "$unionWith"};
+
+    /**
+     * Helper to look up a find / aggregate call in the query cache
+     * @param call
+     * @param kind "find" or "aggregate"
+     * @return null if the call didn't ask for caching or can't be cached
+     */
+    private QueryCache.Ticket getQueryCacheTicket(PluginCall call, String kind) {
+        if (!call.getBoolean("cache", false) || !queryCache.isEnabled()) {
+            return null;
+        }
+        // Key order is kept as given: it matters for sort specs and embedded document matches
+        StringBuilder key = new StringBuilder(kind);
+        key.append('\n').append(getNamespaceKey(call));
+        key.append('\n').append(call.getBoolean("useBson", false)).append(call.getBoolean("packed", false)).append(call.getBoolean("rawJson", false));
+        if (kind.equals("aggregate")) {
+            JSArray pipeline = call.getArray("pipeline");
+            String pipelineJson = pipeline != null ? pipeline.toString() : "";
+            for (String stage : UNCACHEABLE_STAGES) {
+                if (pipelineJson.contains("\"" + stage + "\"")) {
+                    return null;
+                }
+            }
+            key.append('\n').append(pipelineJson);
+        } else {
+            JSObject filter = call.getObject("filter");
+            key.append('\n').append(filter != null ? filter.toString() : "");
+        }
+        JSObject options = call.getObject("options");
+        key.append('\n').append(options != null ? options.toString() : "");
+
+        return queryCache.lookup(key.toString(), getNamespaceKey(call));
     }
 
     /**
      * Helper to return an array of documents to the page
      * @param call
      * @param cursor
+     * @param cacheTicket if not null the response is added to the query cache
      */
     private void returnDocsFromCursor(PluginCall call, MongoCursor<Document> cursor) {
+        returnDocsFromCursor(call, cursor, null);
+    }
+    private void returnDocsFromCursor(PluginCall call, MongoCursor<Document> cursor, QueryCache.Ticket cacheTicket) {
+        callStats.serializing();
         JSArray resultsJson = new JSArray();
 
         while (cursor.hasNext()) {
             Document cur = cursor.next();
             try {
-                resultsJson.put(new JSONObject(cur.toJson(jsonSettings)));
+                resultsJson.put(JSObjectWriter.toJSObject(cur, jsonSettings));
             } catch (Exception ex) {
                 // This shouldn't be possible, in theory, but who knows?
                 handleError(call, ex.toString(), ex);
@@ -192,7 +482,63 @@ public class MongoDBMobile extends Plugin {
         }
         JSObject ret = new JSObject();
         ret.put("results", resultsJson);
-        call.resolve(ret);
+        if (cacheTicket != null) {
+            queryCache.put(cacheTicket, ret);
+        }
+        resolve(call, ret);
+    }
+
+    /**
+     * Helper to return an array of documents to the page as a single JSON string, written
+     * document by document into one buffer rather than building an object for each of them
+     * @param call
+     * @param cursor
+     * @param cacheTicket if not null the response is added to the query cache
+     */
+    private void returnDocsFromCursorJson(PluginCall call, MongoCursor<Document> cursor, QueryCache.Ticket cacheTicket) {
+        callStats.serializing();
+        long maxSize = getMaxResponseSize(call);
+        StringWriter out = new StringWriter((int) Math.min(maxSize, INITIAL_RESPONSE_CAPACITY));
+        StringBuffer buffer = out.getBuffer();
+        int count = 0;
+        try {
+            buffer.append('[');
+            while (cursor.hasNext()) {
+                if (count > 0) {
+                    buffer.append(',');
+                }
+                documentCodec.encode(new JsonWriter(out, jsonSettings), cursor.next(), collectibleEncoderContext);
+                count++;
+                checkResponseSize(buffer.length(), maxSize);
+            }
+            buffer.append(']');
+        } finally {
+            cursor.close();
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("json", buffer.toString());
+        ret.put("count", count);
+        if (cacheTicket != null) {
+            queryCache.put(cacheTicket, ret);
+        }
+        resolve(call, ret);
+    }
+
+    private long getMaxResponseSize(PluginCall call) {
+        Double maxSize = call.getDouble("maxResponseSize", (double)maxResponseSize);
+        return maxSize > 0 ? maxSize.longValue() : Long.MAX_VALUE;
+    }
+    private static long getBase64Size(long byteCount) {
+        return (byteCount + 2) / 3 * 4;
+    }
+    /**
+     * Fails a response which has grown past the limit before it can use up all our memory
+     */
+    private static void checkResponseSize(long size, long maxSize) {
+        if (size > maxSize) {
+            throw new IllegalStateException("the result is larger than maxResponseSize (" + maxSize + "); use cursor: true to read it in batches");
+        }
     }
 
     /**
@@ -200,17 +546,54 @@ public class MongoDBMobile extends Plugin {
      * BSON documents
      * @param call
      * @param cursor
+     * @param cacheTicket if not null the response is added to the query cache
      */
-    private void returnDocsFromCursorBson(PluginCall call, MongoCursor<RawBsonDocument> cursor) {
+    private void returnDocsFromCursorBson(PluginCall call, MongoCursor<RawBsonDocument> cursor, QueryCache.Ticket cacheTicket) {
+        callStats.serializing();
+        long maxSize = getMaxResponseSize(call);
+        if (call.getBoolean("packed", false)) {
+            BsonBatch batch = new BsonBatch();
+            try {
+                while (cursor.hasNext()) {
+                    batch.add(cursor.next());
+                    checkResponseSize(getBase64Size(batch.getSize()), maxSize);
+                }
+            } finally {
+                cursor.close();
+            }
+            JSObject ret = new JSObject();
+            ret.put("batch", batch.toBase64());
+            ret.put("count", batch.getCount());
+            if (cacheTicket != null) {
+                queryCache.put(cacheTicket, ret);
+            }
+            resolve(call, ret);
+            return;
+        }
         JSArray resultsJson = new JSArray();
 
-        while (cursor.hasNext()) {
-            RawBsonDocument cur = cursor.next();
-            resultsJson.put(getBsonBase64Doc(cur));
+        // Unlike rawJson and packed, this is a response existing callers may already rely on
+        // getting whole, so it is only limited when the call asks for it
+        if (!call.hasOption("maxResponseSize")) {
+            maxSize = Long.MAX_VALUE;
+        }
+        long size = 0;
+        try {
+            while (cursor.hasNext()) {
+                RawBsonDocument cur = cursor.next();
+                resultsJson.put(getBsonBase64Doc(cur));
+                size += getBase64Size(cur.getByteBuffer().remaining());
+                checkResponseSize(size, maxSize);
+            }
+        } finally {
+            cursor.close();
         }
         JSObject ret = new JSObject();
         ret.put("results", resultsJson);
-        call.resolve(ret);
+        if (cacheTicket != null) {
+            queryCache.put(cacheTicket, ret);
+        }
+        resolve(call, ret);
     }
 
 
@@ -219,151 +602,204 @@ public class MongoDBMobile extends Plugin {
      **********************/
     @PluginMethod()
     public void listDatabases(PluginCall call) {
-        try {
-            ListDatabasesIterable<Document> list = mongoClient.listDatabases();
-            MongoCursor<Document> cursor = list.iterator();
+        execution.read(call, () -> {
+            try {
+                callStats.executing();
+                ListDatabasesIterable<Document> list = mongoClient.listDatabases();
+                MongoCursor<Document> cursor = list.iterator();
 
-            JSArray resultsJson = new JSArray();
-            while (cursor.hasNext()) {
-                Document cur = cursor.next();
-                resultsJson.put(new JSONObject(cur.toJson(jsonSettings)));
+                callStats.serializing();
+                JSArray resultsJson = new JSArray();
+                while (cursor.hasNext()) {
+                    Document cur = cursor.next();
+                    resultsJson.put(JSObjectWriter.toJSObject(cur, jsonSettings));
+                }
+                JSObject ret = new JSObject();
+                ret.put("databases", resultsJson);
+                resolve(call, ret);
+            } catch (Exception ex) {
+                handleError(call, "Could not list databases!", ex);
             }
-            JSObject ret = new JSObject();
-            ret.put("databases", resultsJson);
-            call.resolve(ret);
-        } catch (Exception ex) {
-            handleError(call, "Could not list databases!", ex);
-        }
+        });
     }
     @PluginMethod()
     public void dropDatabase(PluginCall call) {
-        try {
-            String dbName = call.getString("db", "");
-            if (dbName.isEmpty()) {
-                throw new InvalidParameterException("db name must be provided and must be a string");
-            }
-            ArrayList<String> names = mongoClient.listDatabaseNames().into(new ArrayList<String>());
-
-            JSObject ret = new JSObject();
-            if (names.contains(dbName)) {
-                MongoDatabase db = mongoClient.getDatabase(dbName);
-                db.drop();
-                ret.put("dropped", true);
-            } else {
-                ret.put("dropped", false);
+        execution.write(call, getDatabaseKey(call), () -> {
+            try {
+                String dbName = call.getString("db", "");
+                if (dbName.isEmpty()) {
+                    throw new InvalidParameterException("db name must be provided and must be a string");
+                }
+                callStats.executing();
+                ArrayList<String> names = mongoClient.listDatabaseNames().into(new ArrayList<String>());
+
+                callStats.serializing();
+                JSObject ret = new JSObject();
+                if (names.contains(dbName)) {
+                    MongoDatabase db = mongoClient.getDatabase(dbName);
+                    db.drop();
+                    collectionCache.invalidateDatabase(dbName);
+                    ret.put("dropped", true);
+                } else {
+                    ret.put("dropped", false);
+                }
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute dropDatabase: " + ex.getMessage(), ex);
             }
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute dropDatabase: " + ex.getMessage(), ex);
-        }
+        });
     }
 
 
     @PluginMethod()
     public void listCollections(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCursor<Document> collections = db.listCollections().iterator();
+        execution.read(call, () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                callStats.executing();
+                MongoCursor<Document> collections = db.listCollections().iterator();
+
+                callStats.serializing();
+                JSArray resultsJson = new JSArray();
+                while (collections.hasNext()) {
+                    Document cur = collections.next();
+                    resultsJson.put(JSObjectWriter.toJSObject(cur, jsonSettings));
+                }
 
-            JSArray resultsJson = new JSArray();
-            while (collections.hasNext()) {
-                Document cur = collections.next();
-                resultsJson.put(new JSONObject(cur.toJson(jsonSettings)));
+                JSObject ret = new JSObject();
+                ret.put("collections", resultsJson);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute listCollections: " + ex.getMessage(), ex);
             }
-
-            JSObject ret = new JSObject();
-            ret.put("collections", resultsJson);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute listCollections: " + ex.getMessage(), ex);
-        }
+        });
     }
 
     @PluginMethod()
     public void createCollection(PluginCall call) {
-        try { String collectionName = call.getString("collection", "");
-            if (collectionName.isEmpty()) {
-                throw new InvalidParameterException("collection name must be provided and must be a string");
-            }
+        execution.write(call, getNamespaceKey(call), () -> {
+            try { String collectionName = call.getString("collection", "");
+                if (collectionName.isEmpty()) {
+                    throw new InvalidParameterException("collection name must be provided and must be a string");
+                }
 
-            MongoDatabase db = getDatabase(call);
-            CreateCollectionOptions opts = OptionParser.getCreateCollectionOptions(call.getObject("options", new JSObject()));
+                MongoDatabase db = getDatabase(call);
+                CreateCollectionOptions opts = OptionParser.getCreateCollectionOptions(call.getObject("options", new JSObject()));
 
-            db.createCollection(collectionName, opts);
+                callStats.executing();
+                db.createCollection(collectionName, opts);
+                callStats.serializing();
 
-            JSObject ret = new JSObject();
-            ret.put("collection", collectionName);
+                JSObject ret = new JSObject();
+                ret.put("collection", collectionName);
 
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute createCollection: " + ex.getMessage(), ex);
-        }
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute createCollection: " + ex.getMessage(), ex);
+            }
+        });
     }
     @PluginMethod()
     public void dropCollection(PluginCall call) {
-        try {
-            String collectionName = call.getString("collection", "");
-            if (collectionName.isEmpty()) {
-                throw new InvalidParameterException("collection name must be provided and must be a string");
-            }
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                String collectionName = call.getString("collection", "");
+                if (collectionName.isEmpty()) {
+                    throw new InvalidParameterException("collection name must be provided and must be a string");
+                }
 
-            MongoDatabase db = getDatabase(call);
+                MongoDatabase db = getDatabase(call);
 
-            ArrayList<String> names = db.listCollectionNames().into(new ArrayList<String>());
-            JSObject ret = new JSObject();
-            if (names.contains(collectionName)) {
-                MongoCollection collection = db.getCollection(collectionName);
-                collection.drop();
-                ret.put("dropped", true);
-            } else {
-                ret.put("dropped", false);
+                callStats.executing();
+                ArrayList<String> names = db.listCollectionNames().into(new ArrayList<String>());
+                JSObject ret = new JSObject();
+                if (names.contains(collectionName)) {
+                    MongoCollection collection = db.getCollection(collectionName);
+                    collection.drop();
+                    collectionCache.invalidateCollection(db.getName(), collectionName);
+                    ret.put("dropped", true);
+                } else {
+                    ret.put("dropped", false);
+                }
+
+                callStats.serializing();
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute dropCollection: " + ex.getMessage(), ex);
             }
+        });
+    }
 
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute dropCollection: " + ex.getMessage(), ex);
+    // Commands which never change data, so running them leaves the query cache alone
+    private static final String[] READ_ONLY_COMMANDS = {
+        "buildInfo", "buildinfo", "collStats", "connectionStatus", "count", "dataSize", "dbStats",
+        "distinct", "explain", "find", "getParameter", "hello", "hostInfo", "isMaster", "ismaster",
+        "listCollections", "listIndexes", "ping", "serverStatus", "validate"
+    };
+    private static boolean isReadOnlyCommand(Document command) {
+        if (command.isEmpty()) {
+            return false;
         }
+        // The command name is always the first key
+        String name = command.keySet().iterator().next();
+        for (String readOnly : READ_ONLY_COMMANDS) {
+            if (readOnly.equals(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @PluginMethod()
     public void runCommand(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
+        // Invalidates the query cache itself, and only for commands which may write
+        execution.write(call, getDatabaseKey(call), false, () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
 
-            JSObject commandSrc = call.getObject("command");
-            if (commandSrc == null) {
-                throw new InvalidParameterException("command must be a valid document");
-            }
-            JSObject rootObj = new JSObject();
-            rootObj.put("command", commandSrc);
-            Document command = OptionParser.getDocument(commandSrc);
+                JSObject commandSrc = call.getObject("command");
+                if (commandSrc == null) {
+                    throw new InvalidParameterException("command must be a valid document");
+                }
+                JSObject rootObj = new JSObject();
+                rootObj.put("command", commandSrc);
+                Document command = OptionParser.getDocument(commandSrc);
 
-            boolean useBson = call.getBoolean("useBson");
+                callStats.executing();
+                boolean useBson = call.getBoolean("useBson");
 
-            JSObject ret = new JSObject();
-            if (useBson) {
-                RawBsonDocument reply = db.runCommand(command, RawBsonDocument.class);
-                ret.put("reply", getBsonBase64Doc(reply));
-            } else {
-                Document reply = db.runCommand(command);
+                JSObject ret = new JSObject();
+                try {
+                    if (useBson) {
+                        RawBsonDocument reply = db.runCommand(command, RawBsonDocument.class);
+                        ret.put("reply", getBsonBase64Doc(reply));
+                    } else {
+                        Document reply = db.runCommand(command);
 
-                ret.put("reply", new JSONObject(reply.toJson(jsonSettings)));
-            }
-            call.resolve(ret);
+                        ret.put("reply", JSObjectWriter.toJSObject(reply, jsonSettings));
+                    }
+                } finally {
+                    if (!isReadOnlyCommand(command)) {
+                        queryCache.invalidateDatabase(db.getName());
+                    }
+                }
+                callStats.serializing();
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute runCommand: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute runCommand: " + ex.getMessage(), ex);
+            }
+        });
     }
 
 
@@ -372,26 +808,61 @@ public class MongoDBMobile extends Plugin {
      ******************/
     @PluginMethod()
     public void count(PluginCall call) {
-        try {
-            CountOptions opts = OptionParser.getCountOptions(call.getObject("options"));
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
+        execution.read(call, () -> {
+            try {
+                JSObject options = call.getObject("options");
+                CountOptions opts = OptionParser.getCountOptions(options);
+                if (opts == null) {
+                    opts = new CountOptions();
+                }
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
+
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
 
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
+                callStats.executing();
+                JSObject ret = new JSObject();
+
+                // The collection metadata count is only right when nothing is filtered or skipped,
+                // otherwise we fall back to counting the documents
+                boolean estimated = options != null && options.optBoolean("estimated", false);
+                if (estimated && filterDoc.isEmpty() && opts.getSkip() == 0 && opts.getLimit() == 0) {
+                    long count = collection.estimatedDocumentCount(OptionParser.getEstimatedDocumentCountOptions(options));
+                    callStats.serializing();
+                    ret.put("count", count);
+                    ret.put("estimated", true);
+                    resolve(call, ret);
+                    return;
+                }
 
-            long count = collection.countDocuments(filterDoc);
+                // To count "up to N" we let the server stop after N + 1 matches; finding the
+                // extra one tells us there are more than N without scanning the rest
+                int upTo = options != null ? options.optInt("upTo", 0) : 0;
+                if (upTo < 0) {
+                    throw new InvalidParameterException("upTo must be a positive number");
+                }
+                if (upTo > 0 && (opts.getLimit() == 0 || opts.getLimit() > upTo)) {
+                    opts.limit(upTo + 1);
+                }
 
-            JSObject ret = new JSObject();
-            ret.put("count", count);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute count: " + ex.getMessage(), ex);
-        }
+                long count = collection.countDocuments(filterDoc, opts);
+                callStats.serializing();
+
+                if (upTo > 0) {
+                    ret.put("capped", count > upTo);
+                    count = Math.min(count, upTo);
+                }
+                ret.put("count", count);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute count: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     private MongoCursor<Document> _find(PluginCall call) {
@@ -408,7 +879,12 @@ public class MongoDBMobile extends Plugin {
 
         FindIterable<TDocument> fi = collection.find(filterDoc);
         fi = OptionParser.applyFindOptions(fi, call.getObject("options"));
+        int learnedBatchSize = getLearnedBatchSize(call);
+        if (learnedBatchSize > 0) {
+            fi.batchSize(learnedBatchSize);
+        }
 
+        callStats.executing();
         MongoCursor<TDocument> cursor = fi.iterator();
 
         return cursor;
@@ -430,267 +906,807 @@ public class MongoDBMobile extends Plugin {
         MongoCollection<TDocument> collection = getCollection(call, db, documentClass);
         AggregateIterable<TDocument> ai = collection.aggregate(pipeline);
         ai = OptionParser.applyAggregateOptions(ai, call.getObject("options"));
+        int learnedBatchSize = getLearnedBatchSize(call);
+        if (learnedBatchSize > 0) {
+            ai.batchSize(learnedBatchSize);
+        }
 
+        callStats.executing();
         MongoCursor<TDocument> cursor = ai.iterator();
 
         return cursor;
     }
 
+    /**
+     * Helper to wrap a raw cursor in a PrefetchCursor using the prefetch settings of the call
+     * @param call
+     * @param cursor
+     * @param documentClass
+     * @return
+     */
+    private <TDocument> PrefetchCursor<TDocument> getPrefetchCursor(PluginCall call, MongoCursor<RawBsonDocument> cursor, Class<TDocument> documentClass) {
+        int depth = call.getInt("prefetch", 0);
+        Double maxBytes = call.getDouble("prefetchMaxBytes", (double)DEFAULT_PREFETCH_MAX_BYTES);
+        return new PrefetchCursor<>(cursor, documentClass, prefetchExecutor, depth, maxBytes.longValue());
+    }
+
     @PluginMethod()
     public void find(PluginCall call) {
-        try {
-            boolean useCursor = call.getBoolean("cursor", false);
-            boolean useBson = call.getBoolean("useBson", false);
-
-            if (useBson) {
-                MongoCursor<RawBsonDocument> cursor = _find(call, RawBsonDocument.class);
-                if (useCursor) {
-                    returnCursorBson(call, cursor);
-                } else {
-                    returnDocsFromCursorBson(call, cursor);
+        execution.read(call, () -> {
+            try {
+                boolean useCursor = call.getBoolean("cursor", false);
+                boolean useBson = call.getBoolean("useBson", false);
+                int prefetch = call.getInt("prefetch", 0);
+
+                QueryCache.Ticket cacheTicket = useCursor ? null : getQueryCacheTicket(call, "find");
+                if (cacheTicket != null && cacheTicket.cached != null) {
+                    resolve(call, cacheTicket.cached);
+                    return;
                 }
-            } else {
-                MongoCursor<Document> cursor = _find(call);
-                if (useCursor) {
-                    returnCursor(call, cursor);
+                sampleExplain(call);
+
+                if (useCursor && prefetch > 0) {
+                    MongoCursor<RawBsonDocument> cursor = _find(call, RawBsonDocument.class);
+                    if (useBson) {
+                        returnCursorBson(call, getPrefetchCursor(call, cursor, RawBsonDocument.class));
+                    } else {
+                        returnCursor(call, getPrefetchCursor(call, cursor, Document.class));
+                    }
+                } else if (useBson) {
+                    MongoCursor<RawBsonDocument> cursor = _find(call, RawBsonDocument.class);
+                    if (useCursor) {
+                        returnCursorBson(call, cursor);
+                    } else {
+                        returnDocsFromCursorBson(call, cursor, cacheTicket);
+                    }
                 } else {
-                    returnDocsFromCursor(call, cursor);
+                    MongoCursor<Document> cursor = _find(call);
+                    if (useCursor) {
+                        returnCursor(call, cursor);
+                    } else if (call.getBoolean("rawJson", false)) {
+                        returnDocsFromCursorJson(call, cursor, cacheTicket);
+                    } else {
+                        returnDocsFromCursor(call, cursor, cacheTicket);
+                    }
                 }
-            }
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute find: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute find: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     @PluginMethod()
     public void aggregate(PluginCall call) {
-        try {
-            boolean useCursor = call.getBoolean("cursor", false);
-            boolean useBson = call.getBoolean("useBson", false);
-
-            if (useBson) {
-                MongoCursor<RawBsonDocument> cursor = _execAggregate(call, RawBsonDocument.class);
-                if (useCursor) {
-                    returnCursorBson(call, cursor);
-                } else {
-                    returnDocsFromCursorBson(call, cursor);
+        execution.read(call, () -> {
+            try {
+                boolean useCursor = call.getBoolean("cursor", false);
+                boolean useBson = call.getBoolean("useBson", false);
+                int prefetch = call.getInt("prefetch", 0);
+
+                QueryCache.Ticket cacheTicket = useCursor ? null : getQueryCacheTicket(call, "aggregate");
+                if (cacheTicket != null && cacheTicket.cached != null) {
+                    resolve(call, cacheTicket.cached);
+                    return;
                 }
-            } else {
-                MongoCursor<Document> cursor = _execAggregate(call);
-                if (useCursor) {
-                    returnCursor(call, cursor);
+                sampleExplain(call);
+
+                if (useCursor && prefetch > 0) {
+                    MongoCursor<RawBsonDocument> cursor = _execAggregate(call, RawBsonDocument.class);
+                    if (useBson) {
+                        returnCursorBson(call, getPrefetchCursor(call, cursor, RawBsonDocument.class));
+                    } else {
+                        returnCursor(call, getPrefetchCursor(call, cursor, Document.class));
+                    }
+                } else if (useBson) {
+                    MongoCursor<RawBsonDocument> cursor = _execAggregate(call, RawBsonDocument.class);
+                    if (useCursor) {
+                        returnCursorBson(call, cursor);
+                    } else {
+                        returnDocsFromCursorBson(call, cursor, cacheTicket);
+                    }
                 } else {
-                    returnDocsFromCursor(call, cursor);
+                    MongoCursor<Document> cursor = _execAggregate(call);
+                    if (useCursor) {
+                        returnCursor(call, cursor);
+                    } else if (call.getBoolean("rawJson", false)) {
+                        returnDocsFromCursorJson(call, cursor, cacheTicket);
+                    } else {
+                        returnDocsFromCursor(call, cursor, cacheTicket);
+                    }
                 }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute aggregate: " + ex.getMessage(), ex);
             }
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute aggregate: " + ex.getMessage(), ex);
-        }
+        });
     }
 
-    @PluginMethod()
-    public void cursorGetNext(PluginCall call) {
-        try {
-            String cursorIdStr = call.getString("cursorId", "n/a");
-            UUID cursorId = null;
-            try {
-                cursorId = UUID.fromString(cursorIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("cursorId must be provided and must be a string");
-            }
-
-            MongoCursor<Document> cursor = cursorMap.get(cursorId);
-            MongoCursor<RawBsonDocument> bsonCursor = cursorMapBson.get(cursorId);
-
-            if (cursor == null && bsonCursor == null) {
-                throw new InvalidParameterException("cursorId does not refer to a valid cursor");
-            }
+    /**
+     * Helper to read the next batch from a cursor, closing it as soon as it is exhausted so the
+     * batch with the last documents is already marked complete. Tailable cursors are only
+     * marked complete once a batch comes back empty
+     * @param cursorId
+     * @param batchSize number of documents to read; 0 to let the cursor's BatchSizer pick (or 1 if it has none)
+     * @param packed for BSON cursors, return the batch as a single base64 string
+     * @param sizer makes the cursor adaptive from now on if it isn't already; may be null
+     * @return the response for cursorGetNext
+     * @throws InvalidParameterException if there is no such cursor
+     */
+    private JSObject readCursorBatch(UUID cursorId, int batchSize, boolean packed, BatchSizer sizer) throws InvalidParameterException {
+        callStats.executing();
+        // Calls on the same cursor are serialized by the handle lock
+        HandleRegistry.Handle<MongoCursor<Document>> handle = cursorMap.acquire(cursorId);
+        HandleRegistry.Handle<MongoCursor<RawBsonDocument>> bsonHandle = handle == null ? cursorMapBson.acquire(cursorId) : null;
+
+        if (handle == null && bsonHandle == null) {
+            throw new InvalidParameterException("cursorId does not refer to a valid cursor; it may have been closed after being idle too long");
+        }
 
-            int batchSize = call.getInt("batchSize", 1);
-            if (batchSize < 1) {
-                throw new InvalidParameterException("batchSize must be at least 1");
+        JSObject ret = new JSObject();
+        JSArray resultsJson = new JSArray();
+        MongoCursor<?> activeCursor;
+        try {
+            CursorState state = (CursorState) (handle != null ? handle : bsonHandle).state;
+            if (batchSize > 0) {
+                sizer = null;
+            } else {
+                if (state.sizer != null) {
+                    sizer = state.sizer;
+                } else {
+                    state.sizer = sizer;
+                }
+                batchSize = sizer != null ? sizer.getBatchSize() : 1;
             }
+            long startTime = System.nanoTime();
+            long batchBytes = 0;
+            int batchCount;
 
-            JSObject ret = new JSObject();
-            JSArray resultsJson = new JSArray();
-            if (cursor != null) {
+            if (handle != null) {
                 // normal output
+                MongoCursor<Document> cursor = handle.value;
+                activeCursor = cursor;
                 while (cursor.hasNext()) {
                     Document cur = cursor.next();
-                    resultsJson.put(new JSONObject(cur.toJson(jsonSettings)));
+                    if (sizer != null) {
+                        JSObjectWriter writer = new JSObjectWriter(jsonSettings);
+                        resultsJson.put(writer.writeDocument(cur));
+                        batchBytes += writer.getSize();
+                    } else {
+                        resultsJson.put(JSObjectWriter.toJSObject(cur, jsonSettings));
+                    }
                     if (resultsJson.length() >= batchSize) {
                         break;
                     }
                 }
 
                 ret.put("results", resultsJson);
-                if (resultsJson.length() == 0) {
-                    // This is the end! Close the cursor and mark it complete
+                batchCount = resultsJson.length();
+                // A tailable cursor's hasNext() waits for more documents, so it only ends with an empty batch
+                if (state.tailable ? batchCount == 0 : !cursor.hasNext()) {
+                    // This is the end! Close the cursor and mark it complete along with the last documents
                     ret.put("complete", true);
                     cursor.close();
-                    cursorMap.remove(cursorId);
+                    cursorMap.remove(handle);
+                }
+            } else if (packed) {
+                // BSON output packed into a single base64 string
+                MongoCursor<RawBsonDocument> bsonCursor = bsonHandle.value;
+                activeCursor = bsonCursor;
+                BsonBatch batch = new BsonBatch();
+                while (batch.getCount() < batchSize && bsonCursor.hasNext()) {
+                    batch.add(bsonCursor.next());
+                }
+                batchBytes = getBase64Size(batch.getSize());
+                batchCount = batch.getCount();
+
+                ret.put("batch", batch.toBase64());
+                ret.put("count", batch.getCount());
+                if (state.tailable ? batchCount == 0 : !bsonCursor.hasNext()) {
+                    // This is the end! Close the cursor and mark it complete along with the last documents
+                    ret.put("complete", true);
+                    bsonCursor.close();
+                    cursorMapBson.remove(bsonHandle);
                 }
             } else {
                 // BSON base64 output
+                MongoCursor<RawBsonDocument> bsonCursor = bsonHandle.value;
+                activeCursor = bsonCursor;
                 while (bsonCursor.hasNext()) {
                     RawBsonDocument cur = bsonCursor.next();
                     resultsJson.put(getBsonBase64Doc(cur));
+                    batchBytes += getBase64Size(cur.getByteBuffer().remaining());
                     if (resultsJson.length() >= batchSize) {
                         break;
                     }
                 }
 
                 ret.put("results", resultsJson);
-                if (resultsJson.length() == 0) {
-                    // This is the end! Close the cursor and mark it complete
+                batchCount = resultsJson.length();
+                if (state.tailable ? batchCount == 0 : !bsonCursor.hasNext()) {
+                    // This is the end! Close the cursor and mark it complete along with the last documents
                     ret.put("complete", true);
                     bsonCursor.close();
-                    cursorMapBson.remove(cursorId);
+                    cursorMapBson.remove(bsonHandle);
                 }
             }
 
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute cursorGetNext: " + ex.getMessage(), ex);
+            if (sizer != null) {
+                sizer.record(batchCount, batchBytes, System.nanoTime() - startTime);
+                ret.put("batchSize", batchSize);
+            }
+        } finally {
+            if (handle != null) {
+                handle.release();
+            } else {
+                bsonHandle.release();
+            }
         }
 
+        if (activeCursor instanceof PrefetchCursor) {
+            ret.put("prefetched", ((PrefetchCursor<?>) activeCursor).getBufferedCount());
+        }
+        return ret;
     }
 
-    @PluginMethod()
-    public void closeCursor(PluginCall call) {
+    /**
+     * Helper to read the batchSize of cursorGetNext / streamCursor / cursorsGetNext
+     * @param data
+     * @return the batch size, or 0 if it wasn't set
+     * @throws InvalidParameterException
+     */
+    private int getRequestedBatchSize(JSONObject data) throws InvalidParameterException {
+        if (!data.has("batchSize")) {
+            return 0;
+        }
+        int batchSize = data.optInt("batchSize", 0);
+        if (batchSize < 1) {
+            throw new InvalidParameterException("batchSize must be at least 1");
+        }
+        return batchSize;
+    }
+
+    private UUID getCursorId(JSONObject data) throws InvalidParameterException {
         try {
-            String cursorIdStr = call.getString("cursorId", "n/a");
-            UUID cursorId = null;
+            return UUID.fromString(data.optString("cursorId", "n/a"));
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidParameterException("cursorId must be provided and must be a string");
+        }
+    }
+
+    @PluginMethod()
+    public void cursorGetNext(PluginCall call) {
+        execution.read(call, () -> {
             try {
-                cursorId = UUID.fromString(cursorIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("cursorId must be provided and must be a string");
+                UUID cursorId = getCursorId(call.getData());
+                int batchSize = getRequestedBatchSize(call.getData());
+
+                resolve(call, readCursorBatch(cursorId, batchSize, call.getBoolean("packed", false), getBatchSizer(call.getData(), null)));
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute cursorGetNext: " + ex.getMessage(), ex);
             }
+        });
+    }
 
-            MongoCursor<Document> cursor = cursorMap.remove(cursorId);
-            MongoCursor<RawBsonDocument> bsonCursor = cursorMapBson.remove(cursorId);
+    @PluginMethod()
+    public void cursorsGetNext(PluginCall call) {
+        execution.read(call, () -> {
+            try {
+                JSArray cursors = call.getArray("cursors");
+                if (cursors == null || cursors.length() == 0) {
+                    throw new InvalidParameterException("cursors must be provided and must be a non-empty array of {cursorId, batchSize}");
+                }
 
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            if (cursor != null) {
-                cursor.close();
-                ret.put("removed", true);
-            } else if (bsonCursor != null) {
-                bsonCursor.close();
-                ret.put("removed", true);
-            } else {
-                ret.put("removed", true);
+                final int count = cursors.length();
+                final JSObject[] batches = new JSObject[count];
+                ArrayList<Runnable> tasks = new ArrayList<>(count);
+                HashSet<UUID> seen = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    JSONObject entry = cursors.optJSONObject(i);
+                    if (entry == null) {
+                        throw new InvalidParameterException("cursors[" + i + "] must be an object");
+                    }
+                    final UUID cursorId = getCursorId(entry);
+                    if (!seen.add(cursorId)) {
+                        throw new InvalidParameterException("cursors[" + i + "] repeats cursorId " + cursorId);
+                    }
+                    final int batchSize = getRequestedBatchSize(entry);
+                    final boolean packed = entry.optBoolean("packed", false);
+                    final BatchSizer sizer = getBatchSizer(entry, null);
+                    final int index = i;
+                    tasks.add(() -> {
+                        JSObject batch;
+                        try {
+                            batch = readCursorBatch(cursorId, batchSize, packed, sizer);
+                        } catch (Exception ex) {
+                            // One bad cursor doesn't fail the others
+                            batch = new JSObject();
+                            batch.put("error", ex.getMessage());
+                        }
+                        batch.put("cursorId", cursorId.toString());
+                        batches[index] = batch;
+                    });
+                }
+
+                execution.readAll(tasks);
+
+                JSArray batchesJson = new JSArray();
+                for (JSObject batch : batches) {
+                    batchesJson.put(batch);
+                }
+                JSObject ret = new JSObject();
+                ret.put("batches", batchesJson);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute cursorsGetNext: " + ex.getMessage(), ex);
             }
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute closeCursor: " + ex.getMessage(), ex);
+        });
+    }
+
+    /**
+     * Closer for cursors the registries expire or evict; a stream on the cursor is ended with
+     * a final error event so the page isn't left waiting for it
+     */
+    private void closeIdleCursor(UUID cursorId, MongoCursor<?> cursor) {
+        CursorStream stream = cursorStreams.remove(cursorId);
+        if (stream != null) {
+            stream.closed("cursor was closed after being idle too long or because too many cursors were open");
+        }
+        cursor.close();
+    }
+
+    /**
+     * Pushes batches from a cursor to the page as cursorStream events, one per credit.
+     * Each batch is a separate read task so a stream can't hold a read thread for all its credits.
+     */
+    private class CursorStream {
+        final UUID cursorId;
+        final int batchSize;
+        final boolean packed;
+        private BatchSizer sizer;
+        private int credits;
+        private boolean running = false;
+        private boolean cancelled = false;
+
+        CursorStream(UUID cursorId, int batchSize, boolean packed, BatchSizer sizer, int credits) {
+            this.cursorId = cursorId;
+            this.batchSize = batchSize;
+            this.packed = packed;
+            this.sizer = sizer;
+            this.credits = credits;
+        }
+
+        synchronized void grant(int count) {
+            credits += count;
+            if (!running && !cancelled && credits > 0) {
+                running = true;
+                execution.read(this::pump);
+            }
+        }
+        synchronized void cancel() {
+            cancelled = true;
+        }
+        /**
+         * The cursor was closed under the stream; sends the page a last event unless it already had one
+         */
+        synchronized void closed(String error) {
+            JSObject event = new JSObject();
+            event.put("error", error);
+            event.put("complete", true);
+            send(event);
+        }
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+        private synchronized boolean takeCredit() {
+            if (cancelled || credits <= 0) {
+                running = false;
+                return false;
+            }
+            credits--;
+            return true;
+        }
+
+        /**
+         * Sends event unless the stream has already ended; a complete event ends it
+         */
+        private synchronized void send(JSObject event) {
+            if (cancelled) {
+                return;
+            }
+            event.put("cursorId", cursorId.toString());
+            if (event.has("complete")) {
+                cancelled = true;
+                cursorStreams.remove(cursorId, this);
+            }
+            notifyListeners(CURSOR_STREAM_EVENT, event);
+        }
+
+        private void pump() {
+            if (!takeCredit()) {
+                return;
+            }
+            JSObject event;
+            try {
+                event = readCursorBatch(cursorId, batchSize, packed, sizer);
+                // readCursorBatch keeps it with the cursor after the first batch
+                sizer = null;
+            } catch (Exception ex) {
+                if (isCancelled()) {
+                    // closeCursor was called, or the cursor was reaped, while we were reading
+                    return;
+                }
+                event = new JSObject();
+                event.put("error", ex.getMessage());
+                event.put("complete", true);
+            }
+            send(event);
+            // Back of the queue for the next batch, behind any find / count calls waiting
+            execution.read(this::pump);
         }
     }
 
 
-    /*******************
-     ** WRITE METHODS **
-     *******************/
     @PluginMethod()
-    public void insertOne(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
-            Document doc = null;
+    public void streamCursor(PluginCall call) {
+        execution.read(call, () -> {
             try {
-                doc = OptionParser.getDocument(call.getObject("doc"));
-            } catch (Exception ex) {}
-            if (doc == null) {
-                throw new InvalidParameterException("doc must be a valid document object");
+                UUID cursorId = getCursorId(call.getData());
+                int batchSize = getRequestedBatchSize(call.getData());
+                int credits = call.getInt("credits", 1);
+                if (credits < 0) {
+                    throw new InvalidParameterException("credits must not be negative");
+                }
+                if (!cursorMap.contains(cursorId) && !cursorMapBson.contains(cursorId)) {
+                    throw new InvalidParameterException("cursorId does not refer to a valid cursor; it may have been closed after being idle too long");
+                }
+
+                CursorStream stream = new CursorStream(cursorId, batchSize, call.getBoolean("packed", false), getBatchSizer(call.getData(), null), 0);
+                if (cursorStreams.putIfAbsent(cursorId, stream) != null) {
+                    throw new InvalidParameterException("cursor is already being streamed");
+                }
+
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+
+                stream.grant(credits);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute streamCursor: " + ex.getMessage(), ex);
             }
+        });
+    }
 
-            InsertOneOptions opts = OptionParser.getInsertOneOptions(call.getObject("options"));
+    @PluginMethod()
+    public void streamCursorCredit(PluginCall call) {
+        execution.inline(call, () -> {
+            try {
+                UUID cursorId = getCursorId(call.getData());
+                int credits = call.getInt("credits", 1);
+                if (credits < 1) {
+                    throw new InvalidParameterException("credits must be at least 1");
+                }
 
-            collection.insertOne(doc, opts);
+                CursorStream stream = cursorStreams.get(cursorId);
+                if (stream == null) {
+                    throw new InvalidParameterException("cursorId does not refer to a cursor being streamed");
+                }
+                stream.grant(credits);
 
-            JSObject ret = new JSObject();
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            }
+        });
+    }
 
-            ret.put("success", true);
+    @PluginMethod()
+    public void closeCursor(PluginCall call) {
+        execution.read(call, () -> {
+            try {
+                UUID cursorId = getCursorId(call.getData());
 
-            if (doc.containsKey("_id")) {
-                try {
-                    JSONObject fullDoc = new JSONObject(doc.toJson(jsonSettings));
-                    ret.put("insertedId", fullDoc.get("_id"));
-                } catch (JSONException ex) {
-                    ret.put("insertedId", null);
+                CursorStream stream = cursorStreams.remove(cursorId);
+                if (stream != null) {
+                    stream.cancel();
                 }
-            } else {
-                ret.put("insertedId", null);
+                MongoCursor<Document> cursor = cursorMap.remove(cursorId);
+                MongoCursor<RawBsonDocument> bsonCursor = cursorMapBson.remove(cursorId);
+
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                if (cursor != null) {
+                    cursor.close();
+                    ret.put("removed", true);
+                } else if (bsonCursor != null) {
+                    bsonCursor.close();
+                    ret.put("removed", true);
+                } else {
+                    ret.put("removed", true);
+                }
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute closeCursor: " + ex.getMessage(), ex);
             }
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute insertOne: " + ex.getMessage(), ex);
+        });
+    }
+
+
+    private JSObject getRegistryStats(HandleRegistry<?>... registries) {
+        int open = 0;
+        long expired = 0;
+        long evicted = 0;
+        for (HandleRegistry<?> registry : registries) {
+            open += registry.size();
+            expired += registry.getExpiredCount();
+            evicted += registry.getEvictedCount();
         }
+        JSObject stats = new JSObject();
+        stats.put("open", open);
+        stats.put("expired", expired);
+        stats.put("evicted", evicted);
+        return stats;
+    }
 
+    @PluginMethod()
+    public void getCursorStats(PluginCall call) {
+        execution.inline(call, () -> {
+            JSObject ret = new JSObject();
+            ret.put("cursors", getRegistryStats(cursorMap, cursorMapBson));
+            ret.put("bulkWrites", getRegistryStats(bulkMap));
+            resolve(call, ret);
+        });
     }
+
     @PluginMethod()
-    public void insertMany(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
+    public void getExecutorStats(PluginCall call) {
+        execution.inline(call, () -> {
+            resolve(call, execution.getStats());
+        });
+    }
 
-            JSArray jsArr = call.getArray("docs");
-            if (jsArr == null) {
-                throw new InvalidParameterException("docs must be a valid array of documents to insert");
-            }
-            List<Document> docs = OptionParser.getDocumentArray(jsArr);
+    @PluginMethod()
+    public void getQueryCacheStats(PluginCall call) {
+        execution.inline(call, () -> {
+            resolve(call, queryCache.getStats());
+        });
+    }
+
+    @PluginMethod()
+    public void clearQueryCache(PluginCall call) {
+        execution.inline(call, () -> {
+            queryCache.invalidateAll();
 
-            InsertManyOptions opts = OptionParser.getInsertManyOptions(call.getObject("options"));
+            JSObject ret = new JSObject();
+            ret.put("success", true);
+            resolve(call, ret);
+        });
+    }
 
-            collection.insertMany(docs, opts);
+    @PluginMethod()
+    public void getStats(PluginCall call) {
+        execution.inline(call, () -> {
+            resolve(call, callStats.toJSObject());
+        });
+    }
 
+    @PluginMethod()
+    public void getSlowOperations(PluginCall call) {
+        execution.inline(call, () -> {
+            SlowOperationLog slowLog = callStats.getSlowLog();
             JSObject ret = new JSObject();
-            if (collection.getWriteConcern().getW() == 0) {
-                // Write preference is "don't wait", so we don't
-                // know how the write went
-                ret.put("success", true);
-                ret.put("insertedCount", null);
-                ret.put("insertedIds", null);
-                call.resolve(ret);
+            if (slowLog == null) {
+                ret.put("operations", new JSArray());
+                ret.put("total", 0);
+                ret.put("thresholdMS", 0);
+                resolve(call, ret);
                 return;
             }
+            ret.put("operations", slowLog.getEntries());
+            ret.put("total", slowLog.getTotalCount());
+            ret.put("thresholdMS", slowLog.getThresholdMS());
+            if (slowLog.getFile() != null) {
+                ret.put("file", slowLog.getFile().getAbsolutePath());
+            }
+            if (call.getBoolean("clear", false)) {
+                slowLog.clear();
+            }
+            resolve(call, ret);
+        });
+    }
+
+    @PluginMethod()
+    public void getIndexAdvice(PluginCall call) {
+        execution.inline(call, () -> {
+            JSObject ret = indexAdvisor.getReport();
+            if (call.getBoolean("clear", false)) {
+                indexAdvisor.clear();
+            }
+            resolve(call, ret);
+        });
+    }
+
+    @PluginMethod()
+    public void resetStats(PluginCall call) {
+        execution.inline(call, () -> {
+            callStats.reset();
+            callStats.setEnabled(call.getBoolean("enabled", callStats.isEnabled()));
+
+            JSObject ret = new JSObject();
+            ret.put("success", true);
+            resolve(call, ret);
+        });
+    }
+
+
+    /*******************
+     ** WRITE METHODS **
+     *******************/
+    /**
+     * Helper to get the extended json representation of a document _id
+     * @param id
+     * @return
+     */
+    private Object getIdJson(Object id) {
+        return JSObjectWriter.toJSObject(new Document("_id", id), jsonSettings).opt("_id");
+    }
+    private Object getIdJson(BsonValue id) {
+        return JSObjectWriter.toJSObject(new BsonDocument("_id", id), jsonSettings).opt("_id");
+    }
+
+    @PluginMethod()
+    public void insertOne(PluginCall call) {
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                boolean useBson = call.getBoolean("useBson", false);
+
+                InsertOneOptions opts = OptionParser.getInsertOneOptions(call.getObject("options"));
+
+                JSObject ret = new JSObject();
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
+                    RawBsonDocument doc = null;
+                    try {
+                        doc = OptionParser.getRawBsonDocument(call.getObject("doc"));
+                    } catch (Exception ex) {}
+                    if (doc == null) {
+                        throw new InvalidParameterException("doc must be a valid document object");
+                    }
 
-            // If we waited then we need to return a summary of what we inserted
-            JSArray insertedIds = new JSArray();
-            int insertedCount = 0;
-            for (Document doc : docs) {
+                    // The raw bytes are passed through untouched, so if there is no _id one is
+                    // generated by the database and we can't report it
+                    callStats.executing();
+                    collection.insertOne(doc, opts);
+                    callStats.serializing();
+
+                    ret.put("success", true);
+                    ret.put("insertedId", doc.containsKey("_id") ? getIdJson(doc.get("_id")) : null);
+                    resolve(call, ret);
+                    return;
+                }
+
+                MongoCollection<Document> collection = getCollection(call, db);
+                Document doc = null;
                 try {
-                    JSObject docJson = new JSObject(doc.toJson(jsonSettings));
-                    insertedIds.put(docJson.get("_id"));
-                } catch (JSONException ex) {
-                    insertedIds.put(null);
+                    doc = OptionParser.getDocument(call.getObject("doc"));
+                } catch (Exception ex) {}
+                if (doc == null) {
+                    throw new InvalidParameterException("doc must be a valid document object");
                 }
-                insertedCount++;
-            }
 
-            ret.put("success", true);
-            ret.put("insertedCount", insertedCount);
-            ret.put("insertedIds", insertedIds);
-            call.resolve(ret);
+                callStats.executing();
+                collection.insertOne(doc, opts);
+                callStats.serializing();
+
+                ret.put("success", true);
 
+                if (doc.containsKey("_id")) {
+                    ret.put("insertedId", getIdJson(doc.get("_id")));
+                } else {
+                    ret.put("insertedId", null);
+                }
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute insertOne: " + ex.getMessage(), ex);
+            }
+        });
+    }
+    private <TDocument> List<TDocument> getInsertDocuments(JSArray jsArr, Class<TDocument> documentClass) throws InvalidParameterException {
+        try {
+            return OptionParser.getDocumentArray(jsArr, documentClass);
         } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute insertMany: " + ex.getMessage(), ex);
+            Throwable cause = ex.getCause();
+            throw new InvalidParameterException("docs[" + ex.getMessage() + "] must be a valid document" + (cause != null ? ": " + cause.getMessage() : ""));
         }
     }
+    @PluginMethod()
+    public void insertMany(PluginCall call) {
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                boolean useBson = call.getBoolean("useBson", false);
+
+                JSArray jsArr = call.getArray("docs");
+                if (jsArr == null) {
+                    throw new InvalidParameterException("docs must be a valid array of documents to insert");
+                }
+
+                InsertManyOptions opts = OptionParser.getInsertManyOptions(call.getObject("options"));
+
+                MongoCollection<?> collection;
+                List<?> docs;
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> bsonCollection = getCollection(call, db, RawBsonDocument.class);
+                    List<RawBsonDocument> bsonDocs = getInsertDocuments(jsArr, RawBsonDocument.class);
+                    callStats.executing();
+                    bsonCollection.insertMany(bsonDocs, opts);
+                    callStats.serializing();
+                    collection = bsonCollection;
+                    docs = bsonDocs;
+                } else {
+                    MongoCollection<Document> docCollection = getCollection(call, db);
+                    List<Document> docList = getInsertDocuments(jsArr, Document.class);
+                    callStats.executing();
+                    docCollection.insertMany(docList, opts);
+                    callStats.serializing();
+                    collection = docCollection;
+                    docs = docList;
+                }
+
+                JSObject ret = new JSObject();
+                if (!collection.getWriteConcern().isAcknowledged()) {
+                    // Write preference is "don't wait", so we don't
+                    // know how the write went
+                    ret.put("success", true);
+                    ret.put("insertedCount", null);
+                    ret.put("insertedIds", null);
+                    resolve(call, ret);
+                    return;
+                }
+
+                // If we waited then we need to return a summary of what we inserted
+                JSArray insertedIds = new JSArray();
+                int insertedCount = 0;
+                for (Object doc : docs) {
+                    if (doc instanceof RawBsonDocument) {
+                        RawBsonDocument bsonDoc = (RawBsonDocument) doc;
+                        insertedIds.put(bsonDoc.containsKey("_id") ? getIdJson(bsonDoc.get("_id")) : null);
+                    } else {
+                        insertedIds.put(getIdJson(((Document) doc).get("_id")));
+                    }
+                    insertedCount++;
+                }
+
+                ret.put("success", true);
+                ret.put("insertedCount", insertedCount);
+                ret.put("insertedIds", insertedIds);
+                resolve(call, ret);
+
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute insertMany: " + ex.getMessage(), ex);
+            }
+        });
+    }
     private void returnUpdateResult(PluginCall call, UpdateResult res) {
+        callStats.serializing();
         JSObject ret = new JSObject();
         ret.put("success", true);
         if (res.wasAcknowledged()) {
@@ -712,144 +1728,174 @@ public class MongoDBMobile extends Plugin {
             ret.put("upsertedId", null);
         }
 
-        call.resolve(ret);
+        resolve(call, ret);
 
     }
     @PluginMethod()
     public void replaceOne(PluginCall call) {
-        try {
-            Document replacement = null;
+        execution.write(call, getNamespaceKey(call), () -> {
             try {
-                replacement = OptionParser.getDocument(call.getObject("replacement"));
-            } catch (Exception ex) {}
-            if (replacement == null) {
-                throw new InvalidParameterException("replacement must be a valid document object");
-            }
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
+                boolean useBson = call.getBoolean("useBson", false);
+                Class<?> documentClass = useBson ? RawBsonDocument.class : Document.class;
+                Object replacement = null;
+                try {
+                    replacement = OptionParser.getDocumentAs(call.getObject("replacement"), documentClass);
+                } catch (Exception ex) {}
+                if (replacement == null) {
+                    throw new InvalidParameterException("replacement must be a valid document object");
+                }
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
 
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
+                MongoDatabase db = getDatabase(call);
 
-            ReplaceOptions opts = OptionParser.getReplaceOptions(call.getObject("options"));
+                ReplaceOptions opts = OptionParser.getReplaceOptions(call.getObject("options"));
 
-            UpdateResult result = collection.replaceOne(filterDoc, replacement, opts);
+                UpdateResult result;
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
+                    callStats.executing();
+                    result = collection.replaceOne(filterDoc, (RawBsonDocument) replacement, opts);
+                    callStats.serializing();
+                } else {
+                    MongoCollection<Document> collection = getCollection(call, db);
+                    callStats.executing();
+                    result = collection.replaceOne(filterDoc, (Document) replacement, opts);
+                    callStats.serializing();
+                }
 
-            returnUpdateResult(call, result);
+                returnUpdateResult(call, result);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute replaceOne: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute replaceOne: " + ex.getMessage(), ex);
+            }
+        });
     }
     @PluginMethod()
     public void updateOne(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            Document update = null;
+        execution.write(call, getNamespaceKey(call), () -> {
             try {
-                update = OptionParser.getDocument(call.getObject("update"));
-            } catch (Exception ex) {}
-            if (update == null) {
-                throw new InvalidParameterException("update must be a valid document object");
-            }
-            UpdateOptions opts = OptionParser.getUpdateOptions(call.getObject("options"));
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
+                Bson update = null;
+                try {
+                    update = OptionParser.getBson(call.getObject("update"), call.getBoolean("useBson", false));
+                } catch (Exception ex) {}
+                if (update == null) {
+                    throw new InvalidParameterException("update must be a valid document object");
+                }
+                UpdateOptions opts = OptionParser.getUpdateOptions(call.getObject("options"));
 
-            UpdateResult result = collection.updateOne(filterDoc, update, opts);
+                callStats.executing();
+                UpdateResult result = collection.updateOne(filterDoc, update, opts);
+                callStats.serializing();
 
-            returnUpdateResult(call, result);
+                returnUpdateResult(call, result);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute updateOne: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute updateOne: " + ex.getMessage(), ex);
+            }
+        });
     }
     @PluginMethod()
     public void updateMany(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            Document update = null;
+        execution.write(call, getNamespaceKey(call), () -> {
             try {
-                update = OptionParser.getDocument(call.getObject("update"));
-            } catch (Exception ex) {}
-            if (update == null) {
-                throw new InvalidParameterException("update must be a valid document object");
-            }
-            UpdateOptions opts = OptionParser.getUpdateOptions(call.getObject("options"));
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
+                Bson update = null;
+                try {
+                    update = OptionParser.getBson(call.getObject("update"), call.getBoolean("useBson", false));
+                } catch (Exception ex) {}
+                if (update == null) {
+                    throw new InvalidParameterException("update must be a valid document object");
+                }
+                UpdateOptions opts = OptionParser.getUpdateOptions(call.getObject("options"));
 
-            UpdateResult result = collection.updateMany(filterDoc, update, opts);
+                callStats.executing();
+                UpdateResult result = collection.updateMany(filterDoc, update, opts);
+                callStats.serializing();
 
-            returnUpdateResult(call, result);
+                returnUpdateResult(call, result);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute updateMany: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute updateMany: " + ex.getMessage(), ex);
+            }
+        });
     }
     @PluginMethod()
     public void deleteOne(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            DeleteOptions opts = OptionParser.getDeleteOptions(call.getObject("options"));
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
+                DeleteOptions opts = OptionParser.getDeleteOptions(call.getObject("options"));
 
-            DeleteResult result = collection.deleteOne(filterDoc, opts);
+                callStats.executing();
+                DeleteResult result = collection.deleteOne(filterDoc, opts);
+                callStats.serializing();
 
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            ret.put("deletedCount", result.wasAcknowledged() ? result.getDeletedCount() : null);
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                ret.put("deletedCount", result.wasAcknowledged() ? result.getDeletedCount() : null);
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute deleteOne: " + ex.getMessage(), ex);
-        }
-    }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute deleteOne: " + ex.getMessage(), ex);
+            }
+        });
+    }
     @PluginMethod()
     public void deleteMany(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            DeleteOptions opts = OptionParser.getDeleteOptions(call.getObject("options"));
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
+                DeleteOptions opts = OptionParser.getDeleteOptions(call.getObject("options"));
 
-            DeleteResult result = collection.deleteMany(filterDoc, opts);
+                callStats.executing();
+                DeleteResult result = collection.deleteMany(filterDoc, opts);
+                callStats.serializing();
 
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            ret.put("deletedCount", result.wasAcknowledged() ? result.getDeletedCount() : null);
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                ret.put("deletedCount", result.wasAcknowledged() ? result.getDeletedCount() : null);
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute deleteMany: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute deleteMany: " + ex.getMessage(), ex);
+            }
+        });
     }
 
 
@@ -858,88 +1904,101 @@ public class MongoDBMobile extends Plugin {
      *******************/
     @PluginMethod()
     public void createIndexes(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
-
-            JSArray indexes = call.getArray("indexes");
-            if (indexes == null || indexes.length() == 0) {
-                throw new InvalidParameterException("indexes must be Array<[keys: Document, options?: IndexOptions]> with length >= 1");
-            }
-            ArrayList<IndexModel> indexModels = new ArrayList<>();
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
 
-            for (int i = 0; i < indexes.length(); ++i) {
-                JSONArray curDef;
-                try {
-                    curDef = indexes.getJSONArray(i);
-                } catch (JSONException ex) {
-                    throw new InvalidParameterException("indexes[" + i + "] must be [keys: Document, options?: IndexOptions] (as a 1 or 2 element array)");
+                JSArray indexes = call.getArray("indexes");
+                if (indexes == null || indexes.length() == 0) {
+                    throw new InvalidParameterException("indexes must be Array<[keys: Document, options?: IndexOptions]> with length >= 1");
                 }
-                JSONObject keys = curDef.getJSONObject(0);
-                JSONObject opts = curDef.length() > 1 ? curDef.getJSONObject(1) : null;
+                ArrayList<IndexModel> indexModels = new ArrayList<>();
+
+                for (int i = 0; i < indexes.length(); ++i) {
+                    JSONArray curDef;
+                    try {
+                        curDef = indexes.getJSONArray(i);
+                    } catch (JSONException ex) {
+                        throw new InvalidParameterException("indexes[" + i + "] must be [keys: Document, options?: IndexOptions] (as a 1 or 2 element array)");
+                    }
+                    JSONObject keys = curDef.getJSONObject(0);
+                    JSONObject opts = curDef.length() > 1 ? curDef.getJSONObject(1) : null;
 
-                indexModels.add(OptionParser.getIndexModel(keys, opts));
-            }
+                    indexModels.add(OptionParser.getIndexModel(keys, opts));
+                }
 
-            List<String> createResults = collection.createIndexes(indexModels);
+                callStats.executing();
+                List<String> createResults = collection.createIndexes(indexModels);
+                callStats.serializing();
 
-            JSObject ret = new JSObject();
-            String[] resultsArr = createResults.toArray(new String[createResults.size()]);
-            ret.put("indexesCreated", new JSArray(resultsArr));
+                JSObject ret = new JSObject();
+                String[] resultsArr = createResults.toArray(new String[createResults.size()]);
+                ret.put("indexesCreated", new JSArray(resultsArr));
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute createIndexes: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute createIndexes: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     @PluginMethod()
     public void dropIndex(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
 
-            String name = call.getString("name");
-            JSObject keys = call.getObject("keys");
+                String name = call.getString("name");
+                JSObject keys = call.getObject("keys");
+
+                DropIndexOptions opts = new DropIndexOptions();
+                // TODO: maxtime is supported only on android; should we support it?
+
+                if (name != null) {
+                    callStats.executing();
+                    collection.dropIndex(name, opts);
+                    callStats.serializing();
+                } else if (keys != null) {
+                    Document keysDoc = OptionParser.getDocument(keys);
+                    callStats.executing();
+                    collection.dropIndex(keysDoc);
+                    callStats.serializing();
+                } else {
+                    throw new InvalidParameterException("name: string or keys: {[keyName: string]: 1|-1} expected");
+                }
 
-            DropIndexOptions opts = new DropIndexOptions();
-            // TODO: maxtime is supported only on android; should we support it?
+                JSObject ret = new JSObject();
+                ret.put("done", true);
 
-            if (name != null) {
-                collection.dropIndex(name, opts);
-            } else if (keys != null) {
-                Document keysDoc = OptionParser.getDocument(keys);
-                collection.dropIndex(keysDoc);
-            } else {
-                throw new InvalidParameterException("name: string or keys: {[keyName: string]: 1|-1} expected");
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute dropIndex: " + ex.getMessage(), ex);
             }
-
-            JSObject ret = new JSObject();
-            ret.put("done", true);
-
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute dropIndex: " + ex.getMessage(), ex);
-        }
+        });
     }
 
     @PluginMethod()
     public void listIndexes(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
+        execution.read(call, () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                MongoCollection<Document> collection = getCollection(call, db);
 
-            MongoCursor<Document> cursor = collection.listIndexes().iterator();
-            returnDocsFromCursor(call, cursor);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute listIndexes: " + ex.getMessage(), ex);
-        }
+                callStats.executing();
+                MongoCursor<Document> cursor = collection.listIndexes().iterator();
+                returnDocsFromCursor(call, cursor);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute listIndexes: " + ex.getMessage(), ex);
+            }
+        });
     }
 
 
@@ -948,142 +2007,160 @@ public class MongoDBMobile extends Plugin {
      ***************************/
     @PluginMethod()
     public void findOneAndDelete(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            FindOneAndDeleteOptions opts = OptionParser.getFindOneAndDeleteOptions(call.getObject("options"));
-            boolean useBson = call.getBoolean("useBson", false);
+        execution.write(call, getNamespaceKey(call), () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
+                }
+                FindOneAndDeleteOptions opts = OptionParser.getFindOneAndDeleteOptions(call.getObject("options"));
+                boolean useBson = call.getBoolean("useBson", false);
 
 
-            JSObject ret = new JSObject();
-            if (useBson) {
-                MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
-
-                RawBsonDocument doc = collection.findOneAndDelete(filterDoc, opts);
-                if (doc == null) {
-                    ret.put("doc", null);
-                } else {
-                    ret.put("doc", getBsonBase64Doc(doc));
-                }
-            } else {
-                MongoCollection<Document> collection = getCollection(call, db);
+                JSObject ret = new JSObject();
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
 
-                Document doc = collection.findOneAndDelete(filterDoc, opts);
-                if (doc == null) {
-                    ret.put("doc", null);
+                    callStats.executing();
+                    RawBsonDocument doc = collection.findOneAndDelete(filterDoc, opts);
+                    callStats.serializing();
+                    if (doc == null) {
+                        ret.put("doc", null);
+                    } else {
+                        ret.put("doc", getBsonBase64Doc(doc));
+                    }
                 } else {
-                    ret.put("doc", new JSObject(doc.toJson(jsonSettings)));
+                    MongoCollection<Document> collection = getCollection(call, db);
+
+                    callStats.executing();
+                    Document doc = collection.findOneAndDelete(filterDoc, opts);
+                    callStats.serializing();
+                    if (doc == null) {
+                        ret.put("doc", null);
+                    } else {
+                        ret.put("doc", JSObjectWriter.toJSObject(doc, jsonSettings));
+                    }
                 }
-            }
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute findOneAndDelete: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute findOneAndDelete: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     @PluginMethod()
     public void findOneAndReplace(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            Document replacement = null;
+        execution.write(call, getNamespaceKey(call), () -> {
             try {
-                replacement = OptionParser.getDocument(call.getObject("replacement"));
-            } catch (Exception ex) {}
-            if (replacement == null) {
-                throw new InvalidParameterException("replacement must be a valid document object");
-            }
-            FindOneAndReplaceOptions opts = OptionParser.getFindOneAndReplaceOptions(call.getObject("options"));
-            boolean useBson = call.getBoolean("useBson", false);
-
-
-            JSObject ret = new JSObject();
-            if (useBson) {
-                MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
-                RawBsonDocument repl = RawBsonDocument.parse(replacement.toJson(jsonSettings));
-
-                RawBsonDocument doc = collection.findOneAndReplace(filterDoc, repl, opts);
-                if (doc == null) {
-                    ret.put("doc", null);
-                } else {
-                    ret.put("doc", getBsonBase64Doc(doc));
+                MongoDatabase db = getDatabase(call);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
                 }
-            } else {
-                MongoCollection<Document> collection = getCollection(call, db);
-
-                Document doc = collection.findOneAndReplace(filterDoc, replacement, opts);
-                if (doc == null) {
-                    ret.put("doc", null);
+                Document replacement = null;
+                try {
+                    replacement = OptionParser.getDocument(call.getObject("replacement"));
+                } catch (Exception ex) {}
+                if (replacement == null) {
+                    throw new InvalidParameterException("replacement must be a valid document object");
+                }
+                FindOneAndReplaceOptions opts = OptionParser.getFindOneAndReplaceOptions(call.getObject("options"));
+                boolean useBson = call.getBoolean("useBson", false);
+
+
+                JSObject ret = new JSObject();
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
+                    RawBsonDocument repl = OptionParser.toRawBsonDocument(replacement);
+
+                    callStats.executing();
+                    RawBsonDocument doc = collection.findOneAndReplace(filterDoc, repl, opts);
+                    callStats.serializing();
+                    if (doc == null) {
+                        ret.put("doc", null);
+                    } else {
+                        ret.put("doc", getBsonBase64Doc(doc));
+                    }
                 } else {
-                    ret.put("doc", new JSObject(doc.toJson(jsonSettings)));
+                    MongoCollection<Document> collection = getCollection(call, db);
+
+                    callStats.executing();
+                    Document doc = collection.findOneAndReplace(filterDoc, replacement, opts);
+                    callStats.serializing();
+                    if (doc == null) {
+                        ret.put("doc", null);
+                    } else {
+                        ret.put("doc", JSObjectWriter.toJSObject(doc, jsonSettings));
+                    }
                 }
-            }
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute findOneAndReplace: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute findOneAndReplace: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     @PluginMethod()
     public void findOneAndUpdate(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            Document update = null;
+        execution.write(call, getNamespaceKey(call), () -> {
             try {
-                update = OptionParser.getDocument(call.getObject("update"));
-            } catch (Exception ex) {}
-            if (update == null) {
-                throw new InvalidParameterException("update must be a valid document object");
-            }
-            FindOneAndUpdateOptions opts = OptionParser.getFindOneAndUpdateOptions(call.getObject("options"));
-            boolean useBson = call.getBoolean("useBson", false);
-
-            JSObject ret = new JSObject();
-            if (useBson) {
-                MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
-
-                RawBsonDocument doc = collection.findOneAndUpdate(filterDoc, update, opts);
-                if (doc == null) {
-                    ret.put("doc", null);
-                } else {
-                    ret.put("doc", getBsonBase64Doc(doc));
+                MongoDatabase db = getDatabase(call);
+                Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
+                if (filterDoc == null) {
+                    filterDoc = new Document();
                 }
-            } else {
-                MongoCollection<Document> collection = getCollection(call, db);
-
-                Document doc = collection.findOneAndUpdate(filterDoc, update, opts);
-                if (doc == null) {
-                    ret.put("doc", null);
+                Document update = null;
+                try {
+                    update = OptionParser.getDocument(call.getObject("update"));
+                } catch (Exception ex) {}
+                if (update == null) {
+                    throw new InvalidParameterException("update must be a valid document object");
+                }
+                FindOneAndUpdateOptions opts = OptionParser.getFindOneAndUpdateOptions(call.getObject("options"));
+                boolean useBson = call.getBoolean("useBson", false);
+
+                JSObject ret = new JSObject();
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
+
+                    callStats.executing();
+                    RawBsonDocument doc = collection.findOneAndUpdate(filterDoc, update, opts);
+                    callStats.serializing();
+                    if (doc == null) {
+                        ret.put("doc", null);
+                    } else {
+                        ret.put("doc", getBsonBase64Doc(doc));
+                    }
                 } else {
-                    ret.put("doc", new JSObject(doc.toJson(jsonSettings)));
+                    MongoCollection<Document> collection = getCollection(call, db);
+
+                    callStats.executing();
+                    Document doc = collection.findOneAndUpdate(filterDoc, update, opts);
+                    callStats.serializing();
+                    if (doc == null) {
+                        ret.put("doc", null);
+                    } else {
+                        ret.put("doc", JSObjectWriter.toJSObject(doc, jsonSettings));
+                    }
                 }
-            }
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute findOneAndUpdate: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute findOneAndUpdate: " + ex.getMessage(), ex);
+            }
+        });
     }
 
 
@@ -1092,349 +2169,432 @@ public class MongoDBMobile extends Plugin {
      ****************************/
     @PluginMethod()
     public void newBulkWrite(PluginCall call) {
-        try {
-            MongoDatabase db = getDatabase(call);
-            MongoCollection<Document> collection = getCollection(call, db);
+        execution.inline(call, () -> {
+            try {
+                MongoDatabase db = getDatabase(call);
+                boolean useBson = call.getBoolean("useBson", false);
 
-            BulkWriteOptions opts = OptionParser.getBulkWriteOptions(call.getObject("options"));
+                BulkWriteOptions opts = OptionParser.getBulkWriteOptions(call.getObject("options"));
 
-            UUID opId = UUID.randomUUID();
+                BulkWriteBatch<?> batch;
+                if (useBson) {
+                    MongoCollection<RawBsonDocument> collection = getCollection(call, db, RawBsonDocument.class);
+                    batch = new BulkWriteBatch<>(collection, opts);
+                } else {
+                    MongoCollection<Document> collection = getCollection(call, db);
+                    batch = new BulkWriteBatch<>(collection, opts);
+                }
+                Double flushBytes = call.getDouble("flushBytes", 0.0);
+                batch.setAutoFlush(call.getInt("flushEvery", 0), flushBytes.longValue());
 
-            BulkWriteBatch<Document> batch = new BulkWriteBatch<>(collection, opts);
-            bulkMap.put(opId, batch);
+                UUID opId = bulkMap.add(batch);
 
-            JSObject ret = new JSObject();
-            ret.put("operationId", opId.toString());
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute newBulkWrite: " + ex.getMessage(), ex);
-        }
+                JSObject ret = new JSObject();
+                ret.put("operationId", opId.toString());
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute newBulkWrite: " + ex.getMessage(), ex);
+            }
+        });
     }
-    @PluginMethod()
-    public void bulkWriteAddDeleteOne(PluginCall call) {
+
+    /**
+     * Helper to look up and lock the bulk operation referred to by the operationId of the call;
+     * the caller must release the handle when done with it
+     * @param call
+     * @return
+     * @throws InvalidParameterException
+     */
+    private HandleRegistry.Handle<BulkWriteBatch<?>> acquireBulkWriteBatch(PluginCall call) throws InvalidParameterException {
+        String opIdStr = call.getString("operationId", "n/a");
+        UUID operationId = null;
         try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
-            try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
+            operationId = UUID.fromString(opIdStr);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidParameterException("operationId must be provided and must be a string");
+        }
 
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
+        HandleRegistry.Handle<BulkWriteBatch<?>> handle = bulkMap.acquire(operationId);
 
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
-            }
+        if (handle == null) {
+            throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
+        }
+        return handle;
+    }
 
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
+    /**
+     * Helper which parses the arguments for a single bulk operation into a WriteModel;
+     * documents are decoded as the document class of the batch, so a useBson batch gets the
+     * raw BSON bytes without any parsing
+     * @param batch
+     * @param type deleteOne | deleteMany | insertOne | replaceOne | updateOne | updateMany
+     * @param args the arguments of the matching bulkWriteAdd* method
+     * @return
+     * @throws InvalidParameterException
+     */
+    private <TDocument> WriteModel<TDocument> getBulkWriteModel(BulkWriteBatch<TDocument> batch, String type, JSONObject args) throws InvalidParameterException {
+        if (type.equals("insertOne")) {
+            TDocument doc = null;
+            try {
+                doc = OptionParser.getDocumentAs(args.optJSONObject("doc"), batch.getDocumentClass());
+            } catch (Exception ex) {}
+            if (doc == null) {
+                throw new InvalidParameterException("doc must be a valid document object");
             }
+            return new InsertOneModel<>(doc);
+        }
 
-            DeleteOptions opts = OptionParser.getDeleteOptions(call.getObject("options"));
-
-            DeleteOneModel<Document> operation = new DeleteOneModel<>(filterDoc, opts);
-
-            batch.addRequest(operation);
+        switch (type) {
+            case "deleteOne":
+            case "deleteMany":
+            case "replaceOne":
+            case "updateOne":
+            case "updateMany":
+                break;
+            default:
+                throw new InvalidParameterException("unknown bulk operation type " + type);
+        }
 
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteAddDeleteOne: " + ex.getMessage(), ex);
+        JSONObject filter = args.optJSONObject("filter");
+        Document filterDoc = filter != null ? OptionParser.getDocument(filter) : new Document();
+        // The models don't take null options, and options are optional
+        JSONObject options = args.optJSONObject("options");
+        if (options == null) {
+            options = new JSONObject();
         }
 
+        switch (type) {
+            case "deleteOne":
+                return new DeleteOneModel<>(filterDoc, OptionParser.getDeleteOptions(options));
+            case "deleteMany":
+                return new DeleteManyModel<>(filterDoc, OptionParser.getDeleteOptions(options));
+            case "replaceOne":
+                TDocument replacement = null;
+                try {
+                    replacement = OptionParser.getDocumentAs(args.optJSONObject("replacement"), batch.getDocumentClass());
+                } catch (Exception ex) {}
+                if (replacement == null) {
+                    throw new InvalidParameterException("replacement must be a valid document object");
+                }
+                return new ReplaceOneModel<>(filterDoc, replacement, OptionParser.getReplaceOptions(options));
+            case "updateOne":
+            case "updateMany":
+                Bson update = null;
+                try {
+                    update = OptionParser.getBson(args.optJSONObject("update"), batch.getDocumentClass() == RawBsonDocument.class);
+                } catch (Exception ex) {}
+                if (update == null) {
+                    throw new InvalidParameterException("update must be a valid document object");
+                }
+                UpdateOptions opts = OptionParser.getUpdateOptions(options);
+                if (type.equals("updateOne")) {
+                    return new UpdateOneModel<>(filterDoc, update, opts);
+                }
+                return new UpdateManyModel<>(filterDoc, update, opts);
+        }
+        throw new InvalidParameterException("unknown bulk operation type " + type);
     }
-    @PluginMethod()
-    public void bulkWriteAddDeleteMany(PluginCall call) {
-        try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
-            try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
-
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
-
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
+    private <TDocument> void addBulkWriteModel(BulkWriteBatch<TDocument> batch, String type, JSONObject args) {
+        WriteModel<TDocument> model = getBulkWriteModel(batch, type, args);
+        callStats.executing();
+        addBulkWriteRequests(batch, Collections.singletonList(model));
+    }
+    /**
+     * Parses every operation before adding any of them, so if any are invalid nothing is added
+     * and the error lists the index of each bad operation
+     * @param batch
+     * @param operations array of {[type]: args} where args are as for the matching bulkWriteAdd* method
+     * @return the number of operations added
+     */
+    private <TDocument> int addBulkWriteModels(BulkWriteBatch<TDocument> batch, JSONArray operations) throws InvalidParameterException {
+        ArrayList<WriteModel<TDocument>> models = new ArrayList<>(operations.length());
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < operations.length(); ++i) {
+            JSONObject op = operations.optJSONObject(i);
+            String type = null;
+            JSONObject args = null;
+            if (op != null && op.length() == 1) {
+                type = (String) op.keys().next();
+                args = op.optJSONObject(type);
             }
-
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
+            try {
+                if (args == null) {
+                    throw new InvalidParameterException("expected {deleteOne|deleteMany|insertOne|replaceOne|updateOne|updateMany: {...}}");
+                }
+                models.add(getBulkWriteModel(batch, type, args));
+            } catch (Exception ex) {
+                errors.append(errors.length() == 0 ? "" : "; ");
+                errors.append("operations[").append(i).append("]");
+                if (type != null) {
+                    errors.append(".").append(type);
+                }
+                errors.append(": ").append(ex.getMessage());
             }
-
-            DeleteOptions opts = OptionParser.getDeleteOptions(call.getObject("options"));
-            DeleteManyModel<Document> operation = new DeleteManyModel<>(filterDoc, opts);
-            batch.addRequest(operation);
-
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteAddDeleteMany: " + ex.getMessage(), ex);
+        }
+        if (errors.length() > 0) {
+            throw new InvalidParameterException(errors.toString());
         }
 
+        callStats.executing();
+        addBulkWriteRequests(batch, models);
+        return models.size();
     }
-    @PluginMethod()
-    public void bulkWriteAddInsertOne(PluginCall call) {
+    /**
+     * Adding to a batch usually only buffers; the query cache for the collection is only
+     * invalidated if it auto-flushed (or failed trying to)
+     */
+    private <TDocument> void addBulkWriteRequests(BulkWriteBatch<TDocument> batch, List<WriteModel<TDocument>> models) {
+        int flushed = batch.getFlushedCount();
+        boolean failed = true;
         try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
-            try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
+            for (WriteModel<TDocument> model : models) {
+                batch.addRequest(model);
             }
-
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
-
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
+            failed = false;
+        } finally {
+            if (failed || batch.getFlushedCount() != flushed) {
+                queryCache.invalidate(batch.getNamespace());
             }
+        }
+    }
 
-            Document doc = null;
+    @PluginMethod()
+    public void bulkWriteAddDeleteOne(PluginCall call) {
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                doc = OptionParser.getDocument(call.getObject("doc"));
-            } catch (Exception ex) {}
-            if (doc == null) {
-                throw new InvalidParameterException("doc must be a valid document object");
-            }
-
-            InsertOneModel<Document> operation = new InsertOneModel<>(doc);
-            batch.addRequest(operation);
-
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteAddInsertOne: " + ex.getMessage(), ex);
-        }
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    addBulkWriteModel(handle.value, "deleteOne", call.getData());
+                } finally {
+                    handle.release();
+                }
 
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddDeleteOne: " + ex.getMessage(), ex);
+            }
+        });
     }
     @PluginMethod()
-    public void bulkWriteAddReplaceOne(PluginCall call) {
-        try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
+    public void bulkWriteAddDeleteMany(PluginCall call) {
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
-
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    addBulkWriteModel(handle.value, "deleteMany", call.getData());
+                } finally {
+                    handle.release();
+                }
 
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddDeleteMany: " + ex.getMessage(), ex);
             }
+        });
+    }
+    @PluginMethod()
+    public void bulkWriteAddInsertOne(PluginCall call) {
+        execution.write(call, getBulkWriteKey(call), false, () -> {
+            try {
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    addBulkWriteModel(handle.value, "insertOne", call.getData());
+                } finally {
+                    handle.release();
+                }
 
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddInsertOne: " + ex.getMessage(), ex);
             }
-            Document replacement = null;
+        });
+    }
+    @PluginMethod()
+    public void bulkWriteAddReplaceOne(PluginCall call) {
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                replacement = OptionParser.getDocument(call.getObject("replacement"));
-            } catch (Exception ex) {}
-            if (replacement == null) {
-                throw new InvalidParameterException("replacement must be a valid document object");
-            }
-
-            ReplaceOptions opts = OptionParser.getReplaceOptions(call.getObject("options"));
-            ReplaceOneModel<Document> operation = new ReplaceOneModel<>(filterDoc, replacement, opts);
-            batch.addRequest(operation);
-
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteAddReplaceOne: " + ex.getMessage(), ex);
-        }
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    addBulkWriteModel(handle.value, "replaceOne", call.getData());
+                } finally {
+                    handle.release();
+                }
 
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddReplaceOne: " + ex.getMessage(), ex);
+            }
+        });
     }
     @PluginMethod()
     public void bulkWriteAddUpdateOne(PluginCall call) {
-        try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
-
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
-
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
-            }
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    addBulkWriteModel(handle.value, "updateOne", call.getData());
+                } finally {
+                    handle.release();
+                }
 
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            Document update = null;
-            try {
-                update = OptionParser.getDocument(call.getObject("update"));
-            } catch (Exception ex) {}
-            if (update == null) {
-                throw new InvalidParameterException("update must be a valid document object");
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddUpdateOne: " + ex.getMessage(), ex);
             }
-
-            UpdateOptions opts = OptionParser.getUpdateOptions(call.getObject("update"));
-            UpdateOneModel<Document> operation = new UpdateOneModel<>(filterDoc, update, opts);
-            batch.addRequest(operation);
-
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteAddUpdateOne: " + ex.getMessage(), ex);
-        }
-
+        });
     }
 
     @PluginMethod()
     public void bulkWriteAddUpdateMany(PluginCall call) {
-        try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
-
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    addBulkWriteModel(handle.value, "updateMany", call.getData());
+                } finally {
+                    handle.release();
+                }
 
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddUpdateMany: " + ex.getMessage(), ex);
             }
+        });
+    }
 
-            Document filterDoc = OptionParser.getDocument(call.getObject("filter"));
-            if (filterDoc == null) {
-                filterDoc = new Document();
-            }
-            Document update = null;
+    @PluginMethod()
+    public void bulkWriteAddMany(PluginCall call) {
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                update = OptionParser.getDocument(call.getObject("update"));
-            } catch (Exception ex) {}
-            if (update == null) {
-                throw new InvalidParameterException("update must be a valid document object");
-            }
-
-            UpdateOptions opts = OptionParser.getUpdateOptions(call.getObject("update"));
-            UpdateManyModel<Document> operation = new UpdateManyModel<>(filterDoc, update, opts);
-            batch.addRequest(operation);
+                JSArray operations = call.getArray("operations");
+                if (operations == null) {
+                    throw new InvalidParameterException("operations must be an array of bulk operations");
+                }
 
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            call.resolve(ret);
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteAddUpdateMany: " + ex.getMessage(), ex);
-        }
+                int added;
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                try {
+                    added = addBulkWriteModels(handle.value, operations);
+                } finally {
+                    handle.release();
+                }
 
+                JSObject ret = new JSObject();
+                ret.put("success", true);
+                ret.put("added", added);
+                resolve(call, ret);
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteAddMany: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     @PluginMethod()
     public void bulkWriteCancel(PluginCall call) {
-        try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
+        // Queued behind the adds already made to the batch; removing it waits for whichever call holds it
+        execution.write(call, getBulkWriteKey(call), false, () -> {
             try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
+                String opIdStr = call.getString("operationId", "n/a");
+                UUID operationId = null;
+                try {
+                    operationId = UUID.fromString(opIdStr);
+                } catch (IllegalArgumentException ex) {
+                    throw new InvalidParameterException("operationId must be provided and must be a string");
+                }
 
-            BulkWriteBatch<Document> batch = bulkMap.remove(operationId);
+                BulkWriteBatch<?> batch = bulkMap.remove(operationId);
 
-            JSObject ret = new JSObject();
+                JSObject ret = new JSObject();
 
-            ret.put("removed", batch != null);
+                ret.put("removed", batch != null);
 
-            call.resolve(ret);
+                resolve(call, ret);
 
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteCancel: " + ex.getMessage(), ex);
-        }
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteCancel: " + ex.getMessage(), ex);
+            }
+        });
     }
 
     @PluginMethod()
     public void bulkWriteExecute(PluginCall call) {
-        try {
-            String opIdStr = call.getString("operationId", "n/a");
-            UUID operationId = null;
+        execution.write(call, getBulkWriteKey(call), () -> {
             try {
-                operationId = UUID.fromString(opIdStr);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidParameterException("operationId must be provided and must be a string");
-            }
-
-            BulkWriteBatch<Document> batch = bulkMap.get(operationId);
-
-            if (batch == null) {
-                throw new InvalidParameterException("operationId does not refer to a valid bulk operation");
-            }
-
-            BulkWriteResult result = batch.execute();
-
-            JSObject ret = new JSObject();
+                HandleRegistry.Handle<BulkWriteBatch<?>> handle = acquireBulkWriteBatch(call);
+                BulkWriteResult result;
+                try {
+                    callStats.executing();
+                    result = handle.value.execute();
+                    callStats.serializing();
+                    bulkMap.remove(handle);
+                } finally {
+                    handle.release();
+                }
 
-            if (!result.wasAcknowledged()) {
-                ret.put("deletedCount", null);
-                ret.put("insertedCount", null);
-                ret.put("matchedCount", null);
-                ret.put("modifiedCount", null);
-                ret.put("upsertedCount", null);
-                ret.put("insertedIds", null);
-                ret.put("upsertedIds", null);
-            } else {
-                ret.put("deletedCount", result.getDeletedCount());
-                ret.put("insertedCount", result.getInsertedCount());
-                ret.put("matchedCount", result.getMatchedCount());
-                ret.put("modifiedCount", result.getModifiedCount());
+                JSObject ret = new JSObject();
 
-                List<BulkWriteUpsert> upsertList = result.getUpserts();
-                ret.put("upsertedCount", upsertList.size());
-                JSArray upsertedIds = new JSArray();
-                for (BulkWriteUpsert upsert : upsertList) {
-                    upsertedIds.put(OptionParser.bsonToJson(upsert.getId()));
+                if (!result.wasAcknowledged()) {
+                    ret.put("deletedCount", null);
+                    ret.put("insertedCount", null);
+                    ret.put("matchedCount", null);
+                    ret.put("modifiedCount", null);
+                    ret.put("upsertedCount", null);
+                    ret.put("insertedIds", null);
+                    ret.put("upsertedIds", null);
+                } else {
+                    ret.put("deletedCount", result.getDeletedCount());
+                    ret.put("insertedCount", result.getInsertedCount());
+                    ret.put("matchedCount", result.getMatchedCount());
+                    ret.put("modifiedCount", result.getModifiedCount());
+
+                    List<BulkWriteUpsert> upsertList = result.getUpserts();
+                    ret.put("upsertedCount", upsertList.size());
+                    JSArray upsertedIds = new JSArray();
+                    for (BulkWriteUpsert upsert : upsertList) {
+                        upsertedIds.put(OptionParser.bsonToJson(upsert.getId()));
+                    }
+                    ret.put("upsertedIds", upsertedIds);
+                    ret.put("insertedIds", null);
                 }
-                ret.put("upsertedIds", upsertedIds);
-                ret.put("insertedIds", null);
-            }
 
-            bulkMap.remove(operationId);
-            call.resolve(ret);
-
-        } catch (InvalidParameterException ex) {
-            handleError(call, ex.getMessage(), ex);
-        } catch (Exception ex) {
-            handleError(call, "Could not execute bulkWriteExecute: " + ex.getMessage(), ex);
-        }
+                resolve(call, ret);
 
+            } catch (InvalidParameterException ex) {
+                handleError(call, ex.getMessage(), ex);
+            } catch (Exception ex) {
+                handleError(call, "Could not execute bulkWriteExecute: " + ex.getMessage(), ex);
+            }
+        });
     }
 
 }
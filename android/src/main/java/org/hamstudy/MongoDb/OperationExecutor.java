@@ -0,0 +1,419 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs plugin calls off the thread Capacitor delivers them on.
+ *
+ * Reads run concurrently on the read pool. Writes go through a queue per namespace (usually
+ * "db.collection") so writes to one collection run one at a time and in the order they were
+ * made, while writes to different collections and all reads carry on in parallel.
+ *
+ * A write to a whole database (namespace "db", e.g. dropDatabase) is ordered with the writes to
+ * every collection in it: it waits for the writes queued before it on any "db.*" queue, and
+ * writes queued after it on any of them wait for it to finish.
+ */
+public class OperationExecutor {
+    static final int DEFAULT_READ_THREADS = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    static final int DEFAULT_WRITE_THREADS = 2;
+
+    private final ThreadPoolExecutor readPool;
+    private final ThreadPoolExecutor writePool;
+    private final ConcurrentHashMap<String, SerialQueue> writeQueues = new ConcurrentHashMap<>();
+    // Database writes which haven't finished yet, by database; guarded by writeQueues
+    private final HashMap<String, ArrayList<DatabaseWrite>> pendingDatabaseWrites = new HashMap<>();
+    private volatile WriteListener writeListener = null;
+    private volatile CallStats callStats = null;
+
+    interface WriteListener {
+        /**
+         * Called after each write task which may change data finishes, whether it succeeded or not
+         * @param namespace the queue the write ran on
+         */
+        void onWriteComplete(String namespace);
+    }
+
+    /**
+     * Runs the tasks for a single namespace one after another on the write pool
+     */
+    private class SerialQueue {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean running = false;
+
+        synchronized void execute(Runnable task) {
+            tasks.add(task);
+            if (!running) {
+                scheduleNext();
+            }
+        }
+        private void scheduleNext() {
+            final Runnable next;
+            synchronized (this) {
+                next = tasks.poll();
+                running = next != null;
+            }
+            if (next instanceof DatabaseWriteStep) {
+                // The queue stays stopped (running) until the database write releases it
+                ((DatabaseWriteStep) next).write.arrived(this);
+            } else if (next != null) {
+                writePool.execute(() -> {
+                    try {
+                        next.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                });
+            }
+        }
+        synchronized int size() {
+            return tasks.size() + (running ? 1 : 0);
+        }
+    }
+
+    /**
+     * A write to a whole database. It has a step in each of the database's queues and runs once
+     * every one of them has reached its step; the queues are stopped there until it finishes.
+     */
+    private class DatabaseWrite {
+        final String db;
+        final Runnable task;
+        // Queues which haven't reached their step yet, plus one until all steps are added
+        private int waiting = 1;
+        private boolean started = false;
+        private boolean finished = false;
+        private final ArrayList<SerialQueue> stopped = new ArrayList<>();
+
+        DatabaseWrite(String db, Runnable task) {
+            this.db = db;
+            this.task = task;
+        }
+
+        /**
+         * Adds a step to queue; caller must hold the writeQueues lock
+         */
+        void addStep(SerialQueue queue) {
+            synchronized (this) {
+                if (!started) {
+                    waiting++;
+                }
+            }
+            queue.execute(new DatabaseWriteStep(this));
+        }
+        /**
+         * Called once all the steps are added
+         */
+        void stepsAdded() {
+            arrived(null);
+        }
+        void arrived(SerialQueue queue) {
+            boolean run = false;
+            boolean release = false;
+            synchronized (this) {
+                if (finished) {
+                    // A queue created while we ran; there's nothing left to wait for
+                    release = queue != null;
+                } else {
+                    if (queue != null) {
+                        stopped.add(queue);
+                    }
+                    if (!started && --waiting == 0) {
+                        started = true;
+                        run = true;
+                    }
+                }
+            }
+            if (release) {
+                queue.scheduleNext();
+            }
+            if (run) {
+                writePool.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        finish();
+                    }
+                });
+            }
+        }
+        private void finish() {
+            synchronized (writeQueues) {
+                ArrayList<DatabaseWrite> pending = pendingDatabaseWrites.get(db);
+                pending.remove(this);
+                if (pending.isEmpty()) {
+                    pendingDatabaseWrites.remove(db);
+                }
+            }
+            ArrayList<SerialQueue> toRelease;
+            synchronized (this) {
+                finished = true;
+                toRelease = new ArrayList<>(stopped);
+                stopped.clear();
+            }
+            for (SerialQueue queue : toRelease) {
+                queue.scheduleNext();
+            }
+        }
+    }
+    private static class DatabaseWriteStep implements Runnable {
+        final DatabaseWrite write;
+
+        DatabaseWriteStep(DatabaseWrite write) {
+            this.write = write;
+        }
+        @Override
+        public void run() {
+            // Never run; SerialQueue hands it to the DatabaseWrite instead
+        }
+    }
+
+    OperationExecutor() {
+        this(DEFAULT_READ_THREADS, DEFAULT_WRITE_THREADS);
+    }
+    OperationExecutor(int readThreads, int writeThreads) {
+        readPool = createPool("MongoDBMobile-read", readThreads);
+        writePool = createPool("MongoDBMobile-write", writeThreads);
+    }
+
+    private static ThreadPoolExecutor createPool(final String name, int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+    }
+
+    void setWriteListener(WriteListener listener) {
+        writeListener = listener;
+    }
+    /**
+     * Every call run through the executor is measured by stats (while it is enabled)
+     */
+    void setCallStats(CallStats stats) {
+        callStats = stats;
+    }
+
+    void setReadThreads(int threads) {
+        setPoolSize(readPool, threads);
+    }
+    void setWriteThreads(int threads) {
+        setPoolSize(writePool, threads);
+    }
+    int getReadThreads() {
+        return readPool.getMaximumPoolSize();
+    }
+    int getWriteThreads() {
+        return writePool.getMaximumPoolSize();
+    }
+    private static void setPoolSize(ThreadPoolExecutor pool, int threads) {
+        threads = Math.max(threads, 1);
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Runs task on the calling thread; for calls which are quick enough not to need a worker
+     */
+    void inline(PluginCall call, Runnable task) {
+        guard(call, task).run();
+    }
+
+    /**
+     * Runs task on the read pool
+     */
+    void read(PluginCall call, Runnable task) {
+        readPool.execute(guard(call, task));
+    }
+
+    /**
+     * Runs task on the read pool for work not tied to a call; task must handle its own errors
+     */
+    void read(Runnable task) {
+        readPool.execute(task);
+    }
+
+    /**
+     * Runs tasks in parallel on the read pool and returns once all of them have finished.
+     * The calling thread runs every task no pool thread has started yet, so this can be called
+     * from a read task without deadlocking when the pool is busy; tasks must handle their own errors
+     */
+    void readAll(List<Runnable> tasks) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(tasks.size());
+        ArrayList<Runnable> once = new ArrayList<>(tasks.size());
+        for (final Runnable task : tasks) {
+            final AtomicBoolean claimed = new AtomicBoolean(false);
+            once.add(() -> {
+                if (claimed.compareAndSet(false, true)) {
+                    try {
+                        task.run();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        // The first one is run here straight away, so only hand the rest to the pool
+        for (int i = 1; i < once.size(); i++) {
+            readPool.execute(once.get(i));
+        }
+        for (Runnable task : once) {
+            task.run();
+        }
+        done.await();
+    }
+
+    /**
+     * Runs task on the write pool after all earlier writes to the same namespace have finished;
+     * for a database namespace (no '.') that includes the earlier writes to all its collections
+     */
+    void write(PluginCall call, String namespace, Runnable task) {
+        write(call, namespace, true, task);
+    }
+
+    /**
+     * As write(call, namespace, task); the write listener is only told about the task if
+     * changesData is set, otherwise the task is responsible for any invalidation itself
+     */
+    void write(PluginCall call, final String namespace, boolean changesData, Runnable task) {
+        final Runnable guarded = guard(call, task);
+        Runnable queued = guarded;
+        if (changesData) {
+            queued = () -> {
+                try {
+                    guarded.run();
+                } finally {
+                    WriteListener listener = writeListener;
+                    if (listener != null) {
+                        listener.onWriteComplete(namespace);
+                    }
+                }
+            };
+        }
+
+        if (!namespace.isEmpty() && namespace.indexOf('.') < 0) {
+            writeDatabase(namespace, queued);
+        } else {
+            getQueue(namespace).execute(queued);
+        }
+    }
+
+    private SerialQueue getQueue(String namespace) {
+        SerialQueue queue = writeQueues.get(namespace);
+        if (queue != null) {
+            return queue;
+        }
+        synchronized (writeQueues) {
+            queue = writeQueues.get(namespace);
+            if (queue == null) {
+                queue = new SerialQueue();
+                // A new queue in a database with a write pending must wait for it too
+                int dot = namespace.indexOf('.');
+                ArrayList<DatabaseWrite> pending = pendingDatabaseWrites.get(dot >= 0 ? namespace.substring(0, dot) : namespace);
+                if (pending != null) {
+                    for (DatabaseWrite write : pending) {
+                        write.addStep(queue);
+                    }
+                }
+                writeQueues.put(namespace, queue);
+            }
+            return queue;
+        }
+    }
+
+    private void writeDatabase(String db, Runnable task) {
+        DatabaseWrite write = new DatabaseWrite(db, task);
+        synchronized (writeQueues) {
+            // The database's own queue orders database writes among themselves
+            getQueue(db);
+            ArrayList<DatabaseWrite> pending = pendingDatabaseWrites.get(db);
+            if (pending == null) {
+                pending = new ArrayList<>();
+                pendingDatabaseWrites.put(db, pending);
+            }
+            pending.add(write);
+            String prefix = db + ".";
+            for (Map.Entry<String, SerialQueue> entry : writeQueues.entrySet()) {
+                if (entry.getKey().equals(db) || entry.getKey().startsWith(prefix)) {
+                    write.addStep(entry.getValue());
+                }
+            }
+        }
+        write.stepsAdded();
+    }
+
+    /**
+     * Makes sure the call is rejected if the task fails with something it didn't handle itself,
+     * and measures it if call stats are enabled
+     */
+    private Runnable guard(final PluginCall call, final Runnable task) {
+        final CallStats stats = callStats;
+        final CallStats.Op op = stats != null ? stats.begin(call) : null;
+        return () -> {
+            if (op != null) {
+                stats.started(op);
+            }
+            try {
+                task.run();
+            } catch (Throwable ex) {
+                if (op != null) {
+                    op.failed = true;
+                }
+                call.reject("Unexpected error: " + ex.toString(), ex instanceof Exception ? (Exception) ex : null);
+            } finally {
+                if (op != null) {
+                    stats.finished(op);
+                }
+            }
+        };
+    }
+
+    JSObject getStats() {
+        JSObject read = new JSObject();
+        read.put("threads", readPool.getMaximumPoolSize());
+        read.put("active", readPool.getActiveCount());
+        read.put("queued", readPool.getQueue().size());
+        read.put("completed", readPool.getCompletedTaskCount());
+
+        JSObject queues = new JSObject();
+        int pending = 0;
+        for (Map.Entry<String, SerialQueue> entry : writeQueues.entrySet()) {
+            int size = entry.getValue().size();
+            if (size > 0) {
+                queues.put(entry.getKey(), size);
+                pending += size;
+            }
+        }
+        JSObject write = new JSObject();
+        write.put("threads", writePool.getMaximumPoolSize());
+        write.put("active", writePool.getActiveCount());
+        write.put("queued", pending);
+        write.put("completed", writePool.getCompletedTaskCount());
+        write.put("queues", queues);
+
+        JSObject stats = new JSObject();
+        stats.put("read", read);
+        stats.put("write", write);
+        return stats;
+    }
+}
@@ -16,6 +16,7 @@ import com.mongodb.client.model.CollationStrength;
 import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.CreateCollectionOptions;
 import com.mongodb.client.model.DeleteOptions;
+import com.mongodb.client.model.EstimatedDocumentCountOptions;
 import com.mongodb.client.model.FindOneAndDeleteOptions;
 import com.mongodb.client.model.FindOneAndReplaceOptions;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
@@ -29,13 +30,13 @@ import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.ValidationAction;
 import com.mongodb.client.model.ValidationLevel;
-import com.mongodb.client.model.ValidationOptions;
 
 import org.bson.BsonDocument;
-import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DocumentCodec;
 import org.bson.conversions.Bson;
 import org.bson.json.JsonMode;
 import org.bson.json.JsonWriterSettings;
@@ -46,134 +47,348 @@ import org.json.JSONObject;
 import java.security.InvalidKeyException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 
 
 public class OptionParser {
     private static JsonWriterSettings jsonSettings = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+    private static Codec<Document> documentCodec = new DocumentCodec();
     static String InvalidArgErrorPrefix = "Invalid type for variable ";
-    public static boolean getBool(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-        try {
-            return obj.getBoolean(name);
-        } catch (Exception ex) {}
-        try {
-            String strObj = obj.getString(name);
-            return strObj.equals("true");
-        } catch (Exception ex) {}
-        try {
-            Integer intObj = obj.getInt(name);
-            return intObj != 0;
-        } catch (Exception ex) {}
+    /**
+     * How an option value is read from the JSON; see readValue
+     */
+    enum ValueType {
+        BOOL, INT32, INT64, DOUBLE, STRING, DOCUMENT, DOCUMENT_ARRAY, COLLATION, CURSOR_TYPE
+    }
 
-        throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected boolean (true/false)");
+    /**
+     * Reads a value which is known to be present; only throws if it has the wrong type.
+     * Documents come back as RawBsonDocument so they can be shared by cached options.
+     */
+    static Object readValue(JSONObject obj, String name, ValueType type) throws InvalidParameterException {
+        Object value = obj.opt(name);
+        Number number;
+        switch (type) {
+            case BOOL:
+                if (value instanceof Boolean) {
+                    return value;
+                } else if (value instanceof String) {
+                    return ((String) value).equalsIgnoreCase("true");
+                } else if (value instanceof Number) {
+                    return ((Number) value).intValue() != 0;
+                }
+                throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected boolean (true/false)");
+            case INT32:
+                number = toNumber(value);
+                if (number == null) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected integer");
+                }
+                return number.intValue();
+            case INT64:
+                number = toNumber(value);
+                if (number == null) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected integer");
+                }
+                return number.longValue();
+            case DOUBLE:
+                number = toNumber(value);
+                if (number == null) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected double");
+                }
+                return number.doubleValue();
+            case STRING:
+                if (value == null || value == JSONObject.NULL) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected string");
+                }
+                return value.toString();
+            case DOCUMENT:
+                if (value instanceof JSONObject) {
+                    try {
+                        return getRawBsonDocument((JSONObject) value);
+                    } catch (RuntimeException ex) {}
+                }
+                throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; Could not parse document");
+            case DOCUMENT_ARRAY:
+                if (!(value instanceof JSONArray)) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected array of documents");
+                }
+                try {
+                    return Collections.unmodifiableList(getDocumentArray((JSONArray) value, RawBsonDocument.class));
+                } catch (InvalidParameterException ex) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "[" + ex.getMessage() + "]; expected Document");
+                }
+            case COLLATION:
+                if (!(value instanceof JSONObject)) {
+                    throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; if provided must be a valid collation document");
+                }
+                return collationOptions.compile((JSONObject) value).applyTo(Collation.builder()).build();
+            case CURSOR_TYPE:
+                if (value instanceof String) {
+                    switch ((String) value) {
+                        case "tailable":
+                            return CursorType.Tailable;
+                        case "nonTailable":
+                            return CursorType.NonTailable;
+                        case "tailableAwait":
+                            return CursorType.TailableAwait;
+                    }
+                }
+                throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected 'tailable' | 'nonTailable' | 'tailableAwait'");
+        }
+        throw new IllegalArgumentException(type.toString());
     }
-    public static int getInt32(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
+    /**
+     * Numbers as org.json's getInt / getLong / getDouble would accept them; null if it isn't one
+     */
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        } else if (value instanceof String) {
+            try {
+                return Double.valueOf((String) value);
+            } catch (NumberFormatException ex) {}
+        }
+        return null;
+    }
+    private static String requireKey(JSONObject obj, String name) throws InvalidKeyException {
         if (!obj.has(name)) {
             throw new InvalidKeyException(name);
         }
-        try {
-            return obj.getInt(name);
-        } catch (Exception ex) {}
+        return name;
+    }
 
-        throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected integer");
+    public static boolean getBool(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
+        return (Boolean) readValue(obj, requireKey(obj, name), ValueType.BOOL);
+    }
+    public static int getInt32(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
+        return (Integer) readValue(obj, requireKey(obj, name), ValueType.INT32);
     }
     public static long getInt64(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-        try {
-            return obj.getLong(name);
-        } catch (Exception ex) {}
-        throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected integer");
+        return (Long) readValue(obj, requireKey(obj, name), ValueType.INT64);
     }
     public static double getDouble(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-        try {
-            return obj.getDouble(name);
-        } catch (Exception ex) {}
-
-        throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected double");
+        return (Double) readValue(obj, requireKey(obj, name), ValueType.DOUBLE);
     }
     public static String getString(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-        try {
-            return obj.getString(name);
-        } catch (Exception ex) {}
-        throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected string");
+        return (String) readValue(obj, requireKey(obj, name), ValueType.STRING);
     }
-    public static Document getDocument(JSONObject obj) {
+    /**
+     * If obj is a base64 encoded BSON document ({$b64: "..."}) this wraps the decoded bytes
+     * in a RawBsonDocument without parsing them; otherwise returns null
+     */
+    public static RawBsonDocument getBase64BsonDocument(JSONObject obj) {
         if (obj.has("$b64")) {
-            // This is a BSON document base64 encoded! Decode it.
             try {
                 byte[] rawBytes = Base64.decode(obj.getString("$b64"), Base64.DEFAULT);
-                RawBsonDocument bsDoc = new RawBsonDocument(rawBytes);
-
-                // TODO: Is there a more efficient way to convert from a RawBsonDocument to a Document?
-                // Seems like there should be, but I can't find it.
-                return Document.parse(bsDoc.toJson(jsonSettings));
+                return new RawBsonDocument(rawBytes);
             } catch (JSONException ex) {}
         }
+        return null;
+    }
+    public static Document getDocument(JSONObject obj) {
+        RawBsonDocument bsDoc = getBase64BsonDocument(obj);
+        if (bsDoc != null) {
+            // This is a BSON document base64 encoded! Decode the bytes straight into a Document
+            return bsDoc.decode(documentCodec);
+        }
 
         return Document.parse(obj.toString());
     }
+    /**
+     * Gets a RawBsonDocument for obj; base64 encoded BSON is used as-is, anything else is
+     * encoded once from its extended JSON form
+     */
+    public static RawBsonDocument getRawBsonDocument(JSONObject obj) {
+        RawBsonDocument bsDoc = getBase64BsonDocument(obj);
+        if (bsDoc != null) {
+            return bsDoc;
+        }
+        return RawBsonDocument.parse(obj.toString());
+    }
+    /**
+     * Gets obj as a Bson value for use as an update or filter; if raw is true the BSON bytes
+     * are handed to the driver as-is instead of being parsed into a Document
+     */
+    public static Bson getBson(JSONObject obj, boolean raw) {
+        return raw ? getRawBsonDocument(obj) : getDocument(obj);
+    }
+    /**
+     * Decodes raw BSON into the given document class; only Document and RawBsonDocument are supported
+     */
+    @SuppressWarnings("unchecked")
+    public static <TDocument> TDocument decodeDocument(RawBsonDocument doc, Class<TDocument> documentClass) {
+        if (documentClass == RawBsonDocument.class) {
+            return (TDocument) doc;
+        } else if (documentClass == Document.class) {
+            return (TDocument) doc.decode(documentCodec);
+        }
+        throw new InvalidParameterException("Unsupported document class " + documentClass.getName());
+    }
+    public static RawBsonDocument toRawBsonDocument(Document doc) {
+        return new RawBsonDocument(doc, documentCodec);
+    }
+    /**
+     * Gets obj as the given document class; only Document and RawBsonDocument are supported
+     */
+    @SuppressWarnings("unchecked")
+    public static <TDocument> TDocument getDocumentAs(JSONObject obj, Class<TDocument> documentClass) {
+        if (documentClass == RawBsonDocument.class) {
+            return (TDocument) getRawBsonDocument(obj);
+        } else if (documentClass == Document.class) {
+            return (TDocument) getDocument(obj);
+        }
+        throw new InvalidParameterException("Unsupported document class " + documentClass.getName());
+    }
     public static Document getDocument(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
+        Object value = obj.opt(requireKey(obj, name));
+        if (value instanceof JSONObject) {
+            try {
+                return getDocument((JSONObject) value);
+            } catch (RuntimeException ex) {}
         }
-        try {
-            JSONObject jsdoc = obj.getJSONObject(name);
-            return getDocument(jsdoc);
-        } catch (Exception ex) {}
 
         throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; Could not parse document");
     }
     static CursorType getCursorType(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-
-        try {
-            String strObj = getString(obj, name);
-            switch (strObj) {
-                case "tailable":
-                    return CursorType.Tailable;
-                case "nonTailable":
-                    return CursorType.NonTailable;
-                case "tailableAwait":
-                    return CursorType.TailableAwait;
-            }
-        } catch (Exception ex) {
-        }
-        throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected 'tailable' | 'nonTailable' | 'tailableAwait'");
+        return (CursorType) readValue(obj, requireKey(obj, name), ValueType.CURSOR_TYPE);
     }
     public static JSObject bsonToJson(BsonValue inVal) {
         BsonDocument doc = new BsonDocument();
         doc.put("_id", inVal);
         try {
-            JSObject jsDoc = new JSObject(doc.toJson(jsonSettings));
+            JSObject jsDoc = JSObjectWriter.toJSObject(doc, jsonSettings);
             return jsDoc.getJSObject("_id");
         } catch (JSONException ex) {
             return null;
         }
     }
     public static ArrayList<Document> getDocumentArray(JSONArray arr) throws InvalidParameterException {
-        ArrayList<Document> outList = new ArrayList<Document>();
-        for (int i = 0; i < arr.length(); ++i) {
+        return getDocumentArray(arr, Document.class);
+    }
+    /**
+     * Decodes every element of arr; arrays with at least parallelDecodeThreshold documents are
+     * split across the decode pool. If an element can't be decoded an InvalidParameterException
+     * is thrown with the index of the first bad element as its message (and the underlying
+     * error, if any, as its cause)
+     */
+    public static <TDocument> ArrayList<TDocument> getDocumentArray(JSONArray arr, Class<TDocument> documentClass) throws InvalidParameterException {
+        int length = arr.length();
+        if (length < parallelDecodeThreshold || DECODE_THREADS < 2) {
+            ArrayList<TDocument> outList = new ArrayList<TDocument>(length);
+            decodeDocumentRange(arr, documentClass, outList, 0, length);
+            return outList;
+        }
+
+        int chunkCount = Math.min(DECODE_THREADS, length);
+        int chunkSize = (length + chunkCount - 1) / chunkCount;
+        ArrayList<ArrayList<TDocument>> chunks = new ArrayList<>(chunkCount);
+        ArrayList<Future<?>> futures = new ArrayList<>(chunkCount);
+        for (int start = 0; start < length; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, length);
+            final ArrayList<TDocument> chunk = new ArrayList<TDocument>(to - from);
+            chunks.add(chunk);
+            if (to == length) {
+                // The calling thread decodes the last chunk itself
+                futures.add(null);
+            } else {
+                futures.add(getDecodeExecutor().submit(() -> decodeDocumentRange(arr, documentClass, chunk, from, to)));
+            }
+        }
+
+        // Chunks are checked in order so the error is always for the first bad index
+        InvalidParameterException error = null;
+        try {
+            decodeDocumentRange(arr, documentClass, chunks.get(chunks.size() - 1), (chunks.size() - 1) * chunkSize, length);
+        } catch (InvalidParameterException ex) {
+            error = ex;
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            if (future == null) {
+                break;
+            }
             try {
-                outList.add(getDocument(arr.getJSONObject(i)));
+                future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof InvalidParameterException) {
+                    error = (InvalidParameterException) cause;
+                } else {
+                    // Not a bad document (decodeDocumentRange wraps those) but e.g. an Error;
+                    // report it against the start of the chunk with the original as the cause
+                    error = new InvalidParameterException(String.valueOf(i * chunkSize));
+                    error.initCause(cause);
+                }
+                break;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InvalidParameterException("Interrupted while decoding documents");
+            }
+        }
+        if (error != null) {
+            for (Future<?> future : futures) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+            throw error;
+        }
+
+        ArrayList<TDocument> outList = new ArrayList<TDocument>(length);
+        for (ArrayList<TDocument> chunk : chunks) {
+            outList.addAll(chunk);
+        }
+        return outList;
+    }
+    private static <TDocument> void decodeDocumentRange(JSONArray arr, Class<TDocument> documentClass, List<TDocument> out, int from, int to) throws InvalidParameterException {
+        for (int i = from; i < to; ++i) {
+            try {
+                out.add(getDocumentAs(arr.getJSONObject(i), documentClass));
             } catch (JSONException ex) {
                 throw new InvalidParameterException(String.valueOf(i));
+            } catch (RuntimeException ex) {
+                InvalidParameterException err = new InvalidParameterException(String.valueOf(i));
+                err.initCause(ex);
+                throw err;
             }
         }
-        return outList;
+    }
+
+    /**
+     * Arrays with fewer documents than this are decoded on the calling thread; below a few
+     * hundred small documents the hand-off costs more than it saves
+     */
+    static final int DEFAULT_PARALLEL_DECODE_THRESHOLD = 256;
+    private static final int DECODE_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+    private static volatile int parallelDecodeThreshold = DEFAULT_PARALLEL_DECODE_THRESHOLD;
+    private static ExecutorService decodeExecutor = null;
+
+    static void setParallelDecodeThreshold(int threshold) {
+        parallelDecodeThreshold = threshold > 0 ? threshold : Integer.MAX_VALUE;
+    }
+    static int getParallelDecodeThreshold() {
+        return parallelDecodeThreshold;
+    }
+    private static synchronized ExecutorService getDecodeExecutor() {
+        if (decodeExecutor == null) {
+            decodeExecutor = Executors.newFixedThreadPool(DECODE_THREADS - 1, runnable -> {
+                Thread thread = new Thread(runnable, "MongoDBMobile-decode");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return decodeExecutor;
     }
     public static ArrayList<Document> getDocumentArray(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
         if (!obj.has(name)) {
@@ -190,375 +405,337 @@ public class OptionParser {
         }
     }
     public static WriteConcern getWriteConcern(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-
-        try {
-            JSONObject wcObj = obj.getJSONObject(name);
-            int w = getInt32(wcObj, "w");
-            WriteConcern wc = new WriteConcern(w);
-            try {
-                wc = wc.withJournal(getBool(wcObj, "j"));
-            } catch (Exception ex) {}
-            try {
-                wc = wc.withWTimeout(getInt32(wcObj, "wtimeout"), TimeUnit.MILLISECONDS);
-            } catch (Exception ex) {}
+        Object value = obj.opt(requireKey(obj, name));
+
+        if (value instanceof JSONObject) {
+            JSONObject wcObj = (JSONObject) value;
+            WriteConcern wc = WriteConcern.ACKNOWLEDGED;
+            // Explicit nulls are skipped like they are in the option tables
+            Object w = wcObj.opt("w");
+            if (w instanceof String && toNumber(w) == null) {
+                wc = new WriteConcern((String) w);
+            } else if (!wcObj.isNull("w")) {
+                wc = new WriteConcern((Integer) readValue(wcObj, "w", ValueType.INT32));
+            }
+            if (!wcObj.isNull("j")) {
+                wc = wc.withJournal((Boolean) readValue(wcObj, "j", ValueType.BOOL));
+            }
+            if (!wcObj.isNull("wtimeout")) {
+                wc = wc.withWTimeout((Integer) readValue(wcObj, "wtimeout", ValueType.INT32), TimeUnit.MILLISECONDS);
+            }
             return wc;
-        } catch (JSONException ex) {};
-
-        try {
-            int w = getInt32(obj, name);
-            return new WriteConcern(w);
-        } catch (Exception ex) {}
+        } else if (toNumber(value) != null) {
+            return new WriteConcern(toNumber(value).intValue());
+        }
 
         throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; expected number or {w?: number, j?: boolean, wtimeout?: number}");
     }
     public static Collation getCollation(JSONObject obj, String name) throws InvalidParameterException, InvalidKeyException {
-        if (!obj.has(name)) {
-            throw new InvalidKeyException(name);
-        }
-        JSONObject collationSrc;
-        try {
-            collationSrc = obj.getJSONObject(name);
-        } catch (JSONException ex) {
-            throw new InvalidParameterException(InvalidArgErrorPrefix + name + "; if provided must be a valid collation document");
-        }
-        Collation.Builder builder = Collation.builder();
+        return (Collation) readValue(obj, requireKey(obj, name), ValueType.COLLATION);
+    }
 
-        try {
-            builder.locale(getString(collationSrc, "locale"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.caseLevel(getBool(collationSrc, "caseLevel"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.collationCaseFirst(CollationCaseFirst.fromString(getString(collationSrc, "caseFirst")));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.collationStrength(CollationStrength.fromInt(getInt32(collationSrc, "strength")));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.numericOrdering(getBool(collationSrc, "numericOrdering"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.collationAlternate(CollationAlternate.fromString(getString(collationSrc, "alternate")));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.collationMaxVariable(CollationMaxVariable.fromString(getString(collationSrc, "maxVariable")));
-        } catch (InvalidKeyException ex) {}
-        try {
-            builder.backwards(getBool(collationSrc, "backwards"));
-        } catch (InvalidKeyException ex) {}
-        return builder.build();
+    interface Setter<T> {
+        void set(T target, Object value);
     }
-    public static CreateCollectionOptions getCreateCollectionOptions(JSONObject obj) {
-        if (obj == null) {
-            return null;
+
+    /**
+     * The values parsed from one options object, ready to be set on a new options instance.
+     * Instances may be cached and shared between threads so the values must be immutable.
+     */
+    static class CompiledOptions<T> {
+        private final ArrayList<Setter<T>> setters;
+        private final ArrayList<Object> values;
+
+        CompiledOptions(int size) {
+            setters = new ArrayList<>(size);
+            values = new ArrayList<>(size);
+        }
+        private void add(Setter<T> setter, Object value) {
+            setters.add(setter);
+            values.add(value);
         }
-        CreateCollectionOptions opts = new CreateCollectionOptions();
+        T applyTo(T target) {
+            for (int i = 0; i < setters.size(); ++i) {
+                setters.get(i).set(target, values.get(i));
+            }
+            return target;
+        }
+    }
 
-        try {
-            opts.capped(getBool(obj, "capped"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.sizeInBytes(getInt64(obj, "size"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.maxDocuments(getInt64(obj, "max"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.storageEngineOptions(getDocument(obj, "storageEngine"));
-        } catch (InvalidKeyException ex) {}
+    /**
+     * Table of the options understood by one options class. Compiling walks only the keys
+     * present in the JSON (anything we don't know is ignored) and parses each value once;
+     * the result is cached by the JSON text, so repeated calls with the same options skip
+     * parsing entirely and just set the values on a fresh options object.
+     */
+    static class OptionTable<T> {
+        static final int DEFAULT_CACHE_SIZE = 64;
+
+        private final HashMap<String, ValueType> types = new HashMap<>();
+        private final HashMap<String, Setter<T>> setters = new HashMap<>();
+        private final LinkedHashMap<String, CompiledOptions<T>> cache;
+        private final int cacheSize;
+
+        OptionTable() {
+            this(DEFAULT_CACHE_SIZE);
+        }
+        /**
+         * @param cacheSize how many compiled options to keep; 0 to not cache them
+         */
+        OptionTable(int cacheSize) {
+            this.cacheSize = cacheSize;
+            this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        }
 
-        ValidationOptions vOpts = new ValidationOptions();
-        try {
-            vOpts.validator(getDocument(obj, "validator"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            vOpts.validationAction(ValidationAction.fromString(getString(obj, "validationAction")));
-        } catch (InvalidKeyException ex) {}
-        try {
-            vOpts.validationLevel(ValidationLevel.fromString(getString(obj, "validationLevel")));
-        } catch (InvalidKeyException ex) {}
-        opts.validationOptions(vOpts);
+        OptionTable<T> add(String key, ValueType type, Setter<T> setter) {
+            types.put(key, type);
+            setters.put(key, setter);
+            return this;
+        }
 
-        try {
-            IndexOptionDefaults iOpts = new IndexOptionDefaults();
-            iOpts.storageEngine(getDocument(obj, "indexOptionDefaults"));
-            opts.indexOptionDefaults(iOpts);
-        } catch (InvalidKeyException ex) {}
+        T apply(T target, JSONObject obj) throws InvalidParameterException {
+            if (cacheSize <= 0) {
+                return compile(obj).applyTo(target);
+            }
+            String cacheKey = obj.toString();
+            CompiledOptions<T> compiled;
+            synchronized (cache) {
+                compiled = cache.get(cacheKey);
+            }
+            if (compiled == null) {
+                compiled = compile(obj);
+                synchronized (cache) {
+                    cache.put(cacheKey, compiled);
+                    if (cache.size() > cacheSize) {
+                        Iterator<String> it = cache.keySet().iterator();
+                        it.next();
+                        it.remove();
+                    }
+                }
+            }
+            return compiled.applyTo(target);
+        }
 
-        try {
-            Collation collation = getCollation(obj, "collation");
-            opts.collation(collation);
-        } catch (InvalidKeyException ex) {}
+        CompiledOptions<T> compile(JSONObject obj) throws InvalidParameterException {
+            CompiledOptions<T> compiled = new CompiledOptions<>(obj.length());
+            Iterator<String> keys = obj.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                ValueType type = types.get(key);
+                if (type == null || obj.isNull(key)) {
+                    continue;
+                }
+                compiled.add(setters.get(key), readValue(obj, key, type));
+            }
+            return compiled;
+        }
 
-        return opts;
+        void clearCache() {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
     }
 
+    // Collations are compiled as part of the options they're in, so they have no cache of their own
+    private static final OptionTable<Collation.Builder> collationOptions = new OptionTable<Collation.Builder>(0)
+            .add("locale", ValueType.STRING, (b, v) -> b.locale((String) v))
+            .add("caseLevel", ValueType.BOOL, (b, v) -> b.caseLevel((Boolean) v))
+            .add("caseFirst", ValueType.STRING, (b, v) -> b.collationCaseFirst(CollationCaseFirst.fromString((String) v)))
+            .add("strength", ValueType.INT32, (b, v) -> b.collationStrength(CollationStrength.fromInt((Integer) v)))
+            .add("numericOrdering", ValueType.BOOL, (b, v) -> b.numericOrdering((Boolean) v))
+            .add("alternate", ValueType.STRING, (b, v) -> b.collationAlternate(CollationAlternate.fromString((String) v)))
+            .add("maxVariable", ValueType.STRING, (b, v) -> b.collationMaxVariable(CollationMaxVariable.fromString((String) v)))
+            .add("backwards", ValueType.BOOL, (b, v) -> b.backwards((Boolean) v));
+
+    private static final OptionTable<CreateCollectionOptions> createCollectionOptions = new OptionTable<CreateCollectionOptions>()
+            .add("capped", ValueType.BOOL, (o, v) -> o.capped((Boolean) v))
+            .add("size", ValueType.INT64, (o, v) -> o.sizeInBytes((Long) v))
+            .add("max", ValueType.INT64, (o, v) -> o.maxDocuments((Long) v))
+            .add("storageEngine", ValueType.DOCUMENT, (o, v) -> o.storageEngineOptions((Bson) v))
+            .add("validator", ValueType.DOCUMENT, (o, v) -> o.getValidationOptions().validator((Bson) v))
+            .add("validationAction", ValueType.STRING, (o, v) -> o.getValidationOptions().validationAction(ValidationAction.fromString((String) v)))
+            .add("validationLevel", ValueType.STRING, (o, v) -> o.getValidationOptions().validationLevel(ValidationLevel.fromString((String) v)))
+            .add("indexOptionDefaults", ValueType.DOCUMENT, (o, v) -> o.indexOptionDefaults(new IndexOptionDefaults().storageEngine((Bson) v)))
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v));
+
+    private static final OptionTable<CountOptions> countOptions = new OptionTable<CountOptions>()
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v))
+            .add("hint", ValueType.DOCUMENT, (o, v) -> o.hint((Bson) v))
+            .add("limit", ValueType.INT32, (o, v) -> o.limit((Integer) v))
+            .add("maxTimeMS", ValueType.INT64, (o, v) -> o.maxTime((Long) v, TimeUnit.MILLISECONDS))
+            .add("skip", ValueType.INT32, (o, v) -> o.skip((Integer) v));
+
+    private static final OptionTable<EstimatedDocumentCountOptions> estimatedDocumentCountOptions = new OptionTable<EstimatedDocumentCountOptions>()
+            .add("maxTimeMS", ValueType.INT64, (o, v) -> o.maxTime((Long) v, TimeUnit.MILLISECONDS));
+
+    private static final OptionTable<InsertOneOptions> insertOneOptions = new OptionTable<InsertOneOptions>()
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v));
+
+    private static final OptionTable<InsertManyOptions> insertManyOptions = new OptionTable<InsertManyOptions>()
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v))
+            .add("ordered", ValueType.BOOL, (o, v) -> o.ordered((Boolean) v));
+
+    @SuppressWarnings("unchecked")
+    private static final OptionTable<UpdateOptions> updateOptions = new OptionTable<UpdateOptions>()
+            .add("arrayFilters", ValueType.DOCUMENT_ARRAY, (o, v) -> o.arrayFilters((List<RawBsonDocument>) v))
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v))
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v))
+            .add("upsert", ValueType.BOOL, (o, v) -> o.upsert((Boolean) v));
+
+    private static final OptionTable<ReplaceOptions> replaceOptions = new OptionTable<ReplaceOptions>()
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v))
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v))
+            .add("upsert", ValueType.BOOL, (o, v) -> o.upsert((Boolean) v));
+
+    private static final OptionTable<DeleteOptions> deleteOptions = new OptionTable<DeleteOptions>()
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v));
+
+    private static final OptionTable<FindIterable<?>> findOptions = new OptionTable<FindIterable<?>>()
+            .add("allowPartialResults", ValueType.BOOL, (it, v) -> it.partial((Boolean) v))
+            .add("batchSize", ValueType.INT32, (it, v) -> it.batchSize((Integer) v))
+            .add("collation", ValueType.COLLATION, (it, v) -> it.collation((Collation) v))
+            .add("comment", ValueType.STRING, (it, v) -> it.comment((String) v))
+            .add("cursorType", ValueType.CURSOR_TYPE, (it, v) -> it.cursorType((CursorType) v))
+            .add("hint", ValueType.DOCUMENT, (it, v) -> it.hint((Bson) v))
+            .add("limit", ValueType.INT32, (it, v) -> it.limit((Integer) v))
+            .add("max", ValueType.DOCUMENT, (it, v) -> it.max((Bson) v))
+            .add("maxAwaitTimeMS", ValueType.INT64, (it, v) -> it.maxAwaitTime((Long) v, TimeUnit.MILLISECONDS))
+            .add("maxTimeMS", ValueType.INT64, (it, v) -> it.maxTime((Long) v, TimeUnit.MILLISECONDS))
+            .add("min", ValueType.DOCUMENT, (it, v) -> it.min((Bson) v))
+            .add("noCursorTimeout", ValueType.BOOL, (it, v) -> it.noCursorTimeout((Boolean) v))
+            .add("projection", ValueType.DOCUMENT, (it, v) -> it.projection((Bson) v))
+            .add("returnKey", ValueType.BOOL, (it, v) -> it.returnKey((Boolean) v))
+            .add("showRecordId", ValueType.BOOL, (it, v) -> it.showRecordId((Boolean) v))
+            .add("skip", ValueType.INT32, (it, v) -> it.skip((Integer) v))
+            .add("sort", ValueType.DOCUMENT, (it, v) -> it.sort((Bson) v));
+
+    private static final OptionTable<AggregateIterable<?>> aggregateOptions = new OptionTable<AggregateIterable<?>>()
+            .add("allowDiskUse", ValueType.BOOL, (it, v) -> it.allowDiskUse((Boolean) v))
+            .add("batchSize", ValueType.INT32, (it, v) -> it.batchSize((Integer) v))
+            .add("bypassDocumentValidation", ValueType.BOOL, (it, v) -> it.bypassDocumentValidation((Boolean) v))
+            .add("collation", ValueType.COLLATION, (it, v) -> it.collation((Collation) v))
+            .add("comment", ValueType.STRING, (it, v) -> it.comment((String) v))
+            .add("hint", ValueType.DOCUMENT, (it, v) -> it.hint((Bson) v))
+            .add("maxTimeMS", ValueType.INT64, (it, v) -> it.maxTime((Long) v, TimeUnit.MILLISECONDS));
+
+    private static final OptionTable<IndexOptions> indexOptions = new OptionTable<IndexOptions>()
+            .add("background", ValueType.BOOL, (o, v) -> o.background((Boolean) v))
+            .add("expireAfter", ValueType.INT64, (o, v) -> o.expireAfter((Long) v, TimeUnit.MILLISECONDS))
+            .add("name", ValueType.STRING, (o, v) -> o.name((String) v))
+            .add("sparse", ValueType.BOOL, (o, v) -> o.sparse((Boolean) v))
+            .add("storageEngine", ValueType.DOCUMENT, (o, v) -> o.storageEngine((Bson) v))
+            .add("unique", ValueType.BOOL, (o, v) -> o.unique((Boolean) v))
+            .add("version", ValueType.INT32, (o, v) -> o.version((Integer) v))
+            .add("defaultLanguage", ValueType.STRING, (o, v) -> o.defaultLanguage((String) v))
+            .add("languageOverride", ValueType.STRING, (o, v) -> o.languageOverride((String) v))
+            .add("textVersion", ValueType.INT32, (o, v) -> o.textVersion((Integer) v))
+            .add("weights", ValueType.DOCUMENT, (o, v) -> o.weights((Bson) v))
+            .add("sphereVersion", ValueType.INT32, (o, v) -> o.sphereVersion((Integer) v))
+            .add("bits", ValueType.INT32, (o, v) -> o.bits((Integer) v))
+            .add("max", ValueType.DOUBLE, (o, v) -> o.max((Double) v))
+            .add("min", ValueType.DOUBLE, (o, v) -> o.min((Double) v))
+            .add("bucketSize", ValueType.DOUBLE, (o, v) -> o.bucketSize((Double) v))
+            .add("partialFilterExpression", ValueType.DOCUMENT, (o, v) -> o.partialFilterExpression((Bson) v))
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v));
+
+    private static final OptionTable<FindOneAndDeleteOptions> findOneAndDeleteOptions = new OptionTable<FindOneAndDeleteOptions>()
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v))
+            .add("maxTimeMS", ValueType.INT64, (o, v) -> o.maxTime((Long) v, TimeUnit.MILLISECONDS))
+            .add("projection", ValueType.DOCUMENT, (o, v) -> o.projection((Bson) v))
+            .add("sort", ValueType.DOCUMENT, (o, v) -> o.sort((Bson) v));
+
+    private static final OptionTable<FindOneAndReplaceOptions> findOneAndReplaceOptions = new OptionTable<FindOneAndReplaceOptions>()
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v))
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v))
+            .add("maxTimeMS", ValueType.INT64, (o, v) -> o.maxTime((Long) v, TimeUnit.MILLISECONDS))
+            .add("projection", ValueType.DOCUMENT, (o, v) -> o.projection((Bson) v))
+            .add("returnNewDocument", ValueType.BOOL, (o, v) -> o.returnDocument((Boolean) v ? ReturnDocument.AFTER : ReturnDocument.BEFORE))
+            .add("sort", ValueType.DOCUMENT, (o, v) -> o.sort((Bson) v))
+            .add("upsert", ValueType.BOOL, (o, v) -> o.upsert((Boolean) v));
+
+    @SuppressWarnings("unchecked")
+    private static final OptionTable<FindOneAndUpdateOptions> findOneAndUpdateOptions = new OptionTable<FindOneAndUpdateOptions>()
+            .add("arrayFilters", ValueType.DOCUMENT_ARRAY, (o, v) -> o.arrayFilters((List<RawBsonDocument>) v))
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v))
+            .add("collation", ValueType.COLLATION, (o, v) -> o.collation((Collation) v))
+            .add("maxTimeMS", ValueType.INT64, (o, v) -> o.maxTime((Long) v, TimeUnit.MILLISECONDS))
+            .add("projection", ValueType.DOCUMENT, (o, v) -> o.projection((Bson) v))
+            .add("returnNewDocument", ValueType.BOOL, (o, v) -> o.returnDocument((Boolean) v ? ReturnDocument.AFTER : ReturnDocument.BEFORE))
+            .add("sort", ValueType.DOCUMENT, (o, v) -> o.sort((Bson) v))
+            .add("upsert", ValueType.BOOL, (o, v) -> o.upsert((Boolean) v));
+
+    private static final OptionTable<BulkWriteOptions> bulkWriteOptions = new OptionTable<BulkWriteOptions>()
+            .add("bypassDocumentValidation", ValueType.BOOL, (o, v) -> o.bypassDocumentValidation((Boolean) v))
+            .add("ordered", ValueType.BOOL, (o, v) -> o.ordered((Boolean) v));
+
+    public static CreateCollectionOptions getCreateCollectionOptions(JSONObject obj) {
+        if (obj == null) {
+            return null;
+        }
+        return createCollectionOptions.apply(new CreateCollectionOptions(), obj);
+    }
     public static CountOptions getCountOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        CountOptions opts = new CountOptions();
-        try {
-            Collation collation = getCollation(obj, "collation");
-            opts.collation(collation);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.hint(getDocument(obj, "hint"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.limit(getInt32(obj, "limit"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.maxTime(getInt64(obj, "maxTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.skip(getInt32(obj, "skip"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return countOptions.apply(new CountOptions(), obj);
+    }
+    public static EstimatedDocumentCountOptions getEstimatedDocumentCountOptions(JSONObject obj) {
+        if (obj == null) {
+            return new EstimatedDocumentCountOptions();
+        }
+        return estimatedDocumentCountOptions.apply(new EstimatedDocumentCountOptions(), obj);
     }
     public static InsertOneOptions getInsertOneOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        InsertOneOptions opts = new InsertOneOptions();
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        return opts;
+        return insertOneOptions.apply(new InsertOneOptions(), obj);
     }
     public static InsertManyOptions getInsertManyOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        InsertManyOptions opts = new InsertManyOptions();
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.ordered(getBool(obj, "ordered"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return insertManyOptions.apply(new InsertManyOptions(), obj);
     }
-
     public static UpdateOptions getUpdateOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        UpdateOptions opts = new UpdateOptions();
-        try {
-            opts.arrayFilters(getDocumentArray(obj, "arrayFilters"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            Collation collation = getCollation(obj, "collation");
-            opts.collation(collation);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.upsert(getBool(obj, "upsert"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return updateOptions.apply(new UpdateOptions(), obj);
     }
-
     public static ReplaceOptions getReplaceOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        ReplaceOptions opts = new ReplaceOptions();
-
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            Collation collation = getCollation(obj, "collation");
-            opts.collation(collation);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.upsert(getBool(obj, "upsert"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return replaceOptions.apply(new ReplaceOptions(), obj);
     }
-
     public static DeleteOptions getDeleteOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        DeleteOptions opts = new DeleteOptions();
-        try {
-            Collation collation = getCollation(obj, "collation");
-            opts.collation(collation);
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return deleteOptions.apply(new DeleteOptions(), obj);
     }
     public static <TDocument> FindIterable<TDocument> applyFindOptions(FindIterable<TDocument> it, JSONObject obj) {
         if (obj == null) {
             return it;
         }
-
-        try {
-            it.partial(getBool(obj, "allowPartialResults"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.batchSize(getInt32(obj, "batchSize"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            Collation collation = getCollation(obj, "collation");
-            it.collation(collation);
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.comment(getString(obj, "comment"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            CursorType cType = getCursorType(obj, "cursorType");
-            it.cursorType(cType);
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.hint(getDocument(obj, "hint"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.limit(getInt32(obj, "limit"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.max(getDocument(obj, "max"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.maxAwaitTime(getInt32(obj, "maxAwaitTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.maxTime(getInt64(obj, "maxTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.min(getDocument(obj, "min"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.noCursorTimeout(getBool(obj, "noCursorTimeout"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.projection(getDocument(obj, "projection"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.returnKey(getBool(obj, "returnKey"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.showRecordId(getBool(obj, "showRecordId"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.skip(getInt32(obj, "skip"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.sort(getDocument(obj, "sort"));
-        } catch (InvalidKeyException ex) {}
-
+        findOptions.apply(it, obj);
         return it;
     }
     public static <TDocument> AggregateIterable<TDocument> applyAggregateOptions(AggregateIterable<TDocument> it, JSONObject obj) {
         if (obj == null) {
             return it;
         }
-
-        try {
-            it.allowDiskUse(getBool(obj, "allowDiskUse"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.batchSize(getInt32(obj, "batchSize"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            Collation collation = getCollation(obj, "collation");
-            it.collation(collation);
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.comment(getString(obj, "comment"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.hint(getDocument(obj, "hint"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            it.maxTime(getInt64(obj, "maxTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-
+        aggregateOptions.apply(it, obj);
         return it;
     }
     public static IndexOptions getIndexOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        IndexOptions opts = new IndexOptions();
-        try {
-            opts.background(getBool(obj, "background"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.expireAfter(getInt64(obj, "expireAfter"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.name(getString(obj, "name"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.sparse(getBool(obj, "sparse"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.storageEngine(new BsonString(getString(obj, "storageEngine")).asDocument());
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.unique(getBool(obj, "unique"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.version(getInt32(obj, "version"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.defaultLanguage(getString(obj, "defaultLanguage"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.languageOverride(getString(obj, "languageOverride"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.textVersion(getInt32(obj, "textVersion"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.weights(getDocument(obj, "weights"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.sphereVersion(getInt32(obj, "sphereVersion"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.bits(getInt32(obj, "bits"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.max(getDouble(obj, "max"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.min(getDouble(obj, "min"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.bucketSize(getDouble(obj, "bucketSize"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.partialFilterExpression(getDocument(obj, "partialFilterExpression"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.collation(getCollation(obj, "collation"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return indexOptions.apply(new IndexOptions(), obj);
     }
     public static IndexModel getIndexModel(JSONObject keysObj, JSONObject optsObj) {
         if (keysObj == null) {
@@ -572,109 +749,28 @@ public class OptionParser {
 
         return idx;
     }
-
     public static FindOneAndDeleteOptions getFindOneAndDeleteOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        FindOneAndDeleteOptions opts = new FindOneAndDeleteOptions();
-        try {
-            opts.collation(getCollation(obj, "collation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.maxTime(getInt64(obj, "maxTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.projection(getDocument(obj, "projection"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.sort(getDocument(obj, "sort"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return findOneAndDeleteOptions.apply(new FindOneAndDeleteOptions(), obj);
     }
-
     public static FindOneAndReplaceOptions getFindOneAndReplaceOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        FindOneAndReplaceOptions opts = new FindOneAndReplaceOptions();
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.collation(getCollation(obj, "collation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.maxTime(getInt64(obj, "maxTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.projection(getDocument(obj, "projection"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            boolean returnNewDocument = getBool(obj, "returnNewDocument");
-            opts.returnDocument(returnNewDocument ? ReturnDocument.AFTER : ReturnDocument.BEFORE);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.sort(getDocument(obj, "sort"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.upsert(getBool(obj, "upsert"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return findOneAndReplaceOptions.apply(new FindOneAndReplaceOptions(), obj);
     }
-
     public static FindOneAndUpdateOptions getFindOneAndUpdateOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        FindOneAndUpdateOptions opts = new FindOneAndUpdateOptions();
-        try {
-            opts.arrayFilters(getDocumentArray(obj, "arrayFilters"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.collation(getCollation(obj, "collation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.maxTime(getInt64(obj, "maxTimeMS"), TimeUnit.MILLISECONDS);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.projection(getDocument(obj, "projection"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            boolean returnNewDocument = getBool(obj, "returnNewDocument");
-            opts.returnDocument(returnNewDocument ? ReturnDocument.AFTER : ReturnDocument.BEFORE);
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.sort(getDocument(obj, "sort"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.upsert(getBool(obj, "upsert"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return findOneAndUpdateOptions.apply(new FindOneAndUpdateOptions(), obj);
     }
-
     public static BulkWriteOptions getBulkWriteOptions(JSONObject obj) {
         if (obj == null) {
             return null;
         }
-
-        BulkWriteOptions opts = new BulkWriteOptions();
-        try {
-            opts.bypassDocumentValidation(getBool(obj, "bypassDocumentValidation"));
-        } catch (InvalidKeyException ex) {}
-        try {
-            opts.ordered(getBool(obj, "ordered"));
-        } catch (InvalidKeyException ex) {}
-
-        return opts;
+        return bulkWriteOptions.apply(new BulkWriteOptions(), obj);
     }
 }
@@ -0,0 +1,194 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+
+/**
+ * A cursor which reads ahead of the page on a background executor.
+ *
+ * Documents are pulled from the underlying cursor as raw BSON so the size of the read-ahead
+ * buffer can be measured exactly, then decoded to the requested document class on the
+ * background thread. Reading stops whenever `depth` documents or `maxBytes` bytes are buffered
+ * and resumes as the page consumes them. Only one fill task runs at a time, so the underlying
+ * cursor is never used from two threads at once.
+ */
+public class PrefetchCursor<TDocument> implements MongoCursor<TDocument> {
+    private final MongoCursor<RawBsonDocument> source;
+    private final Class<TDocument> documentClass;
+    private final Executor executor;
+    private final int depth;
+    private final long maxBytes;
+
+    private final ArrayDeque<TDocument> buffer = new ArrayDeque<>();
+    private final ArrayDeque<Integer> bufferSizes = new ArrayDeque<>();
+    private long bufferedBytes = 0;
+    private boolean filling = false;
+    private boolean exhausted = false;
+    private boolean closed = false;
+    private RuntimeException failure = null;
+
+    PrefetchCursor(MongoCursor<RawBsonDocument> source, Class<TDocument> documentClass, Executor executor, int depth, long maxBytes) {
+        this.source = source;
+        this.documentClass = documentClass;
+        this.executor = executor;
+        this.depth = Math.max(depth, 1);
+        this.maxBytes = Math.max(maxBytes, 1);
+
+        synchronized (this) {
+            scheduleFill();
+        }
+    }
+
+    /**
+     * Prefetch state, reported back to the page with the cursor
+     */
+    synchronized int getBufferedCount() {
+        return buffer.size();
+    }
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+    int getDepth() {
+        return depth;
+    }
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private boolean isFull() {
+        return buffer.size() >= depth || bufferedBytes >= maxBytes;
+    }
+
+    // Must be called while holding the lock
+    private void scheduleFill() {
+        if (filling || exhausted || closed || isFull()) {
+            return;
+        }
+        filling = true;
+        executor.execute(this::fill);
+    }
+
+    private void fill() {
+        while (true) {
+            synchronized (this) {
+                if (closed || isFull()) {
+                    filling = false;
+                    if (closed) {
+                        source.close();
+                    }
+                    notifyAll();
+                    return;
+                }
+            }
+
+            RawBsonDocument raw = null;
+            TDocument doc = null;
+            RuntimeException error = null;
+            try {
+                if (source.hasNext()) {
+                    raw = source.next();
+                    doc = OptionParser.decodeDocument(raw, documentClass);
+                }
+            } catch (RuntimeException ex) {
+                error = ex;
+            }
+
+            synchronized (this) {
+                if (raw == null || error != null) {
+                    failure = error;
+                    exhausted = true;
+                    filling = false;
+                    if (closed) {
+                        source.close();
+                    }
+                    notifyAll();
+                    return;
+                }
+                if (!closed) {
+                    int size = raw.getByteBuffer().remaining();
+                    buffer.add(doc);
+                    bufferSizes.add(size);
+                    bufferedBytes += size;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        while (buffer.isEmpty()) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (exhausted || closed) {
+                return false;
+            }
+            scheduleFill();
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new MongoInterruptedException("Interrupted waiting for prefetched documents", ex);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized TDocument next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TDocument doc = buffer.poll();
+        bufferedBytes -= bufferSizes.poll();
+        scheduleFill();
+        return doc;
+    }
+
+    @Override
+    public synchronized TDocument tryNext() {
+        if (buffer.isEmpty()) {
+            if (failure != null) {
+                throw failure;
+            }
+            scheduleFill();
+            return null;
+        }
+        return next();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.clear();
+        bufferSizes.clear();
+        bufferedBytes = 0;
+        if (!filling) {
+            // Otherwise the fill task closes the source once it sees the flag
+            source.close();
+        }
+        notifyAll();
+    }
+
+    @Override
+    public ServerCursor getServerCursor() {
+        return source.getServerCursor();
+    }
+
+    @Override
+    public ServerAddress getServerAddress() {
+        return source.getServerAddress();
+    }
+}
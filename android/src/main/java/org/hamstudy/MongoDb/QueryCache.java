@@ -0,0 +1,206 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Size bounded LRU cache of find / aggregate responses.
+ *
+ * Entries are dropped whenever their collection is written to. A query on a collection that
+ * was written to while it ran never gets cached, so a stale result can't sneak in after the
+ * invalidation: lookup() hands out the current versions of the collection, its database and
+ * the whole cache, and put() ignores the result if any of them changed since. Writes to other
+ * collections don't affect it.
+ *
+ * Cached responses are shared between calls and must not be modified after put().
+ */
+public class QueryCache {
+    static final int DEFAULT_MAX_ENTRIES = 100;
+    static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static class Entry {
+        final String namespace;
+        final JSObject result;
+        final long size;
+
+        Entry(String namespace, JSObject result, long size) {
+            this.namespace = namespace;
+            this.result = result;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Result of a lookup; on a miss pass it back to put() with the response
+     */
+    static class Ticket {
+        final String key;
+        final String namespace;
+        final long namespaceVersion;
+        final long databaseVersion;
+        final long epoch;
+        final JSObject cached;
+
+        private Ticket(String key, String namespace, long namespaceVersion, long databaseVersion, long epoch, JSObject cached) {
+            this.key = key;
+            this.namespace = namespace;
+            this.namespaceVersion = namespaceVersion;
+            this.databaseVersion = databaseVersion;
+            this.epoch = epoch;
+            this.cached = cached;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries;
+    private long maxBytes;
+    private long bytes = 0;
+    // Last invalidation of each "db.collection" and "db"; values come from nextVersion so
+    // they never repeat, and a namespace with no entry has never been invalidated
+    private final HashMap<String, Long> versions = new HashMap<>();
+    private long nextVersion = 1;
+    // Bumped by invalidateAll
+    private long epoch = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long invalidations = 0;
+    private long evictions = 0;
+
+    QueryCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+    /**
+     * @param maxEntries maximum number of cached responses; 0 disables the cache
+     * @param maxBytes maximum total size of the cached responses (as JSON)
+     */
+    QueryCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        trim();
+    }
+    synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+    synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+    synchronized boolean isEnabled() {
+        return maxEntries > 0 && maxBytes > 0;
+    }
+
+    /**
+     * @param key identifies the query and its options
+     * @param namespace the "db.collection" the query reads
+     */
+    synchronized Ticket lookup(String key, String namespace) {
+        Entry entry = entries.get(key);
+        JSObject cached = null;
+        if (entry != null) {
+            hits++;
+            cached = entry.result;
+        } else {
+            misses++;
+        }
+        return new Ticket(key, namespace, getVersion(namespace), getVersion(getDatabase(namespace)), epoch, cached);
+    }
+
+    synchronized void put(Ticket ticket, JSObject result) {
+        if (!isEnabled() || ticket.epoch != epoch || ticket.namespaceVersion != getVersion(ticket.namespace)
+                || ticket.databaseVersion != getVersion(getDatabase(ticket.namespace))) {
+            return;
+        }
+        long size = result.toString().length();
+        if (size > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(ticket.key, new Entry(ticket.namespace, result, size));
+        if (old != null) {
+            bytes -= old.size;
+        }
+        bytes += size;
+        trim();
+    }
+
+    /**
+     * Drops every cached response for a "db.collection" namespace
+     */
+    synchronized void invalidate(String namespace) {
+        versions.put(namespace, nextVersion++);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.namespace.equals(namespace)) {
+                bytes -= entry.size;
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops every cached response for the collections of a database
+     */
+    synchronized void invalidateDatabase(String db) {
+        versions.put(db, nextVersion++);
+        String prefix = db + ".";
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.namespace.startsWith(prefix)) {
+                bytes -= entry.size;
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        epoch++;
+        invalidations += entries.size();
+        entries.clear();
+        bytes = 0;
+    }
+
+    private long getVersion(String namespace) {
+        Long version = versions.get(namespace);
+        return version != null ? version : 0;
+    }
+    private static String getDatabase(String namespace) {
+        int dot = namespace.indexOf('.');
+        return dot >= 0 ? namespace.substring(0, dot) : namespace;
+    }
+
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= it.next().size;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    synchronized JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("invalidations", invalidations);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
@@ -0,0 +1,227 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+/**
+ * Helpers to reduce a query to its shape: which fields it filters / sorts on and with which
+ * operators, with every value replaced by 1. Queries which only differ in their values have
+ * the same shape (and the same shape string), so they can be grouped and matched to indexes.
+ *
+ *     {age: {$gt: 21}, name: "bob"}  =>  {"age": {"$gt": 1}, "name": 1}
+ *
+ * Field names are sorted so the order they were written in doesn't matter. Base64 encoded BSON
+ * filters, sorts and pipeline stages ({$b64: "..."}) are decoded first; one which can't be
+ * decoded has the shape {"$b64": "opaque"}.
+ */
+public class QueryShape {
+    // Extended JSON wrappers look like operators but are values
+    private static final HashSet<String> VALUE_KEYS = new HashSet<>(Arrays.asList(
+            "$oid", "$date", "$numberInt", "$numberLong", "$numberDouble", "$numberDecimal",
+            "$binary", "$uuid", "$timestamp", "$regularExpression", "$symbol", "$code", "$minKey", "$maxKey"));
+    private static final JsonWriterSettings jsonSettings = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private QueryShape() {}
+
+    /**
+     * @param filter a query filter; may be null
+     * @return the shape of the filter
+     */
+    static JSObject ofFilter(JSONObject filter) {
+        JSObject shape = new JSObject();
+        if (filter == null) {
+            return shape;
+        }
+        filter = decode(filter);
+        if (filter == null) {
+            return opaque();
+        }
+        for (String key : sortedKeys(filter)) {
+            Object value = filter.opt(key);
+            if ((key.equals("$and") || key.equals("$or") || key.equals("$nor")) && value instanceof JSONArray) {
+                JSONArray clauses = (JSONArray) value;
+                JSONArray clauseShapes = new JSONArray();
+                for (int i = 0; i < clauses.length(); i++) {
+                    clauseShapes.put(ofFilter(clauses.optJSONObject(i)));
+                }
+                shape.put(key, clauseShapes);
+            } else if (value instanceof JSONObject && isOperatorObject((JSONObject) value)) {
+                shape.put(key, ofOperators((JSONObject) value));
+            } else {
+                shape.put(key, 1);
+            }
+        }
+        return shape;
+    }
+
+    private static JSObject ofOperators(JSONObject operators) {
+        JSObject shape = new JSObject();
+        for (String op : sortedKeys(operators)) {
+            Object value = operators.opt(op);
+            if ((op.equals("$elemMatch") || op.equals("$not")) && value instanceof JSONObject) {
+                JSONObject inner = (JSONObject) value;
+                shape.put(op, isOperatorObject(inner) ? ofOperators(inner) : ofFilter(inner));
+            } else {
+                shape.put(op, 1);
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * @param sort a sort document; may be null
+     * @return the sort with its field order and directions kept, since both matter for indexes
+     */
+    static JSObject ofSort(JSONObject sort) {
+        JSObject shape = new JSObject();
+        if (sort == null) {
+            return shape;
+        }
+        sort = decode(sort);
+        if (sort == null) {
+            return opaque();
+        }
+        Iterator<?> it = sort.keys();
+        while (it.hasNext()) {
+            String key = (String) it.next();
+            Object value = sort.opt(key);
+            shape.put(key, value instanceof Number ? (((Number) value).intValue() < 0 ? -1 : 1) : value);
+        }
+        return shape;
+    }
+
+    /**
+     * $match stages are reduced like filters and $sort stages kept like sorts; for any other
+     * stage only its name is kept
+     * @param pipeline
+     * @return
+     */
+    static JSONArray ofPipeline(JSONArray pipeline) {
+        JSONArray shape = new JSONArray();
+        if (pipeline == null) {
+            return shape;
+        }
+        for (int i = 0; i < pipeline.length(); i++) {
+            JSONObject stage = pipeline.optJSONObject(i);
+            if (stage != null) {
+                stage = decode(stage);
+                if (stage == null) {
+                    shape.put(opaque());
+                    continue;
+                }
+            }
+            if (stage == null || stage.length() != 1) {
+                shape.put(1);
+                continue;
+            }
+            String name = (String) stage.keys().next();
+            JSObject stageShape = new JSObject();
+            if (name.equals("$match")) {
+                stageShape.put(name, ofFilter(stage.optJSONObject(name)));
+            } else if (name.equals("$sort")) {
+                stageShape.put(name, ofSort(stage.optJSONObject(name)));
+            } else {
+                stageShape.put(name, 1);
+            }
+            shape.put(stageShape);
+        }
+        return shape;
+    }
+
+    /**
+     * @param data the arguments of a find / count / update / delete / aggregate call
+     * @return {filter, sort?} or {pipeline}
+     */
+    static JSObject ofCall(JSONObject data) {
+        JSObject shape = new JSObject();
+        JSONArray pipeline = data.optJSONArray("pipeline");
+        if (pipeline != null) {
+            shape.put("pipeline", ofPipeline(pipeline));
+            return shape;
+        }
+        shape.put("filter", ofFilter(data.optJSONObject("filter")));
+        JSONObject options = data.optJSONObject("options");
+        JSONObject sort = options != null ? options.optJSONObject("sort") : null;
+        if (sort != null && sort.length() > 0) {
+            shape.put("sort", ofSort(sort));
+        }
+        return shape;
+    }
+
+    /**
+     * @param obj
+     * @return obj, or the document it encodes if it is base64 encoded BSON; null if that can't be decoded
+     */
+    static JSONObject decode(JSONObject obj) {
+        if (!obj.has("$b64")) {
+            return obj;
+        }
+        try {
+            RawBsonDocument doc = OptionParser.getBase64BsonDocument(obj);
+            if (doc != null) {
+                return JSObjectWriter.toJSObject(doc, jsonSettings);
+            }
+        } catch (RuntimeException ex) {}
+        return null;
+    }
+    /**
+     * @param shape from ofCall
+     * @return true if any part of the call couldn't be decoded, so the shape says nothing about it
+     */
+    static boolean isOpaque(JSONObject shape) {
+        JSONArray pipeline = shape.optJSONArray("pipeline");
+        if (pipeline != null) {
+            for (int i = 0; i < pipeline.length(); i++) {
+                JSONObject stage = pipeline.optJSONObject(i);
+                if (stage != null && isOpaqueDocument(stage)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        JSONObject filter = shape.optJSONObject("filter");
+        JSONObject sort = shape.optJSONObject("sort");
+        return (filter != null && isOpaqueDocument(filter)) || (sort != null && isOpaqueDocument(sort));
+    }
+    private static boolean isOpaqueDocument(JSONObject shape) {
+        return shape.length() == 1 && "opaque".equals(shape.opt("$b64"));
+    }
+    private static JSObject opaque() {
+        JSObject shape = new JSObject();
+        shape.put("$b64", "opaque");
+        return shape;
+    }
+
+    private static boolean isOperatorObject(JSONObject obj) {
+        Iterator<?> it = obj.keys();
+        if (!it.hasNext()) {
+            return false;
+        }
+        while (it.hasNext()) {
+            String key = (String) it.next();
+            if (!key.startsWith("$") || VALUE_KEYS.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TreeSet<String> sortedKeys(JSONObject obj) {
+        TreeSet<String> keys = new TreeSet<>();
+        Iterator<?> it = obj.keys();
+        while (it.hasNext()) {
+            keys.add((String) it.next());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,219 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent queries and writes which took longer than the threshold, along with
+ * their query shape (see QueryShape), so missing indexes show up without a debugger attached.
+ *
+ * Entries go into a fixed size ring buffer: record() claims a slot with a single atomic
+ * increment and overwrites whatever was there, so recording never blocks. If a file is set the
+ * entries are also appended to it as JSON lines by a background thread; once it is larger than
+ * maxFileBytes it is moved to [file].1 (replacing the previous one) and a new file started.
+ */
+public class SlowOperationLog {
+    static final int DEFAULT_CAPACITY = 100;
+    static final long DEFAULT_MAX_FILE_BYTES = 1024 * 1024;
+    // Lines waiting to be written beyond this are dropped rather than piling up in memory
+    private static final int MAX_PENDING_LINES = 1000;
+
+    // The plugin methods we log
+    static final HashSet<String> METHODS = new HashSet<>(Arrays.asList(
+            "find", "aggregate", "count",
+            "updateOne", "updateMany", "replaceOne", "deleteOne", "deleteMany",
+            "findOneAndUpdate", "findOneAndReplace", "findOneAndDelete"));
+
+    private static class Entry {
+        final long seq;
+        final long time;
+        final String method;
+        final String namespace;
+        final JSObject shape;
+        final double durationMS;
+        final long docs;
+        final boolean failed;
+
+        Entry(long seq, String method, String namespace, JSObject shape, double durationMS, long docs, boolean failed) {
+            this.seq = seq;
+            this.time = System.currentTimeMillis();
+            this.method = method;
+            this.namespace = namespace;
+            this.shape = shape;
+            this.durationMS = durationMS;
+            this.docs = docs;
+            this.failed = failed;
+        }
+
+        JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("time", time);
+            ret.put("method", method);
+            ret.put("namespace", namespace);
+            ret.put("shape", shape);
+            ret.put("durationMS", durationMS);
+            ret.put("docs", docs);
+            if (failed) {
+                ret.put("failed", true);
+            }
+            return ret;
+        }
+    }
+
+    private final long thresholdNanos;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong clearedBefore = new AtomicLong();
+
+    private final File file;
+    private final long maxFileBytes;
+    private final ThreadPoolExecutor fileWriter;
+
+    /**
+     * @param thresholdMS operations taking longer than this are logged
+     * @param capacity number of entries kept in memory
+     * @param file also append entries to this file; may be null
+     * @param maxFileBytes rotate the file once it grows past this
+     */
+    SlowOperationLog(long thresholdMS, int capacity, File file, long maxFileBytes) {
+        this.thresholdNanos = Math.max(thresholdMS, 0) * 1000000L;
+        this.slots = new AtomicReferenceArray<>(Math.max(capacity, 1));
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        if (file != null) {
+            fileWriter = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(MAX_PENDING_LINES),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "MongoDBMobile-slowlog");
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.DiscardPolicy());
+            // So a log replaced by initDb doesn't keep its thread around
+            fileWriter.allowCoreThreadTimeOut(true);
+        } else {
+            fileWriter = null;
+        }
+    }
+
+    long getThresholdMS() {
+        return thresholdNanos / 1000000L;
+    }
+    int getCapacity() {
+        return slots.length();
+    }
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Logs the call if it is one we watch and took longer than the threshold
+     * @param call
+     * @param nanos how long it ran for
+     * @param response what it resolved with; null if it failed
+     */
+    void check(PluginCall call, long nanos, JSONObject response) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        String method = call.getMethodName();
+        if (!METHODS.contains(method)) {
+            return;
+        }
+        JSObject data = call.getData();
+        String namespace = data.optString("db", "") + "." + data.optString("collection", "");
+        record(method, namespace, QueryShape.ofCall(data), nanos / 1000000.0, getDocCount(response), response == null);
+    }
+
+    void record(String method, String namespace, JSObject shape, double durationMS, long docs, boolean failed) {
+        long seq = next.getAndIncrement();
+        Entry entry = new Entry(seq, method, namespace, shape, durationMS, docs, failed);
+        slots.set((int) (seq % slots.length()), entry);
+
+        if (fileWriter != null) {
+            final String line = entry.toJSObject().toString() + "\n";
+            fileWriter.execute(() -> append(line));
+        }
+    }
+
+    /**
+     * Documents returned, counted or written, depending on the method
+     */
+    private static long getDocCount(JSONObject response) {
+        if (response == null) {
+            return 0;
+        }
+        if (response.has("results")) {
+            return response.optJSONArray("results") != null ? response.optJSONArray("results").length() : 0;
+        }
+        String[] countKeys = {"count", "matchedCount", "deletedCount"};
+        for (String key : countKeys) {
+            if (response.has(key)) {
+                return response.optLong(key, 0);
+            }
+        }
+        if (response.has("doc")) {
+            return response.isNull("doc") ? 0 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the logged operations, oldest first
+     */
+    JSArray getEntries() {
+        JSArray ret = new JSArray();
+        long end = next.get();
+        long start = Math.max(Math.max(0, end - slots.length()), clearedBefore.get());
+        for (long seq = start; seq < end; seq++) {
+            Entry entry = slots.get((int) (seq % slots.length()));
+            // Skip slots which are still being written or were overwritten since we started
+            if (entry != null && entry.seq == seq) {
+                ret.put(entry.toJSObject());
+            }
+        }
+        return ret;
+    }
+    long getTotalCount() {
+        return next.get();
+    }
+
+    void clear() {
+        clearedBefore.set(next.get());
+    }
+
+    private void append(String line) {
+        try {
+            if (file.length() + line.length() > maxFileBytes && file.exists()) {
+                File rotated = new File(file.getPath() + ".1");
+                rotated.delete();
+                file.renameTo(rotated);
+            }
+            Writer out = new OutputStreamWriter(new FileOutputStream(file, true), Charset.forName("UTF-8"));
+            try {
+                out.write(line);
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            // Logging must never break the app; the in-memory log still has the entry
+        }
+    }
+}
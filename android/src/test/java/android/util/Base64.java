@@ -0,0 +1,56 @@
+package android.util;
+
+/**
+ * JVM stand-in for android.util.Base64, on top of java.util.Base64. Supports the flags the
+ * plugin uses; DEFAULT wraps lines at 76 characters and ends with a newline like Android does.
+ * Test classes come before the mockable android.jar on the unit test classpath, so this is the
+ * one the plugin gets there (and in the benchmark module) instead of a stub returning null.
+ */
+public class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int CRLF = 4;
+    public static final int URL_SAFE = 8;
+
+    private static final java.util.Base64.Encoder mimeEncoder = java.util.Base64.getMimeEncoder(76, new byte[]{'\n'});
+    private static final java.util.Base64.Encoder mimeEncoderCrlf = java.util.Base64.getMimeEncoder(76, new byte[]{'\r', '\n'});
+
+    private Base64() {}
+
+    public static byte[] decode(String str, int flags) {
+        if ((flags & URL_SAFE) != 0) {
+            return java.util.Base64.getUrlDecoder().decode(str.replaceAll("\\s", ""));
+        }
+        return java.util.Base64.getMimeDecoder().decode(str);
+    }
+    public static byte[] decode(byte[] input, int flags) {
+        return decode(new String(input, java.nio.charset.StandardCharsets.US_ASCII), flags);
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return encodeToString(input, 0, input.length, flags);
+    }
+    public static String encodeToString(byte[] input, int offset, int len, int flags) {
+        byte[] data = offset == 0 && len == input.length ? input : java.util.Arrays.copyOfRange(input, offset, offset + len);
+        java.util.Base64.Encoder encoder;
+        if ((flags & URL_SAFE) != 0) {
+            encoder = java.util.Base64.getUrlEncoder();
+        } else if ((flags & NO_WRAP) != 0) {
+            encoder = java.util.Base64.getEncoder();
+        } else {
+            encoder = (flags & CRLF) != 0 ? mimeEncoderCrlf : mimeEncoder;
+        }
+        if ((flags & NO_PADDING) != 0) {
+            encoder = encoder.withoutPadding();
+        }
+        String encoded = encoder.encodeToString(data);
+        if ((flags & (NO_WRAP | URL_SAFE)) == 0 && !encoded.isEmpty()) {
+            encoded += (flags & CRLF) != 0 ? "\r\n" : "\n";
+        }
+        return encoded;
+    }
+    public static byte[] encode(byte[] input, int flags) {
+        return encodeToString(input, flags).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,46 @@
+package org.hamstudy.MongoDb;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchSizerTest {
+    private static final long DOC_BYTES = 100;
+
+    private static void readBatch(BatchSizer sizer) {
+        int count = sizer.getBatchSize();
+        sizer.record(count, count * DOC_BYTES, 0);
+    }
+
+    @Test
+    public void rampUpIsNotLearned() {
+        String namespace = "db.rampUpIsNotLearned";
+        BatchSizer sizer = new BatchSizer(namespace, 10, 100000, 256 * 1024, 0);
+        int steady = (int) (256 * 1024 / DOC_BYTES);
+
+        // 10 -> 40 -> 160 -> 640 -> 2560 are all limited by the ramp
+        for (int i = 0; i < 4; i++) {
+            readBatch(sizer);
+            assertEquals(0, BatchSizer.getLearnedSize(namespace));
+        }
+        assertEquals(2560, sizer.getBatchSize());
+
+        readBatch(sizer);
+        assertEquals(steady, sizer.getBatchSize());
+        assertEquals(steady, BatchSizer.getLearnedSize(namespace));
+    }
+
+    @Test
+    public void shortBatchIsNotLearned() {
+        String namespace = "db.shortBatchIsNotLearned";
+        BatchSizer sizer = new BatchSizer(namespace, 10, 100000, 100 * DOC_BYTES, 0);
+        sizer.record(5, 5 * DOC_BYTES, 0);
+        assertEquals(0, BatchSizer.getLearnedSize(namespace));
+
+        // A filled batch over budget settles straight away
+        sizer = new BatchSizer(namespace, 10, 100000, 5 * DOC_BYTES, 0);
+        readBatch(sizer);
+        assertEquals(5, sizer.getBatchSize());
+        assertEquals(5, BatchSizer.getLearnedSize(namespace));
+    }
+}
@@ -0,0 +1,152 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Auto-flushing bulk writes against FakeMongoClient
+ */
+public class BulkWriteBatchTest {
+    private FakeMongoClient fake;
+    private MongoCollection<Document> collection;
+
+    @Before
+    public void setUp() {
+        fake = new FakeMongoClient();
+        collection = fake.getClient().getDatabase("test").getCollection("docs");
+    }
+
+    private static WriteModel<Document> insert(String id) {
+        return new InsertOneModel<>(new Document("_id", id).append("n", 1));
+    }
+    private static WriteModel<Document> upsert(String id) {
+        return new UpdateOneModel<>(new Document("_id", id), new Document("$set", new Document("n", 2)), new UpdateOptions().upsert(true));
+    }
+
+    @Test
+    public void resultsAddUpAcrossFlushes() {
+        BulkWriteBatch<Document> batch = new BulkWriteBatch<>(collection, null);
+        batch.setAutoFlush(3, 0);
+
+        batch.addRequest(insert("a"));
+        batch.addRequest(insert("b"));
+        batch.addRequest(upsert("u1"));
+        // The first three have been written already
+        assertEquals(3, batch.getFlushedCount());
+        assertEquals(3, fake.size("test", "docs"));
+
+        batch.addRequest(upsert("a"));
+        batch.addRequest(upsert("u2"));
+        batch.addRequest(new DeleteOneModel<Document>(new Document("_id", "b")));
+        batch.addRequest(insert("c"));
+        assertEquals(6, batch.getFlushedCount());
+
+        BulkWriteResult result = batch.execute();
+        assertEquals(7, batch.getFlushedCount());
+        assertEquals(3, result.getInsertedCount());
+        assertEquals(1, result.getMatchedCount());
+        assertEquals(1, result.getModifiedCount());
+        assertEquals(1, result.getDeletedCount());
+
+        // Upsert indexes are positions in the whole bulk write, not in their sub-batch
+        List<BulkWriteUpsert> upserts = result.getUpserts();
+        assertEquals(2, upserts.size());
+        assertEquals(2, upserts.get(0).getIndex());
+        assertEquals(new BsonString("u1"), upserts.get(0).getId());
+        assertEquals(4, upserts.get(1).getIndex());
+        assertEquals(new BsonString("u2"), upserts.get(1).getId());
+
+        assertEquals(4, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void withoutAutoFlushNothingIsWrittenUntilExecute() {
+        BulkWriteBatch<Document> batch = new BulkWriteBatch<>(collection, null);
+        for (int i = 0; i < 20; i++) {
+            batch.addRequest(insert("doc-" + i));
+        }
+        assertEquals(0, batch.getFlushedCount());
+        assertEquals(0, fake.size("test", "docs"));
+
+        assertEquals(20, batch.execute().getInsertedCount());
+        assertEquals(20, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void flushBytesCountsDocumentSizes() {
+        long docSize = OptionParser.toRawBsonDocument(new Document("_id", "doc-0").append("n", 1)).getByteBuffer().remaining();
+        BulkWriteBatch<Document> batch = new BulkWriteBatch<>(collection, null);
+        // Reached by the third document
+        batch.setAutoFlush(0, docSize * 5 / 2);
+
+        batch.addRequest(insert("doc-0"));
+        batch.addRequest(insert("doc-1"));
+        // Deletes have no document, so they don't count
+        batch.addRequest(new DeleteOneModel<Document>(new Document("_id", "none")));
+        assertEquals(0, batch.getFlushedCount());
+        batch.addRequest(insert("doc-2"));
+        assertEquals(4, batch.getFlushedCount());
+        assertEquals(3, fake.size("test", "docs"));
+
+        // The count starts over after a flush
+        batch.addRequest(insert("doc-3"));
+        batch.addRequest(insert("doc-4"));
+        assertEquals(4, batch.getFlushedCount());
+        batch.addRequest(insert("doc-5"));
+        assertEquals(7, batch.getFlushedCount());
+
+        assertEquals(6, batch.execute().getInsertedCount());
+    }
+
+    @Test
+    public void failedFlushLocksTheBatch() {
+        BulkWriteBatch<Document> batch = new BulkWriteBatch<>(collection, null);
+        batch.setAutoFlush(2, 0);
+        batch.addRequest(insert("a"));
+        batch.addRequest(insert("b"));
+
+        batch.addRequest(insert("c"));
+        try {
+            // Duplicate key in the second sub-batch
+            batch.addRequest(insert("a"));
+            fail("the flush should have failed");
+        } catch (MongoBulkWriteException ex) {
+            assertEquals(11000, ex.getWriteErrors().get(0).getCode());
+        }
+
+        try {
+            batch.addRequest(insert("d"));
+            fail("adding after a failed flush should fail");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("earlier flush"));
+            assertTrue(ex.getCause() instanceof MongoBulkWriteException);
+        }
+        try {
+            batch.execute();
+            fail("executing after a failed flush should fail");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getCause() instanceof MongoBulkWriteException);
+        }
+
+        // The first sub-batch stays written and nothing after the failure was
+        assertEquals(3, fake.size("test", "docs"));
+        assertTrue(fake.find("test", "docs", new BsonDocument("_id", new BsonString("d"))).isEmpty());
+    }
+}
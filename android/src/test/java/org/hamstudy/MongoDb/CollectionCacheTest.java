@@ -0,0 +1,115 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CollectionCacheTest {
+    private final FakeMongoClient fake = new FakeMongoClient();
+    private final CollectionCache cache = new CollectionCache();
+
+    private MongoDatabase putDatabase(String key, String name) {
+        return cache.putDatabase(key, name, fake.getDatabase(name));
+    }
+    private <TDocument> MongoCollection<TDocument> putCollection(MongoDatabase db, String name, Class<TDocument> documentClass) {
+        MongoCollection<TDocument> collection = db.getCollection(name, documentClass);
+        cache.putCollection(db, name, collection);
+        return collection;
+    }
+
+    @Test
+    public void databasesAreKeyedByTheCallersKey() {
+        assertNull(cache.getDatabase("db"));
+        MongoDatabase plain = putDatabase("db", "db");
+        MongoDatabase majority = putDatabase("db\u0000{\"w\":\"majority\"}", "db");
+
+        assertNotSame(plain, majority);
+        assertSame(plain, cache.getDatabase("db"));
+        assertSame(majority, cache.getDatabase("db\u0000{\"w\":\"majority\"}"));
+
+        // Another thread got there first; its handle wins
+        assertSame(plain, putDatabase("db", "db"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void collectionsAreKeyedByHandleNameAndClass() {
+        MongoDatabase db = putDatabase("db", "db");
+        MongoDatabase other = putDatabase("db\u0000w1", "db");
+        MongoCollection<Document> docs = putCollection(db, "docs", Document.class);
+        MongoCollection<RawBsonDocument> raw = putCollection(db, "docs", RawBsonDocument.class);
+
+        assertSame(docs, cache.getCollection(db, "docs", Document.class));
+        assertSame(raw, cache.getCollection(db, "docs", RawBsonDocument.class));
+        assertNull(cache.getCollection(db, "other", Document.class));
+        // Each write concern variant has its own collections
+        assertNull(cache.getCollection(other, "docs", Document.class));
+
+        // Handles the cache didn't give out aren't cached
+        MongoDatabase uncached = fake.getDatabase("db");
+        putCollection(uncached, "docs", Document.class);
+        assertNull(cache.getCollection(uncached, "docs", Document.class));
+    }
+
+    @Test
+    public void dropDatabaseInvalidatesEveryVariant() {
+        MongoDatabase db = putDatabase("db", "db");
+        MongoDatabase majority = putDatabase("db\u0000majority", "db");
+        MongoDatabase keep = putDatabase("db2", "db2");
+        putCollection(db, "docs", Document.class);
+        putCollection(keep, "docs", Document.class);
+
+        cache.invalidateDatabase("db");
+
+        assertNull(cache.getDatabase("db"));
+        assertNull(cache.getDatabase("db\u0000majority"));
+        assertNull(cache.getCollection(db, "docs", Document.class));
+        assertNull(cache.getCollection(majority, "docs", Document.class));
+        assertSame(keep, cache.getDatabase("db2"));
+        assertNotNull(cache.getCollection(keep, "docs", Document.class));
+    }
+
+    @Test
+    public void dropCollectionInvalidatesEveryClassAndVariant() {
+        MongoDatabase db = putDatabase("db", "db");
+        MongoDatabase majority = putDatabase("db\u0000majority", "db");
+        MongoDatabase otherDb = putDatabase("db2", "db2");
+        putCollection(db, "docs", Document.class);
+        putCollection(db, "docs", RawBsonDocument.class);
+        putCollection(majority, "docs", Document.class);
+        putCollection(db, "docs2", Document.class);
+        putCollection(otherDb, "docs", Document.class);
+
+        cache.invalidateCollection("db", "docs");
+
+        assertNull(cache.getCollection(db, "docs", Document.class));
+        assertNull(cache.getCollection(db, "docs", RawBsonDocument.class));
+        assertNull(cache.getCollection(majority, "docs", Document.class));
+        // Only that name, not names it is a prefix of, and not in other databases
+        assertNotNull(cache.getCollection(db, "docs2", Document.class));
+        assertNotNull(cache.getCollection(otherDb, "docs", Document.class));
+        // The database handle itself is still good
+        assertSame(db, cache.getDatabase("db"));
+    }
+
+    @Test
+    public void clearsWhenFull() {
+        cache.setMaxDatabases(3);
+        MongoDatabase first = putDatabase("w1", "db");
+        putDatabase("w2", "db");
+        putDatabase("w3", "db");
+        putCollection(first, "docs", Document.class);
+        assertEquals(3, cache.size());
+
+        putDatabase("w4", "db");
+        assertEquals(1, cache.size());
+        assertNull(cache.getDatabase("w1"));
+        assertNull(cache.getCollection(first, "docs", Document.class));
+        assertNotNull(cache.getDatabase("w4"));
+    }
+}
@@ -0,0 +1,729 @@
+package org.hamstudy.MongoDb;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteError;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.DeleteOptions;
+import com.mongodb.client.model.EstimatedDocumentCountOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.InsertOneOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory stand-in for the embedded server, enough to run the plugin's find / cursor /
+ * insert / update / bulk write paths on a desktop JVM.
+ *
+ * Each collection keeps its documents as RawBsonDocuments keyed by _id, so the plugin pays the
+ * same encode / decode costs it would against the real driver, and every query except an exact
+ * {_id: value} match is a full scan (see FakeQuery for what filters and updates are supported).
+ * A collection is guarded by a read / write lock; writes are applied one at a time and a bulk
+ * write stops at the first duplicate key like an ordered one. The handles are strict Stubs, so
+ * anything the fake doesn't implement throws UnsupportedOperationException.
+ */
+final class FakeMongoClient {
+    private static final CodecRegistry CODEC_REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+    private static final BsonDocumentCodec BSON_DOCUMENT_CODEC = new BsonDocumentCodec();
+
+    private final ConcurrentHashMap<String, Store> stores = new ConcurrentHashMap<>();
+    private final MongoClient client = Stubs.strict(MongoClient.class, this);
+
+    MongoClient getClient() {
+        return client;
+    }
+
+    public MongoDatabase getDatabase(String name) {
+        return Stubs.strict(MongoDatabase.class, new FakeDatabase(name, WriteConcern.ACKNOWLEDGED));
+    }
+
+    /**
+     * @return the number of documents in a collection, bypassing the plugin
+     */
+    int size(String db, String collection) {
+        Store store = getStore(new MongoNamespace(db, collection));
+        store.lock.readLock().lock();
+        try {
+            return store.docs.size();
+        } finally {
+            store.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the documents of a collection matching filter, bypassing the plugin
+     */
+    List<BsonDocument> find(String db, String collection, BsonDocument filter) {
+        Store store = getStore(new MongoNamespace(db, collection));
+        store.lock.readLock().lock();
+        try {
+            return new ArrayList<BsonDocument>(store.findMatching(filter));
+        } finally {
+            store.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A count made on a collection, so tests can check which kind the plugin asked for
+     */
+    static final class Count {
+        final boolean estimated;
+        final BsonDocument filter;
+        final CountOptions options;
+
+        Count(boolean estimated, BsonDocument filter, CountOptions options) {
+            this.estimated = estimated;
+            this.filter = filter;
+            this.options = options;
+        }
+    }
+
+    /**
+     * @return the last count made on a collection, or null if there was none
+     */
+    Count getLastCount(String db, String collection) {
+        return getStore(new MongoNamespace(db, collection)).lastCount;
+    }
+
+    private Store getStore(MongoNamespace namespace) {
+        Store store = stores.get(namespace.getFullName());
+        if (store == null) {
+            store = new Store(namespace);
+            Store existing = stores.putIfAbsent(namespace.getFullName(), store);
+            if (existing != null) {
+                store = existing;
+            }
+        }
+        return store;
+    }
+
+    private static BsonDocument toBsonDocument(Bson bson) {
+        return bson != null ? bson.toBsonDocument(BsonDocument.class, CODEC_REGISTRY) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fromRaw(RawBsonDocument raw, Class<T> documentClass) {
+        if (documentClass == RawBsonDocument.class || documentClass == BsonDocument.class) {
+            return (T) raw;
+        }
+        return raw.decode(CODEC_REGISTRY.get(documentClass));
+    }
+
+    /**
+     * Encodes a document being inserted, giving it an ObjectId _id first if it has none; like
+     * the driver, a Document gets the generated _id put into it
+     */
+    private static RawBsonDocument toRaw(Object doc) {
+        if (doc instanceof Document && !((Document) doc).containsKey("_id")) {
+            ((Document) doc).put("_id", new ObjectId());
+        }
+        RawBsonDocument raw = encode(doc);
+        if (!raw.containsKey("_id")) {
+            BsonDocument withId = new BsonDocument("_id", new BsonObjectId());
+            withId.putAll(raw);
+            raw = new RawBsonDocument(withId, BSON_DOCUMENT_CODEC);
+        }
+        return raw;
+    }
+    /**
+     * Encodes a document as it is, e.g. a replacement which keeps the _id of the one it replaces
+     */
+    @SuppressWarnings("unchecked")
+    private static RawBsonDocument encode(Object doc) {
+        if (doc instanceof RawBsonDocument) {
+            return (RawBsonDocument) doc;
+        } else if (doc instanceof BsonDocument) {
+            return new RawBsonDocument((BsonDocument) doc, BSON_DOCUMENT_CODEC);
+        }
+        return new RawBsonDocument(doc, (Codec<Object>) CODEC_REGISTRY.get(doc.getClass()));
+    }
+
+    private static class Store {
+        final MongoNamespace namespace;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final LinkedHashMap<BsonValue, RawBsonDocument> docs = new LinkedHashMap<>();
+        volatile Count lastCount;
+
+        Store(MongoNamespace namespace) {
+            this.namespace = namespace;
+        }
+
+        /**
+         * Caller must hold the lock
+         */
+        List<RawBsonDocument> findMatching(BsonDocument filter) {
+            if (filter != null && filter.size() == 1 && filter.containsKey("_id")) {
+                BsonValue id = filter.get("_id");
+                if (!id.isDocument() || !id.asDocument().getFirstKey().startsWith("$")) {
+                    RawBsonDocument doc = docs.get(id);
+                    return doc != null ? Collections.singletonList(doc) : Collections.<RawBsonDocument>emptyList();
+                }
+            }
+            ArrayList<RawBsonDocument> matching = new ArrayList<>();
+            for (RawBsonDocument doc : docs.values()) {
+                if (filter == null || FakeQuery.matches(doc, filter)) {
+                    matching.add(doc);
+                }
+            }
+            return matching;
+        }
+
+        /**
+         * Caller must hold the write lock
+         */
+        void insert(RawBsonDocument doc) {
+            BsonValue id = doc.get("_id");
+            if (docs.containsKey(id)) {
+                throw new MongoWriteException(getDuplicateKeyError(id), new ServerAddress());
+            }
+            docs.put(id, doc);
+        }
+
+        WriteError getDuplicateKeyError(BsonValue id) {
+            return new WriteError(11000, "E11000 duplicate key error collection: " + namespace.getFullName()
+                    + " index: _id_ dup key: { : " + id + " }", new BsonDocument());
+        }
+
+        /**
+         * Caller must hold the write lock
+         * @return whether the document changed
+         */
+        boolean update(RawBsonDocument doc, BsonDocument update) {
+            BsonDocument updated = doc.decode(BSON_DOCUMENT_CODEC);
+            FakeQuery.applyUpdate(updated, update, false);
+            return replace(doc, updated);
+        }
+        boolean replace(RawBsonDocument doc, BsonDocument replacement) {
+            BsonValue id = doc.get("_id");
+            BsonValue newId = replacement.get("_id");
+            if (newId != null && !newId.equals(id)) {
+                throw new MongoWriteException(new WriteError(66, "After applying the update, the (immutable) field '_id' was found to have been altered", new BsonDocument()), new ServerAddress());
+            }
+            if (newId == null) {
+                BsonDocument withId = new BsonDocument("_id", id);
+                withId.putAll(replacement);
+                replacement = withId;
+            }
+            RawBsonDocument raw = new RawBsonDocument(replacement, BSON_DOCUMENT_CODEC);
+            if (raw.equals(doc)) {
+                return false;
+            }
+            docs.put(id, raw);
+            return true;
+        }
+
+        /**
+         * Caller must hold the write lock
+         * @return the inserted document
+         */
+        RawBsonDocument upsert(BsonDocument filter, BsonDocument update, boolean isReplacement) {
+            BsonDocument doc = FakeQuery.getUpsertBase(filter);
+            if (isReplacement) {
+                BsonValue id = doc.get("_id");
+                doc = update.clone();
+                if (id != null && !doc.containsKey("_id")) {
+                    doc.put("_id", id);
+                }
+            } else {
+                FakeQuery.applyUpdate(doc, update, true);
+            }
+            RawBsonDocument raw = toRaw(doc);
+            insert(raw);
+            return raw;
+        }
+    }
+
+    public class FakeDatabase {
+        private final String name;
+        private final WriteConcern writeConcern;
+
+        FakeDatabase(String name, WriteConcern writeConcern) {
+            this.name = name;
+            this.writeConcern = writeConcern;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public WriteConcern getWriteConcern() {
+            return writeConcern;
+        }
+        public CodecRegistry getCodecRegistry() {
+            return CODEC_REGISTRY;
+        }
+        public MongoDatabase withWriteConcern(WriteConcern writeConcern) {
+            return Stubs.strict(MongoDatabase.class, new FakeDatabase(name, writeConcern));
+        }
+        public MongoCollection getCollection(String collectionName) {
+            return getCollection(collectionName, Document.class);
+        }
+        public MongoCollection getCollection(String collectionName, Class documentClass) {
+            Store store = getStore(new MongoNamespace(name, collectionName));
+            return Stubs.strict(MongoCollection.class, new FakeCollection<>(store, documentClass, writeConcern));
+        }
+    }
+
+    /**
+     * The MongoCollection methods the plugin uses, with their erased signatures so Stubs can
+     * find them
+     */
+    public static class FakeCollection<T> {
+        private final Store store;
+        private final Class<T> documentClass;
+        private final WriteConcern writeConcern;
+
+        FakeCollection(Store store, Class<T> documentClass, WriteConcern writeConcern) {
+            this.store = store;
+            this.documentClass = documentClass;
+            this.writeConcern = writeConcern;
+        }
+
+        public MongoNamespace getNamespace() {
+            return store.namespace;
+        }
+        public Class<T> getDocumentClass() {
+            return documentClass;
+        }
+        public WriteConcern getWriteConcern() {
+            return writeConcern;
+        }
+        public CodecRegistry getCodecRegistry() {
+            return CODEC_REGISTRY;
+        }
+
+        public FindIterable find() {
+            return find(null);
+        }
+        @SuppressWarnings("unchecked")
+        public FindIterable find(Bson filter) {
+            FakeFind<T> find = new FakeFind<>(store, documentClass, toBsonDocument(filter));
+            find.self = Stubs.of(FindIterable.class, find);
+            return find.self;
+        }
+
+        public long countDocuments() {
+            return countDocuments(null, null);
+        }
+        public long countDocuments(Bson filter) {
+            return countDocuments(filter, null);
+        }
+        public long countDocuments(Bson filter, CountOptions opts) {
+            BsonDocument filterDoc = toBsonDocument(filter);
+            store.lastCount = new Count(false, filterDoc, opts);
+            return count(filterDoc, opts);
+        }
+        private long count(BsonDocument filter, CountOptions opts) {
+            store.lock.readLock().lock();
+            try {
+                long count = store.findMatching(filter).size();
+                if (opts != null) {
+                    count = Math.max(0, count - opts.getSkip());
+                    if (opts.getLimit() > 0) {
+                        count = Math.min(count, opts.getLimit());
+                    }
+                }
+                return count;
+            } finally {
+                store.lock.readLock().unlock();
+            }
+        }
+        public long estimatedDocumentCount() {
+            return estimatedDocumentCount(null);
+        }
+        public long estimatedDocumentCount(EstimatedDocumentCountOptions opts) {
+            store.lastCount = new Count(true, null, null);
+            return count(null, null);
+        }
+
+        public void insertOne(Object doc) {
+            insertOne(doc, null);
+        }
+        public void insertOne(Object doc, InsertOneOptions opts) {
+            RawBsonDocument raw = toRaw(doc);
+            store.lock.writeLock().lock();
+            try {
+                store.insert(raw);
+            } finally {
+                store.lock.writeLock().unlock();
+            }
+        }
+        public void insertMany(List docs) {
+            insertMany(docs, null);
+        }
+        @SuppressWarnings("unchecked")
+        public void insertMany(List docs, InsertManyOptions opts) {
+            ArrayList<WriteModel<Object>> requests = new ArrayList<>(docs.size());
+            for (Object doc : (List<Object>) docs) {
+                requests.add(new InsertOneModel<>(doc));
+            }
+            bulkWrite(requests, null);
+        }
+
+        public UpdateResult updateOne(Bson filter, Bson update) {
+            return updateOne(filter, update, new UpdateOptions());
+        }
+        public UpdateResult updateOne(Bson filter, Bson update, UpdateOptions opts) {
+            return toUpdateResult(bulkWrite(Collections.singletonList(new UpdateOneModel<>(filter, update, opts)), null));
+        }
+        public UpdateResult updateMany(Bson filter, Bson update) {
+            return updateMany(filter, update, new UpdateOptions());
+        }
+        public UpdateResult updateMany(Bson filter, Bson update, UpdateOptions opts) {
+            return toUpdateResult(bulkWrite(Collections.singletonList(new UpdateManyModel<>(filter, update, opts)), null));
+        }
+        public UpdateResult replaceOne(Bson filter, Object replacement, ReplaceOptions opts) {
+            return toUpdateResult(bulkWrite(Collections.singletonList(new ReplaceOneModel<>(filter, replacement, opts)), null));
+        }
+        public DeleteResult deleteOne(Bson filter) {
+            return deleteOne(filter, null);
+        }
+        public DeleteResult deleteOne(Bson filter, DeleteOptions opts) {
+            return DeleteResult.acknowledged(bulkWrite(Collections.singletonList(new DeleteOneModel<>(filter)), null).getDeletedCount());
+        }
+        public DeleteResult deleteMany(Bson filter) {
+            return deleteMany(filter, null);
+        }
+        public DeleteResult deleteMany(Bson filter, DeleteOptions opts) {
+            return DeleteResult.acknowledged(bulkWrite(Collections.singletonList(new DeleteManyModel<>(filter)), null).getDeletedCount());
+        }
+
+        private static UpdateResult toUpdateResult(BulkWriteResult result) {
+            BsonValue upsertedId = result.getUpserts().isEmpty() ? null : result.getUpserts().get(0).getId();
+            return UpdateResult.acknowledged(result.getMatchedCount(), (long) result.getModifiedCount(), upsertedId);
+        }
+
+        public BulkWriteResult bulkWrite(List requests) {
+            return bulkWrite(requests, null);
+        }
+        @SuppressWarnings("unchecked")
+        public BulkWriteResult bulkWrite(List requests, BulkWriteOptions opts) {
+            // Encoded up front, like the driver does before sending anything
+            List<WriteModel<Object>> models = (List<WriteModel<Object>>) requests;
+            ArrayList<RawBsonDocument> inserts = new ArrayList<>(models.size());
+            for (WriteModel<Object> model : models) {
+                inserts.add(model instanceof InsertOneModel ? toRaw(((InsertOneModel<Object>) model).getDocument()) : null);
+            }
+
+            int inserted = 0;
+            int matched = 0;
+            int modified = 0;
+            int removed = 0;
+            ArrayList<BulkWriteUpsert> upserts = new ArrayList<>();
+            store.lock.writeLock().lock();
+            try {
+                for (int i = 0; i < models.size(); i++) {
+                    WriteModel<Object> model = models.get(i);
+                    try {
+                        if (model instanceof InsertOneModel) {
+                            store.insert(inserts.get(i));
+                            inserted++;
+                        } else if (model instanceof DeleteOneModel || model instanceof DeleteManyModel) {
+                            boolean many = model instanceof DeleteManyModel;
+                            Bson filter = many ? ((DeleteManyModel<Object>) model).getFilter() : ((DeleteOneModel<Object>) model).getFilter();
+                            for (RawBsonDocument doc : store.findMatching(toBsonDocument(filter))) {
+                                store.docs.remove(doc.get("_id"));
+                                removed++;
+                                if (!many) {
+                                    break;
+                                }
+                            }
+                        } else {
+                            BsonDocument filter;
+                            BsonDocument update;
+                            boolean upsert;
+                            boolean many = false;
+                            boolean isReplacement = false;
+                            if (model instanceof UpdateOneModel) {
+                                UpdateOneModel<Object> updateModel = (UpdateOneModel<Object>) model;
+                                filter = toBsonDocument(updateModel.getFilter());
+                                update = toBsonDocument(updateModel.getUpdate());
+                                upsert = updateModel.getOptions().isUpsert();
+                            } else if (model instanceof UpdateManyModel) {
+                                UpdateManyModel<Object> updateModel = (UpdateManyModel<Object>) model;
+                                filter = toBsonDocument(updateModel.getFilter());
+                                update = toBsonDocument(updateModel.getUpdate());
+                                upsert = updateModel.getOptions().isUpsert();
+                                many = true;
+                            } else if (model instanceof ReplaceOneModel) {
+                                ReplaceOneModel<Object> replaceModel = (ReplaceOneModel<Object>) model;
+                                filter = toBsonDocument(replaceModel.getFilter());
+                                update = encode(replaceModel.getReplacement()).decode(BSON_DOCUMENT_CODEC);
+                                upsert = replaceModel.getReplaceOptions().isUpsert();
+                                isReplacement = true;
+                            } else {
+                                throw new UnsupportedOperationException("The fake collection does not support " + model.getClass().getSimpleName());
+                            }
+
+                            List<RawBsonDocument> matching = store.findMatching(filter);
+                            if (matching.isEmpty() && upsert) {
+                                upserts.add(new BulkWriteUpsert(i, store.upsert(filter, update, isReplacement).get("_id")));
+                            }
+                            for (RawBsonDocument doc : matching) {
+                                matched++;
+                                boolean changed = isReplacement ? store.replace(doc, update) : store.update(doc, update);
+                                if (changed) {
+                                    modified++;
+                                }
+                                if (!many) {
+                                    break;
+                                }
+                            }
+                        }
+                    } catch (MongoWriteException ex) {
+                        BulkWriteResult partial = BulkWriteResult.acknowledged(inserted, matched, removed, modified, upserts);
+                        BulkWriteError error = new BulkWriteError(ex.getError().getCode(), ex.getError().getMessage(), ex.getError().getDetails(), i);
+                        throw new MongoBulkWriteException(partial, Collections.singletonList(error), null, new ServerAddress());
+                    }
+                }
+            } finally {
+                store.lock.writeLock().unlock();
+            }
+            return BulkWriteResult.acknowledged(inserted, matched, removed, modified, upserts);
+        }
+
+        public Object findOneAndUpdate(Bson filter, Bson update) {
+            return findOneAndUpdate(filter, update, new FindOneAndUpdateOptions());
+        }
+        public Object findOneAndUpdate(Bson filter, Bson update, FindOneAndUpdateOptions opts) {
+            BsonDocument filterDoc = toBsonDocument(filter);
+            BsonDocument updateDoc = toBsonDocument(update);
+            boolean returnAfter = opts.getReturnDocument() == ReturnDocument.AFTER;
+            RawBsonDocument result;
+
+            store.lock.writeLock().lock();
+            try {
+                List<RawBsonDocument> matching = store.findMatching(filterDoc);
+                BsonDocument sort = toBsonDocument(opts.getSort());
+                if (sort != null && matching.size() > 1) {
+                    matching = new ArrayList<>(matching);
+                    Collections.sort(matching, FakeQuery.comparator(sort));
+                }
+
+                if (matching.isEmpty()) {
+                    if (!opts.isUpsert()) {
+                        return null;
+                    }
+                    RawBsonDocument inserted = store.upsert(filterDoc, updateDoc, false);
+                    if (!returnAfter) {
+                        return null;
+                    }
+                    result = inserted;
+                } else {
+                    RawBsonDocument before = matching.get(0);
+                    store.update(before, updateDoc);
+                    result = returnAfter ? store.docs.get(before.get("_id")) : before;
+                }
+            } finally {
+                store.lock.writeLock().unlock();
+            }
+
+            BsonDocument projection = toBsonDocument(opts.getProjection());
+            if (projection != null) {
+                result = new RawBsonDocument(FakeQuery.project(result, projection), BSON_DOCUMENT_CODEC);
+            }
+            return fromRaw(result, documentClass);
+        }
+
+        public void drop() {
+            store.lock.writeLock().lock();
+            try {
+                store.docs.clear();
+            } finally {
+                store.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Target of a lenient FindIterable stub; options the fake doesn't apply (batchSize,
+     * maxTime, hint, ...) are accepted and ignored
+     */
+    public static class FakeFind<T> {
+        private final Store store;
+        private final Class<T> documentClass;
+        private BsonDocument filter;
+        private BsonDocument sort;
+        private BsonDocument projection;
+        private int skip;
+        private int limit;
+        private boolean tailable;
+        FindIterable self;
+
+        FakeFind(Store store, Class<T> documentClass, BsonDocument filter) {
+            this.store = store;
+            this.documentClass = documentClass;
+            this.filter = filter;
+        }
+
+        public FindIterable filter(Bson filter) {
+            this.filter = toBsonDocument(filter);
+            return self;
+        }
+        public FindIterable sort(Bson sort) {
+            this.sort = toBsonDocument(sort);
+            return self;
+        }
+        public FindIterable projection(Bson projection) {
+            this.projection = toBsonDocument(projection);
+            return self;
+        }
+        public FindIterable skip(int skip) {
+            this.skip = skip;
+            return self;
+        }
+        public FindIterable limit(int limit) {
+            this.limit = limit;
+            return self;
+        }
+        public FindIterable cursorType(CursorType cursorType) {
+            this.tailable = cursorType != CursorType.NonTailable;
+            return self;
+        }
+
+        /**
+         * Runs the query; the cursor works on a snapshot of the matching documents and decodes
+         * them as they are read
+         */
+        public MongoCursor iterator() {
+            List<RawBsonDocument> matching;
+            store.lock.readLock().lock();
+            try {
+                matching = store.findMatching(filter);
+            } finally {
+                store.lock.readLock().unlock();
+            }
+            if (sort != null && matching.size() > 1) {
+                matching = new ArrayList<>(matching);
+                Collections.sort(matching, FakeQuery.comparator(sort));
+            }
+            int from = Math.min(skip, matching.size());
+            // A negative limit means a single batch of that size, which for us is the same thing
+            int to = limit == 0 ? matching.size() : Math.min(matching.size(), from + Math.abs(limit));
+            return new FakeCursor<>(matching.subList(from, to).iterator(), documentClass, projection, tailable);
+        }
+        public MongoCursor cursor() {
+            return iterator();
+        }
+        public Object first() {
+            MongoCursor cursor = iterator();
+            return cursor.hasNext() ? cursor.next() : null;
+        }
+        @SuppressWarnings("unchecked")
+        public Collection into(Collection target) {
+            MongoCursor cursor = iterator();
+            while (cursor.hasNext()) {
+                target.add(cursor.next());
+            }
+            return target;
+        }
+    }
+
+    private static class FakeCursor<T> implements MongoCursor<T> {
+        private static final ServerAddress SERVER_ADDRESS = new ServerAddress();
+
+        private final Iterator<RawBsonDocument> docs;
+        private final Class<T> documentClass;
+        private final BsonDocument projection;
+        // Nothing is ever added to a snapshot, so at the end hasNext() waits until the cursor is closed
+        private final boolean tailable;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        FakeCursor(Iterator<RawBsonDocument> docs, Class<T> documentClass, BsonDocument projection, boolean tailable) {
+            this.docs = docs;
+            this.documentClass = documentClass;
+            this.projection = projection;
+            this.tailable = tailable;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (docs.hasNext()) {
+                return true;
+            }
+            if (tailable) {
+                try {
+                    closed.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return false;
+        }
+        @Override
+        public T next() {
+            if (!docs.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RawBsonDocument doc = docs.next();
+            if (projection != null) {
+                doc = new RawBsonDocument(FakeQuery.project(doc, projection), BSON_DOCUMENT_CODEC);
+            }
+            return fromRaw(doc, documentClass);
+        }
+        @Override
+        public T tryNext() {
+            return docs.hasNext() ? next() : null;
+        }
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+        @Override
+        public ServerCursor getServerCursor() {
+            return null;
+        }
+        @Override
+        public ServerAddress getServerAddress() {
+            return SERVER_ADDRESS;
+        }
+    }
+}
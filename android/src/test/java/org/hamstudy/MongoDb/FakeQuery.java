@@ -0,0 +1,381 @@
+package org.hamstudy.MongoDb;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * The query language of FakeMongoClient: a small, unindexed subset of MongoDB's.
+ *
+ * Filters: field equality (matching array elements too), $eq $ne $gt $gte $lt $lte $in $nin
+ * $exists, and $and / $or / $nor; fields may be dotted paths into embedded documents.
+ * Updates: $set $unset $inc $setOnInsert $push. Values are ordered as in MongoDB's BSON
+ * comparison order, except that values of different types within one class only compare by
+ * class. Anything else throws UnsupportedOperationException.
+ */
+final class FakeQuery {
+    private FakeQuery() {}
+
+    static boolean matches(BsonDocument doc, BsonDocument filter) {
+        for (Map.Entry<String, BsonValue> entry : filter.entrySet()) {
+            String key = entry.getKey();
+            BsonValue cond = entry.getValue();
+            switch (key) {
+                case "$and":
+                    for (BsonValue clause : cond.asArray()) {
+                        if (!matches(doc, clause.asDocument())) {
+                            return false;
+                        }
+                    }
+                    break;
+                case "$or":
+                case "$nor":
+                    boolean any = false;
+                    for (BsonValue clause : cond.asArray()) {
+                        if (matches(doc, clause.asDocument())) {
+                            any = true;
+                            break;
+                        }
+                    }
+                    if (any != key.equals("$or")) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (key.startsWith("$")) {
+                        throw new UnsupportedOperationException("The fake collection does not support " + key);
+                    }
+                    BsonValue value = resolve(doc, key);
+                    if (isOperatorDocument(cond)) {
+                        if (!matchesOperators(value, cond.asDocument())) {
+                            return false;
+                        }
+                    } else if (!valueEquals(value, cond)) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesOperators(BsonValue value, BsonDocument operators) {
+        for (Map.Entry<String, BsonValue> entry : operators.entrySet()) {
+            BsonValue arg = entry.getValue();
+            boolean ok;
+            switch (entry.getKey()) {
+                case "$eq":
+                    ok = valueEquals(value, arg);
+                    break;
+                case "$ne":
+                    ok = !valueEquals(value, arg);
+                    break;
+                case "$gt":
+                    ok = value != null && comparable(value, arg) && compare(value, arg) > 0;
+                    break;
+                case "$gte":
+                    ok = value != null && comparable(value, arg) && compare(value, arg) >= 0;
+                    break;
+                case "$lt":
+                    ok = value != null && comparable(value, arg) && compare(value, arg) < 0;
+                    break;
+                case "$lte":
+                    ok = value != null && comparable(value, arg) && compare(value, arg) <= 0;
+                    break;
+                case "$in":
+                case "$nin":
+                    boolean found = false;
+                    for (BsonValue candidate : arg.asArray()) {
+                        if (valueEquals(value, candidate)) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    ok = found == entry.getKey().equals("$in");
+                    break;
+                case "$exists":
+                    ok = (value != null) == (arg.isBoolean() ? arg.asBoolean().getValue() : arg.isNumber() && arg.asNumber().intValue() != 0);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("The fake collection does not support " + entry.getKey());
+            }
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOperatorDocument(BsonValue value) {
+        return value.isDocument() && !value.asDocument().isEmpty() && value.asDocument().getFirstKey().startsWith("$");
+    }
+
+    private static boolean valueEquals(BsonValue value, BsonValue cond) {
+        if (value == null) {
+            return cond.isNull();
+        }
+        if (value.isArray() && !cond.isArray()) {
+            for (BsonValue element : value.asArray()) {
+                if (valueEquals(element, cond)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return comparable(value, cond) && compare(value, cond) == 0;
+    }
+
+    /**
+     * @return the value at a dotted path; null if it is missing
+     */
+    static BsonValue resolve(BsonDocument doc, String path) {
+        if (path.indexOf('.') < 0) {
+            return doc.get(path);
+        }
+        BsonValue current = doc;
+        for (String part : path.split("\\.")) {
+            if (current == null || !current.isDocument()) {
+                return null;
+            }
+            current = current.asDocument().get(part);
+        }
+        return current;
+    }
+
+    private static int typeOrder(BsonValue value) {
+        switch (value.getBsonType()) {
+            case MIN_KEY: return 0;
+            case NULL:
+            case UNDEFINED: return 1;
+            case INT32:
+            case INT64:
+            case DOUBLE:
+            case DECIMAL128: return 2;
+            case STRING:
+            case SYMBOL: return 3;
+            case DOCUMENT: return 4;
+            case ARRAY: return 5;
+            case BINARY: return 6;
+            case OBJECT_ID: return 7;
+            case BOOLEAN: return 8;
+            case DATE_TIME: return 9;
+            case TIMESTAMP: return 10;
+            case REGULAR_EXPRESSION: return 11;
+            default: return 12;
+        }
+    }
+
+    private static boolean comparable(BsonValue a, BsonValue b) {
+        return typeOrder(a) == typeOrder(b);
+    }
+
+    /**
+     * Orders values as MongoDB sorts them; null (a missing value) sorts first
+     */
+    static int compare(BsonValue a, BsonValue b) {
+        if (a == null) {
+            a = BsonNull.VALUE;
+        }
+        if (b == null) {
+            b = BsonNull.VALUE;
+        }
+        int order = Integer.compare(typeOrder(a), typeOrder(b));
+        if (order != 0) {
+            return order;
+        }
+        switch (typeOrder(a)) {
+            case 2:
+                if (a.getBsonType() == BsonType.DECIMAL128 || b.getBsonType() == BsonType.DECIMAL128) {
+                    return a.asNumber().decimal128Value().bigDecimalValue().compareTo(b.asNumber().decimal128Value().bigDecimalValue());
+                }
+                if (a.getBsonType() != BsonType.DOUBLE && b.getBsonType() != BsonType.DOUBLE) {
+                    return Long.compare(a.asNumber().longValue(), b.asNumber().longValue());
+                }
+                return Double.compare(a.asNumber().doubleValue(), b.asNumber().doubleValue());
+            case 3:
+                return (a.isString() ? a.asString().getValue() : a.asSymbol().getSymbol())
+                        .compareTo(b.isString() ? b.asString().getValue() : b.asSymbol().getSymbol());
+            case 7:
+                return a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+            case 8:
+                return Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+            case 9:
+                return Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+            case 10:
+                return a.asTimestamp().compareTo(b.asTimestamp());
+            case 0:
+            case 1:
+                return 0;
+            default:
+                return a.equals(b) ? 0 : a.toString().compareTo(b.toString());
+        }
+    }
+
+    /**
+     * @param sort a sort document; may be null
+     */
+    static Comparator<BsonDocument> comparator(final BsonDocument sort) {
+        return (a, b) -> {
+            if (sort == null) {
+                return 0;
+            }
+            for (Map.Entry<String, BsonValue> entry : sort.entrySet()) {
+                int direction = entry.getValue().isNumber() && entry.getValue().asNumber().intValue() < 0 ? -1 : 1;
+                int result = compare(resolve(a, entry.getKey()), resolve(b, entry.getKey()));
+                if (result != 0) {
+                    return result * direction;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Applies a top level inclusion or exclusion projection
+     * @param projection may be null
+     */
+    static BsonDocument project(BsonDocument doc, BsonDocument projection) {
+        if (projection == null || projection.isEmpty()) {
+            return doc;
+        }
+        boolean inclusion = false;
+        for (Map.Entry<String, BsonValue> entry : projection.entrySet()) {
+            if (!entry.getKey().equals("_id") && isTruthy(entry.getValue())) {
+                inclusion = true;
+            }
+        }
+        BsonDocument result = new BsonDocument();
+        for (Map.Entry<String, BsonValue> entry : doc.entrySet()) {
+            String key = entry.getKey();
+            BsonValue spec = projection.get(key);
+            boolean keep;
+            if (key.equals("_id")) {
+                keep = spec == null || isTruthy(spec);
+            } else {
+                keep = inclusion ? spec != null && isTruthy(spec) : spec == null || isTruthy(spec);
+            }
+            if (keep) {
+                result.put(key, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static boolean isTruthy(BsonValue value) {
+        if (value.isBoolean()) {
+            return value.asBoolean().getValue();
+        } else if (value.isNumber()) {
+            return value.asNumber().doubleValue() != 0;
+        }
+        throw new UnsupportedOperationException("The fake collection only supports 0 / 1 projections");
+    }
+
+    /**
+     * @return the document an upsert starts from: the filter's top level equality matches
+     */
+    static BsonDocument getUpsertBase(BsonDocument filter) {
+        BsonDocument doc = new BsonDocument();
+        for (Map.Entry<String, BsonValue> entry : filter.entrySet()) {
+            String key = entry.getKey();
+            BsonValue cond = entry.getValue();
+            if (key.startsWith("$") || key.indexOf('.') >= 0) {
+                continue;
+            }
+            if (!isOperatorDocument(cond)) {
+                doc.put(key, cond);
+            } else if (cond.asDocument().containsKey("$eq")) {
+                doc.put(key, cond.asDocument().get("$eq"));
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Applies update to doc in place
+     * @param inserting whether doc is being upserted, for $setOnInsert
+     */
+    static void applyUpdate(BsonDocument doc, BsonDocument update, boolean inserting) {
+        for (Map.Entry<String, BsonValue> entry : update.entrySet()) {
+            String op = entry.getKey();
+            BsonDocument fields = entry.getValue().asDocument();
+            for (Map.Entry<String, BsonValue> field : fields.entrySet()) {
+                String path = field.getKey();
+                BsonValue arg = field.getValue();
+                switch (op) {
+                    case "$set":
+                        set(doc, path, arg);
+                        break;
+                    case "$setOnInsert":
+                        if (inserting) {
+                            set(doc, path, arg);
+                        }
+                        break;
+                    case "$unset":
+                        BsonDocument parent = getParent(doc, path, false);
+                        if (parent != null) {
+                            parent.remove(lastPart(path));
+                        }
+                        break;
+                    case "$inc":
+                        BsonValue current = resolve(doc, path);
+                        set(doc, path, current == null ? arg : add(current, arg));
+                        break;
+                    case "$push":
+                        BsonValue list = resolve(doc, path);
+                        BsonArray array = list == null ? new BsonArray() : list.asArray();
+                        array.add(arg);
+                        set(doc, path, array);
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("The fake collection does not support " + op);
+                }
+            }
+        }
+    }
+
+    private static void set(BsonDocument doc, String path, BsonValue value) {
+        getParent(doc, path, true).put(lastPart(path), value);
+    }
+
+    private static String lastPart(String path) {
+        return path.substring(path.lastIndexOf('.') + 1);
+    }
+
+    private static BsonDocument getParent(BsonDocument doc, String path, boolean create) {
+        String[] parts = path.split("\\.");
+        BsonDocument current = doc;
+        for (int i = 0; i < parts.length - 1; i++) {
+            BsonValue next = current.get(parts[i]);
+            if (next == null || !next.isDocument()) {
+                if (!create) {
+                    return null;
+                }
+                next = new BsonDocument();
+                current.put(parts[i], next);
+            }
+            current = next.asDocument();
+        }
+        return current;
+    }
+
+    private static BsonValue add(BsonValue a, BsonValue b) {
+        if (!a.isNumber() || !b.isNumber()) {
+            throw new IllegalArgumentException("Cannot apply $inc to a value of non-numeric type");
+        }
+        if (a.isDouble() || b.isDouble()) {
+            return new BsonDouble(a.asNumber().doubleValue() + b.asNumber().doubleValue());
+        }
+        long sum = a.asNumber().longValue() + b.asNumber().longValue();
+        if (a.isInt32() && b.isInt32() && sum == (int) sum) {
+            return new BsonInt32((int) sum);
+        }
+        return new BsonInt64(sum);
+    }
+}
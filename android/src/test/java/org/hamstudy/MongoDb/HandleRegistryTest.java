@@ -0,0 +1,224 @@
+package org.hamstudy.MongoDb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hammers a HandleRegistry from many threads the way the plugin uses it: find adds handles,
+ * cursorGetNext acquires / releases them, closeCursor and the last batch remove and close
+ * them, while the reaper and LRU eviction close idle ones underneath.
+ */
+public class HandleRegistryTest {
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20000;
+    private static final int SHARED_SLOTS = 16;
+
+    /**
+     * Stands in for a cursor; records misuse instead of throwing so the registry can't swallow it
+     */
+    private static class Value {
+        UUID id;
+        final AtomicInteger inUse = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+        final ConcurrentLinkedQueue<String> errors;
+
+        Value(ConcurrentLinkedQueue<String> errors) {
+            this.errors = errors;
+        }
+
+        void use() {
+            if (closes.get() != 0) {
+                errors.add("used after being closed: " + id);
+            }
+            if (inUse.incrementAndGet() != 1) {
+                errors.add("used by two calls at once: " + id);
+            }
+            inUse.decrementAndGet();
+        }
+        void close() {
+            if (inUse.get() != 0) {
+                errors.add("closed while in use: " + id);
+            }
+            if (closes.incrementAndGet() != 1) {
+                errors.add("closed twice: " + id);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentAcquireReleaseRemove() throws Exception {
+        final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Value> created = new ConcurrentLinkedQueue<>();
+        final HandleRegistry<Value> registry = new HandleRegistry<>((id, value) -> value.close(), 1, 48);
+        final AtomicReferenceArray<UUID> shared = new AtomicReferenceArray<>(SHARED_SLOTS);
+        for (int i = 0; i < SHARED_SLOTS; i++) {
+            shared.set(i, add(registry, created, errors));
+        }
+
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS + 1);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // The reaper, with a 1ms idle timeout so it races the workers constantly
+        futures.add(threads.submit(() -> {
+            start.await();
+            while (running.get() > 0) {
+                registry.reap();
+            }
+            return null;
+        }));
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(threads.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                // A handle only this thread uses, like a cursor read by one page
+                UUID own = add(registry, created, errors);
+                try {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        boolean useShared = random.nextBoolean();
+                        int slot = random.nextInt(SHARED_SLOTS);
+                        UUID id = useShared ? shared.get(slot) : own;
+
+                        HandleRegistry.Handle<Value> handle = registry.acquire(id);
+                        if (handle == null) {
+                            // Reaped, evicted or removed by another thread; replace it
+                            UUID replacement = add(registry, created, errors);
+                            if (useShared) {
+                                shared.compareAndSet(slot, id, replacement);
+                            } else {
+                                own = replacement;
+                            }
+                            continue;
+                        }
+                        try {
+                            handle.value.use();
+                            if (random.nextInt(20) == 0) {
+                                registry.remove(handle);
+                                handle.value.close();
+                            }
+                        } finally {
+                            handle.release();
+                        }
+                        // Once removed a handle must never be handed out again
+                        if (handle.value.closes.get() != 0) {
+                            HandleRegistry.Handle<Value> again = registry.acquire(id);
+                            if (again != null) {
+                                errors.add("acquired after removal: " + id);
+                                again.release();
+                            }
+                        }
+                    }
+                } finally {
+                    running.decrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Any exception thrown by the registry fails the test here
+            future.get(60, TimeUnit.SECONDS);
+        }
+        threads.shutdown();
+
+        // Whatever is left is removed the way closeCursor does it
+        for (Value value : created) {
+            if (value.closes.get() == 0) {
+                assertSame("handle still open but not registered: " + value.id, value, registry.remove(value.id));
+                value.close();
+            }
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(0, registry.size());
+        for (Value value : created) {
+            assertEquals("close count of " + value.id, 1, value.closes.get());
+        }
+        assertTrue("the reaper should have closed something", registry.getExpiredCount() > 0);
+    }
+
+    @Test
+    public void differentHandlesDoNotBlockEachOther() throws Exception {
+        final HandleRegistry<String> registry = new HandleRegistry<>();
+        final UUID first = registry.add("first");
+        final UUID second = registry.add("second");
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            HandleRegistry.Handle<String> held = registry.acquire(first);
+            assertNotNull(held);
+
+            // Another handle can be used while the first is held...
+            Future<String> other = threads.submit(() -> {
+                HandleRegistry.Handle<String> handle = registry.acquire(second);
+                try {
+                    return handle.value;
+                } finally {
+                    handle.release();
+                }
+            });
+            assertEquals("second", other.get(5, TimeUnit.SECONDS));
+
+            // ...but the same one waits for it to be released
+            Future<String> same = threads.submit(() -> {
+                HandleRegistry.Handle<String> handle = registry.acquire(first);
+                try {
+                    return handle.value;
+                } finally {
+                    handle.release();
+                }
+            });
+            try {
+                same.get(200, TimeUnit.MILLISECONDS);
+                fail("acquired a handle which another call holds");
+            } catch (TimeoutException ex) {}
+            held.release();
+            assertEquals("first", same.get(5, TimeUnit.SECONDS));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void removedWhileWaitingIsNotFound() throws Exception {
+        final HandleRegistry<String> registry = new HandleRegistry<>();
+        final UUID id = registry.add("value");
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        try {
+            HandleRegistry.Handle<String> held = registry.acquire(id);
+            Future<HandleRegistry.Handle<String>> waiting = threads.submit(() -> registry.acquire(id));
+            Thread.sleep(50);
+            registry.remove(held);
+            held.release();
+            assertNull(waiting.get(5, TimeUnit.SECONDS));
+            assertNull(registry.remove(id));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static UUID add(HandleRegistry<Value> registry, ConcurrentLinkedQueue<Value> created, ConcurrentLinkedQueue<String> errors) {
+        Value value = new Value(errors);
+        created.add(value);
+        // The id is only set after add, so the value may be evicted before it is known; that's fine
+        value.id = registry.add(value);
+        return value.id;
+    }
+}
@@ -0,0 +1,43 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IndexAdvisorTest {
+    private static JSObject find(String filter, String sort) throws Exception {
+        JSObject data = new JSObject();
+        data.put("filter", new JSONObject(filter));
+        if (sort != null) {
+            data.put("options", new JSONObject().put("sort", new JSONObject(sort)));
+        }
+        return data;
+    }
+
+    @Test
+    public void equalityThenSortThenRange() throws Exception {
+        JSObject shape = QueryShape.ofCall(find("{age: {$gt: 21}, name: 'bob'}", "{created: -1}"));
+        assertFalse(QueryShape.isOpaque(shape));
+
+        JSObject keys = IndexAdvisor.getSuggestedKeys(shape);
+        assertEquals(1, keys.getInt("name"));
+        assertEquals(-1, keys.getInt("created"));
+        assertEquals(1, keys.getInt("age"));
+        assertEquals(3, keys.length());
+    }
+
+    @Test
+    public void undecodableBase64IsOpaque() throws Exception {
+        JSObject shape = QueryShape.ofCall(find("{$b64: '!!'}", null));
+        assertTrue(QueryShape.isOpaque(shape));
+        assertNull(IndexAdvisor.getSuggestedKeys(shape));
+
+        JSObject data = new JSObject();
+        data.put("pipeline", new JSONArray("[{$match: {name: 'bob'}}, {$b64: '!!'}]"));
+        assertTrue(QueryShape.isOpaque(QueryShape.ofCall(data)));
+    }
+}
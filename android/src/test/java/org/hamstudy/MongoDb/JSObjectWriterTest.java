@@ -0,0 +1,160 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDbPointer;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonJavaScript;
+import org.bson.BsonJavaScriptWithScope;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonString;
+import org.bson.BsonSymbol;
+import org.bson.BsonTimestamp;
+import org.bson.BsonUndefined;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JSObjectWriter must give exactly the tree new JSObject(doc.toJson(settings)) does
+ */
+public class JSObjectWriterTest {
+    private static final JsonWriterSettings[] SETTINGS = {
+            JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build(),
+            JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build(),
+    };
+
+    private static BsonDocument getEveryType() {
+        return new BsonDocument()
+                .append("int32Min", new BsonInt32(Integer.MIN_VALUE))
+                .append("int32Max", new BsonInt32(Integer.MAX_VALUE))
+                .append("int32Zero", new BsonInt32(0))
+                .append("int64Small", new BsonInt64(5))
+                .append("int64IntMax", new BsonInt64(Integer.MAX_VALUE))
+                .append("int64PastIntMax", new BsonInt64(Integer.MAX_VALUE + 1L))
+                .append("int64PastIntMin", new BsonInt64(Integer.MIN_VALUE - 1L))
+                .append("int64Min", new BsonInt64(Long.MIN_VALUE))
+                .append("int64Max", new BsonInt64(Long.MAX_VALUE))
+                .append("double", new BsonDouble(1.5))
+                .append("doubleWhole", new BsonDouble(42.0))
+                .append("doubleHuge", new BsonDouble(1e300))
+                .append("doubleTiny", new BsonDouble(Double.MIN_VALUE))
+                .append("doubleNaN", new BsonDouble(Double.NaN))
+                .append("doubleInf", new BsonDouble(Double.POSITIVE_INFINITY))
+                .append("doubleNegInf", new BsonDouble(Double.NEGATIVE_INFINITY))
+                .append("doubleNegZero", new BsonDouble(-0.0))
+                .append("decimal", new BsonDecimal128(Decimal128.parse("1234567890.123456789")))
+                .append("decimalNaN", new BsonDecimal128(Decimal128.NaN))
+                .append("decimalNegZero", new BsonDecimal128(Decimal128.NEGATIVE_ZERO))
+                .append("decimalInf", new BsonDecimal128(Decimal128.POSITIVE_INFINITY))
+                .append("date", new BsonDateTime(1557790402123L))
+                .append("dateEpoch", new BsonDateTime(0))
+                .append("dateBeforeEpoch", new BsonDateTime(-86400000L))
+                .append("dateAfter9999", new BsonDateTime(253402300800000L))
+                .append("binary", new BsonBinary(new byte[]{0, 1, 2, (byte) 0xff}))
+                .append("binaryFunction", new BsonBinary(BsonBinarySubType.FUNCTION, new byte[]{1}))
+                .append("binaryOld", new BsonBinary(BsonBinarySubType.OLD_BINARY, new byte[]{1, 2}))
+                .append("uuidLegacy", new BsonBinary(BsonBinarySubType.UUID_LEGACY, new byte[16]))
+                .append("uuid", new BsonBinary(BsonBinarySubType.UUID_STANDARD, new byte[16]))
+                .append("md5", new BsonBinary(BsonBinarySubType.MD5, new byte[16]))
+                .append("userDefined", new BsonBinary((byte) 0x80, new byte[]{9}))
+                .append("binaryEmpty", new BsonBinary(new byte[0]))
+                .append("regex", new BsonRegularExpression("^a.*\"b\\d+$", "imx"))
+                .append("regexNoOptions", new BsonRegularExpression("x"))
+                .append("timestamp", new BsonTimestamp(1557790402, 7))
+                .append("timestampMax", new BsonTimestamp(Long.MAX_VALUE))
+                .append("minKey", new BsonMinKey())
+                .append("maxKey", new BsonMaxKey())
+                .append("code", new BsonJavaScript("function () { return \"x\"; }"))
+                .append("codeWithScope", new BsonJavaScriptWithScope("return a + b;", new BsonDocument("a", new BsonInt32(1)).append("b", new BsonArray())))
+                .append("symbol", new BsonSymbol("sym"))
+                .append("dbPointer", new BsonDbPointer("db.coll", new ObjectId("5cdac29e0000000000000001")))
+                .append("undefined", new BsonUndefined())
+                .append("null", BsonNull.VALUE)
+                .append("true", BsonBoolean.TRUE)
+                .append("false", BsonBoolean.FALSE)
+                .append("objectId", new BsonObjectId(new ObjectId("5cdac29e0000000000000002")))
+                .append("string", new BsonString("quote \" backslash \\ tab \t newline \n unicode \u00e9 \ud83d\ude00 control \u0001"))
+                .append("emptyString", new BsonString(""))
+                .append("emptyDocument", new BsonDocument())
+                .append("emptyArray", new BsonArray())
+                .append("nested", new BsonDocument("inner", new BsonDocument("deeper", new BsonArray())))
+                .append("nestedArrays", new BsonArray(java.util.Arrays.asList(
+                        new BsonArray(java.util.Arrays.asList(new BsonInt32(1), new BsonArray(java.util.Arrays.asList(new BsonInt64(2), new BsonDouble(Double.NaN)))))
+                        , new BsonArray()
+                        , new BsonDocument("inArray", new BsonDateTime(0))
+                        , BsonNull.VALUE)));
+    }
+
+    private static void assertSameTree(String json, JSObject written) throws Exception {
+        assertEquals(new JSObject(json).toString(), written.toString());
+    }
+
+    @Test
+    public void bsonDocumentMatchesToJson() throws Exception {
+        BsonDocument doc = getEveryType();
+        for (JsonWriterSettings settings : SETTINGS) {
+            assertSameTree(doc.toJson(settings), JSObjectWriter.toJSObject(doc, settings));
+        }
+    }
+
+    @Test
+    public void documentMatchesToJson() throws Exception {
+        Document doc = new DocumentCodec().decode(getEveryType().asBsonReader(), DecoderContext.builder().build());
+        for (JsonWriterSettings settings : SETTINGS) {
+            assertSameTree(doc.toJson(settings), JSObjectWriter.toJSObject(doc, settings));
+        }
+    }
+
+    @Test
+    public void eachTypeOnItsOwn() throws Exception {
+        // One field at a time, so a mismatch points at the type that caused it
+        BsonDocument every = getEveryType();
+        for (String key : every.keySet()) {
+            BsonDocument doc = new BsonDocument(key, every.get(key));
+            for (JsonWriterSettings settings : SETTINGS) {
+                assertEquals(key + " in " + settings.getOutputMode(),
+                        new JSObject(doc.toJson(settings)).toString(), JSObjectWriter.toJSObject(doc, settings).toString());
+            }
+        }
+    }
+
+    @Test
+    public void emptyDocument() throws Exception {
+        for (JsonWriterSettings settings : SETTINGS) {
+            assertEquals("{}", JSObjectWriter.toJSObject(new BsonDocument(), settings).toString());
+            assertEquals("{}", JSObjectWriter.toJSObject(new Document(), settings).toString());
+        }
+    }
+
+    @Test
+    public void sizeIsRoughlyTheJsonLength() throws Exception {
+        // The cursor paths use the size estimate in place of the JSON text's length
+        Document doc = new DocumentCodec().decode(getEveryType().asBsonReader(), DecoderContext.builder().build());
+        JSObjectWriter writer = new JSObjectWriter(SETTINGS[0]);
+        JSObject written = writer.writeDocument(doc);
+        String json = doc.toJson(SETTINGS[0]);
+        assertSameTree(json, written);
+        assertTrue(writer.getSize() + " vs " + json.length(), writer.getSize() > json.length() / 2 && writer.getSize() < json.length() * 2);
+    }
+}
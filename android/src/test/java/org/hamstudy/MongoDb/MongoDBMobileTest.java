@@ -0,0 +1,451 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.bson.BsonDocument;
+import org.json.JSONArray;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plugin methods called through PluginCalls against FakeMongoClient
+ */
+public class MongoDBMobileTest {
+    private MongoDBMobile plugin;
+    private FakeMongoClient fake;
+
+    @Before
+    public void setUp() {
+        fake = new FakeMongoClient();
+        plugin = new MongoDBMobile();
+        plugin.mongoClient = fake.getClient();
+        plugin.load();
+    }
+
+    private static JSObject insertManyData(int count) {
+        JSArray docs = new JSArray();
+        for (int i = 0; i < count; i++) {
+            docs.put(new JSObject().put("_id", "doc-" + i).put("n", i * 10));
+        }
+        return new JSObject().put("db", "test").put("collection", "docs").put("docs", docs);
+    }
+
+    @Test
+    public void insertManyWithDefaultWriteConcern() throws Exception {
+        // The default write concern is acknowledged without a w value, so it has no getW()
+        JSObject result = PluginCalls.resolve(plugin, "insertMany", insertManyData(3));
+
+        assertEquals(3, result.getInt("insertedCount"));
+        JSONArray ids = result.getJSONArray("insertedIds");
+        assertEquals(3, ids.length());
+        assertEquals("doc-2", ids.getString(2));
+        assertEquals(3, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void insertManyUnacknowledged() throws Exception {
+        JSObject data = insertManyData(2);
+        data.put("options", new JSObject().put("writeConcern", new JSObject().put("w", 0)));
+        JSObject result = PluginCalls.resolve(plugin, "insertMany", data);
+
+        assertTrue(result.getBoolean("success"));
+        assertFalse(result.has("insertedCount"));
+        assertEquals(2, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void insertManyRejectsMissingDocs() throws Exception {
+        JSObject data = new JSObject().put("db", "test").put("collection", "docs");
+        String message = PluginCalls.reject(plugin, "insertMany", data);
+
+        assertTrue(message, message.contains("docs"));
+    }
+
+    @Test
+    public void bulkWriteAddManyRejectsBadOperationsWithoutAddingAny() throws Exception {
+        JSObject target = new JSObject().put("db", "test").put("collection", "docs").put("flushEvery", 2);
+        String operationId = PluginCalls.resolve(plugin, "newBulkWrite", target).getString("operationId");
+        JSArray first = new JSArray();
+        first.put(new JSObject().put("insertOne", new JSObject().put("doc", new JSObject().put("_id", "first"))));
+        JSObject add = new JSObject().put("operationId", operationId).put("operations", first);
+        assertEquals(1, PluginCalls.resolve(plugin, "bulkWriteAddMany", add).getInt("added"));
+
+        JSArray operations = new JSArray();
+        operations.put(new JSObject().put("insertOne", new JSObject().put("doc", new JSObject().put("_id", "a"))));
+        operations.put(new JSObject().put("updateOne", new JSObject().put("filter", new JSObject().put("_id", "a"))));
+        operations.put(new JSObject().put("deleteOne", new JSObject().put("filter", new JSObject().put("_id", "b"))));
+        operations.put(new JSObject().put("dropAll", new JSObject()));
+        operations.put(new JSObject().put("insertOne", new JSObject().put("doc", new JSObject().put("_id", "c"))));
+        String message = PluginCalls.reject(plugin, "bulkWriteAddMany", new JSObject().put("operationId", operationId).put("operations", operations));
+
+        assertTrue(message, message.contains("operations[1].updateOne: update must be a valid document object"));
+        assertTrue(message, message.contains("operations[3].dropAll: unknown bulk operation type dropAll"));
+        assertFalse(message, message.contains("operations[0]"));
+        assertFalse(message, message.contains("operations[2]"));
+        assertFalse(message, message.contains("operations[4]"));
+
+        // Nothing was added, so nothing reached flushEvery either; the batch still works
+        assertEquals(0, fake.size("test", "docs"));
+        JSObject result = PluginCalls.resolve(plugin, "bulkWriteExecute", new JSObject().put("operationId", operationId));
+        assertEquals(1, result.getInt("insertedCount"));
+        assertEquals(1, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void bulkWriteAddWithoutOptions() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(3));
+        String operationId = PluginCalls.resolve(plugin, "newBulkWrite", new JSObject().put("db", "test").put("collection", "docs")).getString("operationId");
+
+        PluginCalls.resolve(plugin, "bulkWriteAddDeleteOne", new JSObject().put("operationId", operationId)
+                .put("filter", new JSObject().put("_id", "doc-0")));
+        PluginCalls.resolve(plugin, "bulkWriteAddUpdateMany", new JSObject().put("operationId", operationId)
+                .put("filter", new JSObject())
+                .put("update", new JSObject().put("$set", new JSObject().put("seen", true))));
+        PluginCalls.resolve(plugin, "bulkWriteAddReplaceOne", new JSObject().put("operationId", operationId)
+                .put("filter", new JSObject().put("_id", "doc-1"))
+                .put("replacement", new JSObject().put("n", -1)));
+
+        JSObject result = PluginCalls.resolve(plugin, "bulkWriteExecute", new JSObject().put("operationId", operationId));
+        assertEquals(1, result.getInt("deletedCount"));
+        assertEquals(3, result.getInt("matchedCount"));
+        assertEquals(2, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void bulkWriteCancelDoesNotBlockTheCaller() throws Exception {
+        String operationId = PluginCalls.resolve(plugin, "newBulkWrite", new JSObject().put("db", "test").put("collection", "docs")).getString("operationId");
+        JSObject opId = new JSObject().put("operationId", operationId);
+        PluginCalls.resolve(plugin, "bulkWriteAddInsertOne", new JSObject().put("operationId", operationId).put("doc", new JSObject().put("_id", "a")));
+
+        // Stands in for a bulkWriteExecute or auto-flushing add in progress
+        HandleRegistry.Handle<BulkWriteBatch<?>> handle = plugin.bulkMap.acquire(UUID.fromString(operationId));
+        PluginCalls.Pending cancel;
+        try {
+            cancel = PluginCalls.start(plugin, "bulkWriteCancel", opId);
+            Thread.sleep(100);
+            assertFalse("cancel should wait for the batch", cancel.isDone());
+        } finally {
+            handle.release();
+        }
+        assertTrue(cancel.resolved().getBoolean("removed"));
+
+        assertFalse(PluginCalls.resolve(plugin, "bulkWriteCancel", opId).getBoolean("removed"));
+        String message = PluginCalls.reject(plugin, "bulkWriteExecute", opId);
+        assertTrue(message, message.contains("does not refer to a valid bulk operation"));
+        assertEquals(0, fake.size("test", "docs"));
+    }
+
+    @Test
+    public void bulkWriteCancelRunsAfterQueuedAdds() throws Exception {
+        String operationId = PluginCalls.resolve(plugin, "newBulkWrite", new JSObject().put("db", "test").put("collection", "docs")).getString("operationId");
+        List<PluginCalls.Pending> adds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            adds.add(PluginCalls.start(plugin, "bulkWriteAddInsertOne", new JSObject().put("operationId", operationId).put("doc", new JSObject().put("_id", "doc-" + i))));
+        }
+        assertTrue(PluginCalls.resolve(plugin, "bulkWriteCancel", new JSObject().put("operationId", operationId)).getBoolean("removed"));
+
+        // Every add made before the cancel got to the batch
+        for (PluginCalls.Pending add : adds) {
+            assertTrue(add.resolved().getBoolean("success"));
+        }
+    }
+
+    private JSObject count(JSObject filter, JSObject options) throws Exception {
+        JSObject data = new JSObject().put("db", "test").put("collection", "docs").put("filter", filter);
+        if (options != null) {
+            data.put("options", options);
+        }
+        return PluginCalls.resolve(plugin, "count", data);
+    }
+
+    @Test
+    public void countEstimatesOnlyWithoutFilterSkipOrLimit() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(5));
+        JSObject estimated = new JSObject().put("estimated", true);
+
+        JSObject result = count(new JSObject(), estimated);
+        assertEquals(5, result.getInt("count"));
+        assertTrue(result.getBoolean("estimated"));
+        assertTrue(fake.getLastCount("test", "docs").estimated);
+
+        result = count(new JSObject().put("n", 10), estimated);
+        assertEquals(1, result.getInt("count"));
+        assertFalse(result.has("estimated"));
+        assertFalse(fake.getLastCount("test", "docs").estimated);
+
+        result = count(new JSObject(), new JSObject().put("estimated", true).put("skip", 1));
+        assertEquals(4, result.getInt("count"));
+        assertFalse(result.has("estimated"));
+        assertFalse(fake.getLastCount("test", "docs").estimated);
+
+        result = count(new JSObject(), new JSObject().put("estimated", true).put("limit", 2));
+        assertEquals(2, result.getInt("count"));
+        assertFalse(result.has("estimated"));
+
+        // Not asked for
+        result = count(new JSObject(), null);
+        assertEquals(5, result.getInt("count"));
+        assertFalse(result.has("estimated"));
+        assertFalse(fake.getLastCount("test", "docs").estimated);
+    }
+
+    @Test
+    public void countUpTo() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(5));
+
+        JSObject result = count(new JSObject(), new JSObject().put("upTo", 3));
+        assertEquals(3, result.getInt("count"));
+        assertTrue(result.getBoolean("capped"));
+        // One more than upTo is enough to know there are more
+        assertEquals(4, fake.getLastCount("test", "docs").options.getLimit());
+
+        result = count(new JSObject(), new JSObject().put("upTo", 5));
+        assertEquals(5, result.getInt("count"));
+        assertFalse(result.getBoolean("capped"));
+        assertEquals(6, fake.getLastCount("test", "docs").options.getLimit());
+
+        // A smaller limit is kept
+        result = count(new JSObject(), new JSObject().put("upTo", 3).put("limit", 2));
+        assertEquals(2, result.getInt("count"));
+        assertFalse(result.getBoolean("capped"));
+        assertEquals(2, fake.getLastCount("test", "docs").options.getLimit());
+
+        // upTo doesn't make an estimate
+        result = count(new JSObject(), new JSObject().put("upTo", 3).put("estimated", true));
+        assertTrue(result.getBoolean("estimated"));
+        assertFalse(result.has("capped"));
+
+        String message = PluginCalls.reject(plugin, "count", new JSObject().put("db", "test").put("collection", "docs")
+                .put("filter", new JSObject()).put("options", new JSObject().put("upTo", -1)));
+        assertTrue(message, message.contains("upTo"));
+    }
+
+    @Test
+    public void countPassesOptionsThrough() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(5));
+        JSObject options = new JSObject()
+                .put("skip", 1)
+                .put("limit", 3)
+                .put("maxTimeMS", 2500)
+                .put("hint", new JSObject().put("n", 1));
+        assertEquals(3, count(new JSObject().put("n", new JSObject().put("$gte", 0)), options).getInt("count"));
+
+        FakeMongoClient.Count last = fake.getLastCount("test", "docs");
+        assertFalse(last.estimated);
+        assertEquals(BsonDocument.parse("{n: {$gte: 0}}"), last.filter);
+        assertEquals(1, last.options.getSkip());
+        assertEquals(3, last.options.getLimit());
+        assertEquals(2500, last.options.getMaxTime(TimeUnit.MILLISECONDS));
+        assertEquals(BsonDocument.parse("{n: 1}"), last.options.getHint().toBsonDocument(BsonDocument.class, null));
+    }
+
+    private JSObject findData(String format) throws Exception {
+        JSObject data = new JSObject().put("db", "test").put("collection", "docs").put("filter", new JSObject());
+        if (format != null) {
+            data.put(format, true);
+        }
+        if ("packed".equals(format)) {
+            data.put("useBson", true);
+        }
+        return data;
+    }
+
+    @Test
+    public void defaultMaxResponseSizeSkipsPlainBson() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(20));
+        plugin.maxResponseSize = 100;
+
+        // useBson without packed returned everything before there was a limit, so still does
+        assertEquals(20, PluginCalls.resolve(plugin, "find", findData("useBson")).getJSONArray("results").length());
+        assertEquals(20, PluginCalls.resolve(plugin, "find", findData(null)).getJSONArray("results").length());
+
+        for (String format : new String[]{"rawJson", "packed"}) {
+            String message = PluginCalls.reject(plugin, "find", findData(format));
+            assertTrue(format + ": " + message, message.contains("larger than maxResponseSize (100)"));
+        }
+
+        // Asking for a limit on the call applies it
+        String message = PluginCalls.reject(plugin, "find", findData("useBson").put("maxResponseSize", 100));
+        assertTrue(message, message.contains("larger than maxResponseSize (100)"));
+        assertEquals(20, PluginCalls.resolve(plugin, "find", findData("useBson").put("maxResponseSize", 0)).getJSONArray("results").length());
+    }
+
+    private List<String> openCursors(int cursors, int docs) throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(docs));
+        List<String> cursorIds = new ArrayList<>();
+        for (int i = 0; i < cursors; i++) {
+            JSObject data = new JSObject().put("db", "test").put("collection", "docs").put("filter", new JSObject()).put("cursor", true);
+            cursorIds.add(PluginCalls.resolve(plugin, "find", data).getString("cursorId"));
+        }
+        return cursorIds;
+    }
+
+    private JSObject getNext(String cursorId, int batchSize, boolean packed) throws Exception {
+        JSObject data = new JSObject().put("cursorId", cursorId).put("batchSize", batchSize).put("packed", packed);
+        return PluginCalls.resolve(plugin, "cursorGetNext", data);
+    }
+    private static int getBatchCount(JSObject batch) throws Exception {
+        return batch.has("results") ? batch.getJSONArray("results").length() : batch.getInt("count");
+    }
+
+    @Test
+    public void lastFullBatchIsComplete() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(10));
+        for (String format : new String[]{null, "useBson", "packed"}) {
+            String cursorId = PluginCalls.resolve(plugin, "find", findData(format).put("cursor", true)).getString("cursorId");
+            boolean packed = "packed".equals(format);
+
+            JSObject first = getNext(cursorId, 5, packed);
+            assertEquals(5, getBatchCount(first));
+            assertFalse(format, first.has("complete"));
+            // Ends exactly on the batch size; no extra empty batch is needed to find out
+            JSObject second = getNext(cursorId, 5, packed);
+            assertEquals(5, getBatchCount(second));
+            assertTrue(format, second.getBoolean("complete"));
+
+            String message = PluginCalls.reject(plugin, "cursorGetNext", new JSObject().put("cursorId", cursorId));
+            assertTrue(message, message.contains("does not refer to a valid cursor"));
+        }
+    }
+
+    @Test
+    public void tailableCursorDoesNotWaitPastItsBatch() throws Exception {
+        PluginCalls.resolve(plugin, "insertMany", insertManyData(10));
+        for (String cursorType : new String[]{"tailable", "tailableAwait"}) {
+            for (String format : new String[]{null, "useBson", "packed"}) {
+                JSObject data = findData(format).put("cursor", true).put("options", new JSObject().put("cursorType", cursorType));
+                String cursorId = PluginCalls.resolve(plugin, "find", data).getString("cursorId");
+                boolean packed = "packed".equals(format);
+
+                assertFalse(getNext(cursorId, 5, packed).has("complete"));
+                // Has read everything there is so far, but more may still come
+                JSObject last = getNext(cursorId, 5, packed);
+                assertEquals(5, getBatchCount(last));
+                assertFalse(cursorType + " " + format, last.has("complete"));
+
+                assertTrue(PluginCalls.resolve(plugin, "closeCursor", new JSObject().put("cursorId", cursorId)).getBoolean("success"));
+            }
+        }
+    }
+
+    /**
+     * Runs threads copies of worker and fails with the first exception any of them threw
+     */
+    private static void runThreads(int threads, Callable<Void> worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(worker));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentNextOnSharedCursors() throws Exception {
+        final int docs = 150;
+        final List<String> cursorIds = openCursors(4, docs);
+        final ConcurrentHashMap<String, Set<String>> seen = new ConcurrentHashMap<>();
+        final AtomicInteger completed = new AtomicInteger();
+        for (String cursorId : cursorIds) {
+            seen.put(cursorId, ConcurrentHashMap.newKeySet());
+        }
+
+        runThreads(8, () -> {
+            Set<String> done = new HashSet<>();
+            while (done.size() < cursorIds.size()) {
+                String cursorId = cursorIds.get(ThreadLocalRandom.current().nextInt(cursorIds.size()));
+                JSObject data = new JSObject().put("cursorId", cursorId).put("batchSize", 1 + ThreadLocalRandom.current().nextInt(5));
+                JSObject batch;
+                try {
+                    batch = PluginCalls.resolve(plugin, "cursorGetNext", data);
+                } catch (AssertionError ex) {
+                    // Another thread read the last batch and closed it
+                    assertTrue(ex.getMessage(), ex.getMessage().contains("does not refer to a valid cursor"));
+                    done.add(cursorId);
+                    continue;
+                }
+                JSONArray results = batch.getJSONArray("results");
+                for (int i = 0; i < results.length(); i++) {
+                    String id = results.getJSONObject(i).getString("_id");
+                    assertTrue("read twice from " + cursorId + ": " + id, seen.get(cursorId).add(id));
+                }
+                if (batch.getBoolean("complete", false)) {
+                    completed.incrementAndGet();
+                    done.add(cursorId);
+                }
+            }
+            return null;
+        });
+
+        assertEquals(cursorIds.size(), completed.get());
+        for (Set<String> ids : seen.values()) {
+            assertEquals(docs, ids.size());
+        }
+    }
+
+    @Test
+    public void closeWhileOtherThreadsRead() throws Exception {
+        final List<String> cursorIds = openCursors(6, 300);
+        final ConcurrentHashMap<String, Set<String>> seen = new ConcurrentHashMap<>();
+        for (String cursorId : cursorIds) {
+            seen.put(cursorId, ConcurrentHashMap.newKeySet());
+        }
+        final AtomicInteger nextClose = new AtomicInteger();
+
+        runThreads(8, () -> {
+            for (int n = 0; n < 60; n++) {
+                String cursorId = cursorIds.get(ThreadLocalRandom.current().nextInt(cursorIds.size()));
+                if (n % 10 == 9 && nextClose.get() < cursorIds.size()) {
+                    int close = nextClose.getAndIncrement();
+                    if (close < cursorIds.size()) {
+                        JSObject closed = PluginCalls.resolve(plugin, "closeCursor", new JSObject().put("cursorId", cursorIds.get(close)));
+                        assertTrue(closed.getBoolean("success"));
+                    }
+                    continue;
+                }
+                JSObject batch;
+                try {
+                    batch = PluginCalls.resolve(plugin, "cursorGetNext", new JSObject().put("cursorId", cursorId).put("batchSize", 4));
+                } catch (AssertionError ex) {
+                    assertTrue(ex.getMessage(), ex.getMessage().contains("does not refer to a valid cursor"));
+                    continue;
+                }
+                JSONArray results = batch.getJSONArray("results");
+                for (int i = 0; i < results.length(); i++) {
+                    String id = results.getJSONObject(i).getString("_id");
+                    assertTrue("read twice from " + cursorId + ": " + id, seen.get(cursorId).add(id));
+                }
+            }
+            return null;
+        });
+
+        // Every cursor got closed and none of them can be read any more
+        for (String cursorId : cursorIds) {
+            String message = PluginCalls.reject(plugin, "cursorGetNext", new JSObject().put("cursorId", cursorId));
+            assertTrue(message, message.contains("does not refer to a valid cursor"));
+        }
+    }
+}
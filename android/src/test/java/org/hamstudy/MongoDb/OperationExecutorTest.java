@@ -0,0 +1,91 @@
+package org.hamstudy.MongoDb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OperationExecutorTest {
+    private static final long TIMEOUT_S = 5;
+
+    @Test
+    public void databaseWriteIsOrderedWithCollectionWrites() throws Exception {
+        OperationExecutor execution = new OperationExecutor(2, 2);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch otherDatabaseRan = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(6);
+
+        execution.write(null, "db.a", () -> {
+            // Holds db.a (and with it the database write) until a write to another database has run
+            try {
+                assertTrue(otherDatabaseRan.await(TIMEOUT_S, TimeUnit.SECONDS));
+            } catch (InterruptedException ex) {}
+            order.add("a1");
+            done.countDown();
+        });
+        execution.write(null, "db.b", () -> {
+            order.add("b1");
+            done.countDown();
+        });
+        execution.write(null, "db", () -> {
+            order.add("drop");
+            done.countDown();
+        });
+        execution.write(null, "db.a", () -> {
+            order.add("a2");
+            done.countDown();
+        });
+        // A collection which had no queue yet when the database write was made
+        execution.write(null, "db.c", () -> {
+            order.add("c2");
+            done.countDown();
+        });
+        execution.write(null, "other.x", () -> {
+            order.add("x");
+            otherDatabaseRan.countDown();
+            done.countDown();
+        });
+
+        assertTrue("writes did not finish: " + order, done.await(TIMEOUT_S, TimeUnit.SECONDS));
+        int drop = order.indexOf("drop");
+        assertTrue(order.toString(), order.indexOf("a1") < drop);
+        assertTrue(order.toString(), order.indexOf("b1") < drop);
+        assertTrue(order.toString(), order.indexOf("a2") > drop);
+        assertTrue(order.toString(), order.indexOf("c2") > drop);
+        assertTrue(order.toString(), order.indexOf("x") < order.indexOf("a1"));
+    }
+
+    @Test
+    public void databaseWritesRunInOrder() throws Exception {
+        OperationExecutor execution = new OperationExecutor(2, 2);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final int count = 200;
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final String name = (i % 5 == 0 ? "db" : "db.c" + (i % 3)) + ":" + i;
+            execution.write(null, name.substring(0, name.indexOf(':')), () -> {
+                order.add(name);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+        // Every database write must come after everything submitted before it and before everything after
+        for (int i = 0; i < order.size(); i++) {
+            String name = order.get(i);
+            if (!name.startsWith("db:")) {
+                continue;
+            }
+            int index = Integer.parseInt(name.substring(3));
+            for (int j = 0; j < order.size(); j++) {
+                int other = Integer.parseInt(order.get(j).substring(order.get(j).indexOf(':') + 1));
+                assertEquals(order.toString(), other < index, j < i);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import org.bson.BsonBinary;
+import org.bson.BsonDateTime;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DocumentCodec;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class OptionParserTest {
+    private static final UUID uuid = UUID.fromString("6f3a2c1e-9b7d-4e58-a1c0-3d2e4f5a6b7c");
+
+    private static BsonDocument getSample() {
+        return new BsonDocument("_id", new BsonObjectId(new ObjectId("5cdac29e0000000000000001")))
+                .append("uuid", new BsonBinary(uuid, UuidRepresentation.STANDARD))
+                .append("when", new BsonDateTime(1557790402000L))
+                .append("big", new BsonInt64(Long.MAX_VALUE))
+                .append("price", new BsonDecimal128(Decimal128.parse("19.99")))
+                .append("nested", new BsonDocument("name", new BsonString("inner")));
+    }
+
+    @Test
+    public void base64DocumentDecodesLikeExtendedJson() {
+        RawBsonDocument raw = new RawBsonDocument(getSample(), new BsonDocumentCodec());
+        JSObject b64 = MongoDBMobile.getBsonBase64Doc(raw);
+
+        Document decoded = OptionParser.getDocument(b64);
+        // What getDocument used to do: through extended JSON and back
+        Document roundTrip = Document.parse(raw.toJson(JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build()));
+        assertEquals(roundTrip, decoded);
+
+        assertEquals(uuid, decoded.get("uuid"));
+        assertEquals(Long.MAX_VALUE, decoded.getLong("big").longValue());
+        assertEquals("inner", ((Document) decoded.get("nested")).getString("name"));
+    }
+
+    @Test
+    public void base64DocumentRespectsBufferOffset() {
+        // A sub-document shares its parent's bytes, so its buffer starts part way into the array
+        BsonDocument outer = new BsonDocument("pad", new BsonString("0123456789abcdef")).append("doc", getSample());
+        RawBsonDocument inner = (RawBsonDocument) new RawBsonDocument(outer, new BsonDocumentCodec()).get("doc");
+        ByteBuffer bytes = BsonBatch.getBytes(inner);
+        assertTrue("test needs a document that doesn't start the array", bytes.arrayOffset() + bytes.position() > 0);
+        assertEquals(bytes.getInt(bytes.position()), bytes.remaining());
+
+        JSObject b64 = MongoDBMobile.getBsonBase64Doc(inner);
+        RawBsonDocument decoded = OptionParser.getBase64BsonDocument(b64);
+        assertNotNull(decoded);
+        assertEquals(getSample(), decoded);
+        assertEquals(OptionParser.getDocument(b64), inner.decode(new DocumentCodec()));
+    }
+
+    @Test
+    public void plainObjectIsNotBase64() throws Exception {
+        JSObject obj = new JSObject().put("n", 1);
+        assertNull(OptionParser.getBase64BsonDocument(obj));
+        assertEquals(new Document("n", 1), OptionParser.getDocument(obj));
+    }
+
+    @After
+    public void resetParallelDecodeThreshold() {
+        OptionParser.setParallelDecodeThreshold(OptionParser.DEFAULT_PARALLEL_DECODE_THRESHOLD);
+    }
+
+    private static JSONArray getNumberedDocs(int count) throws Exception {
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            arr.put(new JSObject().put("n", i));
+        }
+        return arr;
+    }
+
+    /**
+     * The chunks are only decoded on other threads if the JVM has more than one processor
+     */
+    @Test
+    public void parallelDecodeKeepsOrder() throws Exception {
+        JSONArray arr = getNumberedDocs(1001);
+        OptionParser.setParallelDecodeThreshold(2);
+        ArrayList<Document> docs = OptionParser.getDocumentArray(arr);
+        ArrayList<RawBsonDocument> raw = OptionParser.getDocumentArray(arr, RawBsonDocument.class);
+
+        assertEquals(1001, docs.size());
+        assertEquals(1001, raw.size());
+        for (int i = 0; i < docs.size(); i++) {
+            assertEquals(i, docs.get(i).getInteger("n").intValue());
+            assertEquals(i, raw.get(i).getInt32("n").getValue());
+        }
+    }
+
+    private static String getDecodeError(JSONArray arr) {
+        try {
+            OptionParser.getDocumentArray(arr);
+        } catch (InvalidParameterException ex) {
+            return ex.getMessage();
+        }
+        fail("decoding should have failed");
+        return null;
+    }
+
+    @Test
+    public void parallelDecodeReportsFirstBadIndex() throws Exception {
+        OptionParser.setParallelDecodeThreshold(2);
+        JSONArray arr = getNumberedDocs(1000);
+        // Bad elements in the first and last chunks; the first one is reported
+        arr.put(999, "not a document");
+        assertEquals("999", getDecodeError(arr));
+        arr.put(10, 10);
+        assertEquals("10", getDecodeError(arr));
+
+        // Same as decoding on the calling thread
+        OptionParser.setParallelDecodeThreshold(0);
+        assertEquals("10", getDecodeError(arr));
+    }
+
+    @Test
+    public void parallelDecodeKeepsTheCause() throws Exception {
+        OptionParser.setParallelDecodeThreshold(2);
+        JSONArray arr = getNumberedDocs(1000);
+        arr.put(400, new JSObject().put("_id", new JSObject().put("$oid", "not an ObjectId")));
+        try {
+            OptionParser.getDocumentArray(arr);
+            fail("decoding should have failed");
+        } catch (InvalidParameterException ex) {
+            assertEquals("400", ex.getMessage());
+            assertTrue(ex.getCause() instanceof RuntimeException);
+        }
+
+        // A failure leaves the decode pool usable
+        arr.put(400, new JSObject().put("n", 400));
+        assertEquals(1000, OptionParser.getDocumentArray(arr).size());
+    }
+}
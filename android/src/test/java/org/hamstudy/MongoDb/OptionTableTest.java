@@ -0,0 +1,242 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.mongodb.CursorType;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.UpdateOptions;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * How the option tables read each kind of value, for each options class the plugin parses
+ */
+public class OptionTableTest {
+    private static BsonDocument toBson(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, null);
+    }
+
+    private static String getError(Runnable parse) {
+        try {
+            parse.run();
+        } catch (InvalidParameterException ex) {
+            return ex.getMessage();
+        }
+        fail("parsing should have failed");
+        return null;
+    }
+
+    @Test
+    public void findOptions() throws Exception {
+        @SuppressWarnings("unchecked")
+        FindIterable<Document> it = mock(FindIterable.class, RETURNS_SELF);
+        JSObject options = new JSObject()
+                .put("limit", "25")
+                .put("skip", 5.0)
+                .put("noCursorTimeout", 1)
+                .put("returnKey", "true")
+                .put("maxTimeMS", 1500)
+                .put("cursorType", "tailableAwait")
+                .put("sort", new JSObject().put("n", -1))
+                .put("collation", new JSObject().put("locale", "en").put("strength", 2))
+                .put("comment", JSONObject.NULL)
+                .put("unknownOption", true);
+        OptionParser.applyFindOptions(it, options);
+
+        verify(it).limit(25);
+        verify(it).skip(5);
+        verify(it).noCursorTimeout(true);
+        verify(it).returnKey(true);
+        verify(it).maxTime(1500L, TimeUnit.MILLISECONDS);
+        verify(it).cursorType(CursorType.TailableAwait);
+        verify(it).sort(argThat(sort -> toBson(sort).equals(BsonDocument.parse("{n: -1}"))));
+        verify(it).collation(Collation.builder().locale("en").collationStrength(CollationStrength.SECONDARY).build());
+        // Explicit null and unknown keys are skipped
+        verify(it, never()).comment(any());
+        verifyNoMoreInteractions(it);
+
+        assertEquals("Invalid type for variable cursorType; expected 'tailable' | 'nonTailable' | 'tailableAwait'",
+                getError(() -> OptionParser.applyFindOptions(it, new JSObject().put("cursorType", "sometimes"))));
+        assertEquals("Invalid type for variable sort; Could not parse document",
+                getError(() -> OptionParser.applyFindOptions(it, new JSObject().put("sort", 1))));
+    }
+
+    @Test
+    public void aggregateOptions() throws Exception {
+        @SuppressWarnings("unchecked")
+        AggregateIterable<Document> it = mock(AggregateIterable.class, RETURNS_SELF);
+        OptionParser.applyAggregateOptions(it, new JSObject()
+                .put("allowDiskUse", 0)
+                .put("batchSize", 100)
+                .put("hint", new JSObject().put("a", 1))
+                .put("bypassDocumentValidation", JSONObject.NULL));
+
+        verify(it).allowDiskUse(false);
+        verify(it).batchSize(100);
+        verify(it).hint(argThat(hint -> toBson(hint).equals(BsonDocument.parse("{a: 1}"))));
+        verifyNoMoreInteractions(it);
+
+        assertEquals("Invalid type for variable allowDiskUse; expected boolean (true/false)",
+                getError(() -> OptionParser.applyAggregateOptions(it, new JSObject().put("allowDiskUse", new JSObject()))));
+    }
+
+    @Test
+    public void countOptions() throws Exception {
+        CountOptions opts = OptionParser.getCountOptions(new JSObject()
+                .put("limit", 10)
+                .put("skip", "2")
+                .put("maxTimeMS", JSONObject.NULL)
+                .put("hint", new JSObject().put("n", 1)));
+        assertEquals(10, opts.getLimit());
+        assertEquals(2, opts.getSkip());
+        assertEquals(0, opts.getMaxTime(TimeUnit.MILLISECONDS));
+        assertEquals(BsonDocument.parse("{n: 1}"), toBson(opts.getHint()));
+
+        assertEquals("Invalid type for variable limit; expected integer",
+                getError(() -> OptionParser.getCountOptions(new JSObject().put("limit", "ten"))));
+    }
+
+    @Test
+    public void updateOptions() throws Exception {
+        JSArray arrayFilters = new JSArray();
+        arrayFilters.put(new JSObject().put("x.n", new JSObject().put("$gt", 1)));
+        UpdateOptions opts = OptionParser.getUpdateOptions(new JSObject()
+                .put("upsert", 1)
+                .put("bypassDocumentValidation", "false")
+                .put("arrayFilters", arrayFilters));
+        assertTrue(opts.isUpsert());
+        assertFalse(opts.getBypassDocumentValidation());
+        assertEquals(1, opts.getArrayFilters().size());
+        assertEquals(BsonDocument.parse("{'x.n': {$gt: 1}}"), toBson(opts.getArrayFilters().get(0)));
+
+        assertFalse(OptionParser.getUpdateOptions(new JSObject().put("upsert", 0)).isUpsert());
+        assertFalse(OptionParser.getUpdateOptions(new JSObject().put("upsert", JSONObject.NULL)).isUpsert());
+
+        JSArray badFilters = new JSArray();
+        badFilters.put(new JSObject());
+        badFilters.put("x");
+        assertEquals("Invalid type for variable arrayFilters[1]; expected Document",
+                getError(() -> OptionParser.getUpdateOptions(new JSObject().put("arrayFilters", badFilters))));
+        assertEquals("Invalid type for variable arrayFilters; expected array of documents",
+                getError(() -> OptionParser.getUpdateOptions(new JSObject().put("arrayFilters", new JSObject()))));
+        assertEquals("Invalid type for variable collation; if provided must be a valid collation document",
+                getError(() -> OptionParser.getUpdateOptions(new JSObject().put("collation", "en"))));
+    }
+
+    @Test
+    public void indexAndCollectionOptions() throws Exception {
+        IndexOptions index = OptionParser.getIndexOptions(new JSObject()
+                .put("name", "by_n")
+                .put("unique", 1)
+                .put("expireAfter", "3600000")
+                .put("max", 90)
+                .put("storageEngine", new JSObject().put("wiredTiger", new JSObject().put("configString", "block_compressor=zlib")))
+                .put("partialFilterExpression", new JSObject().put("n", new JSObject().put("$exists", true))));
+        assertEquals("by_n", index.getName());
+        assertTrue(index.isUnique());
+        assertEquals(3600L, index.getExpireAfter(TimeUnit.SECONDS).longValue());
+        assertEquals(90.0, index.getMax(), 0);
+        assertEquals(BsonDocument.parse("{wiredTiger: {configString: 'block_compressor=zlib'}}"), toBson(index.getStorageEngine()));
+        assertEquals(BsonDocument.parse("{n: {$exists: true}}"), toBson(index.getPartialFilterExpression()));
+
+        CreateCollectionOptions collection = OptionParser.getCreateCollectionOptions(new JSObject()
+                .put("capped", true)
+                .put("size", 1048576)
+                .put("storageEngine", new JSObject().put("wiredTiger", new JSObject())));
+        assertTrue(collection.isCapped());
+        assertEquals(1048576, collection.getSizeInBytes());
+        assertEquals(BsonDocument.parse("{wiredTiger: {}}"), toBson(collection.getStorageEngineOptions()));
+
+        assertEquals("Invalid type for variable storageEngine; Could not parse document",
+                getError(() -> OptionParser.getIndexOptions(new JSObject().put("storageEngine", "wiredTiger"))));
+        assertEquals("Invalid type for variable max; expected double",
+                getError(() -> OptionParser.getIndexOptions(new JSObject().put("max", true))));
+    }
+
+    private static WriteConcern getWriteConcern(Object value) throws Exception {
+        return OptionParser.getWriteConcern(new JSObject().put("writeConcern", value), "writeConcern");
+    }
+
+    @Test
+    public void writeConcern() throws Exception {
+        assertEquals(WriteConcern.UNACKNOWLEDGED, getWriteConcern(0));
+        assertEquals(new WriteConcern(2), getWriteConcern("2"));
+        assertEquals(WriteConcern.MAJORITY, getWriteConcern(new JSObject().put("w", "majority")));
+        // A numeric string is a number, not a tag set name
+        assertEquals(new WriteConcern(3), getWriteConcern(new JSObject().put("w", "3")));
+        assertEquals(new WriteConcern(1).withJournal(true).withWTimeout(500, TimeUnit.MILLISECONDS),
+                getWriteConcern(new JSObject().put("w", 1).put("j", 1).put("wtimeout", 500)));
+        assertEquals(WriteConcern.ACKNOWLEDGED, getWriteConcern(new JSObject()));
+        assertEquals(WriteConcern.ACKNOWLEDGED, getWriteConcern(new JSObject().put("w", JSONObject.NULL).put("j", JSONObject.NULL).put("wtimeout", JSONObject.NULL)));
+
+        try {
+            getWriteConcern(true);
+            fail("a boolean isn't a write concern");
+        } catch (InvalidParameterException ex) {
+            assertEquals("Invalid type for variable writeConcern; expected number or {w?: number, j?: boolean, wtimeout?: number}", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void compiledOptionsAreCachedByJsonText() throws Exception {
+        JSObject options = new JSObject().put("limit", 5).put("hint", new JSObject().put("n", 1));
+        CountOptions first = OptionParser.getCountOptions(options);
+        CountOptions second = OptionParser.getCountOptions(new JSObject(options.toString()));
+
+        // Each call gets its own options object, built from the same parsed values
+        assertNotSame(first, second);
+        assertSame(first.getHint(), second.getHint());
+        assertEquals(5, second.getLimit());
+
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() throws Exception {
+        OptionParser.OptionTable<CountOptions> table = new OptionParser.OptionTable<CountOptions>(2)
+                .add("hint", OptionParser.ValueType.DOCUMENT, (o, v) -> o.hint((Bson) v));
+        JSObject a = new JSObject().put("hint", new JSObject().put("a", 1));
+        JSObject b = new JSObject().put("hint", new JSObject().put("b", 1));
+        JSObject c = new JSObject().put("hint", new JSObject().put("c", 1));
+
+        Bson hintA = table.apply(new CountOptions(), a).getHint();
+        Bson hintB = table.apply(new CountOptions(), b).getHint();
+        // Using a makes b the least recently used, so c pushes b out
+        assertSame(hintA, table.apply(new CountOptions(), a).getHint());
+        table.apply(new CountOptions(), c);
+
+        assertSame(hintA, table.apply(new CountOptions(), a).getHint());
+        Bson hintB2 = table.apply(new CountOptions(), b).getHint();
+        assertNotSame(hintB, hintB2);
+        assertEquals(hintB, hintB2);
+
+        // A table with no cache parses every time
+        OptionParser.OptionTable<CountOptions> uncached = new OptionParser.OptionTable<CountOptions>(0)
+                .add("hint", OptionParser.ValueType.DOCUMENT, (o, v) -> o.hint((Bson) v));
+        assertNotSame(uncached.apply(new CountOptions(), a).getHint(), uncached.apply(new CountOptions(), a).getHint());
+    }
+
+    @Test
+    public void failedOptionsAreNotCached() throws Exception {
+        JSObject bad = new JSObject().put("skip", "many");
+        getError(() -> OptionParser.getCountOptions(bad));
+        // Still fails the second time rather than getting a cached half-parsed result
+        assertEquals("Invalid type for variable skip; expected integer", getError(() -> OptionParser.getCountOptions(bad)));
+    }
+}
@@ -0,0 +1,114 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.MessageHandler;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginResult;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Calls plugin methods the way the bridge does: through a PluginCall whose MessageHandler is a
+ * mock that hands the response back to the test instead of to the WebView.
+ */
+final class PluginCalls {
+    static final long TIMEOUT_S = 30;
+    private static final AtomicLong nextCallbackId = new AtomicLong();
+
+    private PluginCalls() {}
+
+    /**
+     * A call which has been made; its response may not have been sent yet
+     */
+    static final class Pending {
+        private final String methodName;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final PluginResult[] results = new PluginResult[2];
+
+        private Pending(String methodName) {
+            this.methodName = methodName;
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * @return what the call resolved with
+         * @throws AssertionError if it was rejected or didn't finish in time
+         */
+        JSObject resolved() throws Exception {
+            await();
+            if (results[0] == null) {
+                throw new AssertionError(methodName + " was rejected: " + results[1]);
+            }
+            return new JSObject(results[0].toString());
+        }
+
+        /**
+         * @return the message the call was rejected with
+         * @throws AssertionError if it resolved or didn't finish in time
+         */
+        String rejected() throws Exception {
+            await();
+            if (results[1] == null) {
+                throw new AssertionError(methodName + " resolved: " + results[0]);
+            }
+            return new JSObject(results[1].toString()).getString("message");
+        }
+
+        private void await() throws InterruptedException {
+            if (!done.await(TIMEOUT_S, TimeUnit.SECONDS)) {
+                throw new AssertionError(methodName + " did not return within " + TIMEOUT_S + "s");
+            }
+        }
+    }
+
+    /**
+     * @return what the call resolved with
+     * @throws AssertionError if it was rejected or didn't finish in time
+     */
+    static JSObject resolve(MongoDBMobile plugin, String methodName, JSObject data) throws Exception {
+        return start(plugin, methodName, data).resolved();
+    }
+
+    /**
+     * @return the message the call was rejected with
+     * @throws AssertionError if it resolved or didn't finish in time
+     */
+    static String reject(MongoDBMobile plugin, String methodName, JSObject data) throws Exception {
+        return start(plugin, methodName, data).rejected();
+    }
+
+    /**
+     * Calls the method without waiting for its response
+     */
+    static Pending start(MongoDBMobile plugin, String methodName, JSObject data) throws Exception {
+        final Pending pending = new Pending(methodName);
+        MessageHandler handler = mock(MessageHandler.class);
+        doAnswer(invocation -> {
+            pending.results[0] = invocation.getArgument(1);
+            pending.results[1] = invocation.getArgument(2);
+            pending.done.countDown();
+            return null;
+        }).when(handler).sendResponseMessage(any(PluginCall.class), any(), any());
+
+        String callbackId = Long.toString(nextCallbackId.incrementAndGet());
+        PluginCall call = new PluginCall(handler, "MongoDBMobile", callbackId, methodName, data);
+        Method method = MongoDBMobile.class.getMethod(methodName, PluginCall.class);
+        try {
+            method.invoke(plugin, call);
+        } catch (InvocationTargetException ex) {
+            throw new AssertionError(methodName + " threw " + ex.getCause(), ex.getCause());
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,73 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+    private static JSObject result(int n) {
+        JSObject result = new JSObject();
+        result.put("n", n);
+        return result;
+    }
+
+    @Test
+    public void writeToOtherCollectionKeepsInFlightResult() {
+        QueryCache cache = new QueryCache();
+        QueryCache.Ticket ticket = cache.lookup("a", "db.a");
+        assertNull(ticket.cached);
+
+        // Writes elsewhere while the query runs
+        cache.invalidate("db.b");
+        cache.invalidate("other.a");
+        cache.invalidateDatabase("other");
+        cache.put(ticket, result(1));
+
+        assertNotNull(cache.lookup("a", "db.a").cached);
+    }
+
+    @Test
+    public void writeToSameCollectionDropsInFlightResult() {
+        QueryCache cache = new QueryCache();
+        QueryCache.Ticket ticket = cache.lookup("a", "db.a");
+        cache.invalidate("db.a");
+        cache.put(ticket, result(1));
+
+        assertNull(cache.lookup("a", "db.a").cached);
+    }
+
+    @Test
+    public void databaseWriteDropsItsCollections() {
+        QueryCache cache = new QueryCache();
+        cache.put(cache.lookup("a", "db.a"), result(1));
+        cache.put(cache.lookup("x", "dbx.a"), result(2));
+        QueryCache.Ticket inFlight = cache.lookup("b", "db.b");
+
+        cache.invalidateDatabase("db");
+        cache.put(inFlight, result(3));
+
+        assertNull(cache.lookup("a", "db.a").cached);
+        assertNull(cache.lookup("b", "db.b").cached);
+        // Only a prefix of the name, not the same database
+        assertNotNull(cache.lookup("x", "dbx.a").cached);
+
+        // Queries started after the write cache again
+        cache.put(cache.lookup("a", "db.a"), result(4));
+        assertNotNull(cache.lookup("a", "db.a").cached);
+    }
+
+    @Test
+    public void invalidateAllDropsEverything() {
+        QueryCache cache = new QueryCache();
+        cache.put(cache.lookup("a", "db.a"), result(1));
+        QueryCache.Ticket inFlight = cache.lookup("b", "other.b");
+
+        cache.invalidateAll();
+        cache.put(inFlight, result(2));
+
+        assertNull(cache.lookup("a", "db.a").cached);
+        assertNull(cache.lookup("b", "other.b").cached);
+    }
+}
@@ -0,0 +1,111 @@
+package org.hamstudy.MongoDb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Driver interfaces (FindIterable, MongoDatabase, ...) implemented with dynamic proxies, so code
+ * taking them can run without a server.
+ *
+ * A call goes to the public method with the same name and parameter types on the target, if it
+ * has one. Otherwise a method returning the proxied interface returns the proxy itself, so
+ * builder style setters chain, and anything else returns null / 0 / false. Strict stubs throw
+ * UnsupportedOperationException instead, so code using something a fake doesn't implement fails
+ * loudly rather than getting a default.
+ */
+final class Stubs {
+    private static final Method NO_METHOD;
+    static {
+        try {
+            NO_METHOD = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private Stubs() {}
+
+    /**
+     * @param iface
+     * @param target implements whichever of iface's methods matter; may be null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T of(Class<T> iface, Object target) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, new Handler(iface, target, false));
+    }
+    @SuppressWarnings("unchecked")
+    static <T> T strict(Class<T> iface, Object target) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, new Handler(iface, target, true));
+    }
+
+    private static class Handler implements InvocationHandler {
+        private final Class<?> iface;
+        private final Object target;
+        private final boolean strict;
+        private final ConcurrentHashMap<Method, Method> targetMethods = new ConcurrentHashMap<>();
+
+        Handler(Class<?> iface, Object target, boolean strict) {
+            this.iface = iface;
+            this.target = target;
+            this.strict = strict;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return iface.getSimpleName() + " stub";
+                }
+            }
+
+            Method targetMethod = getTargetMethod(method);
+            if (targetMethod != NO_METHOD) {
+                try {
+                    return targetMethod.invoke(target, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+
+            if (strict) {
+                throw new UnsupportedOperationException(iface.getSimpleName() + "." + method.getName() + " is not implemented by the stub");
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == iface) {
+                return proxy;
+            } else if (returnType == boolean.class) {
+                return false;
+            } else if (returnType == int.class) {
+                return 0;
+            } else if (returnType == long.class) {
+                return 0L;
+            } else if (returnType == double.class) {
+                return 0.0;
+            }
+            return null;
+        }
+
+        private Method getTargetMethod(Method method) {
+            Method targetMethod = targetMethods.get(method);
+            if (targetMethod == null) {
+                targetMethod = NO_METHOD;
+                if (target != null) {
+                    try {
+                        targetMethod = target.getClass().getMethod(method.getName(), method.getParameterTypes());
+                        targetMethod.setAccessible(true);
+                    } catch (NoSuchMethodException ex) {}
+                }
+                targetMethods.put(method, targetMethod);
+            }
+            return targetMethod;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.hamstudy.MongoDb;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * The phases of the benchmark module's WorkloadRunner at a small scale: each is run by several
+ * client threads at once through PluginCalls and checked against FakeMongoClient's contents.
+ */
+public class WorkloadTest {
+    private static final String DB = "workload";
+    private static final int CLIENTS = 4;
+    private static final int QUESTIONS = 600;
+    private static final int IMPORT_BATCH = 50;
+    private static final String[] POOLS = {"T2018", "G2019", "E2020"};
+    private static final int SUBELEMENTS = 10;
+
+    private MongoDBMobile plugin;
+    private FakeMongoClient fake;
+    private ExecutorService clients;
+
+    private interface Step {
+        void run(int i) throws Exception;
+    }
+
+    @Before
+    public void setUp() {
+        fake = new FakeMongoClient();
+        plugin = new MongoDBMobile();
+        plugin.mongoClient = fake.getClient();
+        plugin.load();
+        clients = Executors.newFixedThreadPool(CLIENTS);
+    }
+
+    @After
+    public void tearDown() {
+        clients.shutdownNow();
+    }
+
+    @Test
+    public void bulkImport() throws Exception {
+        importQuestions();
+        assertEquals(QUESTIONS, fake.size(DB, "questions"));
+    }
+
+    @Test
+    public void insertManySessions() throws Exception {
+        final int batches = 20;
+        final int batchSize = 25;
+        runConcurrently(batches, i -> {
+            JSArray docs = new JSArray();
+            for (int j = 0; j < batchSize; j++) {
+                docs.put(new JSObject().put("user", "user-" + i).put("score", j).put("answers", new JSArray().put("A").put("C")));
+            }
+            JSObject result = PluginCalls.resolve(plugin, "insertMany", getTarget("sessions").put("docs", docs));
+            assertEquals(batchSize, result.getInt("insertedCount"));
+        });
+        assertEquals(batches * batchSize, fake.size(DB, "sessions"));
+    }
+
+    @Test
+    public void paginatedCursorReads() throws Exception {
+        importQuestions();
+        runConcurrently(POOLS.length * SUBELEMENTS, i -> {
+            JSObject filter = new JSObject().put("pool", getPool(i)).put("subelement", getSubelement(i));
+            JSObject data = getTarget("questions")
+                    .put("filter", filter)
+                    .put("options", new JSObject().put("sort", new JSObject().put("id", 1)))
+                    .put("cursor", true);
+            String cursorId = PluginCalls.resolve(plugin, "find", data).getString("cursorId");
+
+            int expected = fake.find(DB, "questions", BsonDocument.parse(filter.toString())).size();
+            assertTrue(expected > 0);
+            int read = 0;
+            String lastId = "";
+            boolean complete = false;
+            while (!complete) {
+                JSObject batch = PluginCalls.resolve(plugin, "cursorGetNext", new JSObject().put("cursorId", cursorId).put("batchSize", 7));
+                for (int j = 0; j < batch.getJSONArray("results").length(); j++) {
+                    JSONObject doc = batch.getJSONArray("results").getJSONObject(j);
+                    assertEquals(getPool(i), doc.getString("pool"));
+                    assertTrue("sorted by id", doc.getString("id").compareTo(lastId) >= 0);
+                    lastId = doc.getString("id");
+                    read++;
+                }
+                complete = batch.getBoolean("complete", false);
+            }
+            assertEquals(expected, read);
+        });
+    }
+
+    @Test
+    public void idLookups() throws Exception {
+        importQuestions();
+        runConcurrently(QUESTIONS, i -> {
+            JSObject data = getTarget("questions")
+                    .put("filter", new JSObject().put("_id", new JSObject().put("$oid", getQuestionId(i).toHexString())))
+                    .put("options", new JSObject().put("limit", 1));
+            JSObject result = PluginCalls.resolve(plugin, "find", data);
+            assertEquals(1, result.getJSONArray("results").length());
+            assertEquals(getSubelement(i), result.getJSONArray("results").getJSONObject(0).getString("subelement"));
+        });
+    }
+
+    @Test
+    public void findOneAndUpdateCounters() throws Exception {
+        final int increments = 400;
+        final int keys = 8;
+        runConcurrently(increments, i -> {
+            JSObject data = getTarget("counters")
+                    .put("filter", new JSObject().put("_id", "counter-" + i % keys))
+                    .put("update", new JSObject().put("$inc", new JSObject().put("n", 1)))
+                    .put("options", new JSObject().put("upsert", true).put("returnNewDocument", true));
+            assertTrue(PluginCalls.resolve(plugin, "findOneAndUpdate", data).opt("doc") instanceof JSONObject);
+        });
+
+        List<BsonDocument> counters = fake.find(DB, "counters", new BsonDocument());
+        assertEquals(keys, counters.size());
+        long total = 0;
+        for (BsonDocument counter : counters) {
+            total += counter.getNumber("n").longValue();
+        }
+        assertEquals(increments, total);
+    }
+
+    /**
+     * Adds the questions with newBulkWrite / bulkWriteAddMany / bulkWriteExecute, IMPORT_BATCH at a time
+     */
+    private void importQuestions() throws Exception {
+        runConcurrently(QUESTIONS / IMPORT_BATCH, b -> {
+            JSArray operations = new JSArray();
+            for (int i = b * IMPORT_BATCH; i < (b + 1) * IMPORT_BATCH; i++) {
+                String subelement = getSubelement(i);
+                JSObject question = new JSObject()
+                        .put("_id", new JSObject().put("$oid", getQuestionId(i).toHexString()))
+                        .put("pool", getPool(i))
+                        .put("subelement", subelement)
+                        .put("id", String.format("%s%04d", subelement, i))
+                        .put("answers", new JSArray().put("A").put("B").put("C").put("D"));
+                operations.put(new JSObject().put("insertOne", new JSObject().put("doc", question)));
+            }
+            String operationId = PluginCalls.resolve(plugin, "newBulkWrite", getTarget("questions")).getString("operationId");
+            PluginCalls.resolve(plugin, "bulkWriteAddMany", new JSObject().put("operationId", operationId).put("operations", operations));
+            JSObject result = PluginCalls.resolve(plugin, "bulkWriteExecute", new JSObject().put("operationId", operationId));
+            assertEquals(IMPORT_BATCH, result.getInt("insertedCount"));
+        });
+    }
+
+    /**
+     * Runs steps 0 - count-1 on the client threads; the first failure fails the test
+     */
+    private void runConcurrently(final int count, final Step step) throws Exception {
+        final AtomicInteger next = new AtomicInteger();
+        ArrayList<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < CLIENTS; t++) {
+            workers.add(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    step.run(i);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> result : clients.invokeAll(workers, 2 * PluginCalls.TIMEOUT_S, TimeUnit.SECONDS)) {
+            result.get();
+        }
+    }
+
+    private static JSObject getTarget(String collection) {
+        return new JSObject().put("db", DB).put("collection", collection);
+    }
+
+    private static ObjectId getQuestionId(int i) {
+        return new ObjectId(1557790402 + i / 1000, i);
+    }
+    private static String getPool(int i) {
+        return POOLS[i % POOLS.length];
+    }
+    private static String getSubelement(int i) {
+        return getPool(i).charAt(0) + Integer.toString(i / POOLS.length % SUBELEMENTS);
+    }
+}
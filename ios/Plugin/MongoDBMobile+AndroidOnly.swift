@@ -0,0 +1,50 @@
+//
+//  MongoDBMobile+AndroidOnly.swift
+//  Plugin
+//
+
+import Foundation
+import Capacitor
+
+/**
+ * Methods so far only implemented by the Android plugin; they are registered here so
+ * calling them on iOS rejects with a clear message instead of never being dispatched
+ */
+extension MongoDBMobile {
+
+    func notImplemented(_ call: CAPPluginCall, _ method: String) {
+        handleError(call, method + " is not implemented on iOS")
+    }
+
+    @objc func getExecutorStats(_ call: CAPPluginCall) {
+        notImplemented(call, "getExecutorStats")
+    }
+
+    @objc func getStats(_ call: CAPPluginCall) {
+        notImplemented(call, "getStats")
+    }
+
+    @objc func resetStats(_ call: CAPPluginCall) {
+        notImplemented(call, "resetStats")
+    }
+
+    @objc func getSlowOperations(_ call: CAPPluginCall) {
+        notImplemented(call, "getSlowOperations")
+    }
+
+    @objc func getIndexAdvice(_ call: CAPPluginCall) {
+        notImplemented(call, "getIndexAdvice")
+    }
+
+    @objc func cursorsGetNext(_ call: CAPPluginCall) {
+        notImplemented(call, "cursorsGetNext")
+    }
+
+    @objc func streamCursor(_ call: CAPPluginCall) {
+        notImplemented(call, "streamCursor")
+    }
+
+    @objc func streamCursorCredit(_ call: CAPPluginCall) {
+        notImplemented(call, "streamCursorCredit")
+    }
+}
@@ -47,5 +47,15 @@ CAP_PLUGIN(MongoDBMobile, "MongoDBMobile",
            CAP_PLUGIN_METHOD(dropIndex, CAPPluginReturnPromise);
            CAP_PLUGIN_METHOD(listIndexes, CAPPluginReturnPromise);
 
+           // Android only; see MongoDBMobile+AndroidOnly.swift
+           CAP_PLUGIN_METHOD(getExecutorStats, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getStats, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(resetStats, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getSlowOperations, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(getIndexAdvice, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(cursorsGetNext, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(streamCursor, CAPPluginReturnPromise);
+           CAP_PLUGIN_METHOD(streamCursorCredit, CAPPluginReturnPromise);
+
            
 )
@@ -1,3 +1,5 @@
+import { PluginListenerHandle } from '@capacitor/core';
+
 declare module "@capacitor/core" {
   interface PluginRegistry {
     MongoDBMobile: MongoDBMobilePlugin;
@@ -13,4 +15,5 @@ export {
 }
 
 export interface MongoDBMobilePlugin extends MongoDBMobileSource {
+  addListener(eventName: 'cursorStream', listenerFunc: (event: MongoMobileTypes.CursorStreamEvent) => void): PluginListenerHandle;
 }
@@ -16,6 +16,13 @@ export namespace MongoMobileTypes {
         limit?: number;
         maxTimeMS?: number;
         skip?: number;
+        /**
+         * Use the collection's document count instead of counting matches; much faster but only
+         * used when there is no filter, skip or limit (and may be off after an unclean shutdown)
+         */
+        estimated?: boolean;
+        /** Stop counting after this many matches; the result then has capped: true */
+        upTo?: number;
     }
     export enum CursorType {
         Tailable = 'tailable',
@@ -128,6 +135,13 @@ export namespace MongoMobileTypes {
         collation?: Collation;
         upsert?: boolean;
     }
+    export type BulkWriteOperation =
+        {deleteOne: {filter: any, options?: DeleteModelOptions}} |
+        {deleteMany: {filter: any, options?: DeleteModelOptions}} |
+        {insertOne: {doc: any}} |
+        {replaceOne: {filter: any, replacement: any, options?: ReplaceOneModelOptions}} |
+        {updateOne: {filter: any, update: any, options?: UpdateModelOptions}} |
+        {updateMany: {filter: any, update: any, options?: UpdateModelOptions}};
     export interface Collation {
         locale: string;
         caseLevel?: boolean;
@@ -153,7 +167,7 @@ export namespace MongoMobileTypes {
         expireAfter?: number;
         name?: string;
         sparse?: boolean;
-        storageEngine?: string;
+        storageEngine?: object;
         unique?: boolean;
         version?: number;
         defaultLanguage?: string;
@@ -195,10 +209,250 @@ export namespace MongoMobileTypes {
     }
 
     export type PipelineStage<T extends Object> = T;
+
+    export interface HandleSettings {
+        /** Cursors unused for this long are closed; defaults to 10 minutes, 0 to never close them */
+        cursorTimeoutMS?: number;
+        /** When more cursors than this are open the least recently used is closed; defaults to 100 */
+        maxOpenCursors?: number;
+        /** Bulk writes unused for this long are discarded; defaults to 10 minutes, 0 to never discard them */
+        bulkWriteTimeoutMS?: number;
+        /** When more bulk writes than this are open the least recently used is discarded; defaults to 50 */
+        maxOpenBulkWrites?: number;
+    }
+    export interface InitOptions extends HandleSettings {
+        /**
+         * insertMany arrays with at least this many documents are decoded on several threads;
+         * defaults to 256, 0 to always decode on a single thread
+         */
+        parallelDecodeThreshold?: number;
+        /** Threads used for reads (find, aggregate, count, ...); defaults to the number of cores, between 2 and 4. Android only */
+        readThreads?: number;
+        /**
+         * Threads used for writes; defaults to 2. Writes to the same collection always run
+         * one at a time in the order they were made; dropDatabase and runCommand are ordered
+         * with the writes to every collection in their database. Android only
+         */
+        writeThreads?: number;
+        /** Maximum number of responses kept by the query cache; defaults to 100, 0 disables it */
+        queryCacheSize?: number;
+        /** Maximum total size (as JSON) of the responses kept by the query cache; defaults to 8MB */
+        queryCacheMaxBytes?: number;
+        /**
+         * Non-cursor find / aggregate calls using rawJson or useBson with packed fail once their
+         * response grows past this many characters; defaults to 32M, 0 for no limit
+         */
+        maxResponseSize?: number;
+        /** Record per method timings for getStats; defaults to false. Android only */
+        collectStats?: boolean;
+        /**
+         * find / aggregate / count / update / delete calls taking longer than this are kept
+         * for getSlowOperations; defaults to 0 (off). 200 is a reasonable value to start with.
+         * Android only, as are slowOpLogSize and slowOpLogFile
+         */
+        slowOpThresholdMS?: number;
+        /** Number of slow operations kept; defaults to 100 */
+        slowOpLogSize?: number;
+        /**
+         * Also append slow operations as JSON lines to mongodb-slow-operations.log in the app's
+         * files directory (rotated to .1 at 1MB); defaults to false
+         */
+        slowOpLogFile?: boolean;
+        /**
+         * Fraction (0 - 1) of find / aggregate calls to explain in the background for
+         * getIndexAdvice; defaults to 0 (off). Each sampled call runs its query a second time.
+         * Android only
+         */
+        explainSampleRate?: number;
+    }
+    export interface PoolStats {
+        threads: number;
+        /** tasks currently running */
+        active: number;
+        /** tasks waiting to run */
+        queued: number;
+        completed: number;
+    }
+    export interface ExecutorStats {
+        read: PoolStats;
+        /** queues has the number of pending writes for each busy "db.collection" */
+        write: PoolStats & {queues: {[namespace: string]: number}};
+    }
+    export interface HandleStats {
+        open: number;
+        /** closed because they were idle too long */
+        expired: number;
+        /** closed because too many were open */
+        evicted: number;
+    }
+
+    export interface CacheOptions {
+        /**
+         * Serve repeats of this exact request from the query cache. Results are dropped whenever
+         * the collection is written; aggregations using $lookup, $graphLookup, $unionWith,
+         * $out or $merge are never cached
+         */
+        cache?: boolean;
+    }
+    export interface ResponseOptions {
+        /**
+         * Fail instead of returning a rawJson or BSON response longer than this many characters;
+         * defaults to the maxResponseSize given to initDb, except for useBson without packed which
+         * is only limited when this is given
+         */
+        maxResponseSize?: number;
+    }
+    /** Times are in milliseconds */
+    export interface LatencyStats {
+        count: number;
+        mean: number;
+        p50: number;
+        p90: number;
+        p99: number;
+        max: number;
+    }
+    export interface MethodStats {
+        calls: number;
+        errors: number;
+        /** length of the request / response JSON */
+        bytesIn: number;
+        bytesOut: number;
+        /** documents returned */
+        docs: number;
+        /** waiting for a worker thread */
+        queue: LatencyStats;
+        /** reading the arguments */
+        parse: LatencyStats;
+        /** running the operation in the database */
+        execute: LatencyStats;
+        /** building the response, including reading the documents from the cursor */
+        serialize: LatencyStats;
+        total: LatencyStats;
+    }
+    export interface CallStats {
+        enabled: boolean;
+        /** when the stats were last reset (ms since epoch) */
+        since: number;
+        methods: {[method: string]: MethodStats};
+    }
+    export interface SlowOperation {
+        /** when it finished (ms since epoch) */
+        time: number;
+        method: string;
+        /** db.collection */
+        namespace: string;
+        /** the filter (and sort) or pipeline with every value replaced by 1 */
+        shape: {filter: Document, sort?: Document} | {pipeline: Document[]};
+        durationMS: number;
+        /** documents returned, counted, matched or deleted */
+        docs: number;
+        failed?: true;
+    }
+    export interface ExplainedShape {
+        /** db.collection */
+        namespace: string;
+        shape: {filter: Document, sort?: Document} | {pipeline: Document[]};
+        /** number of explains; the counts below are totals over all of them */
+        samples: number;
+        /** explains whose plan scanned the whole collection */
+        collscans: number;
+        docsExamined: number;
+        keysExamined: number;
+        nReturned: number;
+        /** docsExamined / nReturned */
+        ratio: number;
+        /** key pattern of the index used by the last plan, if any */
+        index?: IndexFields;
+        /** keys of the index which would help, if the shape needs one */
+        suggestedIndex?: IndexFields;
+    }
+    export interface IndexAdvice {
+        sampleRate: number;
+        shapes: ExplainedShape[];
+        /** suggested indexes, ready to pass to createIndexes */
+        suggestions: (DatabaseDef & {indexes: [IndexFields, IndexOptions][]})[];
+    }
+    export interface QueryCacheStats {
+        entries: number;
+        bytes: number;
+        maxEntries: number;
+        maxBytes: number;
+        hits: number;
+        misses: number;
+        /** dropped because their collection was written */
+        invalidations: number;
+        /** dropped to stay within maxEntries / maxBytes */
+        evictions: number;
+    }
+
+    /** The same fields as a cursorGetNext response, plus the cursor they are for */
+    export interface CursorBatch<T = Document> {
+        cursorId: string;
+        results?: T[];
+        /** for packed batches */
+        batch?: string;
+        count?: number;
+        complete?: true;
+        prefetched?: number;
+        batchSize?: number;
+        /** set if reading the cursor failed */
+        error?: string;
+    }
+    /** After an event with error set the stream is over */
+    export interface CursorStreamEvent<T = Document> extends CursorBatch<T> {}
+
+    export interface AdaptiveBatchOptions {
+        /**
+         * Let the plugin pick each batch size (unless batchSize is given): the first batch is
+         * small and later ones grow to fit targetBytes / targetMS, based on the documents read
+         * so far. Set on find / aggregate with cursor: true it also sizes the driver's batches
+         * from what earlier adaptive cursors on the collection settled on
+         */
+        adaptive?: boolean;
+        /** size of the first batch; defaults to 10 */
+        initialBatchSize?: number;
+        /** defaults to 5000 */
+        maxBatchSize?: number;
+        /** approximate serialized size to aim for per batch; defaults to 256KB, 0 for no limit */
+        targetBytes?: number;
+        /** time to aim for reading and serializing a batch; defaults to 50, 0 for no limit */
+        targetMS?: number;
+    }
+
+    export interface PrefetchOptions {
+        /** If > 0 the cursor reads up to this many documents ahead on a background thread */
+        prefetch?: number;
+        /** Stop reading ahead once this many bytes of BSON are buffered; defaults to 4MB */
+        prefetchMaxBytes?: number;
+    }
 }
 
 export interface MongoDBMobileSource {
-  initDb(options?: {appID: string}): Promise<{success: true}>;
+  initDb(options?: {appID: string} & MongoMobileTypes.InitOptions): Promise<{success: true}>;
+  getCursorStats(): Promise<{cursors: MongoMobileTypes.HandleStats, bulkWrites: MongoMobileTypes.HandleStats}>;
+  /** Android only; rejects on iOS */
+  getExecutorStats(): Promise<MongoMobileTypes.ExecutorStats>;
+  getQueryCacheStats(): Promise<MongoMobileTypes.QueryCacheStats>;
+  clearQueryCache(): Promise<{success: true}>;
+  /** Android only; rejects on iOS */
+  getStats(): Promise<MongoMobileTypes.CallStats>;
+  /**
+   * Oldest first; total counts every slow operation logged, including ones no longer kept.
+   * Android only; rejects on iOS
+   */
+  getSlowOperations(options?: {clear?: boolean}): Promise<{
+    operations: MongoMobileTypes.SlowOperation[],
+    total: number,
+    thresholdMS: number,
+    file?: string,
+  }>;
+  /**
+   * Plans of the explained find / aggregate calls by query shape; clear starts over.
+   * Android only; rejects on iOS
+   */
+  getIndexAdvice(options?: {clear?: boolean}): Promise<MongoMobileTypes.IndexAdvice>;
+  /** Clears the call stats; enabled turns collecting them on or off. Android only; rejects on iOS */
+  resetStats(options?: {enabled?: boolean}): Promise<{success: true}>;
   listDatabases(): Promise<{name: string, sizeOnDisk: number, empty: boolean}[]>;
   listCollections(options: {db: string}): Promise<{name: string}[]>;
   createCollection(options: MongoMobileTypes.DatabaseDef & {
@@ -219,34 +473,96 @@ export interface MongoDBMobileSource {
   \***********************/ 
   count(options: MongoMobileTypes.DatabaseDef & {
     filter: any, options?: MongoMobileTypes.CountOptions
-  }): Promise<{count: number}>;
+  }): Promise<{count: number, estimated?: true, capped?: boolean}>;
   find<T extends MongoMobileTypes.Document>(options: MongoMobileTypes.DatabaseDef & {
       cursor?: false,
       filter: any,
       options?: MongoMobileTypes.FindOptions,
-  }) : Promise<{results: T[]}>;
+  } & MongoMobileTypes.CacheOptions) : Promise<{results: T[]}>;
+  /** rawJson returns the results as one JSON array string (extended JSON) for JSON.parse */
+  find(options: MongoMobileTypes.DatabaseDef & {
+      cursor?: false,
+      rawJson: true,
+      filter: any,
+      options?: MongoMobileTypes.FindOptions,
+  } & MongoMobileTypes.CacheOptions & MongoMobileTypes.ResponseOptions) : Promise<{json: string, count: number}>;
   find(options: MongoMobileTypes.DatabaseDef & {
       cursor: true,
       filter: any,
       options?: MongoMobileTypes.FindOptions
-  }) : Promise<{cursorId: string}>;
+  } & MongoMobileTypes.PrefetchOptions & MongoMobileTypes.AdaptiveBatchOptions) : Promise<{cursorId: string}>;
   aggregate<T extends MongoMobileTypes.Document>(options: MongoMobileTypes.DatabaseDef & {
     cursor?: false,
     pipeline: MongoMobileTypes.PipelineStage<{}>[],
     options?: MongoMobileTypes.AggregateOptions,
-  }) : Promise<{results: T[]}>;
+  } & MongoMobileTypes.CacheOptions) : Promise<{results: T[]}>;
+  /** rawJson returns the results as one JSON array string (extended JSON) for JSON.parse */
+  aggregate(options: MongoMobileTypes.DatabaseDef & {
+    cursor?: false,
+    rawJson: true,
+    pipeline: MongoMobileTypes.PipelineStage<{}>[],
+    options?: MongoMobileTypes.AggregateOptions,
+  } & MongoMobileTypes.CacheOptions & MongoMobileTypes.ResponseOptions) : Promise<{json: string, count: number}>;
   aggregate(options: MongoMobileTypes.DatabaseDef & {
     cursor: true,
     pipeline: MongoMobileTypes.PipelineStage<{}>[],
     options?: MongoMobileTypes.AggregateOptions,
-  }) : Promise<{cursorId: string}>;
+  } & MongoMobileTypes.PrefetchOptions & MongoMobileTypes.AdaptiveBatchOptions) : Promise<{cursorId: string}>;
+  /**
+   * complete is set on the batch holding the last documents, and the cursor is closed then;
+   * prefetched is the number of documents already read ahead for prefetching cursors;
+   * batchSize is the size picked for adaptive cursors
+   */
   cursorGetNext<T extends MongoMobileTypes.Document>(options: {
     cursorId: string,
     batchSize?: number,
-  }) : Promise<{results: T[], complete?: true}>;
+    packed?: false,
+  } & MongoMobileTypes.AdaptiveBatchOptions) : Promise<{results: T[], complete?: true, prefetched?: number, batchSize?: number}>;
+  /**
+   * For cursors opened with useBson; instead of one {$b64} object per document the whole
+   * batch is returned as a single base64 string of back-to-back BSON documents (each starts
+   * with its own int32 length)
+   */
+  cursorGetNext(options: {
+    cursorId: string,
+    batchSize?: number,
+    packed: true,
+  } & MongoMobileTypes.AdaptiveBatchOptions) : Promise<{batch: string, count: number, complete?: true, prefetched?: number, batchSize?: number}>;
+  /**
+   * Reads the next batch of several cursors at once, in parallel; the batches come back in
+   * the same order as cursors. Each entry takes the same options as cursorGetNext, and a
+   * cursor which can't be read gets error set instead of failing the whole call.
+   * Android only; rejects on iOS
+   */
+  cursorsGetNext<T extends MongoMobileTypes.Document>(options: {
+    cursors: ({
+      cursorId: string,
+      batchSize?: number,
+      packed?: boolean,
+    } & MongoMobileTypes.AdaptiveBatchOptions)[],
+  }) : Promise<{batches: MongoMobileTypes.CursorBatch<T>[]}>;
   closeCursor(options: {
     cursorId: string,
   }) : Promise<{success: true, removed: boolean}>;
+  /**
+   * Pushes the cursor's batches to 'cursorStream' listeners instead of waiting for
+   * cursorGetNext calls. One batch is sent per credit; grant more with streamCursorCredit.
+   * The last event has complete: true, and closeCursor stops the stream. If the cursor is
+   * closed for being idle (or evicted) the stream ends with an event with error and complete: true.
+   * Android only; rejects on iOS
+   */
+  streamCursor(options: {
+    cursorId: string,
+    batchSize?: number,
+    /** number of batches to send before waiting for more credit; defaults to 1 */
+    credits?: number,
+    packed?: boolean,
+  } & MongoMobileTypes.AdaptiveBatchOptions) : Promise<{success: true}>;
+  /** Android only; rejects on iOS */
+  streamCursorCredit(options: {
+    cursorId: string,
+    credits?: number,
+  }) : Promise<{success: true}>;
 
   /**********************\
    * Basic write methods
@@ -306,8 +622,16 @@ export interface MongoDBMobileSource {
   /*********************\
    * Bulk Write methods
   \*********************/
+  /**
+   * If flushEvery or flushBytes is set, pending operations are executed in sub-batches as they
+   * are added instead of all being held until bulkWriteExecute; flushBytes counts the BSON size
+   * of inserted and replacement documents. bulkWriteExecute returns the combined result.
+   * Sub-batches which were already flushed are not rolled back if a later one fails.
+   */
   newBulkWrite(options: MongoMobileTypes.DatabaseDef & {
     options?: MongoMobileTypes.BulkWriteOptions,
+    flushEvery?: number,
+    flushBytes?: number,
   }) : Promise<{operationId: string}>;
   bulkWriteAddDeleteOne(options: {
     operationId: string,
@@ -346,6 +670,15 @@ export interface MongoDBMobileSource {
     update: any,
     options?: MongoMobileTypes.UpdateModelOptions,
   }) : Promise<{success: true}>;
+  /**
+   * Adds many operations in one call; each takes the same arguments as the matching
+   * bulkWriteAdd* method. If any operation is invalid none are added and the error
+   * lists the index of each invalid operation.
+   */
+  bulkWriteAddMany(options: {
+    operationId: string,
+    operations: MongoMobileTypes.BulkWriteOperation[],
+  }) : Promise<{success: true, added: number}>;
   bulkWriteCancel(options: {
     operationId: string,
   }) : Promise<{removed: boolean}>;
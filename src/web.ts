@@ -39,17 +39,42 @@ export class MongoDBMobileWeb extends WebPlugin implements MongoDBMobilePlugin {
   listCollections(options: { db: string; }): Promise<any[]> {
     throw new Error("Method not implemented.");
   }
-  initDb(options?: { appID: string; }): Promise<{success: true}> {
+  initDb(options?: { appID: string; } & MongoMobileTypes.InitOptions): Promise<{success: true}> {
+    throw new Error("Method not implemented.");
+  }
+  getCursorStats(): Promise<{ cursors: MongoMobileTypes.HandleStats; bulkWrites: MongoMobileTypes.HandleStats; }> {
+    throw new Error("Method not implemented.");
+  }
+  getExecutorStats(): Promise<MongoMobileTypes.ExecutorStats> {
+    throw new Error("Method not implemented.");
+  }
+  getQueryCacheStats(): Promise<MongoMobileTypes.QueryCacheStats> {
+    throw new Error("Method not implemented.");
+  }
+  clearQueryCache(): Promise<{ success: true; }> {
+    throw new Error("Method not implemented.");
+  }
+  getStats(): Promise<MongoMobileTypes.CallStats> {
+    throw new Error("Method not implemented.");
+  }
+  getSlowOperations(options?: { clear?: boolean; }): Promise<{ operations: MongoMobileTypes.SlowOperation[]; total: number; thresholdMS: number; file?: string; }> {
+    throw new Error("Method not implemented.");
+  }
+  getIndexAdvice(options?: { clear?: boolean; }): Promise<MongoMobileTypes.IndexAdvice> {
+    throw new Error("Method not implemented.");
+  }
+  resetStats(options?: { enabled?: boolean; }): Promise<{ success: true; }> {
     throw new Error("Method not implemented.");
   }
   listDatabases(): Promise<any[]> {
     throw new Error("Method not implemented.");
   }
-  count(options: MongoMobileTypes.DatabaseDef & { filter: any; options?: MongoMobileTypes.CountOptions; }): Promise<{ count: number; }> {
+  count(options: MongoMobileTypes.DatabaseDef & { filter: any; options?: MongoMobileTypes.CountOptions; }): Promise<{ count: number; estimated?: true; capped?: boolean; }> {
     throw new Error("Method not implemented.");
   }
-  find<T extends MongoMobileTypes.Document>(options: MongoMobileTypes.DatabaseDef & { cursor?: false; filter: any; options?: MongoMobileTypes.FindOptions; }): Promise<{ results: T[]; }>;
-  find(options: MongoMobileTypes.DatabaseDef & { cursor: true; filter: any; options?: MongoMobileTypes.FindOptions; }): Promise<{ cursorId: string; }>;
+  find<T extends MongoMobileTypes.Document>(options: MongoMobileTypes.DatabaseDef & { cursor?: false; filter: any; options?: MongoMobileTypes.FindOptions; } & MongoMobileTypes.CacheOptions): Promise<{ results: T[]; }>;
+  find(options: MongoMobileTypes.DatabaseDef & { cursor?: false; rawJson: true; filter: any; options?: MongoMobileTypes.FindOptions; } & MongoMobileTypes.CacheOptions & MongoMobileTypes.ResponseOptions): Promise<{ json: string; count: number; }>;
+  find(options: MongoMobileTypes.DatabaseDef & { cursor: true; filter: any; options?: MongoMobileTypes.FindOptions; } & MongoMobileTypes.PrefetchOptions & MongoMobileTypes.AdaptiveBatchOptions): Promise<{ cursorId: string; }>;
   find(options: any) : Promise<any> {
     throw new Error("Method not implemented.");
   }
@@ -57,21 +82,38 @@ export class MongoDBMobileWeb extends WebPlugin implements MongoDBMobilePlugin {
     cursor?: false,
     pipeline: MongoMobileTypes.PipelineStage<{}>[],
     options?: MongoMobileTypes.AggregateOptions,
-  }) : Promise<{results: T[]}>;
+  } & MongoMobileTypes.CacheOptions) : Promise<{results: T[]}>;
+  aggregate(options: MongoMobileTypes.DatabaseDef & {
+    cursor?: false,
+    rawJson: true,
+    pipeline: MongoMobileTypes.PipelineStage<{}>[],
+    options?: MongoMobileTypes.AggregateOptions,
+  } & MongoMobileTypes.CacheOptions & MongoMobileTypes.ResponseOptions) : Promise<{json: string, count: number}>;
   aggregate(options: MongoMobileTypes.DatabaseDef & {
     cursor: true,
     pipeline: MongoMobileTypes.PipelineStage<{}>[],
     options?: MongoMobileTypes.AggregateOptions,
-  }) : Promise<{cursorId: string}>;
+  } & MongoMobileTypes.PrefetchOptions & MongoMobileTypes.AdaptiveBatchOptions) : Promise<{cursorId: string}>;
   aggregate(options: any) : Promise<any> {
     throw new Error("Method not implemented.");
   }
-  cursorGetNext<T extends MongoMobileTypes.Document>(options: { cursorId: string; batchSize?: number; }): Promise<{ results: T[]; complete?: true; }> {
+  cursorGetNext<T extends MongoMobileTypes.Document>(options: { cursorId: string; batchSize?: number; packed?: false; } & MongoMobileTypes.AdaptiveBatchOptions): Promise<{ results: T[]; complete?: true; prefetched?: number; batchSize?: number; }>;
+  cursorGetNext(options: { cursorId: string; batchSize?: number; packed: true; } & MongoMobileTypes.AdaptiveBatchOptions): Promise<{ batch: string; count: number; complete?: true; prefetched?: number; batchSize?: number; }>;
+  cursorGetNext(options: any): Promise<any> {
+    throw new Error("Method not implemented.");
+  }
+  cursorsGetNext<T extends MongoMobileTypes.Document>(options: { cursors: ({ cursorId: string; batchSize?: number; packed?: boolean; } & MongoMobileTypes.AdaptiveBatchOptions)[]; }): Promise<{ batches: MongoMobileTypes.CursorBatch<T>[]; }> {
     throw new Error("Method not implemented.");
   }
   closeCursor(options: { cursorId: string; }): Promise<{ success: true; removed: boolean; }> {
     throw new Error("Method not implemented.");
   }
+  streamCursor(options: { cursorId: string; batchSize?: number; credits?: number; packed?: boolean; } & MongoMobileTypes.AdaptiveBatchOptions): Promise<{ success: true; }> {
+    throw new Error("Method not implemented.");
+  }
+  streamCursorCredit(options: { cursorId: string; credits?: number; }): Promise<{ success: true; }> {
+    throw new Error("Method not implemented.");
+  }
   insertOne<T extends object>(options: MongoMobileTypes.DatabaseDef & { options?: MongoMobileTypes.InsertOneOptions; doc: T; }): Promise<{ success: true; insertedId?: string; }> {
     throw new Error("Method not implemented.");
   }
@@ -102,7 +144,7 @@ export class MongoDBMobileWeb extends WebPlugin implements MongoDBMobilePlugin {
   findOneAndUpdate<T extends MongoMobileTypes.Document>(options: MongoMobileTypes.DatabaseDef & { options?: MongoMobileTypes.FindOneAndUpdateOptions; filter: any; update: any; }): Promise<{ doc: T; }> {
     throw new Error("Method not implemented.");
   }
-  newBulkWrite(options: MongoMobileTypes.DatabaseDef & { options?: MongoMobileTypes.FindOneAndUpdateOptions; }): Promise<{ operationId: string; }> {
+  newBulkWrite(options: MongoMobileTypes.DatabaseDef & { options?: MongoMobileTypes.FindOneAndUpdateOptions; flushEvery?: number; flushBytes?: number; }): Promise<{ operationId: string; }> {
     throw new Error("Method not implemented.");
   }
   bulkWriteAddDeleteOne(options: { operationId: string; filter: any; options?: MongoMobileTypes.DeleteModelOptions; }): Promise<{ success: true; }> {
@@ -123,6 +165,9 @@ export class MongoDBMobileWeb extends WebPlugin implements MongoDBMobilePlugin {
   bulkWriteAddUpdateMany(options: { operationId: string; filter: any; update: any; options?: MongoMobileTypes.UpdateModelOptions; }): Promise<{ success: true; }> {
     throw new Error("Method not implemented.");
   }
+  bulkWriteAddMany(options: { operationId: string; operations: MongoMobileTypes.BulkWriteOperation[]; }): Promise<{ success: true; added: number; }> {
+    throw new Error("Method not implemented.");
+  }
   bulkWriteCancel(options: { operationId: string; }): Promise<{ removed: boolean; }> {
     throw new Error("Method not implemented.");
   }